@@ -0,0 +1,143 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//The coursework classes live in the default package, which no named package can import, and much of the Controller
+//is private. They are reached through method handles, which the JIT inlines like direct calls once they are
+//held in static final fields
+final class Coursework {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodHandle NEW_PAIR = constructor("Pair", Object.class, Object.class);
+    private static final MethodHandle NEW_CONTROLLER = constructor("Controller", int.class, int.class, int.class, int.class);
+    private static final MethodHandle RESET_CONTROLLER_LOGGER = method("ControllerLogger", "resetInstance");
+    private static final MethodHandle FST = getter("Pair", "fst");
+    private static final MethodHandle SND = getter("Pair", "snd");
+
+    private Coursework() {}
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(name + " is not on the class path", e);
+        }
+    }
+
+    static MethodHandle method(String className, String name, Class<?>... parameters) {
+        try {
+            Method method = type(className).getDeclaredMethod(name, parameters);
+            method.setAccessible(true);
+            return LOOKUP.unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(className + "." + name + " cannot be benchmarked", e);
+        }
+    }
+
+    static MethodHandle constructor(String className, Class<?>... parameters) {
+        try {
+            Constructor<?> constructor = type(className).getDeclaredConstructor(parameters);
+            constructor.setAccessible(true);
+            return LOOKUP.unreflectConstructor(constructor);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(className + " cannot be instantiated", e);
+        }
+    }
+
+    private static MethodHandle getter(String className, String field) {
+        try {
+            return LOOKUP.unreflectGetter(type(className).getField(field));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(className + "." + field + " cannot be read", e);
+        }
+    }
+
+    /*********************************** BEGINNING OF FIXTURES *******************************************/
+
+    //A Controller which is never started, only its planners and bookkeeping are used
+    static Object controller(int replicationFactor) {
+        try {
+            RESET_CONTROLLER_LOGGER.invoke();
+            return NEW_CONTROLLER.invoke(0, replicationFactor, 1000, Integer.MAX_VALUE);
+        } catch (Throwable e) {
+            throw new IllegalStateException("The Controller cannot be created", e);
+        }
+    }
+
+    static Object pair(Object fst, Object snd) {
+        try {
+            return NEW_PAIR.invoke(fst, snd);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Object fst(Object pair) {
+        try {
+            return FST.invoke(pair);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Object snd(Object pair) {
+        try {
+            return SND.invoke(pair);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String fileName(int i) {
+        return "file" + i + ".txt";
+    }
+
+    //Sizes from 1 KB to 1 MB, each twice as likely as the next bigger one
+    static Map<String,Long> fileSizes(int files) {
+        Map<String,Long> fileSizes = new HashMap<>();
+        for (int f = 0; f < files; f++) {
+            fileSizes.put(fileName(f), 1024L << Math.min(10, Integer.numberOfTrailingZeros(f + 1)));
+        }
+        return fileSizes;
+    }
+
+    //The LIST answers of the Dstores as the Controller collects them, port -> its files, with every file on
+    //replicationFactor consecutive Dstores. A Dstore with no files answers with a single empty name
+    static List<Object> filesInDstores(int files, int dstores, int replicationFactor, int firstPort) {
+        List<List<String>> stored = new ArrayList<>();
+        for (int d = 0; d < dstores; d++) {
+            stored.add(new ArrayList<>());
+        }
+        for (int f = 0; f < files; f++) {
+            for (int r = 0; r < Math.min(replicationFactor, dstores); r++) {
+                stored.get((f + r) % dstores).add(fileName(f));
+            }
+        }
+        List<Object> filesInDstores = new ArrayList<>();
+        for (int d = 0; d < dstores; d++) {
+            if (stored.get(d).isEmpty())
+                stored.get(d).add("");
+            filesInDstores.add(pair(firstPort + d, stored.get(d)));
+        }
+        return filesInDstores;
+    }
+
+    //The planners edit the lists they are given, each invocation works on its own copy
+    @SuppressWarnings("unchecked")
+    static List<Object> copy(List<Object> filesInDstores) {
+        List<Object> copy = new ArrayList<>(filesInDstores.size());
+        for (Object pair : filesInDstores) {
+            copy.add(pair(fst(pair), new ArrayList<>((List<String>) snd(pair))));
+        }
+        return copy;
+    }
+
+    /************************************** END OF FIXTURES *******************************************/
+}
@@ -0,0 +1,89 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Choosing the Dstores of a STORE, which counts the files of every Dstore over the whole allocation, or looks the file
+//up in the consistent hashing ring, and turning the LIST answers of a rebalance into the file allocation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlacementBenchmark {
+
+    private static final int FIRST_PORT = 12346;
+
+    private static final MethodHandle R_EMPTIER_DPORTS = Coursework.method("Controller", "rEmptierDports");
+    private static final MethodHandle REVERT = Coursework.method("RebalancePlanner", "revert", List.class);
+    private static final MethodHandle GET_DSTORE_PORTS = Coursework.method("Controller", "getDstorePorts");
+    private static final MethodHandle GET_FILE_ALLOCATION = Coursework.method("Controller", "getFileAllocation");
+    private static final MethodHandle NEW_RING = Coursework.constructor("ConsistentHashRing", int.class, Collection.class);
+    private static final MethodHandle REPLICAS = Coursework.method("ConsistentHashRing", "replicas", String.class, int.class);
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int files;
+
+    @Param({"3", "10", "50"})
+    public int dstores;
+
+    @Param({"2", "3"})
+    public int replicationFactor;
+
+    private Object controller;
+    private List<Object> filesInDstores;
+    private Object ring;
+    private int nextFile;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        controller = Coursework.controller(replicationFactor);
+        List<Integer> dstorePorts = (List<Integer>) GET_DSTORE_PORTS.invoke(controller);
+        Map<String,List<Integer>> fileAllocation = (Map<String,List<Integer>>) GET_FILE_ALLOCATION.invoke(controller);
+        for (int d = 0; d < dstores; d++) {
+            dstorePorts.add(FIRST_PORT + d);
+        }
+        for (int f = 0; f < files; f++) {
+            List<Integer> ports = new ArrayList<>();
+            for (int r = 0; r < Math.min(replicationFactor, dstores); r++) {
+                ports.add(FIRST_PORT + (f + r) % dstores);
+            }
+            fileAllocation.put(Coursework.fileName(f), ports);
+        }
+        filesInDstores = Coursework.filesInDstores(files, dstores, replicationFactor, FIRST_PORT);
+        ring = NEW_RING.invoke(128, dstorePorts);
+    }
+
+    @Benchmark
+    public Object rEmptierDports() throws Throwable {
+        return R_EMPTIER_DPORTS.invoke(controller);
+    }
+
+    @Benchmark
+    public Object ringReplicas() throws Throwable {
+        nextFile = nextFile + 1 == files ? 0 : nextFile + 1;
+        return REPLICAS.invoke(ring, Coursework.fileName(nextFile), replicationFactor);
+    }
+
+    @Benchmark
+    public Object revert() throws Throwable {
+        return REVERT.invoke(filesInDstores);
+    }
+}
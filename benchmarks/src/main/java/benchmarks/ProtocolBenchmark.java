@@ -0,0 +1,139 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//Reading a message off a connection and recognising its command, as the Controller and Dstore loops do for every
+//message. The mix is the traffic of a store, a load and a remove with their acknowledges
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    private static final String[] MESSAGES = {
+            "STORE file123.txt 1048576 2810809328",
+            "STORE_TO 12346 12347 12348",
+            "STORE_ACK file123.txt 2810809328",
+            "STORE_COMPLETE",
+            "#42 LOAD file123.txt +checksum,epoch",
+            "#42 LOAD_FROM 12347 1048576 2810809328 @1792437449705",
+            "LOAD_DATA file123.txt",
+            "REMOVE file123.txt",
+            "REMOVE_ACK file123.txt",
+            "REMOVE_COMPLETE",
+            "LIST file1.txt file2.txt file3.txt file4.txt file5.txt file6.txt file7.txt file8.txt",
+            "JOIN 12349"
+    };
+    private static final int MESSAGES_PER_INVOCATION = 768;   //a constant for @OperationsPerInvocation, 64 rounds of MESSAGES
+    private static final int REPETITIONS = MESSAGES_PER_INVOCATION / MESSAGES.length;
+
+    private static final MethodHandle NEW_TOKENIZER = Coursework.constructor("CommandTokenizer");
+    private static final MethodHandle READ_TOKENS = Coursework.method("CommandTokenizer", "readTokens", InputStream.class);
+    private static final MethodHandle WRITE_FRAME = Coursework.method("BinaryFrameCodec", "writeFrame", OutputStream.class, String[].class);
+    private static final MethodHandle READ_FRAME = Coursework.method("BinaryFrameCodec", "readFrame", InputStream.class);
+    private static final MethodHandle CONTROLLER_RECOGNISER = Coursework.method("Controller", "commandRecogniser", String[].class);
+    private static final MethodHandle DSTORE_RECOGNISER = Coursework.method("Dstore", "commandRecogniser", String[].class);
+
+    @Param({"text", "binary"})
+    public String format;
+
+    private byte[] stream;
+    private Object tokenizer;
+    private Object controller;
+    private Object dstore;
+    private String[][] splitted;
+
+    @Setup
+    public void setUp() throws Throwable {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < REPETITIONS; i++) {
+            for (String message : MESSAGES) {
+                if (format.equals("binary"))
+                    WRITE_FRAME.invoke((OutputStream) out, message.split(" "));
+                else
+                    out.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        stream = out.toByteArray();
+        tokenizer = NEW_TOKENIZER.invoke();
+        controller = Coursework.controller(2);
+        dstore = Coursework.constructor("Dstore", int.class, int.class, int.class, String.class)
+                .invoke(0, 0, 1000, Files.createTempDirectory("benchmark-dstore").toString());
+
+        splitted = new String[MESSAGES.length][];
+        for (int i = 0; i < MESSAGES.length; i++) {
+            splitted[i] = MESSAGES[i].startsWith("#") ? MESSAGES[i].substring(MESSAGES[i].indexOf(' ') + 1).split(" ") : MESSAGES[i].split(" ");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_INVOCATION)
+    public void readMessages(Blackhole blackhole) throws Throwable {
+        InputStream in = new ByteArrayInputStream(stream);
+        for (int i = 0; i < MESSAGES_PER_INVOCATION; i++) {
+            blackhole.consume(read(in));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_INVOCATION)
+    public void readAndRecogniseMessages(Blackhole blackhole) throws Throwable {
+        InputStream in = new ByteArrayInputStream(stream);
+        for (int i = 0; i < MESSAGES_PER_INVOCATION; i++) {
+            String[] tokens = read(in);
+            String[] splitted = tokens[0].charAt(0) == '#' ? Arrays.copyOfRange(tokens, 1, tokens.length) : tokens;
+            blackhole.consume(CONTROLLER_RECOGNISER.invoke(controller, splitted));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_INVOCATION)
+    public void controllerCommandRecogniser(Blackhole blackhole) throws Throwable {
+        for (int r = 0; r < REPETITIONS; r++) {
+            for (String[] tokens : splitted) {
+                blackhole.consume(CONTROLLER_RECOGNISER.invoke(controller, tokens));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_INVOCATION)
+    public void dstoreCommandRecogniser(Blackhole blackhole) throws Throwable {
+        for (int r = 0; r < REPETITIONS; r++) {
+            for (String[] tokens : splitted) {
+                blackhole.consume(DSTORE_RECOGNISER.invoke(dstore, tokens));
+            }
+        }
+    }
+
+    private String[] read(InputStream in) throws Throwable {
+        String[] tokens = format.equals("binary") ? (String[]) READ_FRAME.invoke(in) : (String[]) READ_TOKENS.invoke(tokenizer, in);
+        if (tokens == null)
+            throw new IOException("The stream ended early");
+        return tokens;
+    }
+}
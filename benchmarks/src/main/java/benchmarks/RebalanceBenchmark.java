@@ -0,0 +1,121 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//The planning of a rebalance once the LIST answers are in, by every planner: the replicas lost with a failed Dstore
+//are copied again, or the files are spread over a Dstore which has just joined. Then the plan is written out as
+//REBALANCE messages. The planners edit the lists they are given, so every invocation gets a fresh copy, which is not
+//measured. The backtracking planner is quadratic in the number of files, bigger trees are run with e.g.
+//-p files=100000 -p planner=greedy. It recurses once per file moved, which overflows the default stack from a few
+//thousand moves
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss1g")
+public class RebalanceBenchmark {
+
+    private static final int FIRST_PORT = 12346;
+
+    private static final MethodHandle CREATE = Coursework.method("RebalancePlanner", "create", String.class, int.class);
+    private static final MethodHandle REVERT = Coursework.method("RebalancePlanner", "revert", List.class);
+    private static final MethodHandle PLAN = Coursework.method("RebalancePlanner", "plan", List.class, List.class, Map.class);
+    private static final MethodHandle REBALANCE_SENTENCE_FORMAT = Coursework.method("Controller", "rebalanceSentenceFormat", Coursework.type("Pair"));
+
+    @Param({"backtracking", "greedy", "size-aware"})
+    public String planner;
+
+    @Param({"1000", "10000"})
+    public int files;
+
+    @Param({"3", "10"})
+    public int dstores;
+
+    @Param({"2", "3"})
+    public int replicationFactor;
+
+    private Object controller;
+    private Object rebalancePlanner;
+    private Map<String,Long> fileSizes;
+
+    //a Dstore has failed: its files are short of a replica on the others
+    private List<Object> afterFailure;
+    private List<Object> fileAllocationAfterFailure;
+
+    //an empty Dstore has joined
+    private List<Object> afterJoin;
+    private List<Object> fileAllocationAfterJoin;
+    private Map<Integer,Object> plan;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        controller = Coursework.controller(replicationFactor);
+        rebalancePlanner = CREATE.invoke(planner, replicationFactor);
+        fileSizes = Coursework.fileSizes(files);
+
+        afterFailure = Coursework.filesInDstores(files, dstores + 1, replicationFactor, FIRST_PORT);
+        afterFailure.remove(afterFailure.size() - 1);
+        fileAllocationAfterFailure = (List<Object>) REVERT.invoke(afterFailure);
+
+        afterJoin = Coursework.filesInDstores(files, dstores, replicationFactor, FIRST_PORT);
+        afterJoin.add(Coursework.pair(FIRST_PORT + dstores, new ArrayList<>(List.of(""))));
+        fileAllocationAfterJoin = (List<Object>) REVERT.invoke(afterJoin);
+        plan = (Map<Integer,Object>) PLAN.invoke(rebalancePlanner, fileAllocationAfterJoin, Coursework.copy(afterJoin), fileSizes);
+    }
+
+    @State(Scope.Thread)
+    public static class Failure {
+        private List<Object> filesInDstores;
+
+        @Setup(Level.Invocation)
+        public void copy(RebalanceBenchmark benchmark) {
+            filesInDstores = Coursework.copy(benchmark.afterFailure);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Join {
+        private List<Object> filesInDstores;
+
+        @Setup(Level.Invocation)
+        public void copy(RebalanceBenchmark benchmark) {
+            filesInDstores = Coursework.copy(benchmark.afterJoin);
+        }
+    }
+
+    @Benchmark
+    public Object planAfterFailure(Failure failure) throws Throwable {
+        return PLAN.invoke(rebalancePlanner, fileAllocationAfterFailure, failure.filesInDstores, fileSizes);
+    }
+
+    @Benchmark
+    public Object planAfterJoin(Join join) throws Throwable {
+        return PLAN.invoke(rebalancePlanner, fileAllocationAfterJoin, join.filesInDstores, fileSizes);
+    }
+
+    @Benchmark
+    public void rebalanceSentenceFormat(Blackhole blackhole) throws Throwable {
+        for (Object sendToRemove : plan.values()) {
+            blackhole.consume(REBALANCE_SENTENCE_FORMAT.invoke(controller, sendToRemove));
+        }
+    }
+}
@@ -0,0 +1,636 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AsyncClient implements Closeable {
+
+    //Operations are multiplexed over a few Controller connections: every command is tagged with a correlation ID and
+    //the replies, which arrive in completion order, are matched back to the operation waiting for them.
+    //At most maxOutstanding operations are in flight, a caller starting one more blocks until another completes
+    public static final int DEFAULT_CONNECTIONS = 2;
+    public static final int DEFAULT_MAX_OUTSTANDING = 256;
+    public static final int MULTIPART_PARALLELISM = 4;
+    public static final int BATCH_PARALLELISM = 8;
+
+    private final int cport;
+    private final int timeout;
+    private final int numberConnections;
+    private final boolean binaryProtocol;
+    private final Semaphore outstanding;
+    private final AtomicLong nextRequestId;
+    private final List<Connection> connections;
+    private final ExecutorService transfers;
+    private final LocationCache locations;
+    private volatile boolean closed;
+
+    public AsyncClient(int cport, int timeout) {
+        this(cport, timeout, DEFAULT_CONNECTIONS, DEFAULT_MAX_OUTSTANDING, false);
+    }
+
+    public AsyncClient(int cport, int timeout, int numberConnections, int maxOutstanding, boolean binaryProtocol) {
+        this.cport = cport;
+        this.timeout = timeout;
+        this.numberConnections = numberConnections;
+        this.binaryProtocol = binaryProtocol;
+        this.outstanding = new Semaphore(maxOutstanding);
+        this.nextRequestId = new AtomicLong();
+        this.connections = new ArrayList<>();
+        this.locations = new LocationCache();
+        //Dstore transfers block on sockets, the semaphore already bounds how many of them can run at once
+        this.transfers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*********************************** BEGINNING OF CONNECTIONS *******************************************/
+
+    public void connect() throws IOException {
+        for (int i = 0; i < numberConnections; i++) {
+            connections.add(new Connection(open(cport)));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Connection connection : connections) {
+            connection.channel.getSocket().close();
+        }
+        transfers.shutdown();
+    }
+
+    private static void closeQuietly(MessageChannel channel) {
+        try {
+            channel.getSocket().close();
+        } catch (IOException e) {
+            //the transfer is over either way
+        }
+    }
+
+    private MessageChannel open(int port) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setSoTimeout(timeout);
+        MessageChannel channel = new MessageChannel(socket);
+        if (binaryProtocol)
+            channel.startBinary();
+        return channel;
+    }
+
+    //One Controller connection and the operations waiting for a reply on it
+    private class Connection {
+
+        private final MessageChannel channel;
+        private final Map<String,CompletableFuture<String[]>> pending;
+
+        private Connection(MessageChannel channel) throws IOException {
+            this.channel = channel;
+            this.pending = new ConcurrentHashMap<>();
+            //replies may take as long as the Dstores do, only the operations waiting for them time out
+            channel.getSocket().setSoTimeout(0);
+            Thread reader = new Thread(this::readReplies);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private CompletableFuture<String[]> request(String requestId, String... tokens) {
+            return request(requestId, timeout, tokens);
+        }
+
+        private CompletableFuture<String[]> request(String requestId, long timeout, String... tokens) {
+            return request(null, requestId, timeout, tokens);
+        }
+
+        //A traced request carries the context of the span in front of its correlation ID
+        private CompletableFuture<String[]> request(Tracing.Span span, String requestId, String... tokens) {
+            return request(span, requestId, timeout, tokens);
+        }
+
+        private CompletableFuture<String[]> request(Tracing.Span span, String requestId, long timeout, String... tokens) {
+            CompletableFuture<String[]> reply = expect(requestId, timeout);
+            String[] message = new String[tokens.length + 1];
+            message[0] = requestId;
+            System.arraycopy(tokens, 0, message, 1, tokens.length);
+            channel.send(Tracing.withContext(span, message));
+            if (channel.checkError())
+                fail(requestId, new IOException("The connection to the Controller has been lost"));
+            return reply;
+        }
+
+        //Some commands have a second reply, e.g. STORE_COMPLETE after STORE_TO, it must be expected before
+        //anything which can trigger it is done
+        private CompletableFuture<String[]> expect(String requestId) {
+            return expect(requestId, timeout);
+        }
+
+        //0 waits for as long as the connection is up
+        private CompletableFuture<String[]> expect(String requestId, long timeout) {
+            CompletableFuture<String[]> reply = new CompletableFuture<>();
+            pending.put(requestId, reply);
+            if (timeout > 0)
+                reply.orTimeout(timeout, TimeUnit.MILLISECONDS);
+            return reply.whenComplete((tokens, e) -> pending.remove(requestId, reply));
+        }
+
+        private void fail(String requestId, Throwable e) {
+            CompletableFuture<String[]> reply = pending.remove(requestId);
+            if (reply != null)
+                reply.completeExceptionally(e);
+        }
+
+        private void readReplies() {
+            try {
+                String[] splitted;
+                while ((splitted = channel.read()) != null) {
+                    CompletableFuture<String[]> reply = splitted.length > 1 ? pending.remove(splitted[0]) : null;
+                    if (reply != null)
+                        reply.complete(Arrays.copyOfRange(splitted, 1, splitted.length));
+                    else
+                        System.out.println("ERROR => a reply for no pending request has been received: " + String.join(" ", splitted));
+                }
+            } catch (IOException e) {
+                if (!closed)
+                    System.out.println("ERROR => the connection to the Controller has been lost: " + e.getMessage());
+            }
+            for (String requestId : new ArrayList<>(pending.keySet())) {
+                fail(requestId, new IOException("The connection to the Controller has been lost"));
+            }
+        }
+    }
+
+    /************************************** END OF CONNECTIONS *******************************************/
+
+
+    /*********************************** BEGINNING OF OPERATIONS *******************************************/
+
+    public CompletableFuture<List<String>> list() {
+        return submit((connection, requestId) -> connection.request(requestId, Protocol.LIST_TOKEN)
+                .thenApply(reply -> {
+                    expectNoError(reply, null);
+                    expectCommand(reply, Protocol.LIST_TOKEN);
+                    return Arrays.asList(reply).subList(1, reply.length);
+                }));
+    }
+
+    public CompletableFuture<Void> store(String fileName, byte[] data) {
+        Tracing.Span span = startTrace(Protocol.STORE_TOKEN, fileName);
+        return finishTrace(span, submit((connection, requestId) -> storeOn(connection, requestId, fileName, data, span)));
+    }
+
+    //The missing parts are read from the file and stored MULTIPART_PARALLELISM at a time, each one is an ordinary
+    //store with its own timeout. Calling it again after a failure resumes the upload
+    public CompletableFuture<Void> storeMultipart(String fileName, Path file, long partSize) {
+        return submit((connection, requestId) -> {
+            long fileSize;
+            try {
+                fileSize = Files.size(file);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            if (partSize <= 0 || Multipart.numberParts(fileSize, partSize) > Multipart.MAX_PARTS)
+                return CompletableFuture.failedFuture(new IOException(String.format("Parts of %d bytes would split %s into more than %d parts", partSize, file, Multipart.MAX_PARTS)));
+            return connection.request(requestId, Protocol.STORE_MULTIPART_TOKEN, fileName, String.valueOf(fileSize), String.valueOf(partSize))
+                    .thenComposeAsync(reply -> {
+                        expectNoError(reply, fileName);
+                        expectCommand(reply, Protocol.MULTIPART_PARTS_TOKEN);
+                        List<CompletableFuture<Void>> lanes = new ArrayList<>();
+                        for (int lane = 0; lane < MULTIPART_PARALLELISM; lane++) {
+                            CompletableFuture<Void> parts = CompletableFuture.completedFuture(null);
+                            for (int i = 1 + lane; i < reply.length; i += MULTIPART_PARALLELISM) {
+                                int index = Integer.parseInt(reply[i]);
+                                parts = parts.thenCompose(done -> storeOn(connection, newRequestId(), Multipart.partName(fileName, index),
+                                        readPart(file, index * partSize, (int) Math.min(partSize, fileSize - index * partSize)), null));
+                            }
+                            lanes.add(parts);
+                        }
+                        return CompletableFuture.allOf(lanes.toArray(new CompletableFuture<?>[0]));
+                    }, transfers)
+                    .thenCompose(done -> connection.request(newRequestId(), Protocol.STORE_COMMIT_TOKEN, fileName))
+                    .thenAccept(reply -> {
+                        if (reply[0].equals(Protocol.MULTIPART_PARTS_TOKEN))
+                            throw new CompletionException(new IOException(String.format("The upload of %s is missing parts %s",
+                                    fileName, Arrays.asList(reply).subList(1, reply.length))));
+                        expectNoError(reply, fileName);
+                        expectCommand(reply, Protocol.STORE_COMPLETE_TOKEN);
+                    });
+        });
+    }
+
+    private CompletableFuture<Void> storeOn(Connection connection, String requestId, String fileName, byte[] data, Tracing.Span span) {
+        long checksum = DstoreCatalog.checksum(data);
+        String digest = DstoreStorage.digest(data);
+        return connection.request(span, requestId, Protocol.STORE_TOKEN, fileName, String.valueOf(data.length), String.valueOf(checksum))
+                .thenCompose(reply -> {
+                    expectNoError(reply, fileName);
+                    expectCommand(reply, Protocol.STORE_TO_TOKEN);
+                    CompletableFuture<String[]> complete = connection.expect(requestId);
+                    List<CompletableFuture<Void>> stores = new ArrayList<>();
+                    for (int i = 1; i < reply.length; i++) {
+                        int port = Integer.parseInt(reply[i]);
+                        stores.add(CompletableFuture.runAsync(() -> storeToDstore(port, fileName, data, checksum, digest, span), transfers));
+                    }
+                    return CompletableFuture.allOf(stores.toArray(new CompletableFuture<?>[0])).thenCompose(done -> complete);
+                })
+                .thenAccept(reply -> expectCommand(reply, Protocol.STORE_COMPLETE_TOKEN));
+    }
+
+    private static byte[] readPart(Path file, long position, int length) {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (fileChannel.read(buffer, position + buffer.position()) == -1)
+                    throw new EOFException(String.format("%s has been truncated during the upload", file));
+            }
+            return buffer.array();
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    //A location leased from an earlier LOAD_FROM is read without asking the Controller, which is only asked if the
+    //Dstore cannot serve the file any more
+    public CompletableFuture<byte[]> load(String fileName) {
+        Tracing.Span span = startTrace(Protocol.LOAD_TOKEN, fileName);
+        return finishTrace(span, submit((connection, requestId) -> {
+            LocationCache.Location location = locations.get(fileName);
+            if (location == null || location.fileSize > Integer.MAX_VALUE)
+                return loadThroughController(connection, requestId, fileName, span);
+            return CompletableFuture.supplyAsync(() -> loadFromDstore(location.port, fileName, (int) location.fileSize, location.checksum, span), transfers)
+                    .thenCompose(data -> {
+                        if (data != null)
+                            return CompletableFuture.completedFuture(data);
+                        locations.invalidate(fileName);
+                        return loadThroughController(connection, requestId, fileName, span);
+                    });
+        }));
+    }
+
+    private CompletableFuture<byte[]> loadThroughController(Connection connection, String requestId, String fileName, Tracing.Span span) {
+        return connection.request(span, requestId, Protocol.LOAD_TOKEN, fileName, loadCapabilities())
+                .thenCompose(reply -> loadFrom(connection, fileName, reply, span));
+    }
+
+    public CompletableFuture<Void> remove(String fileName) {
+        locations.invalidate(fileName);
+        Tracing.Span span = startTrace(Protocol.REMOVE_TOKEN, fileName);
+        return finishTrace(span, submit((connection, requestId) -> connection.request(span, requestId, Protocol.REMOVE_TOKEN, fileName)
+                .thenAccept(reply -> {
+                    expectNoError(reply, fileName);
+                    expectCommand(reply, Protocol.REMOVE_COMPLETE_TOKEN);
+                })));
+    }
+
+    //One STORE_BATCH for all the files, which are then stored on the Dstores BATCH_PARALLELISM at a time.
+    //Completes with the files which have not been stored, because they already exist or their store has failed
+    public CompletableFuture<List<String>> storeBatch(Map<String,byte[]> files) {
+        return submit((connection, requestId) -> {
+            List<String> message = new ArrayList<>(List.of(Protocol.STORE_BATCH_TOKEN));
+            Map<String,Long> checksums = new HashMap<>();
+            for (var file : files.entrySet()) {
+                long checksum = DstoreCatalog.checksum(file.getValue());
+                checksums.put(file.getKey(), checksum);
+                message.addAll(List.of(file.getKey(), String.valueOf(file.getValue().length), String.valueOf(checksum)));
+            }
+            return connection.request(requestId, message.toArray(new String[0]))
+                    .thenCompose(reply -> {
+                        expectNoError(reply, null);
+                        expectCommand(reply, Protocol.STORE_TO_BATCH_TOKEN);
+                        //the Controller only gives up on the batch once it has stopped making progress
+                        CompletableFuture<String[]> complete = connection.expect(requestId, 0);
+                        int replicas = Integer.parseInt(reply[1]);
+                        List<Runnable> stores = new ArrayList<>();
+                        for (int i = 2; i + replicas < reply.length; i += replicas + 1) {
+                            String fileName = reply[i];
+                            byte[] data = files.get(fileName);
+                            String digest = DstoreStorage.digest(data);
+                            for (int j = 1; j <= replicas; j++) {
+                                int port = Integer.parseInt(reply[i + j]);
+                                stores.add(() -> storeToDstore(port, fileName, data, checksums.get(fileName), digest, null));
+                            }
+                        }
+                        return inLanes(stores).thenCompose(done -> complete);
+                    })
+                    .thenApply(reply -> {
+                        expectCommand(reply, Protocol.BATCH_COMPLETE_TOKEN);
+                        return Arrays.asList(reply).subList(1, reply.length);
+                    });
+        });
+    }
+
+    //One LOAD_BATCH for all the files, which are then loaded from the Dstores BATCH_PARALLELISM at a time.
+    //The files which do not exist or cannot be loaded are left out of the result
+    public CompletableFuture<Map<String,byte[]>> loadBatch(Collection<String> fileNames) {
+        return submit((connection, requestId) -> {
+            List<String> message = new ArrayList<>(List.of(Protocol.LOAD_BATCH_TOKEN));
+            message.addAll(fileNames);
+            message.add(loadCapabilities());
+            return connection.request(requestId, message.toArray(new String[0]))
+                    .thenCompose(reply -> {
+                        expectNoError(reply, null);
+                        expectCommand(reply, Protocol.LOAD_FROM_BATCH_TOKEN);
+                        Long epoch = LocationCache.epoch(reply);
+                        String[] tokens = LocationCache.withoutEpoch(reply);
+                        Map<String,byte[]> loaded = new ConcurrentHashMap<>();
+                        List<CompletableFuture<Void>> fallbacks = Collections.synchronizedList(new ArrayList<>());
+                        List<Runnable> loads = new ArrayList<>();
+                        for (int i = 1; i + 3 < tokens.length; i += 4) {
+                            String fileName = tokens[i];
+                            int port = Integer.parseInt(tokens[i + 1]);
+                            int fileSize = Integer.parseInt(tokens[i + 2]);
+                            Long checksum = tokens[i + 3].equals(Protocol.NO_CHECKSUM) ? null : Long.parseLong(tokens[i + 3]);
+                            if (port == -1) {
+                                //erasure coded, multipart or missing: LOAD tells which
+                                fallbacks.add(loadThroughController(connection, newRequestId(), fileName, null)
+                                        .thenAccept(data -> loaded.put(fileName, data))
+                                        .exceptionally(e -> null));
+                                continue;
+                            }
+                            loads.add(() -> {
+                                byte[] data = loadFromDstore(port, fileName, fileSize, checksum, null);
+                                if (data != null) {
+                                    loaded.put(fileName, data);
+                                    if (epoch != null)
+                                        locations.put(fileName, port, fileSize, checksum, epoch);
+                                } else {
+                                    //the other replicas are tried as after LOAD
+                                    fallbacks.add(connection.request(newRequestId(), Protocol.RELOAD_TOKEN, fileName, loadCapabilities())
+                                            .thenCompose(next -> loadFrom(connection, fileName, next, null))
+                                            .thenAccept(retried -> loaded.put(fileName, retried))
+                                            .exceptionally(e -> null));
+                                }
+                            });
+                        }
+                        //every fallback has been started once the lanes are done
+                        return inLanes(loads)
+                                .thenCompose(done -> CompletableFuture.allOf(fallbacks.toArray(new CompletableFuture<?>[0])))
+                                .thenApply(done -> loaded);
+                    });
+        });
+    }
+
+    //One REMOVE_BATCH for all the files. Completes with the files which have not been removed
+    public CompletableFuture<List<String>> removeBatch(Collection<String> fileNames) {
+        fileNames.forEach(locations::invalidate);
+        return submit((connection, requestId) -> {
+            List<String> message = new ArrayList<>(List.of(Protocol.REMOVE_BATCH_TOKEN));
+            message.addAll(fileNames);
+            //the Controller only gives up on the batch once it has stopped making progress
+            return connection.request(requestId, 0, message.toArray(new String[0]))
+                    .thenApply(reply -> {
+                        expectNoError(reply, null);
+                        expectCommand(reply, Protocol.BATCH_COMPLETE_TOKEN);
+                        return Arrays.asList(reply).subList(1, reply.length);
+                    });
+        });
+    }
+
+    //Runs the tasks BATCH_PARALLELISM at a time on the transfer threads, a failed task does not stop its lane
+    private CompletableFuture<Void> inLanes(List<Runnable> tasks) {
+        List<CompletableFuture<Void>> lanes = new ArrayList<>();
+        for (int lane = 0; lane < BATCH_PARALLELISM; lane++) {
+            CompletableFuture<Void> tasksOfLane = CompletableFuture.completedFuture(null);
+            for (int i = lane; i < tasks.size(); i += BATCH_PARALLELISM) {
+                Runnable task = tasks.get(i);
+                tasksOfLane = tasksOfLane.thenRunAsync(task, transfers).exceptionally(e -> null);
+            }
+            lanes.add(tasksOfLane);
+        }
+        return CompletableFuture.allOf(lanes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    //Waits for a free slot, then runs the operation on the next connection under a new correlation ID
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        if (closed || connections.isEmpty())
+            return CompletableFuture.failedFuture(new IOException("The client is not connected"));
+        try {
+            outstanding.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long id = nextRequestId.incrementAndGet();
+        Connection connection = connections.get((int) (id % connections.size()));
+        CompletableFuture<T> result;
+        try {
+            result = operation.run(connection, Protocol.REQUEST_ID_PREFIX + id);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return result.whenComplete((value, e) -> outstanding.release());
+    }
+
+    //For the further commands of an operation, which stay on the connection of its first one
+    private String newRequestId() {
+        return Protocol.REQUEST_ID_PREFIX + nextRequestId.incrementAndGet();
+    }
+
+    private interface Operation<T> {
+        CompletableFuture<T> run(Connection connection, String requestId);
+    }
+
+    //The root span of an operation, null when tracing is disabled
+    private static Tracing.Span startTrace(String command, String fileName) {
+        Tracing.Span span = Tracing.startRoot(command);
+        return span == null ? null : span.tag("file", fileName);
+    }
+
+    private static <T> CompletableFuture<T> finishTrace(Tracing.Span span, CompletableFuture<T> operation) {
+        if (span == null)
+            return operation;
+        return operation.whenComplete((value, e) -> {
+            if (e != null)
+                span.tag("error", e.getMessage());
+            Tracing.finish(span);
+        });
+    }
+
+    /************************************** END OF OPERATIONS *******************************************/
+
+
+    /*********************************** BEGINNING OF DSTORE TRANSFERS *******************************************/
+
+    private void storeToDstore(int port, String fileName, byte[] data, long checksum, String digest, Tracing.Span parent) {
+        MessageChannel channel;
+        try {
+            channel = open(port);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        Tracing.Span span = Tracing.startChild("STORE_DATA", parent);
+        if (span != null)
+            span.tag("to", port);
+        try {
+            channel.send(Tracing.withContext(span, Protocol.STORE_TOKEN, fileName, String.valueOf(data.length), String.valueOf(checksum), digest));
+            String[] answer = channel.read();
+            if (answer != null && answer[0].equals(Protocol.DEDUP_ACK_TOKEN))
+                return;
+            if (answer == null || !answer[0].equals(Protocol.ACK_TOKEN))
+                throw new IOException(String.format("The Dstore %s has not acknowledged the store of %s", port, fileName));
+            channel.getOutputStream().write(data);
+            channel.getOutputStream().flush();
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            closeQuietly(channel);
+            Tracing.finish(span);
+        }
+    }
+
+    //LOAD_FROM port filesize [checksum] [@epoch] or LOAD_FROM_EC k m filesize port1 ... portk+m [checksum]. A replica which
+    //cannot be read, or whose bytes do not match the checksum, is skipped with RELOAD until the Controller gives up
+    private CompletableFuture<byte[]> loadFrom(Connection connection, String fileName, String[] reply, Tracing.Span span) {
+        expectNoError(reply, fileName);
+        if (reply[0].equals(Protocol.ERROR_LOAD_TOKEN))
+            return CompletableFuture.failedFuture(new IOException(String.format("No Dstore could serve the file %s", fileName)));
+
+        if (reply[0].equals(Protocol.LOAD_FROM_EC_TOKEN))
+            return CompletableFuture.supplyAsync(() -> loadErasureCoded(fileName, reply), transfers);
+
+        if (reply[0].equals(Protocol.LOAD_FROM_PARTS_TOKEN))
+            return loadParts(connection, fileName, reply);
+
+        expectCommand(reply, Protocol.LOAD_FROM_TOKEN);
+        Long epoch = LocationCache.epoch(reply);
+        String[] tokens = LocationCache.withoutEpoch(reply);
+        int port = Integer.parseInt(tokens[1]);
+        int fileSize = Integer.parseInt(tokens[2]);
+        Long checksum = tokens.length > 3 ? Long.parseLong(tokens[3]) : null;
+
+        return CompletableFuture.supplyAsync(() -> loadFromDstore(port, fileName, fileSize, checksum, span), transfers)
+                .thenCompose(data -> {
+                    if (data != null) {
+                        if (epoch != null)
+                            locations.put(fileName, port, fileSize, checksum, epoch);
+                        return CompletableFuture.completedFuture(data);
+                    }
+                    return connection.request(span, newRequestId(), Protocol.RELOAD_TOKEN, fileName, loadCapabilities())
+                            .thenCompose(next -> loadFrom(connection, fileName, next, span));
+                });
+    }
+
+    //The optional LOAD_FROM fields this client reads, asked for at the end of LOAD, RELOAD and LOAD_BATCH. The epoch
+    //is only of use while locations are leased
+    private String loadCapabilities() {
+        String capabilities = Protocol.CAPABILITIES_PREFIX + Protocol.CHECKSUM_CAPABILITY;
+        return locations.getLease() > 0 ? capabilities + "," + Protocol.EPOCH_CAPABILITY : capabilities;
+    }
+
+    //null when this replica could not be used
+    private byte[] loadFromDstore(int port, String fileName, int fileSize, Long checksum, Tracing.Span parent) {
+        MessageChannel channel;
+        try {
+            channel = open(port);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        Tracing.Span span = Tracing.startChild(Protocol.LOAD_DATA_TOKEN, parent);
+        if (span != null)
+            span.tag("from", port);
+        try {
+            channel.send(Tracing.withContext(span, Protocol.LOAD_DATA_TOKEN, fileName));
+            byte[] data = channel.getInputStream().readNBytes(fileSize);
+            if (data.length != fileSize || (checksum != null && checksum != DstoreCatalog.checksum(data))) {
+                if (span != null)
+                    span.tag("error", "unusable replica");
+                return null;
+            }
+            return data;
+        } catch (IOException e) {
+            if (span != null)
+                span.tag("error", e.getMessage());
+            return null;
+        } finally {
+            closeQuietly(channel);
+            Tracing.finish(span);
+        }
+    }
+
+    //LOAD_FROM_PARTS numberParts partsize filesize [checksum], all the parts are loaded in parallel
+    private CompletableFuture<byte[]> loadParts(Connection connection, String fileName, String[] reply) {
+        int numberParts = Integer.parseInt(reply[1]);
+        long fileSize = Long.parseLong(reply[3]);
+        Long checksum = reply.length > 4 ? Long.parseLong(reply[4]) : null;
+        if (fileSize > Integer.MAX_VALUE - 8)
+            return CompletableFuture.failedFuture(new IOException(String.format("The file %s is too big to be loaded in memory", fileName)));
+
+        List<CompletableFuture<byte[]>> parts = new ArrayList<>();
+        for (int i = 0; i < numberParts; i++) {
+            String partName = Multipart.partName(fileName, i);
+            parts.add(connection.request(newRequestId(), Protocol.LOAD_TOKEN, partName, loadCapabilities())
+                    .thenCompose(partReply -> loadFrom(connection, partName, partReply, null)));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            byte[] data = new byte[(int) fileSize];
+            int offset = 0;
+            for (CompletableFuture<byte[]> part : parts) {
+                byte[] bytes = part.join();
+                if (offset + bytes.length > data.length)
+                    throw new CompletionException(new IOException(String.format("The parts of %s are bigger than the file", fileName)));
+                System.arraycopy(bytes, 0, data, offset, bytes.length);
+                offset += bytes.length;
+            }
+            if (offset != data.length || (checksum != null && checksum != DstoreCatalog.checksum(data)))
+                throw new CompletionException(new IOException(String.format("The parts of %s do not match its checksum", fileName)));
+            return data;
+        });
+    }
+
+    private byte[] loadErasureCoded(String fileName, String[] reply) {
+        try {
+            int dataShards = Integer.parseInt(reply[1]);
+            int parityShards = Integer.parseInt(reply[2]);
+            long fileSize = Long.parseLong(reply[3]);
+            int[] ports = new int[dataShards + parityShards];
+            for (int i = 0; i < ports.length; i++) {
+                ports[i] = Integer.parseInt(reply[4 + i]);
+            }
+            Long checksum = reply.length > 4 + ports.length ? Long.parseLong(reply[4 + ports.length]) : null;
+
+            byte[] data = ErasureCoding.loadFragments(fileName, dataShards, parityShards, fileSize, ports, timeout);
+            if (checksum != null && checksum != DstoreCatalog.checksum(data))
+                throw new IOException(String.format("The file %s rebuilt from its fragments does not match its checksum", fileName));
+            return data;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /************************************** END OF DSTORE TRANSFERS *******************************************/
+
+
+    /*********************************** BEGINNING OF REPLY CHECKS *******************************************/
+
+    private static void expectNoError(String[] reply, String fileName) {
+        switch (reply[0]) {
+            case Protocol.ERROR_NOT_ENOUGH_DSTORES_TOKEN:
+                throw new CompletionException(new NotEnoughDstoresException());
+            case Protocol.ERROR_FILE_ALREADY_EXISTS_TOKEN:
+                throw new CompletionException(new FileAlreadyExistsException(fileName));
+            case Protocol.ERROR_FILE_DOES_NOT_EXIST_TOKEN:
+                throw new CompletionException(new FileDoesNotExistException(fileName));
+        }
+    }
+
+    private static void expectCommand(String[] reply, String command) {
+        if (!reply[0].equals(command))
+            throw new CompletionException(new IOException(String.format("Expected %s but received %s", command, String.join(" ", reply))));
+    }
+
+    /************************************** END OF REPLY CHECKS *******************************************/
+
+    public LocationCache getLocationCache() {
+        return locations;
+    }
+}
@@ -0,0 +1,123 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class AsyncClientTest {
+
+    private static final int NUMBER_DSTORES = 3;
+    private static final int TIMEOUT = 2000;
+
+    private int controllerPort;
+    private final List<File> folders = new ArrayList<>();
+    private AsyncClient client;
+
+    @BeforeAll
+    void startCluster() throws IOException, InterruptedException {
+        controllerPort = freePort();
+        Controller controller = new Controller(controllerPort, 2, TIMEOUT, 300000000);
+        controller.setCanRebalance(false);
+        controller.start();
+        Thread.sleep(1000);
+
+        for (int i = 0; i < NUMBER_DSTORES; i++) {
+            File folder = Files.createTempDirectory("dstore").toFile();
+            folders.add(folder);
+            Dstore dstore = new Dstore(freePort(), controllerPort, TIMEOUT, folder.getPath());
+            Thread thread = new Thread(dstore::start);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Thread.sleep(2000);
+        Assertions.assertEquals(NUMBER_DSTORES, controller.getDstorePorts().size());
+
+        //a single connection, so that every operation below is pipelined on it
+        client = new AsyncClient(controllerPort, TIMEOUT, 1, AsyncClient.DEFAULT_MAX_OUTSTANDING, false);
+        client.connect();
+    }
+
+    @AfterAll
+    void stopClient() throws IOException {
+        client.close();
+        for (File folder : folders) {
+            deleteDir(folder);
+        }
+    }
+
+    /*********************************BEGINNING OF TESTS FOR OPERATIONS****************************/
+
+    @Test
+    void testStoreLoadAndRemove() {
+        byte[] data = "content of single.txt".getBytes(StandardCharsets.UTF_8);
+        client.store("single.txt", data).join();
+        Assertions.assertTrue(client.list().join().contains("single.txt"));
+        Assertions.assertArrayEquals(data, client.load("single.txt").join());
+
+        client.remove("single.txt").join();
+        Assertions.assertFalse(client.list().join().contains("single.txt"));
+        Assertions.assertInstanceOf(FileDoesNotExistException.class, failure(client.load("single.txt")));
+    }
+
+    @Test
+    void testStoreOfExistingFileFails() {
+        client.store("existing.txt", "first".getBytes(StandardCharsets.UTF_8)).join();
+        Assertions.assertInstanceOf(FileAlreadyExistsException.class, failure(client.store("existing.txt", "second".getBytes(StandardCharsets.UTF_8))));
+        Assertions.assertArrayEquals("first".getBytes(StandardCharsets.UTF_8), client.load("existing.txt").join());
+    }
+
+    //the replies arrive in completion order, each future must still complete with the outcome of its own operation
+    @Test
+    void testPipelinedOperationsCompleteWithTheirOwnReplies() {
+        Map<String,byte[]> files = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            files.put("pipelined" + i + ".txt", ("content of pipelined file " + i).repeat(i + 1).getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<CompletableFuture<Void>> stores = new ArrayList<>();
+        for (var file : files.entrySet()) {
+            stores.add(client.store(file.getKey(), file.getValue()));
+        }
+        CompletableFuture.allOf(stores.toArray(new CompletableFuture<?>[0])).orTimeout(30, TimeUnit.SECONDS).join();
+
+        Map<String,CompletableFuture<byte[]>> loads = new LinkedHashMap<>();
+        for (String fileName : files.keySet()) {
+            loads.put(fileName, client.load(fileName));
+        }
+        for (var load : loads.entrySet()) {
+            Assertions.assertArrayEquals(files.get(load.getKey()), load.getValue().orTimeout(30, TimeUnit.SECONDS).join());
+        }
+    }
+
+    /************************************END OF TESTS FOR OPERATIONS********************************/
+
+
+    private Throwable failure(CompletableFuture<?> future) {
+        CompletionException e = Assertions.assertThrows(CompletionException.class, () -> future.orTimeout(10, TimeUnit.SECONDS).join());
+        return e.getCause();
+    }
+
+    private int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+}
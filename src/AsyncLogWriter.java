@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+public class AsyncLogWriter {
+
+    //Bounded ring of log lines filled by any number of threads and drained by a single writer thread, which hands
+    //them to the sink in batches so the file and the terminal are written and flushed once per batch.
+    //Offering a line never blocks and gives up after a few attempts: when the ring is full or too contended the line
+    //is dropped, and the number of dropped lines is logged by the writer instead
+    public static final int DEFAULT_CAPACITY = 8192;
+    private static final int MAX_ATTEMPTS = 16;
+    private static final int MAX_BATCH = 512;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final AtomicReferenceArray<String> slots;
+    private final int mask;
+    private final AtomicLong tail;  //next sequence a producer claims
+    private final AtomicLong head;  //next sequence the writer takes, only the writer moves it
+    private final AtomicLong dropped;
+    private final Consumer<List<String>> sink;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public AsyncLogWriter(String name, Consumer<List<String>> sink) {
+        this(name, sink, DEFAULT_CAPACITY);
+    }
+
+    //The capacity is rounded up to a power of two
+    public AsyncLogWriter(String name, Consumer<List<String>> sink, int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.head = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.sink = sink;
+        this.writer = new Thread(this::writeLines, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /*********************************** BEGINNING OF PRODUCING *******************************************/
+
+    public boolean offer(String line) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && !closed; attempt++) {
+            long sequence = tail.get();
+            if (sequence - head.get() > mask)
+                break;
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                slots.set((int) (sequence & mask), line);
+                return true;
+            }
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    //The lines already offered are still written, waiting at most the given time for them
+    public void close(long waitMillis) {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(waitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /************************************** END OF PRODUCING *******************************************/
+
+
+    /*********************************** BEGINNING OF WRITING *******************************************/
+
+    private void writeLines() {
+        List<String> batch = new ArrayList<>(MAX_BATCH);
+        long reportedDrops = 0;
+        while (true) {
+            boolean closing = closed;
+            drain(batch);
+
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                batch.add(String.format("[logger] %s lines dropped", drops - reportedDrops));
+                reportedDrops = drops;
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    sink.accept(batch);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                batch.clear();
+            } else if (closing && head.get() == tail.get()) {
+                return;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    //A claimed slot whose line is not there yet ends the batch, the line is taken by the next one
+    private void drain(List<String> batch) {
+        long sequence = head.get();
+        while (batch.size() < MAX_BATCH) {
+            int index = (int) (sequence & mask);
+            String line = slots.get(index);
+            if (line == null)
+                break;
+            slots.set(index, null);
+            batch.add(line);
+            sequence++;
+            head.set(sequence);
+        }
+    }
+
+    /************************************** END OF WRITING *******************************************/
+}
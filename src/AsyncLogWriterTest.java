@@ -0,0 +1,162 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class AsyncLogWriterTest {
+
+    /*********************************BEGINNING OF TESTS FOR ASYNCHRONOUS WRITING****************************/
+
+    @Test
+    void testCloseFlushesEveryOfferedLine() {
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        AsyncLogWriter writer = new AsyncLogWriter("writer-test", written::addAll);
+        List<String> offered = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            offered.add("line " + i);
+            Assertions.assertTrue(writer.offer("line " + i));
+        }
+        writer.close(5000);
+
+        Assertions.assertEquals(offered, written);
+        Assertions.assertFalse(writer.offer("after closing"));
+    }
+
+    //the lines of every producer are written in the order it offered them
+    @Test
+    void testConcurrentProducersKeepTheirOrder() throws InterruptedException {
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        AsyncLogWriter writer = new AsyncLogWriter("writer-test", written::addAll, 1 << 16);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            int producer = p;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    writer.offer(producer + " " + i);
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        writer.close(5000);
+
+        Assertions.assertEquals(4000 - writer.dropped(), written.size());
+        int[] last = {-1, -1, -1, -1};
+        for (String line : written) {
+            String[] splitted = line.split(" ");
+            int producer = Integer.parseInt(splitted[0]);
+            int i = Integer.parseInt(splitted[1]);
+            Assertions.assertTrue(i > last[producer]);
+            last[producer] = i;
+        }
+    }
+
+    @Test
+    void testFullRingDropsLinesAndReportsThem() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        AsyncLogWriter writer = new AsyncLogWriter("writer-test", lines -> {
+            written.addAll(lines);
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 4);
+
+        writer.offer("first");
+        Assertions.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        //the writer is stuck in the sink, the ring of 4 slots fills up
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (writer.offer("line " + i))
+                accepted++;
+        }
+        Assertions.assertEquals(4, accepted);
+        Assertions.assertEquals(6, writer.dropped());
+
+        release.countDown();
+        writer.close(5000);
+        Assertions.assertEquals(List.of("first", "line 0", "line 1", "line 2", "line 3", "[logger] 6 lines dropped"), written);
+    }
+
+    /************************************END OF TESTS FOR ASYNCHRONOUS WRITING********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR SAMPLING AND TRUNCATION****************************/
+
+    @Test
+    void testSampling() {
+        Loggert logger = terminalLogger();
+        logger.setSampling(Loggert.Level.EVENT, 3);
+        List<String> lines = captureTerminal(() -> {
+            for (int i = 0; i < 9; i++) {
+                logger.log("event " + i);
+            }
+        });
+        Assertions.assertEquals(List.of("event 0", "event 3", "event 6"), lines);
+    }
+
+    @Test
+    void testTruncation() {
+        Loggert logger = terminalLogger();
+        logger.setMaxMessageLength(5);
+        List<String> lines = captureTerminal(() -> {
+            logger.log("0123456789");
+            logger.log("01234");
+        });
+        Assertions.assertEquals(List.of("01234... (5 more characters)", "01234"), lines);
+    }
+
+    @Test
+    void testAsynchronousLoggerWritesEveryLine() {
+        Loggert logger = terminalLogger();
+        List<String> lines = captureTerminal(() -> {
+            logger.setAsynchronous(true);
+            for (int i = 0; i < 100; i++) {
+                logger.log("event " + i);
+            }
+            //switching back waits for the background writer to flush
+            logger.setAsynchronous(false);
+        });
+        Assertions.assertEquals(100, lines.size());
+        Assertions.assertEquals("event 99", lines.get(99));
+    }
+
+    /************************************END OF TESTS FOR SAMPLING AND TRUNCATION********************************/
+
+
+    private Loggert terminalLogger() {
+        return new Loggert(Loggert.LoggingType.ON_TERMINAL_ONLY) {
+            @Override
+            protected String getLogFileSuffix() {
+                return "test";
+            }
+        };
+    }
+
+    private List<String> captureTerminal(Runnable action) {
+        PrintStream terminal = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            action.run();
+        } finally {
+            System.setOut(terminal);
+        }
+        String output = captured.toString(StandardCharsets.UTF_8);
+        return output.isEmpty() ? List.of() : List.of(output.split(System.lineSeparator()));
+    }
+}
@@ -0,0 +1,280 @@
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// The original planner of the Controller. The missing replicas are placed one at a time on the emptiest Dstores,
+// then files are moved from the fullest Dstores to the emptiest one, backtracking whenever a move leads nowhere.
+// It recurses once per file moved, big rebalances need a big stack
+public class BacktrackingRebalancePlanner extends RebalancePlanner {
+
+    public BacktrackingRebalancePlanner(int replicationFactor) {
+        super(replicationFactor);
+    }
+
+    @Override
+    public HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan(List<Pair<String,List<Integer>>> fileAllocation, List<Pair<Integer,List<String>>> filesInDstores, Map<String,Long> fileSizes) {
+        var filesInDstoresImmutable = filesInDstores.stream()
+                .map(pair -> new Pair<>(pair.fst,(List<String>) new ArrayList<>(pair.snd)))
+                .collect(Collectors.toList());
+
+        var informationForDstores = replicateFiles(filesInDstoresImmutable,filesInDstores, fileAllocation);
+        informationForDstores = rebalance(fileAllocation, filesInDstoresImmutable,filesInDstores, informationForDstores);
+
+        //filesInDstores is left as the Dstores will be, the moves above do not keep the empty name of a Dstore up to date
+        for (Pair<Integer,List<String>> pair : filesInDstores) {
+            if (pair.snd.size() > 1)
+                pair.snd.remove("");
+            else if (pair.snd.isEmpty())
+                pair.snd.add("");
+        }
+        return informationForDstores;
+    }
+
+    @Override
+    public String getName() {
+        return "backtracking";
+    }
+
+    private HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> replicateFiles(List<Pair<Integer,List<String>>> filesInDstoresImmutable, List<Pair<Integer,List<String>>> filesInDstores, List<Pair<String,List<Integer>>> fileAllocation){
+
+        //the first element of the pair is the file and the second is the number of times it needs to be replicated
+        List<Pair<String,Integer>> filesNotRReplicatedNumber = fileAllocation.stream()
+                .filter(file-> file.snd.size() < replicationFactor)
+                .map(file -> new Pair<>(file.fst,replicationFactor - file.snd.size()))
+                .collect(Collectors.toList());
+
+        return replicateFilesAuxiliary(filesInDstoresImmutable,filesInDstores,filesNotRReplicatedNumber);
+    }
+
+    private HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> replicateFilesAuxiliary(List<Pair<Integer,List<String>>> filesInDstoreImmutable, List<Pair<Integer,List<String>>> filesInDstore, List<Pair<String,Integer>> filesNotRReplicatedNumber){
+
+        HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationPerDstores = new HashMap<>();
+
+        for(Pair<String,Integer> pair : filesNotRReplicatedNumber){
+            String file = pair.fst;
+            for(int i = 1; i <= pair.snd; i++){
+
+                var dStorePortsOrderByNumFiles = filesInDstore.stream()
+                        .map(p -> {
+                            if (p.snd.get(0).equals(""))
+                                return new Pair<>(p.fst, 0);
+                            else
+                                return new Pair<>(p.fst, p.snd.size());
+                        })
+                        .sorted(Comparator.comparingInt(p -> p.snd))
+                        .map(p -> p.fst)
+                        .collect(Collectors.toList());
+
+                for(int n = 0; n < dStorePortsOrderByNumFiles.size(); n++){
+
+                    int receivingPort = dStorePortsOrderByNumFiles.get(n);
+                    int indexReceivingPort = filesInDstore.stream().map(p->p.fst).collect(Collectors.toList()).indexOf(receivingPort);
+                    if(! filesInDstore.get(indexReceivingPort).snd.contains(file)){
+
+                        int portTransferingFile = filesInDstoreImmutable.stream() //filesInDstoreImmutable needs to be used here as it contains the real current files that each dstore stores
+                                .filter(par -> par.snd.contains(file))
+                                .map(par -> par.fst)
+                                .limit(1)
+                                .collect(Collectors.toList())
+                                .get(0);
+
+                        filesInDstore.get(indexReceivingPort).snd.remove("");
+                        filesInDstore.get(indexReceivingPort).snd.add(0,file);
+
+                        if(informationPerDstores.containsKey(portTransferingFile)){
+                            List<Pair<String,List<Integer>>> list = informationPerDstores.get(portTransferingFile).fst;
+                            int indexFile = list.stream()
+                                    .map(par -> par.fst )
+                                    .collect(Collectors.toList())
+                                    .indexOf(file);
+                            if(indexFile != -1){
+                                list.get(indexFile).snd.add(receivingPort);
+                            }else{
+                                list.add(new Pair<>(file,new ArrayList<>(){{add(receivingPort);}}));
+                            }
+
+                        }else{
+                            informationPerDstores.put(portTransferingFile,new Pair<>(new ArrayList<>(){{add(new Pair<>(file,new ArrayList<>(){{add(receivingPort);}}));}},new ArrayList<>()));
+                        }
+                        break;
+                    }
+
+                }
+            }
+        }
+        return informationPerDstores;
+    }
+
+    private HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> rebalance(List<Pair<String,List<Integer>>> fileAllocation,List<Pair<Integer,List<String>>> filesInDstoresImmutable ,List<Pair<Integer,List<String>>> filesInDstores, HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores){
+
+        int numberFiles = fileAllocation.size();
+        int numberDstores = filesInDstores.size();
+
+        if((numberFiles * replicationFactor) >= numberDstores) {
+            int filesPerDstore = (int) Math.floor(numberFiles * replicationFactor / (double) numberDstores);
+            int[] expectedNumberFilesPerDstore = IntStream.generate(() -> filesPerDstore).limit(numberDstores).toArray();
+
+            for (int i = 0; i < ((numberFiles * replicationFactor) % numberDstores); i++) {
+                expectedNumberFilesPerDstore[i]++;
+            }
+
+            List<Pair<Integer, Integer>> dStorePortsOrderByNumFilesPair = filesInDstores.stream()
+                    .map(pair -> {
+                        if (pair.snd.get(0).equals("")) //TODO if a dstore has no files will it output an empty string?
+                            return new Pair<>(pair.fst, 0);
+                        else
+                            return new Pair<>(pair.fst, pair.snd.size());
+                    })
+                    .sorted(Comparator.comparingInt(pair -> pair.snd))
+                    .collect(Collectors.toList());
+
+            Collections.reverse(dStorePortsOrderByNumFilesPair);
+
+            List<Pair<Integer, Pair<Integer, Integer>>> dstoreNumberFilesExpected = new ArrayList<>();
+            for (int i = 0; i < dStorePortsOrderByNumFilesPair.size(); i++) {
+                int port = dStorePortsOrderByNumFilesPair.get(i).fst;
+                int currentNumberFiles = dStorePortsOrderByNumFilesPair.get(i).snd;
+                int expectedNumberFiles = expectedNumberFilesPerDstore[i];
+                dstoreNumberFilesExpected.add(new Pair<>(port, new Pair<>(currentNumberFiles, expectedNumberFiles)));
+            }
+
+            return rebalanceAuxiliary(filesInDstoresImmutable, filesInDstores, dstoreNumberFilesExpected, informationForDstores);
+
+        }else{
+
+            List<Integer> expectedNumberFilesPerDstore = Stream.concat(
+                    IntStream.generate(() -> 1).boxed().limit(numberFiles*replicationFactor),
+                    IntStream.generate(()->0).boxed().limit(numberDstores-(numberFiles*replicationFactor))
+            ).collect(Collectors.toList());
+
+
+            List<Pair<Integer, Integer>> dStorePortsOrderByNumFilesPair = filesInDstores.stream()
+                    .map(pair -> {
+                        if (pair.snd.get(0).equals("")) //TODO if a dstore has no files will it output an empty string?
+                            return new Pair<>(pair.fst, 0);
+                        else
+                            return new Pair<>(pair.fst, pair.snd.size());
+                    })
+                    .sorted(Comparator.comparingInt(pair -> pair.snd))
+                    .collect(Collectors.toList());
+
+            Collections.reverse(dStorePortsOrderByNumFilesPair);
+
+            List<Pair<Integer, Pair<Integer, Integer>>> dstoreNumberFilesExpected = new ArrayList<>();
+            for (int i = 0; i < dStorePortsOrderByNumFilesPair.size(); i++) {
+                int port = dStorePortsOrderByNumFilesPair.get(i).fst;
+                int currentNumberFiles = dStorePortsOrderByNumFilesPair.get(i).snd;
+                int expectedNumberFiles = expectedNumberFilesPerDstore.get(i);
+                dstoreNumberFilesExpected.add(new Pair<>(port, new Pair<>(currentNumberFiles, expectedNumberFiles)));
+            }
+
+            return rebalanceAuxiliary(filesInDstoresImmutable, filesInDstores, dstoreNumberFilesExpected, informationForDstores);
+        }
+    }
+
+    // in the pair the first element is the port
+    //the second element is another pair where the first element is the number of current elements and the second element is the expected number of elements
+    private HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> rebalanceAuxiliary(List<Pair<Integer,List<String>>> filesInDstoresImmutable,List<Pair<Integer,List<String>>> filesInDstores, List<Pair<Integer,Pair<Integer,Integer>>> dstoreNumberFilesExpected, HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores){
+
+        dstoreNumberFilesExpected = dstoreNumberFilesExpected.stream()
+                .sorted(Comparator.comparingInt(pair -> pair.snd.fst - pair.snd.snd))
+                .collect(Collectors.toList());
+
+        Pair<Integer,Pair<Integer,Integer>> emptiestPort = dstoreNumberFilesExpected.get(0);
+        int diff = emptiestPort.snd.fst - emptiestPort.snd.snd;
+
+        if (diff == 0) //all ports have the right number of files stored
+            return informationForDstores;
+        else{
+            for(int i = dstoreNumberFilesExpected.size()-1; i >= 0; i--){
+
+                Pair<Integer,Pair<Integer,Integer>> portTransferingFilePair = dstoreNumberFilesExpected.get(i);
+                if(portTransferingFilePair.snd.fst - portTransferingFilePair.snd.snd <= 0){
+                    break; //all the other ports will have a diff which will be less than or equal to the diff above
+                }
+
+                int indexPortTrasfering = filesInDstores.stream()
+                        .map(pair -> pair.fst)
+                        .collect(Collectors.toList())
+                        .indexOf(portTransferingFilePair.fst);
+
+                int indexEmptiestPort = filesInDstores.stream()
+                        .map(pair-> pair.fst)
+                        .collect(Collectors.toList())
+                        .indexOf(emptiestPort.fst);
+
+                Iterator<String> iter = filesInDstores.get(indexPortTrasfering).snd.iterator();
+                for(int n = 0; n < filesInDstores.get(indexPortTrasfering).snd.size(); n++){
+
+                    String file = filesInDstores.get(indexPortTrasfering).snd.get(n);
+                    //This if statement checks whether the dstore aiming to transfer the file actually has it stored
+                    // and won't receive it later during the rebalance messages
+                    if(filesInDstoresImmutable.get(indexPortTrasfering).snd.contains(file)) {
+
+                        if (!filesInDstores.get(indexEmptiestPort).snd.contains(file)) {
+
+                            filesInDstores.get(indexPortTrasfering).snd.remove(file);
+                            portTransferingFilePair.snd = new Pair<>(portTransferingFilePair.snd.fst - 1, portTransferingFilePair.snd.snd);
+
+                            filesInDstores.get(indexEmptiestPort).snd.add(file);
+                            emptiestPort.snd = new Pair<>(emptiestPort.snd.fst + 1, emptiestPort.snd.snd);
+
+                            updateInformationForDstores(portTransferingFilePair.fst, emptiestPort.fst, file, informationForDstores);
+
+                            HashMap<Integer, Pair<List<Pair<String, List<Integer>>>, List<String>>> newInformationForDstores = rebalanceAuxiliary(filesInDstoresImmutable,filesInDstores, dstoreNumberFilesExpected, informationForDstores);
+
+                            if (newInformationForDstores != null)
+                                return newInformationForDstores;
+                            else {
+                                filesInDstores.get(indexPortTrasfering).snd.add(n, file);
+                                portTransferingFilePair.snd = new Pair<>(portTransferingFilePair.snd.fst + 1, portTransferingFilePair.snd.snd);
+                                filesInDstores.get(indexEmptiestPort).snd.remove(file);
+                                emptiestPort.snd = new Pair<>(emptiestPort.snd.fst - 1, emptiestPort.snd.snd);
+                                cancelUpdateInformationForDstores(portTransferingFilePair.fst, emptiestPort.fst, file, informationForDstores);
+                            }
+                        }
+                    }
+                }
+            }
+            return  null;
+        }
+    }
+
+    private void updateInformationForDstores(int portTrasfering, int portReceving, String file, HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores){
+
+        if(informationForDstores.containsKey(portTrasfering)){
+
+            informationForDstores.get(portTrasfering).snd.add(file);
+            int indexOfPair = informationForDstores.get(portTrasfering).fst.stream()
+                    .map(pair -> pair.fst)
+                    .collect(Collectors.toList())
+                    .indexOf(file);
+
+            if(indexOfPair != -1){
+                informationForDstores.get(portTrasfering).fst.get(indexOfPair).snd.add(portReceving);
+
+            }else{
+                informationForDstores.get(portTrasfering).fst.add(new Pair<>(file,new ArrayList<>(){{add(portReceving);}}));
+            }
+
+        }else{
+            informationForDstores.put(portTrasfering, new Pair<>(new ArrayList<>(){{add(new Pair<>(file,new ArrayList<>(){{add(portReceving);}}));}},new ArrayList<>(){{add(file);}}));
+        }
+    }
+
+    private void cancelUpdateInformationForDstores(int portTrasfering, int portReceving, String file, HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores){
+
+        informationForDstores.get(portTrasfering).snd.remove(file);
+
+        int indexOfPair = informationForDstores.get(portTrasfering).fst.stream()
+                .map(pair -> pair.fst)
+                .collect(Collectors.toList())
+                .indexOf(file);
+
+        informationForDstores.get(portTrasfering).fst.get(indexOfPair).snd.remove((Integer) portReceving);
+        if(informationForDstores.get(portTrasfering).fst.get(indexOfPair).snd.size() == 0){
+            informationForDstores.get(portTrasfering).fst.remove(indexOfPair);
+        }
+    }
+}
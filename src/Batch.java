@@ -0,0 +1,89 @@
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+public class Batch {
+
+    //The files of a STORE_BATCH or REMOVE_BATCH still waiting for their acknowledges. The client gets a single
+    //BATCH_COMPLETE, listing the files which failed, once every file has completed or failed.
+    //The batch fails the files left only when no acknowledge at all has arrived for a whole timeout,
+    //so a big batch is not bound to complete within the timeout of a single file
+    public final Socket socket;
+    public final String requestId;
+    public final boolean store;
+    private final Set<String> pending;
+    private final List<String> failed;
+    private long lastProgress;
+    private boolean settled;
+    private Future<?> timeout;
+
+    public Batch(Socket socket, String requestId, boolean store) {
+        this.socket = socket;
+        this.requestId = requestId;
+        this.store = store;
+        this.pending = new HashSet<>();
+        this.failed = new ArrayList<>();
+        this.lastProgress = System.currentTimeMillis();
+    }
+
+    /*********************************** BEGINNING OF PROGRESS *******************************************/
+
+    public synchronized boolean add(String fileName) {
+        return pending.add(fileName);
+    }
+
+    public synchronized boolean contains(String fileName) {
+        return pending.contains(fileName) || failed.contains(fileName);
+    }
+
+    public synchronized void fail(String fileName) {
+        failed.add(fileName);
+    }
+
+    //Returns true to the one caller completing the batch, which then has to send BATCH_COMPLETE
+    public synchronized boolean complete(String fileName, boolean succeeded) {
+        if (pending.remove(fileName)) {
+            lastProgress = System.currentTimeMillis();
+            if (!succeeded)
+                failed.add(fileName);
+        }
+        return settle();
+    }
+
+    public synchronized boolean settle() {
+        if (settled || !pending.isEmpty())
+            return false;
+        settled = true;
+        if (timeout != null)
+            timeout.cancel(false);
+        return true;
+    }
+
+    //The periodic idle check of the batch, cancelled as soon as the batch settles
+    public synchronized void setTimeout(Future<?> timeout) {
+        this.timeout = timeout;
+        if (settled)
+            timeout.cancel(false);
+    }
+
+    public synchronized boolean isSettled() {
+        return settled;
+    }
+
+    public synchronized boolean idleFor(long millis) {
+        return System.currentTimeMillis() - lastProgress >= millis;
+    }
+
+    public synchronized List<String> pending() {
+        return new ArrayList<>(pending);
+    }
+
+    public synchronized List<String> failed() {
+        return new ArrayList<>(failed);
+    }
+
+    /************************************** END OF PROGRESS *******************************************/
+}
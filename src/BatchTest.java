@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class BatchTest {
+
+    /*********************************BEGINNING OF TESTS FOR PROGRESS****************************/
+
+    @Test
+    void testBatchSettlesWhenEveryFileHasCompleted() {
+        Batch batch = new Batch(null, "#1", true);
+        Assertions.assertTrue(batch.add("a.txt"));
+        Assertions.assertTrue(batch.add("b.txt"));
+        Assertions.assertFalse(batch.add("a.txt"));
+
+        Assertions.assertFalse(batch.complete("a.txt", true));
+        Assertions.assertFalse(batch.isSettled());
+        Assertions.assertEquals(List.of("b.txt"), batch.pending());
+        Assertions.assertTrue(batch.complete("b.txt", false));
+        Assertions.assertTrue(batch.isSettled());
+        Assertions.assertEquals(List.of("b.txt"), batch.failed());
+    }
+
+    @Test
+    void testOnlyOneCallerCompletesTheBatch() {
+        Batch batch = new Batch(null, "#1", false);
+        batch.add("a.txt");
+        Assertions.assertTrue(batch.complete("a.txt", true));
+        //a late or duplicate acknowledge neither settles the batch again nor changes its outcome
+        Assertions.assertFalse(batch.complete("a.txt", false));
+        Assertions.assertFalse(batch.settle());
+        Assertions.assertEquals(List.of(), batch.failed());
+    }
+
+    @Test
+    void testFilesFailedUpFront() {
+        Batch batch = new Batch(null, "#1", true);
+        batch.add("a.txt");
+        batch.fail("b.txt");
+        Assertions.assertTrue(batch.contains("a.txt"));
+        Assertions.assertTrue(batch.contains("b.txt"));
+        Assertions.assertFalse(batch.contains("c.txt"));
+        Assertions.assertTrue(batch.complete("a.txt", true));
+        Assertions.assertEquals(List.of("b.txt"), batch.failed());
+
+        //a batch whose files have all failed up front settles straight away
+        Batch failedBatch = new Batch(null, "#2", true);
+        failedBatch.fail("a.txt");
+        Assertions.assertTrue(failedBatch.settle());
+    }
+
+    @Test
+    void testTimeoutIsCancelledOnSettling() {
+        Batch batch = new Batch(null, "#1", true);
+        batch.add("a.txt");
+        CompletableFuture<Void> timeout = new CompletableFuture<>();
+        batch.setTimeout(timeout);
+        Assertions.assertFalse(timeout.isCancelled());
+        batch.complete("a.txt", true);
+        Assertions.assertTrue(timeout.isCancelled());
+
+        //a timeout set after the batch has settled is cancelled at once
+        CompletableFuture<Void> late = new CompletableFuture<>();
+        batch.setTimeout(late);
+        Assertions.assertTrue(late.isCancelled());
+    }
+
+    @Test
+    void testIdleTimeIsCountedFromTheLastProgress() throws InterruptedException {
+        Batch batch = new Batch(null, "#1", true);
+        batch.add("a.txt");
+        batch.add("b.txt");
+        Thread.sleep(60);
+        Assertions.assertTrue(batch.idleFor(50));
+        batch.complete("a.txt", true);
+        Assertions.assertFalse(batch.idleFor(50));
+    }
+
+    /************************************END OF TESTS FOR PROGRESS********************************/
+}
@@ -0,0 +1,228 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class BinaryFrameCodec {
+
+    //frame := varint(length of the rest) opcode:byte varint(number of arguments) { varint(length) utf8 bytes }*
+    //Opcode 0 carries the command itself as first argument, so commands unknown to this table still go through
+    public static final int UNKNOWN_OPCODE = 0;
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int POOLED_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    //The position of a command in this array is its opcode, new commands must be appended at the end
+    private static final String[] OPCODES = {
+            null,
+            Protocol.LIST_TOKEN, Protocol.STORE_TOKEN, Protocol.LOAD_TOKEN, Protocol.LOAD_DATA_TOKEN, Protocol.RELOAD_TOKEN,
+            Protocol.REMOVE_TOKEN, Protocol.STORE_EC_TOKEN, Protocol.STORE_TO_TOKEN, Protocol.STORE_COMPLETE_TOKEN,
+            Protocol.LOAD_FROM_TOKEN, Protocol.REMOVE_COMPLETE_TOKEN, Protocol.REBALANCE_TOKEN,
+            Protocol.ERROR_FILE_DOES_NOT_EXIST_TOKEN, Protocol.ERROR_FILE_ALREADY_EXISTS_TOKEN,
+            Protocol.ERROR_NOT_ENOUGH_DSTORES_TOKEN, Protocol.ERROR_LOAD_TOKEN, Protocol.STORE_TO_EC_TOKEN,
+            Protocol.LOAD_FROM_EC_TOKEN, Protocol.REBUILD_TOKEN, Protocol.ACK_TOKEN, Protocol.STORE_ACK_TOKEN,
+            Protocol.REMOVE_ACK_TOKEN, Protocol.JOIN_TOKEN, Protocol.REBALANCE_STORE_TOKEN, Protocol.REBALANCE_COMPLETE_TOKEN,
+            Protocol.CORRUPTED_TOKEN, Protocol.REBUILD_COMPLETE_TOKEN, Protocol.DEDUP_ACK_TOKEN, Protocol.DATA_TOKEN,
+            Protocol.STORE_MULTIPART_TOKEN, Protocol.STORE_COMMIT_TOKEN, Protocol.MULTIPART_PARTS_TOKEN, Protocol.LOAD_FROM_PARTS_TOKEN,
+            Protocol.STORE_BATCH_TOKEN, Protocol.LOAD_BATCH_TOKEN, Protocol.REMOVE_BATCH_TOKEN, Protocol.STORE_TO_BATCH_TOKEN,
+            Protocol.LOAD_FROM_BATCH_TOKEN, Protocol.BATCH_COMPLETE_TOKEN
+    };
+    private static final Map<String,Integer> OPCODES_BY_COMMAND = new HashMap<>();
+
+    static {
+        for (int i = 1; i < OPCODES.length; i++) {
+            OPCODES_BY_COMMAND.put(OPCODES[i], i);
+        }
+    }
+
+    public static List<String> commands() {
+        return Arrays.asList(OPCODES).subList(1, OPCODES.length);
+    }
+
+    //UNKNOWN_OPCODE for the commands missing from the table
+    public static int opcode(String command) {
+        return OPCODES_BY_COMMAND.getOrDefault(command, UNKNOWN_OPCODE);
+    }
+
+    //null for UNKNOWN_OPCODE and for opcodes past the table
+    public static String command(int opcode) {
+        return opcode > 0 && opcode < OPCODES.length ? OPCODES[opcode] : null;
+    }
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+    /************************************ BEGINNING OF BUFFER POOL ******************************************/
+
+    public static ByteBuffer acquire(int capacity) {
+        if (capacity <= POOLED_BUFFER_SIZE) {
+            ByteBuffer buffer = pool.poll();
+            if (buffer != null)
+                return buffer.clear();
+            return ByteBuffer.allocate(POOLED_BUFFER_SIZE);
+        }
+        return ByteBuffer.allocate(capacity);
+    }
+
+    public static void release(ByteBuffer buffer) {
+        //bigger buffers are left to the garbage collector, they are rare and would pin a lot of memory
+        if (buffer.capacity() == POOLED_BUFFER_SIZE && pool.size() < MAX_POOLED_BUFFERS)
+            pool.offer(buffer);
+    }
+
+    /************************************** END OF BUFFER POOL ******************************************/
+
+
+    /************************************ BEGINNING OF ENCODING ******************************************/
+
+    //tokens[0] is the command, the rest are its arguments
+    public static void writeFrame(OutputStream out, String[] tokens) throws IOException {
+        int capacity = POOLED_BUFFER_SIZE;
+        while (true) {
+            ByteBuffer buffer = acquire(capacity);
+            try {
+                int start = encode(tokens, buffer);
+                out.write(buffer.array(), buffer.arrayOffset() + start, buffer.limit() - start);
+                out.flush();
+                return;
+            } catch (BufferOverflowException e) {
+                capacity = buffer.capacity() * 2;
+                if (capacity > MAX_FRAME_SIZE + 5)
+                    throw new IOException("The message is too big to be framed");
+            } finally {
+                release(buffer);
+            }
+        }
+    }
+
+    //Returns the offset of the frame in the buffer. The body is written after 5 bytes reserved for its length,
+    //which is only known at the end and is then written right before the body
+    static int encode(String[] tokens, ByteBuffer buffer) {
+        buffer.clear().position(5);
+        Integer opcode = OPCODES_BY_COMMAND.get(tokens[0]);
+        int firstArgument = opcode == null ? 0 : 1;
+        buffer.put((byte) (opcode == null ? UNKNOWN_OPCODE : opcode));
+        putVarint(buffer, tokens.length - firstArgument);
+        for (int i = firstArgument; i < tokens.length; i++) {
+            byte[] bytes = tokens[i].getBytes(StandardCharsets.UTF_8);
+            putVarint(buffer, bytes.length);
+            buffer.put(bytes);
+        }
+
+        int end = buffer.position();
+        int bodyLength = end - 5;
+        int start = 5 - varintSize(bodyLength);
+        buffer.position(start);
+        putVarint(buffer, bodyLength);
+        buffer.limit(end).position(start);
+        return start;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /************************************** END OF ENCODING ******************************************/
+
+
+    /************************************ BEGINNING OF DECODING ******************************************/
+
+    //Returns null if the stream ends before a new frame starts
+    public static String[] readFrame(InputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1)
+            return null;
+        int length = readVarint(in, first);
+        if (length < 1 || length > MAX_FRAME_SIZE)
+            throw new IOException(String.format("Invalid frame length %s", length));
+
+        ByteBuffer buffer = acquire(length);
+        try {
+            if (in.readNBytes(buffer.array(), buffer.arrayOffset(), length) != length)
+                throw new EOFException("The stream ended in the middle of a frame");
+            buffer.limit(length);
+            return decode(buffer);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    static String[] decode(ByteBuffer buffer) throws IOException {
+        try {
+            int opcode = buffer.get() & 0xFF;
+            if (opcode >= OPCODES.length)
+                throw new IOException(String.format("Unknown opcode %s", opcode));
+            int numberArguments = getVarint(buffer);
+            int firstArgument = opcode == UNKNOWN_OPCODE ? 0 : 1;
+            if (numberArguments + firstArgument == 0 || numberArguments > buffer.remaining())
+                throw new IOException("Invalid number of arguments in frame");
+
+            String[] tokens = new String[numberArguments + firstArgument];
+            if (opcode != UNKNOWN_OPCODE)
+                tokens[0] = OPCODES[opcode];
+            for (int i = firstArgument; i < tokens.length; i++) {
+                int length = getVarint(buffer);
+                if (length > buffer.remaining())
+                    throw new IOException("Argument longer than its frame");
+                tokens[i] = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+            return tokens;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated frame");
+        }
+    }
+
+    private static int readVarint(InputStream in, int first) throws IOException {
+        int value = first & 0x7F;
+        int shift = 7;
+        int b = first;
+        while ((b & 0x80) != 0) {
+            if (shift > 28)
+                throw new IOException("Varint too long");
+            b = in.read();
+            if (b == -1)
+                throw new EOFException("The stream ended in the middle of a frame length");
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+
+    private static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 28)
+                throw new IOException("Varint too long");
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /************************************** END OF DECODING ******************************************/
+}
@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class BinaryFrameCodecTest {
+
+    /*********************************BEGINNING OF TESTS FOR ROUND TRIPS****************************/
+
+    @ParameterizedTest
+    @MethodSource("argumentsForTestRoundTrip")
+    void testRoundTrip(String[] tokens) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryFrameCodec.writeFrame(out, tokens);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        Assertions.assertArrayEquals(tokens, BinaryFrameCodec.readFrame(in));
+        Assertions.assertNull(BinaryFrameCodec.readFrame(in));
+    }
+
+    Stream<Arguments> argumentsForTestRoundTrip(){
+        return Stream.of(
+                Arguments.of((Object) new String[]{Protocol.LIST_TOKEN}),
+                Arguments.of((Object) new String[]{Protocol.STORE_TOKEN, "my file.txt", "1234", "987654321"}),
+                Arguments.of((Object) new String[]{Protocol.STORE_TO_TOKEN, "12346", "12347"}),
+                Arguments.of((Object) new String[]{"NOT_A_COMMAND", "argument"}),
+                Arguments.of((Object) new String[]{"NOT_A_COMMAND"}),
+                Arguments.of((Object) new String[]{Protocol.LOAD_TOKEN, "fichier-\u00e9-\u00fc-\u65e5\u672c.txt"}),
+                Arguments.of((Object) new String[]{Protocol.REMOVE_TOKEN, ""}),
+                Arguments.of((Object) new String[]{Protocol.LIST_TOKEN, "x".repeat(200), "y".repeat(20000)})
+        );
+    }
+
+    @Test
+    void testFramesFollowEachOtherOnOneStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryFrameCodec.writeFrame(out, new String[]{Protocol.STORE_TOKEN, "a.txt", "3"});
+        out.write("raw".getBytes());
+        BinaryFrameCodec.writeFrame(out, new String[]{Protocol.STORE_ACK_TOKEN, "a.txt"});
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+
+        Assertions.assertArrayEquals(new String[]{Protocol.STORE_TOKEN, "a.txt", "3"}, BinaryFrameCodec.readFrame(in));
+        //the file content following a message is left in the stream
+        Assertions.assertEquals("raw", new String(in.readNBytes(3)));
+        Assertions.assertArrayEquals(new String[]{Protocol.STORE_ACK_TOKEN, "a.txt"}, BinaryFrameCodec.readFrame(in));
+        Assertions.assertNull(BinaryFrameCodec.readFrame(in));
+    }
+
+    @Test
+    void testOpcodeTable() {
+        for (String command : BinaryFrameCodec.commands()) {
+            int opcode = BinaryFrameCodec.opcode(command);
+            Assertions.assertNotEquals(BinaryFrameCodec.UNKNOWN_OPCODE, opcode);
+            Assertions.assertEquals(command, BinaryFrameCodec.command(opcode));
+        }
+        Assertions.assertEquals(BinaryFrameCodec.UNKNOWN_OPCODE, BinaryFrameCodec.opcode("NOT_A_COMMAND"));
+        Assertions.assertNull(BinaryFrameCodec.command(BinaryFrameCodec.UNKNOWN_OPCODE));
+        Assertions.assertNull(BinaryFrameCodec.command(255));
+        //the opcodes are on the wire, the first ones must never move
+        Assertions.assertEquals(1, BinaryFrameCodec.opcode(Protocol.LIST_TOKEN));
+        Assertions.assertEquals(2, BinaryFrameCodec.opcode(Protocol.STORE_TOKEN));
+    }
+
+    /************************************END OF TESTS FOR ROUND TRIPS********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR MALFORMED FRAMES****************************/
+
+    @Test
+    void testTruncatedFrame() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryFrameCodec.writeFrame(out, new String[]{Protocol.STORE_TOKEN, "a.txt", "3"});
+        byte[] frame = out.toByteArray();
+        byte[] truncated = Arrays.copyOf(frame, frame.length - 2);
+        Assertions.assertThrows(EOFException.class, () -> BinaryFrameCodec.readFrame(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    void testInvalidFrames() {
+        //zero length
+        Assertions.assertThrows(IOException.class, () -> BinaryFrameCodec.readFrame(new ByteArrayInputStream(new byte[]{0})));
+        //longer than MAX_FRAME_SIZE
+        Assertions.assertThrows(IOException.class, () -> BinaryFrameCodec.readFrame(new ByteArrayInputStream(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x7F})));
+        //opcode past the table
+        Assertions.assertThrows(IOException.class, () -> BinaryFrameCodec.readFrame(new ByteArrayInputStream(new byte[]{2, (byte) 250, 0})));
+        //an argument longer than the frame
+        Assertions.assertThrows(IOException.class, () -> BinaryFrameCodec.readFrame(new ByteArrayInputStream(new byte[]{4, 1, 1, 100, 'a'})));
+        //no command at all
+        Assertions.assertThrows(IOException.class, () -> BinaryFrameCodec.readFrame(new ByteArrayInputStream(new byte[]{2, 0, 0})));
+    }
+
+    /************************************END OF TESTS FOR MALFORMED FRAMES********************************/
+}
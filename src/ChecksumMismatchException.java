@@ -0,0 +1,10 @@
+import java.io.IOException;
+
+public class ChecksumMismatchException
+extends IOException {
+    private static final long serialVersionUID = 4712839561027736119L;
+
+    public ChecksumMismatchException(String filename) {
+        super("Error trying to store file " + filename + " - the checksum of the received bytes does not match");
+    }
+}
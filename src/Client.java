@@ -1,26 +1,47 @@
 /*
  * Decompiled with CFR 0.150.
  */
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.CRC32C;
 
 public class Client {
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
     private final int a;
     private final int b;
     private Socket c;
     private BufferedReader d;
     private PrintWriter e;
     private int f;
+    private final LocationCache locations = new LocationCache();
 
     /*
      * WARNING - void declaration
@@ -59,6 +80,11 @@ public class Client {
         }
     }
 
+    //Leases of the Dstores files were last loaded from, setLease(0) makes every load ask the Controller
+    public LocationCache getLocationCache() {
+        return this.locations;
+    }
+
     /*
      * WARNING - void declaration
      */
@@ -107,7 +133,6 @@ public class Client {
      * WARNING - void declaration
      */
     public void store(File file) throws IOException, NotEnoughDstoresException, FileAlreadyExistsException {
-        byte[] arrby;
         if (!file.exists()) {
             String string = "File to store does not exist (absolute path: " + file.getAbsolutePath() + ")";
             ClientLogger.getInstance().error(string);
@@ -119,17 +144,10 @@ public class Client {
             ClientLogger.getInstance().error(string2);
             throw new IOException(string2);
         }
-        try {
-            FileInputStream fileInputStream = new FileInputStream(file);
-            arrby = fileInputStream.readAllBytes();
-            fileInputStream.close();
-        }
-        catch (IOException iOException) {
-            void var1_1;
-            ClientLogger.getInstance().error("Error reading data from file (absolute path: " + var1_1.getAbsolutePath() + ")");
-            throw iOException;
+        //the file is streamed from its channel, it does not have to fit in memory
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.store(string, fileChannel);
         }
-        this.store(string, arrby);
     }
 
     /*
@@ -138,7 +156,7 @@ public class Client {
     public void store(String filename2, byte[] data) throws IOException, NotEnoughDstoresException, FileAlreadyExistsException {
         String string;
         String string2;
-        String string3 = "STORE " + filename2 + " " + data.length;
+        String string3 = "STORE " + filename2 + " " + data.length + " " + Client.checksum(data);
         this.e.println(string3);
         ClientLogger.getInstance().messageSent(this.c.getPort(), string3);
         ClientLogger.getInstance().storeStarted(filename2);
@@ -152,6 +170,8 @@ public class Client {
         ClientLogger.getInstance().messageReceived(this.c.getPort(), string2);
         int[] arrn = Client.a(filename2, string2);
         ClientLogger.getInstance().dstoresWhereToStoreTo(filename2, arrn);
+        //the Dstores also get the SHA-256 of the content, a Dstore already holding it answers DEDUP_ACK
+        String dstoreMessage = string3 + " " + Client.digest(data);
         int[] arrn2 = arrn;
         int n = arrn.length;
         for (int i = 0; i < n; ++i) {
@@ -164,8 +184,8 @@ public class Client {
                     Object object = socket.getOutputStream();
                     Object object2 = new PrintWriter((OutputStream)object, true);
                     BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                    ((PrintWriter)object2).println(string3);
-                    ClientLogger.getInstance().messageSent(socket.getPort(), string3);
+                    ((PrintWriter)object2).println(dstoreMessage);
+                    ClientLogger.getInstance().messageSent(socket.getPort(), dstoreMessage);
                     ClientLogger.getInstance().storeToDstoreStarted(filename2, n2);
                     try {
                         object2 = bufferedReader.readLine();
@@ -180,13 +200,16 @@ public class Client {
                         ClientLogger.getInstance().error((String)object);
                         throw new IOException((String)object);
                     }
-                    if (!((String)object2).trim().equals("ACK")) {
+                    boolean deduplicated = ((String)object2).trim().equals("DEDUP_ACK");
+                    if (!deduplicated && !((String)object2).trim().equals("ACK")) {
                         object = "Unexpected message received from Dstore (ACK was expected): ".concat(String.valueOf(object2));
                         ClientLogger.getInstance().error((String)object);
                         throw new IOException((String)object);
                     }
                     ClientLogger.getInstance().ackFromDstore(filename2, n2);
-                    ((OutputStream)object).write(data);
+                    if (!deduplicated) {
+                        ((OutputStream)object).write(data);
+                    }
                     ClientLogger.getInstance().storeToDstoreCompleted(filename2, n2);
                 }
                 catch (Exception exception) {
@@ -225,6 +248,65 @@ public class Client {
         throw new IOException(string5);
     }
 
+    public void storeErasureCoded(String filename, byte[] data) throws IOException, NotEnoughDstoresException, FileAlreadyExistsException {
+        String string;
+        String message = "STORE_EC " + filename + " " + data.length + " " + Client.checksum(data);
+        this.e.println(message);
+        ClientLogger.getInstance().messageSent(this.c.getPort(), message);
+        ClientLogger.getInstance().storeStarted(filename);
+        try {
+            string = this.d.readLine();
+        }
+        catch (SocketTimeoutException socketTimeoutException) {
+            ClientLogger.getInstance().timeoutExpiredWhileReading(this.c.getPort());
+            throw socketTimeoutException;
+        }
+        ClientLogger.getInstance().messageReceived(this.c.getPort(), string);
+        if (string != null && string.startsWith("STORE_TO_EC ")) {
+            String[] arrstring = string.split(" ");
+            int k = Integer.parseInt(arrstring[1]);
+            int m = Integer.parseInt(arrstring[2]);
+            int[] ports = new int[arrstring.length - 3];
+            for (int i = 0; i < ports.length; ++i) {
+                ports[i] = Integer.parseInt(arrstring[i + 3]);
+            }
+            ClientLogger.getInstance().dstoresWhereToStoreTo(filename, ports);
+            int sent = ErasureCoding.storeFragments(filename, data, k, m, ports, this.b);
+            if (sent < ports.length) {
+                ClientLogger.getInstance().error("Only " + sent + " of " + ports.length + " fragments of " + filename + " have been stored");
+            }
+        } else {
+            //the Controller has no erasure coded storage class and answered with a plain STORE_TO
+            int[] ports = Client.a(filename, string);
+            ClientLogger.getInstance().dstoresWhereToStoreTo(filename, ports);
+            for (int port : ports) {
+                if (!ErasureCoding.storeToDstore(filename, data, port, this.b)) {
+                    ClientLogger.getInstance().storeToDstoreFailed(filename, port);
+                }
+            }
+        }
+        try {
+            string = this.d.readLine();
+        }
+        catch (SocketTimeoutException socketTimeoutException) {
+            ClientLogger.getInstance().timeoutExpiredWhileReading(this.c.getPort());
+            throw socketTimeoutException;
+        }
+        ClientLogger.getInstance().messageReceived(this.c.getPort(), string);
+        if (string == null) {
+            String string4 = "Connection closed by the Controller";
+            ClientLogger.getInstance().error(string4);
+            throw new IOException(string4);
+        }
+        if (string.trim().equals("STORE_COMPLETE")) {
+            ClientLogger.getInstance().storeCompleted(filename);
+            return;
+        }
+        String string5 = "Unexpected message received (STORE_COMPLETE was expected): ".concat(string);
+        ClientLogger.getInstance().error(string5);
+        throw new IOException(string5);
+    }
+
     private static int[] a(String object, String string) throws IOException {
         if (string == null) {
             object = "Connection closed by the Controller";
@@ -283,7 +365,11 @@ public class Client {
             ClientLogger.getInstance().error(string);
             throw new IOException(string);
         }
-        Object object = "LOAD ".concat(String.valueOf(filename));
+        byte[] cached = this.loadCached(filename);
+        if (cached != null) {
+            return cached;
+        }
+        Object object = "LOAD ".concat(String.valueOf(filename)).concat(this.loadCapabilities());
         this.e.println((String)object);
         ClientLogger.getInstance().messageSent(this.c.getPort(), (String)object);
         ClientLogger.getInstance().loadStarted(filename);
@@ -293,7 +379,7 @@ public class Client {
         }
         catch (a a2) {}
         while (object == null) {
-            String string = "RELOAD ".concat(String.valueOf(filename));
+            String string = "RELOAD ".concat(String.valueOf(filename)).concat(this.loadCapabilities());
             this.e.println(string);
             ClientLogger.getInstance().messageSent(this.c.getPort(), string);
             ClientLogger.getInstance().retryLoad(filename);
@@ -324,6 +410,8 @@ public class Client {
             throw new IOException(string2);
         }
         String[] arrstring = ((String)object2).split(" ");
+        Long epoch = LocationCache.epoch(arrstring);
+        arrstring = LocationCache.withoutEpoch(arrstring);
         if (arrstring[0].equals("ERROR_LOAD")) {
             ClientLogger.getInstance().loadFailed(string, this.f);
             throw new IOException("Load operation for file " + string + " failed after having contacted " + this.f + " different Dstores");
@@ -332,6 +420,12 @@ public class Client {
             ClientLogger.getInstance().fileToLoadDoesNotExist(string);
             throw new FileDoesNotExistException(string);
         }
+        if (arrstring[0].equals("LOAD_FROM_EC")) {
+            return this.loadErasureCoded(string, arrstring);
+        }
+        if (arrstring[0].equals("LOAD_FROM_PARTS")) {
+            return this.loadParts(string, arrstring);
+        }
         if (!arrstring[0].equals("LOAD_FROM")) {
             String string3 = "Unexpected message received (unxpected message: LOAD_FROM): ".concat(String.valueOf(object2));
             ClientLogger.getInstance().error(string3);
@@ -341,9 +435,13 @@ public class Client {
             ClientLogger.getInstance().error("Not enough Dstores have joined the data store yet");
             throw new NotEnoughDstoresException();
         }
+        Long expectedChecksum = null;
         try {
             n2 = Integer.parseInt(arrstring[1]);
             n = Integer.parseInt(arrstring[2]);
+            if (arrstring.length > 3) {
+                expectedChecksum = Long.parseLong(arrstring[3]);
+            }
         }
         catch (NumberFormatException numberFormatException) {
             String string4 = "Error parsing LOAD_FROM message to extract Dstore port and filesize. Received message: ".concat(String.valueOf(object2));
@@ -351,7 +449,34 @@ public class Client {
             throw new IOException(string4);
         }
         ClientLogger.getInstance().dstoreWhereToLoadFrom(string, n2, n);
-        object2 = null;
+        object = this.loadFromDstore(string, n2, n, expectedChecksum);
+        if (epoch != null) {
+            this.locations.put(string, n2, n, expectedChecksum, epoch);
+        }
+        return (byte[])object;
+    }
+
+    //A location leased from an earlier LOAD_FROM is read without asking the Controller; if the Dstore cannot serve
+    //it the lease is dropped and the load goes through the Controller as usual
+    private byte[] loadCached(String filename) throws IOException {
+        LocationCache.Location location = this.locations.get(filename);
+        if (location == null || location.fileSize > Integer.MAX_VALUE) {
+            return null;
+        }
+        ClientLogger.getInstance().loadStarted(filename);
+        ClientLogger.getInstance().dstoreWhereToLoadFrom(filename, location.port, (int)location.fileSize);
+        try {
+            return this.loadFromDstore(filename, location.port, (int)location.fileSize, location.checksum);
+        }
+        catch (a a2) {
+            this.locations.invalidate(filename);
+            return null;
+        }
+    }
+
+    private byte[] loadFromDstore(String string, int n2, int n, Long expectedChecksum) throws IOException {
+        Object object;
+        Object object2 = null;
         try {
             try {
                 ++this.f;
@@ -359,12 +484,13 @@ public class Client {
                 ClientLogger.getInstance().connectionEstablished(((Socket)object2).getPort());
                 object = new PrintWriter(((Socket)object2).getOutputStream(), true);
                 InputStream inputStream = ((Socket)object2).getInputStream();
-                String string5 = "LOAD_DATA ".concat(String.valueOf(string));
+                //the Dstore may answer with the compressed bytes it stores, n is always the logical size
+                String string5 = "LOAD_DATA " + string + " DEFLATE";
                 ((PrintWriter)object).println(string5);
                 ClientLogger.getInstance().messageSent(((Socket)object2).getPort(), string5);
                 ClientLogger.getInstance().loadFromDstore(string, n2);
                 try {
-                    object = inputStream.readNBytes(n);
+                    object = Client.readData(inputStream, n);
                 }
                 catch (SocketTimeoutException socketTimeoutException) {
                     ClientLogger.getInstance().timeoutExpiredWhileReading(this.c.getPort());
@@ -374,6 +500,9 @@ public class Client {
                     int n3 = ((Object)object).length;
                     throw new IOException("Expected to read " + n + " bytes, read " + n3 + " bytes instead");
                 }
+                if (expectedChecksum != null && expectedChecksum != Client.checksum((byte[])object)) {
+                    throw new IOException("Checksum mismatch for file " + string + " loaded from Dstore " + n2);
+                }
                 ClientLogger.getInstance().loadCompleted(string, n2);
             }
             catch (IOException iOException) {
@@ -391,12 +520,46 @@ public class Client {
         return object;
     }
 
+    //LOAD_FROM_EC k m filesize port1 ... portk+m [checksum]; a failure here is final, there is nothing to RELOAD
+    private byte[] loadErasureCoded(String filename, String[] arrstring) throws IOException {
+        int k;
+        int m;
+        long fileSize;
+        int[] ports;
+        Long expectedChecksum = null;
+        try {
+            k = Integer.parseInt(arrstring[1]);
+            m = Integer.parseInt(arrstring[2]);
+            fileSize = Long.parseLong(arrstring[3]);
+            ports = new int[k + m];
+            for (int i = 0; i < ports.length; ++i) {
+                ports[i] = Integer.parseInt(arrstring[i + 4]);
+            }
+            if (arrstring.length > 4 + k + m) {
+                expectedChecksum = Long.parseLong(arrstring[4 + k + m]);
+            }
+        }
+        catch (RuntimeException runtimeException) {
+            String string = "Error parsing LOAD_FROM_EC message. Received message: ".concat(String.join(" ", arrstring));
+            ClientLogger.getInstance().error(string);
+            throw new IOException(string);
+        }
+        byte[] data = ErasureCoding.loadFragments(filename, k, m, fileSize, ports, this.b);
+        if (expectedChecksum != null && expectedChecksum != Client.checksum(data)) {
+            String string = "Checksum mismatch for erasure coded file ".concat(filename);
+            ClientLogger.getInstance().error(string);
+            throw new IOException(string);
+        }
+        return data;
+    }
+
     /*
      * WARNING - void declaration
      */
     public void remove(String filename) throws IOException, NotEnoughDstoresException, FileDoesNotExistException {
         void var1_1;
         Object object = "REMOVE ".concat(String.valueOf(filename));
+        this.locations.invalidate(filename);
         this.e.println((String)object);
         ClientLogger.getInstance().messageSent(this.c.getPort(), (String)object);
         ClientLogger.getInstance().removeStarted(filename);
@@ -434,6 +597,616 @@ public class Client {
         throw new IOException((String)object);
     }
 
+    /*********************************** BEGINNING OF STREAMING PROCEDURES *******************************************/
+
+    //Streams size bytes to all the Dstores at once through a fixed buffer. Nothing can be checked in advance, so the
+    //Controller gets no checksum and compares the ones the Dstores compute while storing
+    public void store(String filename, long size, InputStream inputStream) throws IOException, NotEnoughDstoresException, FileAlreadyExistsException {
+        List<SocketChannel> dstores = this.startStore(filename, size, null, null);
+        try {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            long remaining = size;
+            while (remaining > 0) {
+                int n = inputStream.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if (n == -1) {
+                    throw new EOFException("The stream of file " + filename + " ended " + remaining + " bytes early");
+                }
+                for (SocketChannel dstore : new ArrayList<>(dstores)) {
+                    try {
+                        Client.writeFully(dstore, ByteBuffer.wrap(buffer, 0, n));
+                    }
+                    catch (IOException iOException) {
+                        ClientLogger.getInstance().storeToDstoreFailed(filename, dstore.socket().getPort());
+                        dstore.close();
+                        dstores.remove(dstore);
+                    }
+                }
+                remaining -= n;
+            }
+        }
+        finally {
+            Client.closeAll(filename, dstores);
+        }
+        this.completeStore(filename);
+    }
+
+    //A FileChannel is read twice: once for the checksum and digest, then straight from the page cache to the Dstore
+    //sockets without going through the heap. Other channels are spooled to a temporary file first
+    public void store(String filename, ReadableByteChannel channel) throws IOException, NotEnoughDstoresException, FileAlreadyExistsException {
+        if (!(channel instanceof FileChannel)) {
+            Path spool = Files.createTempFile("client-store-", ".tmp");
+            try (FileChannel fileChannel = FileChannel.open(spool, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    Client.writeFully(fileChannel, buffer);
+                    buffer.clear();
+                }
+                this.store(filename, fileChannel.position(0));
+            }
+            finally {
+                Files.deleteIfExists(spool);
+            }
+            return;
+        }
+
+        FileChannel fileChannel = (FileChannel)channel;
+        long position = fileChannel.position();
+        long size = fileChannel.size() - position;
+        this.storeRegion(filename, fileChannel, position, size);
+        fileChannel.position(position + size);
+    }
+
+    //Stores size bytes of the file channel starting at position under the given name
+    private void storeRegion(String filename, FileChannel fileChannel, long position, long size) throws IOException {
+        CRC32C crc = new CRC32C();
+        MessageDigest sha256 = Client.sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+        for (long offset = 0; offset < size; ) {
+            buffer.clear().limit((int)Math.min(buffer.capacity(), size - offset));
+            int n = fileChannel.read(buffer, position + offset);
+            if (n == -1) {
+                throw new EOFException("The file " + filename + " has been truncated while being stored");
+            }
+            crc.update(buffer.array(), 0, n);
+            sha256.update(buffer.array(), 0, n);
+            offset += n;
+        }
+
+        List<SocketChannel> dstores = this.startStore(filename, size, crc.getValue(), HexFormat.of().formatHex(sha256.digest()));
+        try {
+            for (SocketChannel dstore : dstores) {
+                try {
+                    for (long sent = 0; sent < size; ) {
+                        sent += fileChannel.transferTo(position + sent, size - sent, dstore);
+                    }
+                }
+                catch (IOException iOException) {
+                    ClientLogger.getInstance().storeToDstoreFailed(filename, dstore.socket().getPort());
+                }
+            }
+        }
+        finally {
+            Client.closeAll(filename, dstores);
+        }
+        this.completeStore(filename);
+    }
+
+    //Stores the file as parts of partSize bytes, each one stored and acknowledged on its own within the timeout.
+    //Calling it again after a failure resumes the upload, the Controller answers with the parts still missing
+    public void storeMultipart(File file, long partSize) throws IOException, NotEnoughDstoresException, FileAlreadyExistsException {
+        String filename = file.getName();
+        if (filename.contains(" ")) {
+            String string = "Filename includes spaces (absolute path: " + file.getAbsolutePath() + ")";
+            ClientLogger.getInstance().error(string);
+            throw new IOException(string);
+        }
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+            if (partSize <= 0 || Multipart.numberParts(size, partSize) > Multipart.MAX_PARTS) {
+                String string = "Parts of " + partSize + " bytes would split file " + filename + " into more than " + Multipart.MAX_PARTS + " parts";
+                ClientLogger.getInstance().error(string);
+                throw new IOException(string);
+            }
+            String string = "STORE_MULTIPART " + filename + " " + size + " " + partSize;
+            this.e.println(string);
+            ClientLogger.getInstance().messageSent(this.c.getPort(), string);
+            ClientLogger.getInstance().storeStarted(filename);
+            List<Integer> missing = this.missingParts(filename, this.readControllerLine());
+            for (int index : missing) {
+                long position = index * partSize;
+                this.storeRegion(Multipart.partName(filename, index), fileChannel, position, Math.min(partSize, size - position));
+            }
+
+            string = "STORE_COMMIT ".concat(filename);
+            this.e.println(string);
+            ClientLogger.getInstance().messageSent(this.c.getPort(), string);
+            String reply = this.readControllerLine();
+            if (!reply.trim().equals("STORE_COMPLETE")) {
+                missing = this.missingParts(filename, reply);
+                String string2 = "Upload of file " + filename + " not committed, parts still missing: " + missing;
+                ClientLogger.getInstance().error(string2);
+                throw new IOException(string2);
+            }
+            ClientLogger.getInstance().messageReceived(this.c.getPort(), reply);
+            ClientLogger.getInstance().storeCompleted(filename);
+        }
+    }
+
+    //MULTIPART_PARTS index1 ... or an error
+    private List<Integer> missingParts(String filename, String reply) throws IOException {
+        ClientLogger.getInstance().messageReceived(this.c.getPort(), reply);
+        String[] arrstring = reply.trim().split(" ");
+        if (arrstring[0].equals("ERROR_FILE_ALREADY_EXISTS")) {
+            ClientLogger.getInstance().fileToStoreAlreadyExists(filename);
+            throw new FileAlreadyExistsException(filename);
+        }
+        if (arrstring[0].equals("ERROR_NOT_ENOUGH_DSTORES")) {
+            ClientLogger.getInstance().error("Not enough Dstores have joined the data store yet");
+            throw new NotEnoughDstoresException();
+        }
+        if (!arrstring[0].equals("MULTIPART_PARTS")) {
+            String string = "Unexpected message received (MULTIPART_PARTS was expected): ".concat(reply);
+            ClientLogger.getInstance().error(string);
+            throw new IOException(string);
+        }
+        List<Integer> missing = new ArrayList<>();
+        try {
+            for (int i = 1; i < arrstring.length; ++i) {
+                missing.add(Integer.parseInt(arrstring[i]));
+            }
+        }
+        catch (NumberFormatException numberFormatException) {
+            String string = "Error parsing MULTIPART_PARTS message. Received message: ".concat(reply);
+            ClientLogger.getInstance().error(string);
+            throw new IOException(string);
+        }
+        return missing;
+    }
+
+    //STORE to the Controller, then STORE to every Dstore it names. Returns the connections of the Dstores which have
+    //answered ACK and are waiting for the bytes; a Dstore answering DEDUP_ACK already has them
+    private List<SocketChannel> startStore(String filename, long size, Long checksum, String digest) throws IOException {
+        if (filename.contains(" ")) {
+            String string = "Filename includes spaces (filename: " + filename + ")";
+            ClientLogger.getInstance().error(string);
+            throw new IOException(string);
+        }
+        String controllerMessage = "STORE " + filename + " " + size + (checksum == null ? "" : " " + checksum);
+        this.e.println(controllerMessage);
+        ClientLogger.getInstance().messageSent(this.c.getPort(), controllerMessage);
+        ClientLogger.getInstance().storeStarted(filename);
+        String reply = this.readControllerLine();
+        ClientLogger.getInstance().messageReceived(this.c.getPort(), reply);
+        int[] ports = Client.a(filename, reply);
+        ClientLogger.getInstance().dstoresWhereToStoreTo(filename, ports);
+
+        String dstoreMessage = controllerMessage + (digest == null ? "" : " " + digest);
+        List<SocketChannel> dstores = new ArrayList<>();
+        for (int port : ports) {
+            SocketChannel dstore = null;
+            try {
+                dstore = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+                dstore.socket().setSoTimeout(this.b);
+                ClientLogger.getInstance().connectionEstablished(port);
+                Client.writeFully(dstore, ByteBuffer.wrap((dstoreMessage + "\n").getBytes()));
+                ClientLogger.getInstance().messageSent(port, dstoreMessage);
+                ClientLogger.getInstance().storeToDstoreStarted(filename, port);
+                String answer = Client.readLine(dstore.socket().getInputStream());
+                ClientLogger.getInstance().messageReceived(port, answer);
+                if (answer == null || !answer.trim().equals("ACK") && !answer.trim().equals("DEDUP_ACK")) {
+                    throw new IOException("Unexpected message received from Dstore (ACK was expected): ".concat(String.valueOf(answer)));
+                }
+                ClientLogger.getInstance().ackFromDstore(filename, port);
+                if (answer.trim().equals("ACK")) {
+                    dstores.add(dstore);
+                } else {
+                    dstore.close();
+                }
+            }
+            catch (IOException iOException) {
+                ClientLogger.getInstance().storeToDstoreFailed(filename, port);
+                if (dstore != null) {
+                    dstore.close();
+                }
+            }
+        }
+        return dstores;
+    }
+
+    private void completeStore(String filename) throws IOException {
+        String string = this.readControllerLine();
+        ClientLogger.getInstance().messageReceived(this.c.getPort(), string);
+        if (!string.trim().equals("STORE_COMPLETE")) {
+            String string2 = "Unexpected message received (STORE_COMPLETE was expected): ".concat(string);
+            ClientLogger.getInstance().error(string2);
+            throw new IOException(string2);
+        }
+        ClientLogger.getInstance().storeCompleted(filename);
+    }
+
+    //The returned stream reads the file straight from the Dstore socket and checks its checksum when it reaches the
+    //end. Dstores which cannot be reached are skipped with RELOAD. Erasure coded files are rebuilt in memory
+    public InputStream loadAsStream(String filename) throws IOException, NotEnoughDstoresException, FileDoesNotExistException {
+        if (filename.contains(" ")) {
+            String string = "Filename includes spaces (filename: " + filename + ")";
+            ClientLogger.getInstance().error(string);
+            throw new IOException(string);
+        }
+        this.f = 0;
+        ClientLogger.getInstance().loadStarted(filename);
+        LocationCache.Location location = this.locations.get(filename);
+        String[] arrstring = location != null ? Client.loadFromTokens(location) : this.loadRequest("LOAD ", filename);
+        while (true) {
+            Long epoch = LocationCache.epoch(arrstring);
+            arrstring = LocationCache.withoutEpoch(arrstring);
+            if (arrstring[0].equals("LOAD_FROM_EC")) {
+                return new ByteArrayInputStream(this.loadErasureCoded(filename, arrstring));
+            }
+            if (arrstring[0].equals("LOAD_FROM_PARTS")) {
+                return new PartsInputStream(filename, Client.numberParts(arrstring));
+            }
+            int port;
+            long size;
+            Long expectedChecksum;
+            try {
+                port = Integer.parseInt(arrstring[1]);
+                size = Long.parseLong(arrstring[2]);
+                expectedChecksum = arrstring.length > 3 ? Long.parseLong(arrstring[3]) : null;
+            }
+            catch (RuntimeException runtimeException) {
+                String string = "Error parsing LOAD_FROM message to extract Dstore port and filesize. Received message: ".concat(String.join(" ", arrstring));
+                ClientLogger.getInstance().error(string);
+                throw new IOException(string);
+            }
+            ClientLogger.getInstance().dstoreWhereToLoadFrom(filename, port, (int)Math.min(size, Integer.MAX_VALUE));
+
+            Socket socket = null;
+            try {
+                ++this.f;
+                socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                socket.setSoTimeout(this.b);
+                ClientLogger.getInstance().connectionEstablished(port);
+                String string = "LOAD_DATA ".concat(filename);
+                new PrintWriter(socket.getOutputStream(), true).println(string);
+                ClientLogger.getInstance().messageSent(port, string);
+                ClientLogger.getInstance().loadFromDstore(filename, port);
+                BufferedInputStream inputStream = new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE);
+                //a Dstore which does not have the file closes the connection straight away
+                inputStream.mark(1);
+                if (size > 0 && inputStream.read() == -1) {
+                    throw new EOFException("Dstore " + port + " closed the connection");
+                }
+                inputStream.reset();
+                if (epoch != null) {
+                    this.locations.put(filename, port, size, expectedChecksum, epoch);
+                }
+                return new DstoreInputStream(filename, socket, inputStream, size, expectedChecksum, this.locations);
+            }
+            catch (IOException iOException) {
+                ClientLogger.getInstance().loadFromDstoreFailed(filename, port);
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+            if (location != null) {
+                //the leased location was stale, the Controller is asked as if it had never been leased
+                this.locations.invalidate(filename);
+                location = null;
+                arrstring = this.loadRequest("LOAD ", filename);
+                continue;
+            }
+            ClientLogger.getInstance().retryLoad(filename);
+            arrstring = this.loadRequest("RELOAD ", filename);
+        }
+    }
+
+    public void load(String filename, WritableByteChannel channel) throws IOException, NotEnoughDstoresException, FileDoesNotExistException {
+        try (InputStream inputStream = this.loadAsStream(filename)) {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int n;
+            while ((n = inputStream.read(buffer)) != -1) {
+                Client.writeFully(channel, ByteBuffer.wrap(buffer, 0, n));
+            }
+        }
+    }
+
+    //the optional LOAD_FROM fields this client reads, asked for at the end of LOAD and RELOAD. The epoch is only
+    //of use while locations are leased
+    private String loadCapabilities() {
+        return this.locations.getLease() > 0 ? " +checksum,epoch" : " +checksum";
+    }
+
+    private static String[] loadFromTokens(LocationCache.Location location) {
+        if (location.checksum == null) {
+            return new String[]{"LOAD_FROM", String.valueOf(location.port), String.valueOf(location.fileSize)};
+        }
+        return new String[]{"LOAD_FROM", String.valueOf(location.port), String.valueOf(location.fileSize), String.valueOf(location.checksum)};
+    }
+
+    //LOAD or RELOAD; returns the LOAD_FROM or LOAD_FROM_EC tokens
+    private String[] loadRequest(String command, String filename) throws IOException {
+        String string = command.concat(filename).concat(this.loadCapabilities());
+        this.e.println(string);
+        ClientLogger.getInstance().messageSent(this.c.getPort(), string);
+        String reply = this.readControllerLine();
+        ClientLogger.getInstance().messageReceived(this.c.getPort(), reply);
+        String[] arrstring = reply.split(" ");
+        if (arrstring[0].equals("ERROR_LOAD")) {
+            ClientLogger.getInstance().loadFailed(filename, this.f);
+            throw new IOException("Load operation for file " + filename + " failed after having contacted " + this.f + " different Dstores");
+        }
+        if (arrstring[0].equals("ERROR_FILE_DOES_NOT_EXIST")) {
+            ClientLogger.getInstance().fileToLoadDoesNotExist(filename);
+            throw new FileDoesNotExistException(filename);
+        }
+        if (arrstring[0].equals("ERROR_NOT_ENOUGH_DSTORES")) {
+            ClientLogger.getInstance().error("Not enough Dstores have joined the data store yet");
+            throw new NotEnoughDstoresException();
+        }
+        if (!arrstring[0].equals("LOAD_FROM") && !arrstring[0].equals("LOAD_FROM_EC") && !arrstring[0].equals("LOAD_FROM_PARTS")) {
+            String string2 = "Unexpected message received (unxpected message: LOAD_FROM): ".concat(reply);
+            ClientLogger.getInstance().error(string2);
+            throw new IOException(string2);
+        }
+        return arrstring;
+    }
+
+    private String readControllerLine() throws IOException {
+        String string;
+        try {
+            string = this.d.readLine();
+        }
+        catch (SocketTimeoutException socketTimeoutException) {
+            ClientLogger.getInstance().timeoutExpiredWhileReading(this.c.getPort());
+            throw socketTimeoutException;
+        }
+        if (string == null) {
+            String string2 = "Connection closed by the Controller";
+            ClientLogger.getInstance().error(string2);
+            throw new IOException(string2);
+        }
+        return string;
+    }
+
+    //Reads up to the new line one byte at a time, so nothing following the line is consumed
+    private static String readLine(InputStream inputStream) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = inputStream.read()) != '\n') {
+            if (c == -1) {
+                return line.length() == 0 ? null : line.toString();
+            }
+            if (c != '\r') {
+                line.append((char)c);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void closeAll(String filename, List<SocketChannel> dstores) throws IOException {
+        for (SocketChannel dstore : dstores) {
+            ClientLogger.getInstance().storeToDstoreCompleted(filename, dstore.socket().getPort());
+            dstore.close();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+
+    //Exactly size bytes of a file coming from a Dstore, checked against the checksum once they have all been read
+    private static final class DstoreInputStream
+    extends FilterInputStream {
+        private final String filename;
+        private final Socket socket;
+        private final Long expectedChecksum;
+        private final LocationCache locations;
+        private final CRC32C crc = new CRC32C();
+        private long remaining;
+
+        private DstoreInputStream(String filename, Socket socket, InputStream inputStream, long size, Long expectedChecksum, LocationCache locations) {
+            super(inputStream);
+            this.filename = filename;
+            this.socket = socket;
+            this.remaining = size;
+            this.expectedChecksum = expectedChecksum;
+            this.locations = locations;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.remaining == 0) {
+                return -1;
+            }
+            int n = this.in.read(b, off, (int)Math.min(len, this.remaining));
+            if (n == -1) {
+                this.locations.invalidate(this.filename);
+                throw new EOFException("The Dstore closed the connection " + this.remaining + " bytes before the end of file " + this.filename);
+            }
+            this.crc.update(b, off, n);
+            this.remaining -= n;
+            if (this.remaining == 0 && this.expectedChecksum != null && this.expectedChecksum != this.crc.getValue()) {
+                this.locations.invalidate(this.filename);
+                throw new IOException("Checksum mismatch for file " + this.filename + " loaded from Dstore " + this.socket.getPort());
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] b = new byte[(int)Math.min(n, STREAM_BUFFER_SIZE)];
+            int read = this.read(b, 0, b.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int)Math.min(this.in.available(), this.remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.socket.close();
+        }
+    }
+
+    //LOAD_FROM_PARTS numberParts partsize filesize [checksum]; every part is an ordinary file loaded on its own
+    private byte[] loadParts(String filename, String[] arrstring) throws IOException {
+        long fileSize;
+        Long expectedChecksum;
+        try {
+            fileSize = Long.parseLong(arrstring[3]);
+            expectedChecksum = arrstring.length > 4 ? Long.parseLong(arrstring[4]) : null;
+        }
+        catch (RuntimeException runtimeException) {
+            String string = "Error parsing LOAD_FROM_PARTS message. Received message: ".concat(String.join(" ", arrstring));
+            ClientLogger.getInstance().error(string);
+            throw new IOException(string);
+        }
+        if (fileSize > Integer.MAX_VALUE - 8) {
+            throw new IOException("The file " + filename + " is too big to be loaded in memory, use loadAsStream instead");
+        }
+        byte[] data = new byte[(int)fileSize];
+        int offset = 0;
+        for (int i = 0, n = Client.numberParts(arrstring); i < n; ++i) {
+            byte[] part = this.load(Multipart.partName(filename, i));
+            if (offset + part.length > data.length) {
+                throw new IOException("The parts of file " + filename + " are bigger than the file");
+            }
+            System.arraycopy(part, 0, data, offset, part.length);
+            offset += part.length;
+        }
+        if (offset != data.length || expectedChecksum != null && expectedChecksum != Client.checksum(data)) {
+            String string = "Checksum mismatch for multipart file ".concat(filename);
+            ClientLogger.getInstance().error(string);
+            throw new IOException(string);
+        }
+        return data;
+    }
+
+    private static int numberParts(String[] arrstring) throws IOException {
+        try {
+            return Integer.parseInt(arrstring[1]);
+        }
+        catch (RuntimeException runtimeException) {
+            throw new IOException("Error parsing LOAD_FROM_PARTS message. Received message: ".concat(String.join(" ", arrstring)));
+        }
+    }
+
+    //The parts of a multipart file one after the other, each one is only requested once the previous one has been read
+    private final class PartsInputStream
+    extends InputStream {
+        private final String filename;
+        private final int numberParts;
+        private int nextPart;
+        private InputStream current;
+
+        private PartsInputStream(String filename, int numberParts) {
+            this.filename = filename;
+            this.numberParts = numberParts;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (true) {
+                if (this.current == null) {
+                    if (this.nextPart == this.numberParts) {
+                        return -1;
+                    }
+                    this.current = Client.this.loadAsStream(Multipart.partName(this.filename, this.nextPart++));
+                }
+                int n = this.current.read(b, off, len);
+                if (n != -1) {
+                    return n;
+                }
+                this.current.close();
+                this.current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.current != null) {
+                this.current.close();
+            }
+            this.nextPart = this.numberParts;
+        }
+    }
+
+    /************************************** END OF STREAMING PROCEDURES *******************************************/
+
+    private static long checksum(byte[] data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    //DATA codec length followed by length bytes encoded with codec
+    private static byte[] readData(InputStream inputStream, int n) throws IOException {
+        StringBuilder header = new StringBuilder();
+        int c;
+        while ((c = inputStream.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                header.append((char)c);
+            }
+        }
+        String[] arrstring = header.toString().split(" ");
+        if (arrstring.length != 3 || !arrstring[0].equals("DATA")) {
+            throw new IOException("Unexpected message received from Dstore (DATA was expected): ".concat(header.toString()));
+        }
+        byte[] stored;
+        try {
+            stored = inputStream.readNBytes(Integer.parseInt(arrstring[2]));
+        }
+        catch (NumberFormatException numberFormatException) {
+            throw new IOException("Error parsing DATA message to extract the length. Received message: ".concat(header.toString()));
+        }
+        if (arrstring[1].equals("DEFLATE")) {
+            try (InflaterInputStream inflaterInputStream = new InflaterInputStream(new ByteArrayInputStream(stored))) {
+                return inflaterInputStream.readNBytes(n);
+            }
+        }
+        return stored;
+    }
+
+    private static String digest(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        }
+        catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+
     private final class a
     extends IOException {
         private static final long serialVersionUID = -5505350949933067170L;
@@ -9,6 +9,15 @@ public enum ClientCommands {
     REMOVE_COMPLETE,
     ERROR_NOT_ENOUGH_DSTORES,
     LIST,
+    STORE_TO_EC,
+    LOAD_FROM_EC,
+    DEDUP_ACK,
+    DATA,
+    MULTIPART_PARTS,
+    LOAD_FROM_PARTS,
+    STORE_TO_BATCH,
+    LOAD_FROM_BATCH,
+    BATCH_COMPLETE,
     NoCommand;
 
 
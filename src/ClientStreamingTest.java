@@ -0,0 +1,148 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ClientStreamingTest {
+
+    private static final int NUMBER_DSTORES = 3;
+    private static final int TIMEOUT = 2000;
+
+    private int controllerPort;
+    private final List<File> folders = new ArrayList<>();
+    private Client client;
+
+    @BeforeAll
+    void startCluster() throws IOException, InterruptedException {
+        controllerPort = freePort();
+        Controller controller = new Controller(controllerPort, 2, TIMEOUT, 300000000);
+        controller.setCanRebalance(false);
+        controller.start();
+        Thread.sleep(1000);
+
+        for (int i = 0; i < NUMBER_DSTORES; i++) {
+            File folder = Files.createTempDirectory("dstore").toFile();
+            folders.add(folder);
+            Dstore dstore = new Dstore(freePort(), controllerPort, TIMEOUT, folder.getPath());
+            Thread thread = new Thread(dstore::start);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Thread.sleep(2000);
+        Assertions.assertEquals(NUMBER_DSTORES, controller.getDstorePorts().size());
+
+        client = new Client(controllerPort, TIMEOUT, Logger.LoggingType.ON_FILE_AND_TERMINAL);
+        client.connect();
+    }
+
+    @AfterAll
+    void stopClient() throws IOException {
+        client.disconnect();
+        for (File folder : folders) {
+            deleteDir(folder);
+        }
+    }
+
+    /*********************************BEGINNING OF TESTS FOR STREAMING****************************/
+
+    //the files are bigger than the buffer they are streamed through
+    @Test
+    void testStoreFromStreamAndLoadAsStream() throws Exception {
+        byte[] data = content(300 * 1024);
+        client.store("streamed.bin", data.length, new ByteArrayInputStream(data));
+
+        try (InputStream inputStream = client.loadAsStream("streamed.bin")) {
+            Assertions.assertArrayEquals(data, inputStream.readAllBytes());
+        }
+        Assertions.assertArrayEquals(data, client.load("streamed.bin"));
+    }
+
+    @Test
+    void testStoreFromChannelAndLoadToChannel() throws Exception {
+        byte[] data = content(200 * 1024 + 17);
+        Path source = Files.createTempFile("source", ".bin");
+        Path target = Files.createTempFile("target", ".bin");
+        try {
+            Files.write(source, data);
+            try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                client.store("channel.bin", channel);
+            }
+            //a channel which is not a FileChannel is spooled first
+            client.store("spooled.bin", Channels.newChannel(new ByteArrayInputStream(data)));
+
+            for (String fileName : List.of("channel.bin", "spooled.bin")) {
+                try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    client.load(fileName, channel);
+                }
+                Assertions.assertArrayEquals(data, Files.readAllBytes(target));
+            }
+        } finally {
+            Files.delete(source);
+            Files.delete(target);
+        }
+    }
+
+    @Test
+    void testStreamEndingEarlyIsNotStored() throws Exception {
+        byte[] data = content(1000);
+        Assertions.assertThrows(EOFException.class, () -> client.store("short.bin", 2000, new ByteArrayInputStream(data)));
+        Assertions.assertFalse(Arrays.asList(client.list()).contains("short.bin"));
+    }
+
+    //the checksum can only be verified once the whole file has gone through the stream
+    @Test
+    void testCorruptedReplicasFailAtTheEndOfTheStream() throws Exception {
+        byte[] data = content(100 * 1024);
+        client.store("corrupted.bin", data.length, new ByteArrayInputStream(data));
+        byte[] corrupted = data.clone();
+        corrupted[corrupted.length - 1]++;
+        for (File folder : folders) {
+            File replica = new File(folder, "corrupted.bin");
+            if (replica.exists())
+                Files.write(replica.toPath(), corrupted);
+        }
+
+        try (InputStream inputStream = client.loadAsStream("corrupted.bin")) {
+            byte[] buffer = new byte[data.length - 1];
+            Assertions.assertEquals(buffer.length, inputStream.readNBytes(buffer, 0, buffer.length));
+            Assertions.assertThrows(IOException.class, inputStream::read);
+        }
+    }
+
+    /************************************END OF TESTS FOR STREAMING********************************/
+
+
+    private byte[] content(int size) {
+        byte[] bytes = new byte[size];
+        byte[] pattern = "streamed through a fixed buffer ".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < size; i++) {
+            bytes[i] = pattern[i % pattern.length];
+        }
+        return bytes;
+    }
+
+    private int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+}
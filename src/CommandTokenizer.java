@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommandTokenizer {
+
+    //Known commands are bucketed by length and first character, so recognising one costs a couple of byte comparisons
+    //and the command token of a message is always the shared Protocol constant instead of a new string
+    private static final int MAX_COMMAND_LENGTH = 32;
+    private static final String[][] COMMANDS = new String[(MAX_COMMAND_LENGTH + 1) * 128][];
+
+    static {
+        List<String> commands = new ArrayList<>(BinaryFrameCodec.commands());
+        commands.add(Protocol.BINARY_TOKEN);
+        for (String command : commands) {
+            int bucket = bucket(command.length(), command.charAt(0));
+            String[] known = COMMANDS[bucket] == null ? new String[0] : COMMANDS[bucket];
+            String[] extended = new String[known.length + 1];
+            System.arraycopy(known, 0, extended, 0, known.length);
+            extended[known.length] = command;
+            COMMANDS[bucket] = extended;
+        }
+    }
+
+    private byte[] line = new byte[256];
+    private int[] ends = new int[16];   //ends[i] is the offset right after the i-th token
+
+    /*********************************** BEGINNING OF TOKENIZATION *******************************************/
+
+    //Reads one line and splits it on single spaces in the same pass, like String.split(" ") does: trailing empty
+    //tokens are dropped. Nothing past the new line is consumed, the bytes following a message may be raw file content.
+    //Returns null if the stream ends before a new line starts
+    public String[] readTokens(InputStream in) throws IOException {
+        int length = 0;
+        int tokens = 0;
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                if (length == 0)
+                    return null;
+                break;
+            }
+            if (b == ' ') {
+                tokens = addToken(tokens, length);
+            } else {
+                if (length == line.length)
+                    line = grow(line);
+                line[length++] = (byte) b;
+            }
+        }
+        if (length > 0 && line[length - 1] == '\r' && b == '\n')
+            length--;
+        tokens = addToken(tokens, length);
+
+        while (tokens > 1 && ends[tokens - 1] == ends[tokens - 2])
+            tokens--;
+
+        //the command is the first token after the trace context and the correlation ID, if any
+        String[] splitted = new String[tokens];
+        int start = 0;
+        boolean beforeCommand = true;
+        for (int i = 0; i < tokens; i++) {
+            if (beforeCommand) {
+                splitted[i] = token(line, start, ends[i]);
+                beforeCommand = start < ends[i] && (line[start] == Tracing.CONTEXT_PREFIX.charAt(0) || line[start] == Protocol.REQUEST_ID_PREFIX.charAt(0));
+            } else {
+                splitted[i] = new String(line, start, ends[i] - start, StandardCharsets.UTF_8);
+            }
+            start = ends[i];
+        }
+        return splitted;
+    }
+
+    private int addToken(int tokens, int end) {
+        if (tokens == ends.length) {
+            int[] extended = new int[ends.length * 2];
+            System.arraycopy(ends, 0, extended, 0, ends.length);
+            ends = extended;
+        }
+        ends[tokens] = end;
+        return tokens + 1;
+    }
+
+    private static byte[] grow(byte[] bytes) {
+        byte[] extended = new byte[bytes.length * 2];
+        System.arraycopy(bytes, 0, extended, 0, bytes.length);
+        return extended;
+    }
+
+    private static String token(byte[] bytes, int start, int end) {
+        String command = command(bytes, start, end - start);
+        return command != null ? command : new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /************************************** END OF TOKENIZATION *******************************************/
+
+
+    /*********************************** BEGINNING OF COMMAND LOOKUP *******************************************/
+
+    //The Protocol constant spelled by the given bytes, null if they are not a known command
+    public static String command(byte[] bytes, int offset, int length) {
+        if (length == 0 || length > MAX_COMMAND_LENGTH || bytes[offset] < 0)
+            return null;
+        String[] candidates = COMMANDS[bucket(length, bytes[offset])];
+        if (candidates == null)
+            return null;
+        for (String candidate : candidates) {
+            if (matches(candidate, bytes, offset))
+                return candidate;
+        }
+        return null;
+    }
+
+    private static boolean matches(String command, byte[] bytes, int offset) {
+        for (int i = 1; i < command.length(); i++) {
+            if (command.charAt(i) != bytes[offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    private static int bucket(int length, int firstCharacter) {
+        return length * 128 + (firstCharacter & 0x7F);
+    }
+
+    /************************************** END OF COMMAND LOOKUP *******************************************/
+}
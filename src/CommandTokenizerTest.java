@@ -0,0 +1,102 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CommandTokenizerTest {
+
+    /*********************************BEGINNING OF TESTS FOR TOKENIZATION****************************/
+
+    //the tokens are the ones String.split(" ") gives for the line without its line separator
+    @ParameterizedTest
+    @MethodSource("argumentsForTestSplitsLikeStringSplit")
+    void testSplitsLikeStringSplit(String line) throws IOException {
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        InputStream in = new ByteArrayInputStream((line + "\n").getBytes(StandardCharsets.UTF_8));
+        Assertions.assertArrayEquals(line.split(" "), tokenizer.readTokens(in));
+        Assertions.assertNull(tokenizer.readTokens(in));
+    }
+
+    Stream<Arguments> argumentsForTestSplitsLikeStringSplit(){
+        return Stream.of(
+                Arguments.of("LIST"),
+                Arguments.of(""),
+                Arguments.of("STORE hello.txt 1234"),
+                Arguments.of("STORE hello.txt 1234 "),
+                Arguments.of("STORE  hello.txt"),
+                Arguments.of(" LIST"),
+                Arguments.of("LOAD fichier-\u00e9-\u65e5\u672c.txt"),
+                Arguments.of("NOT_A_COMMAND argument"),
+                Arguments.of("LIST " + "name ".repeat(100) + "x".repeat(1000))
+        );
+    }
+
+    @Test
+    void testLineSeparators() throws IOException {
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        InputStream in = new ByteArrayInputStream("STORE a.txt 3\r\nLIST\nREMOVE a.txt".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertArrayEquals(new String[]{"STORE", "a.txt", "3"}, tokenizer.readTokens(in));
+        Assertions.assertArrayEquals(new String[]{"LIST"}, tokenizer.readTokens(in));
+        //the last line of a stream may have no separator
+        Assertions.assertArrayEquals(new String[]{"REMOVE", "a.txt"}, tokenizer.readTokens(in));
+        Assertions.assertNull(tokenizer.readTokens(in));
+    }
+
+    @Test
+    void testNothingPastTheLineIsConsumed() throws IOException {
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        byte[] content = {0, 1, 2, (byte) 0xFF, '\n'};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("STORE a.txt 5\n".getBytes(StandardCharsets.UTF_8));
+        out.write(content);
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+
+        Assertions.assertArrayEquals(new String[]{"STORE", "a.txt", "5"}, tokenizer.readTokens(in));
+        Assertions.assertArrayEquals(content, in.readNBytes(content.length));
+    }
+
+    /************************************END OF TESTS FOR TOKENIZATION********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR COMMAND LOOKUP****************************/
+
+    @Test
+    void testCommandsAreTheProtocolConstants() throws IOException {
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        for (String command : BinaryFrameCodec.commands()) {
+            String[] tokens = tokenizer.readTokens(new ByteArrayInputStream((command + " argument\n").getBytes(StandardCharsets.UTF_8)));
+            Assertions.assertSame(command, tokens[0]);
+        }
+        String[] tokens = tokenizer.readTokens(new ByteArrayInputStream((Protocol.BINARY_TOKEN + "\n").getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertSame(Protocol.BINARY_TOKEN, tokens[0]);
+    }
+
+    @Test
+    void testCommandFollowsTraceContextAndRequestId() throws IOException {
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        String line = Tracing.CONTEXT_PREFIX + "1-2 " + Protocol.REQUEST_ID_PREFIX + "7 " + Protocol.STORE_TOKEN + " " + Protocol.LIST_TOKEN + "\n";
+        String[] tokens = tokenizer.readTokens(new ByteArrayInputStream(line.getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(4, tokens.length);
+        Assertions.assertSame(Protocol.STORE_TOKEN, tokens[2]);
+        //an argument spelled like a command is not the Protocol constant
+        Assertions.assertEquals(Protocol.LIST_TOKEN, tokens[3]);
+        Assertions.assertNotSame(Protocol.LIST_TOKEN, tokens[3]);
+    }
+
+    @Test
+    void testCommandLookup() {
+        byte[] bytes = ("x" + Protocol.REMOVE_TOKEN + "x").getBytes(StandardCharsets.US_ASCII);
+        Assertions.assertSame(Protocol.REMOVE_TOKEN, CommandTokenizer.command(bytes, 1, Protocol.REMOVE_TOKEN.length()));
+        Assertions.assertNull(CommandTokenizer.command(bytes, 1, Protocol.REMOVE_TOKEN.length() - 1));
+        Assertions.assertNull(CommandTokenizer.command(bytes, 0, 0));
+        Assertions.assertNull(CommandTokenizer.command("\u00e9t\u00e9".getBytes(StandardCharsets.UTF_8), 0, 5));
+    }
+
+    /************************************END OF TESTS FOR COMMAND LOOKUP********************************/
+}
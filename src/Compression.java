@@ -0,0 +1,110 @@
+import java.io.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public class Compression {
+
+    //The first block of every object is compressed once to decide whether the whole object is worth compressing
+    public static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int MIN_SAMPLE_SIZE = 512;
+    private static final double MAX_RATIO = 0.9;  //the sample must shrink by at least 10%
+
+    //How hard the Dstore tries: FAST favours throughput, DENSE favours disk and network savings
+    public enum Mode {
+        OFF(Deflater.NO_COMPRESSION),
+        FAST(Deflater.BEST_SPEED),
+        DENSE(Deflater.BEST_COMPRESSION);
+
+        public final int level;
+
+        Mode(int level){
+            this.level = level;
+        }
+    }
+
+    //How an object is stored on disk. Every Mode produces the same zlib stream so any reader can inflate it
+    public enum Codec {
+        NONE,
+        DEFLATE
+    }
+
+    /************************************ BEGINNING OF CODEC SELECTION ******************************************/
+
+    public static Codec choose(byte[] sample, int length, Mode mode){
+        if(mode == Mode.OFF || length < MIN_SAMPLE_SIZE)
+            return Codec.NONE;
+
+        Deflater deflater = new Deflater(mode.level);
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[length];
+            int compressed = 0;
+            while(!deflater.finished() && compressed < length * MAX_RATIO){
+                compressed += deflater.deflate(buffer);
+            }
+            return compressed < length * MAX_RATIO ? Codec.DEFLATE : Codec.NONE;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static Codec parseCodec(String codec){
+        for(Codec value : Codec.values()){
+            if(value.toString().equalsIgnoreCase(codec))
+                return value;
+        }
+        return null;
+    }
+
+    public static Mode parseMode(String mode){
+        for(Mode value : Mode.values()){
+            if(value.toString().equalsIgnoreCase(mode))
+                return value;
+        }
+        return Mode.OFF;
+    }
+
+    /************************************** END OF CODEC SELECTION ******************************************/
+
+
+    /************************************** BEGINNING OF STREAMS ********************************************/
+
+    public static OutputStream compress(OutputStream out, Codec codec, Mode mode){
+        if(codec == Codec.NONE)
+            return out;
+
+        Deflater deflater = new Deflater(mode.level);
+        return new DeflaterOutputStream(out, deflater, 8192){
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();  //a Deflater given to the stream is not released by it
+                }
+            }
+        };
+    }
+
+    public static InputStream decompress(InputStream in, Codec codec){
+        if(codec == Codec.NONE)
+            return in;
+
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, 8192){
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**************************************** END OF STREAMS ********************************************/
+}
@@ -0,0 +1,141 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CompressionTest {
+
+    private File folder;
+
+    @BeforeEach
+    void createFolder() throws IOException {
+        folder = Files.createTempDirectory("compression").toFile();
+    }
+
+    @AfterEach
+    void deleteFolder() {
+        deleteDir(folder);
+    }
+
+    /*********************************BEGINNING OF TESTS FOR CODEC SELECTION****************************/
+
+    @Test
+    void testCodecChoice() {
+        byte[] text = textBytes(Compression.SAMPLE_SIZE);
+        byte[] random = randomBytes(Compression.SAMPLE_SIZE);
+        Assertions.assertEquals(Compression.Codec.DEFLATE, Compression.choose(text, text.length, Compression.Mode.FAST));
+        Assertions.assertEquals(Compression.Codec.DEFLATE, Compression.choose(text, text.length, Compression.Mode.DENSE));
+        Assertions.assertEquals(Compression.Codec.NONE, Compression.choose(text, text.length, Compression.Mode.OFF));
+        Assertions.assertEquals(Compression.Codec.NONE, Compression.choose(random, random.length, Compression.Mode.DENSE));
+        //too small a sample is not worth deciding on
+        Assertions.assertEquals(Compression.Codec.NONE, Compression.choose(text, 100, Compression.Mode.DENSE));
+    }
+
+    @Test
+    void testParsing() {
+        Assertions.assertEquals(Compression.Mode.FAST, Compression.parseMode("fast"));
+        Assertions.assertEquals(Compression.Mode.DENSE, Compression.parseMode("DENSE"));
+        Assertions.assertEquals(Compression.Mode.OFF, Compression.parseMode("unknown"));
+        Assertions.assertEquals(Compression.Codec.DEFLATE, Compression.parseCodec("deflate"));
+        Assertions.assertNull(Compression.parseCodec("zstd"));
+    }
+
+    /************************************END OF TESTS FOR CODEC SELECTION********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR COMPRESSED STORAGE****************************/
+
+    @ParameterizedTest
+    @MethodSource("argumentsForTestCompressedStoreRoundTrip")
+    void testCompressedStoreRoundTrip(Compression.Mode mode, boolean dedup, int size) throws IOException {
+        byte[] bytes = textBytes(size);
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        DstoreStorage storage = new DstoreStorage(folder, catalog, dedup);
+        storage.setCompression(mode);
+
+        long checksum = storage.write("hello.txt", new ByteArrayInputStream(bytes), bytes.length, DstoreCatalog.checksum(bytes));
+        DstoreCatalog.CatalogEntry entry = catalog.get("hello.txt");
+        //sizes and checksums are always the ones of the logical content
+        Assertions.assertEquals(DstoreCatalog.checksum(bytes), checksum);
+        Assertions.assertEquals(size, entry.size);
+        Assertions.assertEquals(storage.locate("hello.txt").length(), entry.storedSize);
+        Assertions.assertEquals(Compression.Codec.DEFLATE, entry.codec);
+        Assertions.assertTrue(entry.storedSize < size);
+        try (InputStream in = storage.open("hello.txt")) {
+            Assertions.assertArrayEquals(bytes, in.readAllBytes());
+        }
+    }
+
+    Stream<Arguments> argumentsForTestCompressedStoreRoundTrip(){
+        return Stream.of(
+                Arguments.of(Compression.Mode.FAST, false, 1000),
+                Arguments.of(Compression.Mode.DENSE, false, Compression.SAMPLE_SIZE),
+                Arguments.of(Compression.Mode.FAST, false, 3 * Compression.SAMPLE_SIZE + 17),
+                Arguments.of(Compression.Mode.DENSE, true, 3 * Compression.SAMPLE_SIZE + 17)
+        );
+    }
+
+    @Test
+    void testIncompressibleContentIsStoredAsIs() throws IOException {
+        byte[] bytes = randomBytes(2 * Compression.SAMPLE_SIZE);
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        DstoreStorage storage = new DstoreStorage(folder, catalog, false);
+        storage.setCompression(Compression.Mode.DENSE);
+
+        storage.write("random.bin", bytes);
+        Assertions.assertEquals(Compression.Codec.NONE, catalog.get("random.bin").codec);
+        Assertions.assertArrayEquals(bytes, Files.readAllBytes(storage.locate("random.bin").toPath()));
+    }
+
+    @Test
+    void testCodecSurvivesRestart() throws IOException {
+        byte[] bytes = textBytes(10000);
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        DstoreStorage storage = new DstoreStorage(folder, catalog, false);
+        storage.setCompression(Compression.Mode.FAST);
+        storage.write("hello.txt", bytes);
+
+        DstoreCatalog restarted = new DstoreCatalog(folder);
+        DstoreStorage restartedStorage = new DstoreStorage(folder, restarted, false);
+        restartedStorage.recover();
+        Assertions.assertEquals(Compression.Codec.DEFLATE, restarted.get("hello.txt").codec);
+        try (InputStream in = restartedStorage.open("hello.txt")) {
+            Assertions.assertArrayEquals(bytes, in.readAllBytes());
+        }
+    }
+
+    /************************************END OF TESTS FOR COMPRESSED STORAGE********************************/
+
+
+    private byte[] textBytes(int size) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < size; i++) {
+            text.append("line ").append(i % 100).append(" of a text file which compresses well\n");
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+}
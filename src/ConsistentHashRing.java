@@ -0,0 +1,101 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ConsistentHashRing {
+
+    //Every Dstore is hashed onto a ring of 64 bit positions at virtualNodes points, and the replicas of a file go to the
+    //first distinct Dstores met walking the ring clockwise from the hash of its name. Finding them is a lookup in the
+    //ring, whatever the number of files, and a Dstore joining or leaving only takes over or hands back the files next
+    //to its points, about 1/N of them. The positions only depend on the ports and file names, so two rings of the
+    //same Dstores place every file alike
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+    private final TreeMap<Long,Integer> ring;  //position -> port of the Dstore
+    private int numberDstores;
+
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = Math.max(1, virtualNodes);
+        this.ring = new TreeMap<>();
+    }
+
+    public ConsistentHashRing(int virtualNodes, Collection<Integer> ports) {
+        this(virtualNodes);
+        for (int port : ports) {
+            add(port);
+        }
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /*********************************** BEGINNING OF MEMBERSHIP *******************************************/
+
+    public synchronized void add(int port) {
+        if (ring.containsValue(port))
+            return;
+        for (int i = 0; i < virtualNodes; i++) {
+            //two points colliding is very unlikely, the first Dstore keeps it
+            ring.putIfAbsent(hash(port + "#" + i), port);
+        }
+        numberDstores++;
+    }
+
+    public synchronized void remove(int port) {
+        if (ring.values().removeIf(p -> p == port))
+            numberDstores--;
+    }
+
+    public synchronized int size() {
+        return numberDstores;
+    }
+
+    /************************************** END OF MEMBERSHIP *******************************************/
+
+    /*********************************** BEGINNING OF PLACEMENT *******************************************/
+
+    //The n Dstores the file is to be stored on, fewer if there are not that many
+    public synchronized List<Integer> replicas(String fileName, int n) {
+        List<Integer> ports = new ArrayList<>(n);
+        if (ring.isEmpty())
+            return ports;
+        n = Math.min(n, numberDstores);
+        long position = hash(fileName);
+        for (Map.Entry<Long,Integer> point : ring.tailMap(position, true).entrySet()) {
+            if (ports.size() == n)
+                return ports;
+            if (!ports.contains(point.getValue()))
+                ports.add(point.getValue());
+        }
+        for (Map.Entry<Long,Integer> point : ring.headMap(position, false).entrySet()) {
+            if (ports.size() == n)
+                return ports;
+            if (!ports.contains(point.getValue()))
+                ports.add(point.getValue());
+        }
+        return ports;
+    }
+
+    //64 bit FNV-1a of the UTF-8 bytes, then the finaliser of SplitMix64 spreads the names differing in a few bytes
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /************************************** END OF PLACEMENT *******************************************/
+}
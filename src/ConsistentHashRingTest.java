@@ -0,0 +1,147 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ConsistentHashRingTest {
+
+    private static final int NUMBER_FILES = 10000;
+
+    /*********************************BEGINNING OF TESTS FOR PLACEMENT****************************/
+
+    @ParameterizedTest
+    @MethodSource("argumentsForTestReplicasAreDistinct")
+    void testReplicasAreDistinct(int numberDstores, int n) {
+        ConsistentHashRing ring = new ConsistentHashRing(ConsistentHashRing.DEFAULT_VIRTUAL_NODES, ports(numberDstores));
+        for (int i = 0; i < 1000; i++) {
+            List<Integer> replicas = ring.replicas("file" + i, n);
+            Assertions.assertEquals(Math.min(n, numberDstores), replicas.size());
+            Assertions.assertEquals(replicas.size(), new HashSet<>(replicas).size());
+        }
+    }
+
+    Stream<Arguments> argumentsForTestReplicasAreDistinct(){
+        return Stream.of(
+                Arguments.of(1, 1),
+                Arguments.of(3, 3),
+                Arguments.of(10, 3),
+                Arguments.of(2, 3)
+        );
+    }
+
+    @Test
+    void testSameDstoresPlaceFilesAlike() {
+        List<Integer> ports = ports(5);
+        ConsistentHashRing ring = new ConsistentHashRing(ConsistentHashRing.DEFAULT_VIRTUAL_NODES, ports);
+        List<Integer> reversed = new ArrayList<>(ports);
+        Collections.reverse(reversed);
+        ConsistentHashRing other = new ConsistentHashRing(ConsistentHashRing.DEFAULT_VIRTUAL_NODES, reversed);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(ring.replicas("file" + i, 3), other.replicas("file" + i, 3));
+        }
+        Assertions.assertEquals(ConsistentHashRing.hash("file0"), ConsistentHashRing.hash("file0"));
+        Assertions.assertNotEquals(ConsistentHashRing.hash("file0"), ConsistentHashRing.hash("file1"));
+    }
+
+    @Test
+    void testFilesAreSpreadEvenly() {
+        int numberDstores = 10;
+        ConsistentHashRing ring = new ConsistentHashRing(ConsistentHashRing.DEFAULT_VIRTUAL_NODES, ports(numberDstores));
+        Map<Integer,Integer> numberFiles = new HashMap<>();
+        for (int i = 0; i < NUMBER_FILES; i++) {
+            numberFiles.merge(ring.replicas("file" + i, 1).get(0), 1, Integer::sum);
+        }
+        double mean = NUMBER_FILES / (double) numberDstores;
+        for (int files : numberFiles.values()) {
+            Assertions.assertTrue(files > mean * 0.7 && files < mean * 1.3, numberFiles.toString());
+        }
+    }
+
+    @Test
+    void testEmptyRing() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        Assertions.assertEquals(List.of(), ring.replicas("file", 3));
+        Assertions.assertEquals(0, ring.size());
+    }
+
+    /************************************END OF TESTS FOR PLACEMENT********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR MEMBERSHIP****************************/
+
+    //only the files the new Dstore takes over change place, about 1/N of them
+    @Test
+    void testJoiningDstoreOnlyTakesFiles() {
+        ConsistentHashRing ring = new ConsistentHashRing(ConsistentHashRing.DEFAULT_VIRTUAL_NODES, ports(9));
+        List<List<Integer>> before = placement(ring, 3);
+        int joining = 20000;
+        ring.add(joining);
+        List<List<Integer>> after = placement(ring, 3);
+
+        int moved = 0;
+        for (int i = 0; i < NUMBER_FILES; i++) {
+            Set<Integer> lost = new HashSet<>(before.get(i));
+            lost.removeAll(after.get(i));
+            Set<Integer> gained = new HashSet<>(after.get(i));
+            gained.removeAll(before.get(i));
+            if (gained.isEmpty())
+                continue;
+            Assertions.assertEquals(Set.of(joining), gained);
+            Assertions.assertEquals(1, lost.size());
+            moved++;
+        }
+        Assertions.assertTrue(moved < 2 * 3 * NUMBER_FILES / 10, String.valueOf(moved));
+    }
+
+    @Test
+    void testLeavingDstoreOnlyHandsBackItsFiles() {
+        ConsistentHashRing ring = new ConsistentHashRing(ConsistentHashRing.DEFAULT_VIRTUAL_NODES, ports(10));
+        List<List<Integer>> before = placement(ring, 3);
+        int leaving = ports(10).get(4);
+        ring.remove(leaving);
+        List<List<Integer>> after = placement(ring, 3);
+
+        Assertions.assertEquals(9, ring.size());
+        for (int i = 0; i < NUMBER_FILES; i++) {
+            List<Integer> kept = new ArrayList<>(before.get(i));
+            kept.remove((Integer) leaving);
+            Assertions.assertTrue(after.get(i).containsAll(kept));
+            if (!before.get(i).contains(leaving))
+                Assertions.assertEquals(before.get(i), after.get(i));
+        }
+    }
+
+    @Test
+    void testMembershipChangesAreIdempotent() {
+        ConsistentHashRing ring = new ConsistentHashRing(16, ports(3));
+        ring.add(ports(3).get(0));
+        Assertions.assertEquals(3, ring.size());
+        ring.remove(1);
+        Assertions.assertEquals(3, ring.size());
+        ring.remove(ports(3).get(0));
+        ring.remove(ports(3).get(0));
+        Assertions.assertEquals(2, ring.size());
+        Assertions.assertEquals(1, new ConsistentHashRing(0).getVirtualNodes());
+    }
+
+    /************************************END OF TESTS FOR MEMBERSHIP********************************/
+
+
+    private List<Integer> ports(int numberDstores) {
+        return IntStream.range(0, numberDstores).map(d -> 12346 + d).boxed().toList();
+    }
+
+    private List<List<Integer>> placement(ConsistentHashRing ring, int n) {
+        List<List<Integer>> placement = new ArrayList<>();
+        for (int i = 0; i < NUMBER_FILES; i++) {
+            placement.add(ring.replicas("file" + i, n));
+        }
+        return placement;
+    }
+}
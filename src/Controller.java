@@ -1,14 +1,14 @@
 import java.io.*;
 import java.net.*;
 import java.util.*;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 public class Controller {
 
@@ -18,17 +18,43 @@ public class Controller {
     private final int rebalancePeriod;  //rebalancePeriod is in milliseconds
     private final List<Integer> dstorePorts;
     private final Map<Integer,Socket> dstorePortsSocket;
+    private final Map<Socket,MessageChannel> channels;
+    private final Map<Socket,Outbox> outboxes;  //Dstore connection -> the queue its messages are written from
     private final Map<String,List<Integer>> fileAllocation;
     private final Pair<List<Integer>,List<Pair<Integer,List<String>>>> filesIndStore;
     private final Map<String,Long> fileSizes;
+    private final Map<String,Long> fileChecksums;
     private final Map<String,Pair<AtomicInteger,Pair<Socket,Pair<Long,List<Integer>>>>> acknowledges;
     private final Pair<Pair<AtomicInteger,AtomicInteger>,HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>>> rebalancesCompleted;
-    private final Map<Socket,List<Integer>> suspendedReloads;
+    private final Map<String,String> requestIds;  //file name -> correlation ID of the client request waiting for its acks
+    private final Map<Socket,Map<String,List<Integer>>> suspendedReloads;
     private final AtomicBoolean alreadyRebalancing;
     private final AtomicBoolean storingOperation;
     private final AtomicBoolean removingOperation;
     private boolean canRebalance;
     private final List<Socket> socketsClosedForTimeout;
+    private int ecDataShards;    //0 disables the erasure coded storage class
+    private int ecParityShards;
+    private final Map<String,ErasureCoding.Layout> ecFiles;
+    private final Map<String,ErasureCoding.Layout> pendingEcFiles;
+    private final Map<String,Multipart.Manifest> multipartFiles;
+    private final Map<String,Multipart.Manifest> pendingUploads;
+    private final Map<String,ScheduledFuture<?>> uploadExpiries;  //file name -> expiry of its upload, put off whenever the upload is used
+    private volatile long uploadExpiry;  //milliseconds an upload may stay idle before its parts are removed
+    private final Map<String,Batch> batches;  //file name -> STORE_BATCH or REMOVE_BATCH waiting for its acks
+    private final Set<String> pendingRebuilds;
+    private final AtomicLong placementEpoch;  //moves forward whenever a file may stop being where LOAD_FROM said it was
+    private final ScheduledExecutorService timeouts;  //the one thread every timeout of the Controller runs on
+    private final Map<String,ScheduledFuture<?>> pendingTimeouts;  //file or fragment name -> timeout its last ack cancels
+    private volatile ScheduledFuture<?> listTimeout;
+    private volatile ScheduledFuture<?> rebalanceTimeout;
+    private final Map<String,Long> operationStarts;  //file name -> System.nanoTime() its STORE or REMOVE was accepted at
+    private final Map<String,Tracing.Span> operationSpans;  //file name -> span waiting for the acknowledges of a traced operation
+    private volatile long rebalanceStart;
+    private volatile Tracing.Span rebalanceSpan;
+    private volatile RebalancePlanner rebalancePlanner;
+    private volatile ConsistentHashRing ring;  //null places new files on the emptiest Dstores
+    private final Metrics metrics;
 
 
     public Controller(int port, int replicationFactor, int timeout, int rebalancePeriod) {
@@ -39,20 +65,60 @@ public class Controller {
         this.rebalancePeriod = rebalancePeriod;
         this.dstorePorts = Collections.synchronizedList(new ArrayList<>());
         this.dstorePortsSocket = Collections.synchronizedMap(new HashMap<>());
+        this.channels = Collections.synchronizedMap(new HashMap<>());
+        this.outboxes = Collections.synchronizedMap(new HashMap<>());
         this.fileAllocation = Collections.synchronizedMap(new HashMap<>());
         this.filesIndStore = new Pair<>(Collections.synchronizedList(new ArrayList<>()),Collections.synchronizedList(new ArrayList<>()));
         this.fileSizes = Collections.synchronizedMap(new HashMap<>());
+        this.fileChecksums = Collections.synchronizedMap(new HashMap<>());
         this.acknowledges = Collections.synchronizedMap(new HashMap<>());
         this.alreadyRebalancing = new AtomicBoolean(false);
         this.rebalancesCompleted = new Pair<>(new Pair<>(new AtomicInteger(0),new AtomicInteger(0)),null);
+        this.requestIds = Collections.synchronizedMap(new HashMap<>());
         this.suspendedReloads = Collections.synchronizedMap(new HashMap<>());
         this.storingOperation = new AtomicBoolean(false);
         this.removingOperation = new AtomicBoolean(false);
         this.socketsClosedForTimeout = Collections.synchronizedList(new ArrayList<>());
+        this.ecFiles = Collections.synchronizedMap(new HashMap<>());
+        this.pendingEcFiles = Collections.synchronizedMap(new HashMap<>());
+        this.multipartFiles = Collections.synchronizedMap(new HashMap<>());
+        this.pendingUploads = Collections.synchronizedMap(new HashMap<>());
+        this.uploadExpiries = Collections.synchronizedMap(new HashMap<>());
+        this.uploadExpiry = Multipart.DEFAULT_UPLOAD_EXPIRY;
+        this.batches = Collections.synchronizedMap(new HashMap<>());
+        this.pendingRebuilds = Collections.synchronizedSet(new HashSet<>());
+        //starting from the clock keeps epochs growing across restarts, clients may have leased locations from before
+        this.placementEpoch = new AtomicLong(System.currentTimeMillis());
+        ScheduledThreadPoolExecutor timeouts = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "controller-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //a cancelled timeout leaves the queue straight away instead of waiting there until it would have fired
+        timeouts.setRemoveOnCancelPolicy(true);
+        this.timeouts = timeouts;
+        this.pendingTimeouts = Collections.synchronizedMap(new HashMap<>());
+        this.operationStarts = Collections.synchronizedMap(new HashMap<>());
+        this.operationSpans = Collections.synchronizedMap(new HashMap<>());
+        this.rebalancePlanner = new BacktrackingRebalancePlanner(replicationFactor);
+        this.metrics = new Metrics();
+        registerGauges();
 
         instantiateControllerLogger();
     }
 
+    private void registerGauges(){
+        metrics.gauge("controller_dstores", dstorePorts::size);
+        metrics.gauge("controller_files", () -> fileAllocation.size() + ecFiles.size() + multipartFiles.size());
+        metrics.gauge("controller_pending_acknowledges", acknowledges::size);
+        metrics.gauge("controller_pending_batches", () -> batches.values().stream().distinct().count());
+        metrics.gauge("controller_outbox_depth", () -> {
+            synchronized (outboxes) {
+                return outboxes.values().stream().mapToLong(Outbox::size).sum();
+            }
+        });
+    }
+
     private void instantiateControllerLogger(){
         try {
             ControllerLogger.init(Loggert.LoggingType.ON_FILE_AND_TERMINAL);
@@ -82,58 +148,90 @@ public class Controller {
 
         try{
 
-            InputStream in = socket.getInputStream();
-            OutputStream out = socket.getOutputStream();
-            BufferedReader inReader = new BufferedReader(new InputStreamReader(in));
-            PrintWriter writer = new PrintWriter(out);
+            MessageChannel channel = new MessageChannel(socket);
+            channels.put(socket, channel);
             boolean notDstore = true;
 
             while(notDstore) {
 
-                String sentence;
+                String[] received;
+                Tracing.Context context;
 
                 try {
-                    sentence = inReader.readLine();
+                    received = channel.read();
                     //the socket's other end has closed the connection
-                    if (sentence == null) {
+                    if (received == null) {
                         throw new IOException();
                     }
+                    context = Tracing.context(received);
+                    received = Tracing.withoutContext(received);
                 }catch(IOException e){
                     cleanUpAfterClientDisconnects(socket);
                     break;
                 }
+                String sentence = String.join(" ", received);
+                String requestId = requestId(received);
+                String[] splitted = requestId == null ? received : Arrays.copyOfRange(received, 1, received.length);
 
                 while (alreadyRebalancing.get()) {
                     //Loops here as long as the rebalance operation is performing
                 }
 
-                switch (commandRecogniser(sentence)) {
+                ControllerCommands command = commandRecogniser(splitted);
+                switch (command) {
                     case STORE:
                         ControllerLogger.getInstance().messageReceived(socket, sentence);
                         storingOperation.set(true);
-                        new Thread(()-> handleStoreRequest(socket,writer,sentence)).start();
+                        handle(command, context, ()-> handleStoreRequest(socket,requestId,splitted));
+                        break;
+                    case STORE_EC:
+                        ControllerLogger.getInstance().messageReceived(socket, sentence);
+                        storingOperation.set(true);
+                        handle(command, context, ()-> handleStoreEcRequest(socket,requestId,splitted));
                         break;
                     case LOAD:
                         ControllerLogger.getInstance().messageReceived(socket, sentence);
-                        new Thread(()->handleLoadRequest(writer, socket, sentence)).start();
+                        handle(command, context, ()-> handleLoadRequest(socket, requestId, splitted));
                         break;
                     case JOIN:
                         ControllerLogger.getInstance().messageReceived(socket, sentence);
-                        new Thread(()->handleJoinRequest(socket, sentence)).start();
+                        handle(command, context, ()-> handleJoinRequest(socket, splitted));
                         notDstore = false;
                         break;
                     case LIST:
                         ControllerLogger.getInstance().messageReceived(socket, sentence);
-                        new Thread(()->handleListRequest(writer, socket)).start();
+                        handle(command, context, ()-> handleListRequest(socket, requestId));
                         break;
                     case REMOVE:
                         ControllerLogger.getInstance().messageReceived(socket, sentence);
                         removingOperation.set(true);
-                        new Thread(()->handleRemoveRequest(writer, socket, sentence)).start();
+                        handle(command, context, ()-> handleRemoveRequest(socket, requestId, splitted));
                         break;
                     case RELOAD:
                         ControllerLogger.getInstance().messageReceived(socket, sentence);
-                        new Thread(()->handleReloadRequest(writer, socket, sentence)).start();
+                        handle(command, context, ()-> handleReloadRequest(socket, requestId, splitted));
+                        break;
+                    case STORE_MULTIPART:
+                        ControllerLogger.getInstance().messageReceived(socket, sentence);
+                        handle(command, context, ()-> handleStoreMultipartRequest(socket, requestId, splitted));
+                        break;
+                    case STORE_COMMIT:
+                        ControllerLogger.getInstance().messageReceived(socket, sentence);
+                        handle(command, context, ()-> handleStoreCommitRequest(socket, requestId, splitted));
+                        break;
+                    case STORE_BATCH:
+                        ControllerLogger.getInstance().messageReceived(socket, sentence);
+                        storingOperation.set(true);
+                        handle(command, context, ()-> handleStoreBatchRequest(socket, requestId, splitted));
+                        break;
+                    case LOAD_BATCH:
+                        ControllerLogger.getInstance().messageReceived(socket, sentence);
+                        handle(command, context, ()-> handleLoadBatchRequest(socket, requestId, splitted));
+                        break;
+                    case REMOVE_BATCH:
+                        ControllerLogger.getInstance().messageReceived(socket, sentence);
+                        removingOperation.set(true);
+                        handle(command, context, ()-> handleRemoveBatchRequest(socket, requestId, splitted));
                         break;
                     case NoCommand:
                         System.out.println("ERROR => no command recognised from client");
@@ -144,8 +242,74 @@ public class Controller {
         }
     }
 
+    //Every client request is handled on its own thread, the time its handler takes is recorded under controller_<command>,
+    //and in a span when the request is traced
+    private void handle(ControllerCommands command, Tracing.Context context, Runnable handler){
+        new Thread(()->{
+            long start = System.nanoTime();
+            Tracing.Span span = Tracing.start(command.toString(), context);
+            Tracing.setCurrent(span);
+            handler.run();
+            Tracing.setCurrent(null);
+            Tracing.finish(span);
+            metrics.handled("controller", command, start);
+        }).start();
+    }
+
+    private void closeOutbox(Socket socket){
+        Outbox outbox = outboxes.remove(socket);
+        if(outbox != null)
+            outbox.close();
+    }
+
     private void cleanUpAfterClientDisconnects(Socket socket){
         suspendedReloads.remove(socket);
+        channels.remove(socket);
+    }
+
+    //Messages to a Dstore are queued in its outbox, whose writer thread coalesces consecutive REMOVEs into REMOVE_BATCH
+    private void sendMessage(Socket socket, String... tokens){
+        Outbox outbox = outboxes.get(socket);
+        if(outbox != null)
+            outbox.send(tokens);
+        else
+            writeMessage(socket, tokens);
+    }
+
+    //Messages are written through the MessageChannel of the connection, which knows whether it speaks text or binary frames
+    private void writeMessage(Socket socket, String... tokens){
+        MessageChannel channel = channels.get(socket);
+        if(channel != null) {
+            String message = channel.send(tokens);
+            ControllerLogger.getInstance().messageSent(socket, message);
+        }
+    }
+
+    private void sendMessage(Socket socket, List<String> tokens){
+        sendMessage(socket, tokens.toArray(new String[0]));
+    }
+
+    //A client may tag a command with a correlation ID so that it can pipeline commands on one connection and match
+    //the replies, which are sent in completion order. Untagged commands get untagged replies
+    private String requestId(String[] splitted){
+        if(splitted.length > 1 && splitted[0].startsWith(Protocol.REQUEST_ID_PREFIX))
+            return splitted[0];
+        return null;
+    }
+
+    private void reply(Socket socket, String requestId, String... tokens){
+        if(requestId == null){
+            sendMessage(socket, tokens);
+        }else{
+            String[] message = new String[tokens.length + 1];
+            message[0] = requestId;
+            System.arraycopy(tokens, 0, message, 1, tokens.length);
+            sendMessage(socket, message);
+        }
+    }
+
+    private void reply(Socket socket, String requestId, List<String> tokens){
+        reply(socket, requestId, tokens.toArray(new String[0]));
     }
 
     /****************************************END OF OF HANDLE REQUESTS FROM CLIENTS**********************************/
@@ -155,17 +319,16 @@ public class Controller {
 
     private void waitForRequestsDstore(Socket socket){
 
-        try{
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        MessageChannel channel = channels.get(socket);
+        if(channel != null){
 
             while (true) {
-                String sentence;
+                String[] splitted;
 
                 try{
-                    sentence = reader.readLine();
+                    splitted = channel.read();
                     //the other end has closed the connection
-                    if(sentence == null){
+                    if(splitted == null){
                         throw new IOException();
                     }
 
@@ -180,49 +343,71 @@ public class Controller {
                     break;
                 }
 
-                ControllerLogger.getInstance().messageReceived(socket, sentence);
+                Tracing.Context context = Tracing.context(splitted);
+                String[] message = Tracing.withoutContext(splitted);
+                ControllerLogger.getInstance().messageReceived(socket, String.join(" ", message));
 
+                ControllerCommands command = commandRecogniser(message);
                 new Thread(() -> {
-                    switch (commandRecogniser(sentence)) {
+                    long start = System.nanoTime();
+                    Tracing.Span span = Tracing.start(command.toString(), context);
+                    if (span != null && message.length > 1)
+                        span.tag("file", message[1]).tag("dstore", getDstorePort(socket));
+                    switch (command) {
                         case STORE_ACK:
-                            handleStoreAck(sentence);
+                            handleStoreAck(message);
                             break;
                         case REMOVE_ACK:
-                            handleRemoveAck(sentence);
+                            handleRemoveAck(message);
                             break;
                         case ERROR_FILE_DOES_NOT_EXIST:
-                            handleErrorDoesNotExist(sentence);
+                            handleErrorDoesNotExist(message);
                             break;
                         case LIST:
-                            handleList(socket,sentence);
+                            handleList(socket,message);
                             break;
                         case REBALANCE_COMPLETE:
                             handleRebalanceComplete();
                             break;
+                        case CORRUPTED:
+                            handleCorrupted(socket,message);
+                            break;
+                        case REBUILD_COMPLETE:
+                            handleRebuildComplete(socket,message);
+                            break;
                         case NoCommand:
                             System.out.println("ERROR => no command recognised from dstore");
                             break;
                     }
+                    Tracing.finish(span);
+                    metrics.handled("controller", command, start);
                 }).start();
             }
-        }catch (IOException e){
-            //TODO error handling
         }
     }
 
     private void cleanUpAfterDstoreNotListingWithinTimeout(Socket socket){
         int port = getDstorePort(socket);
+        placementChanged();
         dstorePorts.remove((Integer) port);
-        dstorePortsSocket.remove(port);
+        if (ring != null)
+            ring.remove(port);
+        channels.remove(dstorePortsSocket.remove(port));
+        closeOutbox(socket);
         cleanUpSuspendedReloads(port);
         cleanUpAcknowledges(port);
     }
 
     private void cleanUpAfterDstoreDisconnects(Socket socket){
         int port = getDstorePort(socket);
+        placementChanged();
         dstorePorts.remove((Integer) port);
-        dstorePortsSocket.remove(port);
+        if (ring != null)
+            ring.remove(port);
+        channels.remove(dstorePortsSocket.remove(port));
+        closeOutbox(socket);
         cleanUpFiles(port);
+        cleanUpErasureCodedFiles(port);
         cleanUpSuspendedReloads(port);
         cleanUpAcknowledges(port);
         cleanUpFilesInDstores(port);
@@ -256,12 +441,54 @@ public class Controller {
                     iter.remove();
             }
         }
+        cleanUpFileChecksums();
+    }
+
+    private void cleanUpFileChecksums(){
+        synchronized (this.fileChecksums) {
+            Iterator<String> iter = fileChecksums.keySet().iterator();
+            while(iter.hasNext()){
+                String file = iter.next();
+                if (!this.fileAllocation.containsKey(file) && !this.acknowledges.containsKey(file))
+                    iter.remove();
+            }
+        }
+    }
+
+    private void cleanUpErasureCodedFiles(int port){
+        synchronized (ecFiles) {
+            Iterator<String> iter = ecFiles.keySet().iterator();
+            while(iter.hasNext()){
+                String file = iter.next();
+                ErasureCoding.Layout layout = ecFiles.get(file);
+                Collections.replaceAll(layout.ports, port, -1);
+                if(layout.availableFragments() < layout.dataShards){
+                    System.out.println(String.format("ERROR => the erasure coded file %s has lost too many fragments", file));
+                    iter.remove();
+                }
+            }
+        }
     }
 
     private void cleanUpSuspendedReloads(int port){
         synchronized (suspendedReloads){
-            for(var socket : suspendedReloads.keySet()){
-                suspendedReloads.get(socket).remove((Integer) port);
+            for(var reloads : suspendedReloads.values()){
+                synchronized (reloads){
+                    for(var dstores : reloads.values()){
+                        dstores.remove((Integer) port);
+                    }
+                }
+            }
+        }
+    }
+
+    //The RELOAD entries are kept empty rather than dropped, so that a client RELOADing the file still gets an answer
+    private void forgetSuspendedReloads(String fileName){
+        synchronized (suspendedReloads){
+            for(var reloads : suspendedReloads.values()){
+                List<Integer> dstores = reloads.get(fileName);
+                if(dstores != null)
+                    dstores.clear();
             }
         }
     }
@@ -270,7 +497,8 @@ public class Controller {
 
         synchronized (acknowledges){
             for(var file : acknowledges.keySet()){
-                acknowledges.get(file).snd.snd.snd.remove((Integer)port);
+                //a multipart remove waits for one acknowledge per part replica, several of them may be on this Dstore
+                acknowledges.get(file).snd.snd.snd.removeIf(p -> p == port);
             }
         }
 
@@ -301,79 +529,117 @@ public class Controller {
 
     /********************************** BEGINNING OF STORE PROCEDURES *******************************************/
 
-    private void handleStoreRequest(Socket socket, PrintWriter writer, String sentence){
+    private void handleStoreRequest(Socket socket, String requestId, String[] splitted){
 
-        String[] splitted = sentence.split(" ");
 
-        if (splitted.length != 3) {
+        if (splitted.length != 3 && splitted.length != 4) {
             storingOperation.set(false);
-            System.out.println("ERROR => The STORE command should take two arguments");
+            System.out.println("ERROR => The STORE command should take two or three arguments");
         } else {
 
             String fileName = splitted[1];
 
             try{
-                String message;
+                if(ErasureCoding.isFragment(fileName) || (Multipart.isPart(fileName) && !isExpectedPart(fileName, splitted[2]))){
+                    //names of erasure coded fragments and of parts are reserved, they already exist from the client's point of view
+                    storingOperation.set(false);
+                    reply(socket, requestId, ClientCommands.ERROR_FILE_ALREADY_EXISTS.toString());
+                    return;
+                }
 
                 if(dstorePorts.size() < replicationFactor){
 
                     storingOperation.set(false);
-                    message = ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString();
-                    writer.println(message); writer.flush();
-                    ControllerLogger.getInstance().messageSent(socket, message);
+                    reply(socket, requestId, ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString());
                     return;
                 }
 
                 long fileSize = Long.parseLong(splitted[2]);
+                Long clientChecksum = splitted.length == 4 ? Long.parseLong(splitted[3]) : null;
 
 
                 //TODO should a file being removed result as already existing?
-                if (fileAllocation.containsKey(fileName) || acknowledges.containsKey(fileName)) {
+                if (isNameTaken(fileName)) {
                     storingOperation.set(false);
-                    message = ClientCommands.ERROR_FILE_ALREADY_EXISTS.toString();
-                    writer.println(message);
-                    writer.flush();
-                    ControllerLogger.getInstance().messageSent(socket, message);
+                    reply(socket, requestId, ClientCommands.ERROR_FILE_ALREADY_EXISTS.toString());
 
                 } else {
 
-                    List<Integer> dports = rEmptierDports();
+                    List<Integer> dports = rDports(fileName);
 
-                    message = String.format("%s %s", ClientCommands.STORE_TO.toString(), listDportsToString(dports));
-                    writer.println(message);
-                    writer.flush();
-                    ControllerLogger.getInstance().messageSent(socket, message);
+                    if (requestId != null)
+                        requestIds.put(fileName, requestId);
+                    reply(socket, requestId, withPorts(List.of(ClientCommands.STORE_TO.toString()), dports));
                     acknowledges.put(fileName, new Pair<>(new AtomicInteger(0), new Pair<>(socket, new Pair<>(fileSize, dports))));
-
-                    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-                    scheduler.schedule(()->{
+                    startOperation(fileName);
+                    if (Multipart.isPart(fileName))
+                        scheduleUploadExpiry(Multipart.logicalName(fileName));
+                    //the checksum computed by the client, if any, is the one every STORE_ACK must agree with
+                    if (clientChecksum != null)
+                        fileChecksums.put(fileName, clientChecksum);
+
+                    scheduleTimeout(fileName, ()->{
                         if (acknowledges.containsKey(fileName)) {
                             storingOperation.set(false);
                             System.out.println(String.format("ERROR => %s store acknowledges have not been received prior to the timeout",replicationFactor));
                             acknowledges.remove(fileName);
+                            fileChecksums.remove(fileName);
+                            requestIds.remove(fileName);
                         }
-                    },timeout,TimeUnit.MILLISECONDS);
+                    });
 
                 }
             } catch (NumberFormatException e) {
                 storingOperation.set(false);
-                System.out.println("ERROR => The third argument of the STORE command should be an integer value");
+                System.out.println("ERROR => The third and fourth arguments of the STORE command should be integer values");
+            }
+        }
+    }
+
+    //The names the Dstores keep their catalog and blobs under are reserved, to clients they always exist
+    private boolean isNameTaken(String fileName){
+        return DstoreStorage.isReservedName(fileName) || fileAllocation.containsKey(fileName) || acknowledges.containsKey(fileName) || ecFiles.containsKey(fileName)
+                || multipartFiles.containsKey(fileName) || pendingUploads.containsKey(fileName);
+    }
+
+    //A part can only be stored while its upload is open, and with the length the manifest expects
+    private boolean isExpectedPart(String partName, String partSize){
+        Multipart.Manifest manifest = pendingUploads.get(Multipart.logicalName(partName));
+        try {
+            int index = Multipart.partIndex(partName);
+            return manifest != null && index < manifest.numberParts() && manifest.partLength(index) == Long.parseLong(partSize);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    //The tokens of a message ending with a list of ports
+    private List<String> withPorts(List<String> tokens, List<Integer> ports){
+        List<String> message = new ArrayList<>(tokens);
+        synchronized (ports) {
+            for(int port : ports){
+                message.add(String.valueOf(port));
             }
         }
+        return message;
     }
 
-    private String listDportsToString (List<Integer> list){
-        return list.stream()
-                .map(Objects::toString)
-                .collect(Collectors.joining(" "));
+    //The Dstores a new file is stored on, the ones of the ring with consistent hashing, else the emptiest ones
+    private List<Integer> rDports(String fileName){
+        ConsistentHashRing ring = this.ring;
+        return ring != null ? ring.replicas(fileName, replicationFactor) : rEmptierDports();
     }
 
     private List<Integer> rEmptierDports(){
+        return emptierDports(replicationFactor);
+    }
+
+    private List<Integer> emptierDports(int n){
 
         return pairsNumberOfFilesDstorePorts().stream()
                 .sorted(Comparator.comparingInt(x -> x.snd))
                 .map(x -> x.fst)
-                .limit(replicationFactor)
+                .limit(n)
                 .collect(Collectors.toList());
     }
 
@@ -401,24 +667,258 @@ public class Controller {
     /***************************************** END OF STORE PROCEDURES *******************************************/
 
 
+    /******************************** BEGINNING OF ERASURE CODED STORE PROCEDURES *********************************/
+
+    //STORE_EC filename filesize [checksum] asks for the Reed-Solomon storage class: the client encodes the file in
+    //ecDataShards + ecParityShards fragments and sends fragment i to the i-th Dstore of STORE_TO_EC k m port1 ... portk+m
+    private void handleStoreEcRequest(Socket socket, String requestId, String[] splitted){
+
+        if(ecDataShards == 0){
+            handleStoreRequest(socket, requestId, splitted); //falls back to R-way replication
+            return;
+        }
+
+
+        if (splitted.length != 3 && splitted.length != 4) {
+            storingOperation.set(false);
+            System.out.println("ERROR => The STORE_EC command should take two or three arguments");
+            return;
+        }
+
+        String fileName = splitted[1];
+        int numberFragments = ecDataShards + ecParityShards;
+
+        try {
+            long fileSize = Long.parseLong(splitted[2]);
+            Long clientChecksum = splitted.length == 4 ? Long.parseLong(splitted[3]) : null;
+
+            if (dstorePorts.size() < Math.max(numberFragments, replicationFactor)) {
+                storingOperation.set(false);
+                reply(socket, requestId, ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString());
+                return;
+            }
+
+            if (ErasureCoding.isFragment(fileName) || Multipart.isPart(fileName) || isNameTaken(fileName)) {
+                storingOperation.set(false);
+                reply(socket, requestId, ClientCommands.ERROR_FILE_ALREADY_EXISTS.toString());
+                return;
+            }
+
+            List<Integer> dports = emptierDports(numberFragments);
+            pendingEcFiles.put(fileName, new ErasureCoding.Layout(ecDataShards, ecParityShards, fileSize, clientChecksum, dports));
+            if (requestId != null)
+                requestIds.put(fileName, requestId);
+            acknowledges.put(fileName, new Pair<>(new AtomicInteger(0), new Pair<>(socket, new Pair<>(fileSize, new ArrayList<>(dports)))));
+            startOperation(fileName);
+
+            reply(socket, requestId, withPorts(List.of(ClientCommands.STORE_TO_EC.toString(), String.valueOf(ecDataShards), String.valueOf(ecParityShards)), dports));
+
+            scheduleTimeout(fileName, ()->{
+                if (acknowledges.containsKey(fileName)) {
+                    storingOperation.set(false);
+                    System.out.println(String.format("ERROR => %s fragment acknowledges have not been received prior to the timeout",numberFragments));
+                    acknowledges.remove(fileName);
+                    pendingEcFiles.remove(fileName);
+                    requestIds.remove(fileName);
+                }
+            });
+
+        } catch (NumberFormatException e) {
+            storingOperation.set(false);
+            System.out.println("ERROR => The third and fourth arguments of the STORE_EC command should be integer values");
+        }
+    }
+
+    private void handleFragmentStoreAck(String fileName){
+
+        var acknowledge = acknowledges.get(fileName);
+        ErasureCoding.Layout layout = pendingEcFiles.get(fileName);
+
+        if(acknowledge == null || layout == null){
+            System.out.println("ERROR => a fragment acknowledge has arrived late");
+            return;
+        }
+
+        if(acknowledge.fst.incrementAndGet() == layout.dataShards + layout.parityShards){
+            storingOperation.set(false);
+            ecFiles.put(fileName, layout);
+            pendingEcFiles.remove(fileName);
+            acknowledges.remove(fileName);
+            cancelTimeout(fileName);
+            sendStoreComplete(acknowledge.snd.fst, fileName);
+        }
+    }
+
+    /*********************************** END OF ERASURE CODED STORE PROCEDURES *********************************/
+
+
+    /*********************************** BEGINNING OF MULTIPART STORE PROCEDURES *********************************/
+
+    //STORE_MULTIPART filename filesize partsize [checksum] opens an upload, or resumes the one already open with the
+    //same sizes, and answers MULTIPART_PARTS index1 ... with the parts still to be stored. Each part is then an
+    //ordinary STORE of filename#part<i>, acknowledged and timed out on its own, so a slow upload only retries parts
+    private void handleStoreMultipartRequest(Socket socket, String requestId, String[] splitted){
+
+        if (splitted.length != 4 && splitted.length != 5) {
+            System.out.println("ERROR => The STORE_MULTIPART command should take three or four arguments");
+            return;
+        }
+
+        String fileName = splitted[1];
+        try {
+            long fileSize = Long.parseLong(splitted[2]);
+            long partSize = Long.parseLong(splitted[3]);
+            Long checksum = splitted.length == 5 ? Long.parseLong(splitted[4]) : null;
+            if (partSize <= 0 || fileSize < 0) {
+                System.out.println("ERROR => The sizes of the STORE_MULTIPART command should be positive");
+                return;
+            }
+            if (Multipart.numberParts(fileSize, partSize) > Multipart.MAX_PARTS) {
+                System.out.println(String.format("ERROR => The STORE_MULTIPART command should not split a file into more than %s parts", Multipart.MAX_PARTS));
+                return;
+            }
+
+            if (dstorePorts.size() < replicationFactor) {
+                reply(socket, requestId, ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString());
+                return;
+            }
+
+            Multipart.Manifest manifest;
+            synchronized (fileAllocation) {
+                manifest = pendingUploads.get(fileName);
+                if (manifest == null && !isNameTaken(fileName) && !ErasureCoding.isFragment(fileName) && !Multipart.isPart(fileName)) {
+                    manifest = new Multipart.Manifest(fileSize, partSize, checksum);
+                    pendingUploads.put(fileName, manifest);
+                } else if (manifest == null || !manifest.sameUpload(fileSize, partSize, checksum)) {
+                    reply(socket, requestId, ClientCommands.ERROR_FILE_ALREADY_EXISTS.toString());
+                    return;
+                }
+            }
+            scheduleUploadExpiry(fileName);
+            sendMissingParts(socket, requestId, fileName, manifest);
+
+        } catch (NumberFormatException e) {
+            System.out.println("ERROR => The arguments of the STORE_MULTIPART command should be integer values");
+        }
+    }
+
+    //STORE_COMMIT filename makes the file visible once every part is stored, otherwise answers MULTIPART_PARTS again
+    private void handleStoreCommitRequest(Socket socket, String requestId, String[] splitted){
+
+        if (splitted.length != 2) {
+            System.out.println("ERROR => The STORE_COMMIT command should take one argument");
+            return;
+        }
+
+        String fileName = splitted[1];
+        Multipart.Manifest manifest = pendingUploads.get(fileName);
+        if (manifest == null) {
+            reply(socket, requestId, ClientCommands.ERROR_FILE_DOES_NOT_EXIST.toString());
+            return;
+        }
+
+        synchronized (fileAllocation) {
+            if (missingParts(fileName, manifest).isEmpty() && pendingUploads.remove(fileName, manifest)) {
+                cancel(uploadExpiries.remove(fileName));
+                multipartFiles.put(fileName, manifest);
+                reply(socket, requestId, ClientCommands.STORE_COMPLETE.toString());
+                return;
+            }
+        }
+        scheduleUploadExpiry(fileName);
+        sendMissingParts(socket, requestId, fileName, manifest);
+    }
+
+    private List<Integer> missingParts(String fileName, Multipart.Manifest manifest){
+        return manifest.missingParts(fileName, part -> fileAllocation.containsKey(part) && !acknowledges.containsKey(part));
+    }
+
+    private void sendMissingParts(Socket socket, String requestId, String fileName, Multipart.Manifest manifest){
+        List<String> message = new ArrayList<>(List.of(ClientCommands.MULTIPART_PARTS.toString()));
+        for (int index : missingParts(fileName, manifest)) {
+            message.add(String.valueOf(index));
+        }
+        reply(socket, requestId, message);
+    }
+
+    //An upload left idle for uploadExpiry is removed as if the client had sent REMOVE for it, which frees its name.
+    //A part still waiting for its acknowledges, a rebalance going on or too few Dstores put the expiry off once more
+    private void scheduleUploadExpiry(String fileName){
+        synchronized (uploadExpiries) {
+            cancel(uploadExpiries.remove(fileName));
+            if (pendingUploads.containsKey(fileName))
+                uploadExpiries.put(fileName, timeouts.schedule(()-> expireUpload(fileName), uploadExpiry, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void expireUpload(String fileName){
+        uploadExpiries.remove(fileName);
+        Multipart.Manifest manifest = pendingUploads.get(fileName);
+        if (manifest == null || acknowledges.containsKey(fileName))
+            return;
+        for (int i = 0; i < manifest.numberParts(); i++) {
+            if (acknowledges.containsKey(Multipart.partName(fileName, i))) {
+                scheduleUploadExpiry(fileName);
+                return;
+            }
+        }
+        if (alreadyRebalancing.get() || dstorePorts.size() < replicationFactor) {
+            scheduleUploadExpiry(fileName);
+            return;
+        }
+        System.out.println(String.format("ERROR => the upload of the file %s has been idle for %s ms, its parts are removed", fileName, uploadExpiry));
+        metrics.counter("controller_expired_uploads_total").increment();
+        removingOperation.set(true);
+        handleRemoveRequest(null, null, new String[]{ControllerCommands.REMOVE.toString(), fileName});
+    }
+
+    //Drops the parts of a multipart file from the index once they have been removed from the Dstores
+    private void forgetParts(String fileName){
+        cancel(uploadExpiries.remove(fileName));
+        Multipart.Manifest manifest = multipartFiles.remove(fileName);
+        if (manifest == null)
+            manifest = pendingUploads.remove(fileName);
+        if (manifest == null)
+            return;
+        for (int i = 0; i < manifest.numberParts(); i++) {
+            String part = Multipart.partName(fileName, i);
+            fileAllocation.remove(part);
+            fileSizes.remove(part);
+            fileChecksums.remove(part);
+        }
+    }
+
+    /*********************************** END OF MULTIPART STORE PROCEDURES *********************************/
+
+
     /*************************************** BEGINNING OF ACK PROCEDURES *******************************************/
 
-    private void handleStoreAck(String sentence){
-        String[] splitted = sentence.split(" ");
+    private void handleStoreAck(String[] splitted){
 
-        if(splitted.length != 2){
-            System.out.println("ERROR => the STORE_ACK command should take one argument");
+        if(splitted.length != 2 && splitted.length != 3){
+            System.out.println("ERROR => the STORE_ACK command should take one or two arguments");
+        }else if(ErasureCoding.isFragment(splitted[1])){
+            handleFragmentStoreAck(ErasureCoding.logicalName(splitted[1]));
         }else{
             String fileName = splitted[1];
 
             if(acknowledges.containsKey(fileName)){
 
+                if(splitted.length == 3 && !checksumAgrees(fileName, splitted[2])){
+                    //a replica whose digest differs is not acknowledged, the store will time out instead of completing
+                    System.out.println(String.format("ERROR => the checksum acknowledged for the file %s does not match the other replicas", fileName));
+                    return;
+                }
+
                 if(acknowledges.get(fileName).fst.incrementAndGet() == replicationFactor) {
+                    //the index is updated first, a client may act on STORE_COMPLETE before this thread goes on
+                    var acknowledge = acknowledges.get(fileName);
                     storingOperation.set(false);
-                    sendStoreComplete(acknowledges.get(fileName).snd.fst);
-                    fileAllocation.put(fileName, acknowledges.get(fileName).snd.snd.snd);
-                    fileSizes.put(fileName, acknowledges.get(fileName).snd.snd.fst);
+                    fileAllocation.put(fileName, acknowledge.snd.snd.snd);
+                    fileSizes.put(fileName, acknowledge.snd.snd.fst);
                     acknowledges.remove(fileName);
+                    cancelTimeout(fileName);
+                    sendStoreComplete(acknowledge.snd.fst, fileName);
                 }
 
             }else{
@@ -427,95 +927,405 @@ public class Controller {
         }
     }
 
-    private void sendStoreComplete(Socket socket){
+    private boolean checksumAgrees(String fileName, String checksumString){
+        try {
+            long checksum = Long.parseLong(checksumString);
+            Long known = fileChecksums.putIfAbsent(fileName, checksum);
+            return known == null || known == checksum;
+        } catch (NumberFormatException e) {
+            System.out.println("ERROR => the second argument of the STORE_ACK command should be an integer value");
+            return false;
+        }
+    }
+
+    private void sendStoreComplete(Socket socket, String fileName){
+        Batch batch = batches.remove(fileName);
+        if(batch != null)
+            completeBatchFile(batch, fileName, true);
+        else
+            reply(socket, requestIds.remove(fileName), ClientCommands.STORE_COMPLETE.toString());
+        recordOperation("controller_store_complete_us", fileName);
+    }
+
+    /****************************************** END OF ACK PROCEDURES *******************************************/
+
+
+    /************************************ BEGINNING OF BATCH PROCEDURES *******************************************/
+
+    //STORE_BATCH filename1 filesize1 checksum1 ... (checksum - when unknown) places every file in one go and answers
+    //STORE_TO_BATCH R filename1 port1 ... portR filename2 ... with the files accepted, the others already exist.
+    //The client stores them on the Dstores as after STORE_TO, each file is acknowledged as for STORE and
+    //BATCH_COMPLETE failed1 ... follows once every file is stored or has failed
+    private void handleStoreBatchRequest(Socket socket, String requestId, String[] splitted){
+
+        if (splitted.length < 4 || (splitted.length - 1) % 3 != 0) {
+            storingOperation.set(false);
+            System.out.println("ERROR => The STORE_BATCH command should take a file name, a size and a checksum for each file");
+            return;
+        }
 
+        List<String> fileNames = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        List<Long> checksums = new ArrayList<>();
         try {
+            for (int i = 1; i < splitted.length; i += 3) {
+                fileNames.add(splitted[i]);
+                sizes.add(Long.parseLong(splitted[i + 1]));
+                checksums.add(splitted[i + 2].equals(Protocol.NO_CHECKSUM) ? null : Long.parseLong(splitted[i + 2]));
+            }
+        } catch (NumberFormatException e) {
+            storingOperation.set(false);
+            System.out.println("ERROR => The sizes and checksums of the STORE_BATCH command should be integer values");
+            return;
+        }
 
-            PrintWriter writer = new PrintWriter(socket.getOutputStream());
-            String message = ClientCommands.STORE_COMPLETE.toString();
-            writer.println(message);
-            writer.flush();
-            ControllerLogger.getInstance().messageSent(socket, message);
+        //the ring places files without counting the files of every Dstore
+        ConsistentHashRing ring = this.ring;
+        List<Pair<Integer,Integer>> numberFiles = ring == null ? pairsNumberOfFilesDstorePorts() : null;
+        if (dstorePorts.size() < replicationFactor) {
+            storingOperation.set(false);
+            reply(socket, requestId, ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString());
+            return;
+        }
+
+        Batch batch = new Batch(socket, requestId, true);
+        List<String> message = new ArrayList<>(List.of(ClientCommands.STORE_TO_BATCH.toString(), String.valueOf(replicationFactor)));
+        for (int i = 0; i < fileNames.size(); i++) {
+            String fileName = fileNames.get(i);
+            if (batch.contains(fileName))
+                continue;
+            if (ErasureCoding.isFragment(fileName) || Multipart.isPart(fileName) || isNameTaken(fileName)) {
+                batch.fail(fileName);
+                continue;
+            }
 
-        }catch(IOException e){
-            //Nothing to do
+            List<Integer> dports = ring != null ? ring.replicas(fileName, replicationFactor) : nextPlacement(numberFiles);
+            acknowledges.put(fileName, new Pair<>(new AtomicInteger(0), new Pair<>(socket, new Pair<>(sizes.get(i), dports))));
+            if (checksums.get(i) != null)
+                fileChecksums.put(fileName, checksums.get(i));
+            batches.put(fileName, batch);
+            batch.add(fileName);
+            message.add(fileName);
+            for (int port : dports) {
+                message.add(String.valueOf(port));
+            }
         }
+        reply(socket, requestId, message);
+        startBatch(batch);
     }
 
-    /****************************************** END OF ACK PROCEDURES *******************************************/
+    //The R Dstores with fewest files, counting the files the batch has already placed on them
+    private List<Integer> nextPlacement(List<Pair<Integer,Integer>> numberFiles){
+        numberFiles.sort(Comparator.comparingInt(x -> x.snd));
+        List<Integer> dports = new ArrayList<>();
+        for (int i = 0; i < replicationFactor; i++) {
+            dports.add(numberFiles.get(i).fst);
+            numberFiles.get(i).snd++;
+        }
+        return dports;
+    }
+
+    //LOAD_BATCH filename1 ... [+capability,...] answers LOAD_FROM_BATCH filename1 port1 filesize1 checksum1 ... [@epoch]
+    //in one round trip, the epoch only if the client asked for it. Files which do not exist, or are not stored as plain
+    //replicas, get port -1 and are to be loaded with LOAD. Each file can then be RELOADed as after LOAD
+    private void handleLoadBatchRequest(Socket socket, String requestId, String[] splitted){
+
+        Set<String> capabilities = capabilities(splitted);
+        int numberTokens = capabilities == null ? splitted.length : splitted.length - 1;
+        if (numberTokens < 2) {
+            System.out.println("ERROR => the LOAD_BATCH command should take at least one argument");
+            return;
+        }
+
+        if (dstorePorts.size() < replicationFactor) {
+            reply(socket, requestId, ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString());
+            return;
+        }
+
+        //read before the locations, a change happening meanwhile leaves them in an older epoch
+        String epoch = Protocol.EPOCH_PREFIX + placementEpoch.get();
+        List<String> message = new ArrayList<>(List.of(ClientCommands.LOAD_FROM_BATCH.toString()));
+        for (int i = 1; i < numberTokens; i++) {
+            String fileName = splitted[i];
+            List<Integer> ports = fileAllocation.get(fileName);
+            Long fileSize = fileSizes.get(fileName);
+            List<Integer> dstores = new ArrayList<>();
+            if (ports != null) {
+                synchronized (ports) {
+                    dstores.addAll(ports);
+                }
+            }
+
+            if (dstores.isEmpty() || fileSize == null) {
+                message.addAll(List.of(fileName, "-1", "0", Protocol.NO_CHECKSUM));
+            } else {
+                addSuspendedReloads(socket, fileName, new ArrayList<>(dstores.subList(1, dstores.size())));
+                Long checksum = fileChecksums.get(fileName);
+                message.addAll(List.of(fileName, String.valueOf(dstores.get(0)), String.valueOf(fileSize),
+                        checksum == null ? Protocol.NO_CHECKSUM : String.valueOf(checksum)));
+            }
+        }
+        if (capabilities != null && capabilities.contains(Protocol.EPOCH_CAPABILITY))
+            message.add(epoch);
+        reply(socket, requestId, message);
+    }
+
+    //REMOVE_BATCH filename1 ... removes all the replicas, fragments and parts of the files, which the outbox of every
+    //Dstore coalesces into REMOVE_BATCH messages, and answers BATCH_COMPLETE failed1 ... once they are all acknowledged.
+    //Files which do not exist or are already being stored or removed fail
+    private void handleRemoveBatchRequest(Socket socket, String requestId, String[] splitted){
+
+        if (splitted.length < 2) {
+            removingOperation.set(false);
+            System.out.println("ERROR => the REMOVE_BATCH command should take at least one argument");
+            return;
+        }
+
+        if (dstorePorts.size() < replicationFactor) {
+            removingOperation.set(false);
+            reply(socket, requestId, ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString());
+            return;
+        }
+
+        Batch batch = new Batch(socket, requestId, false);
+        List<Pair<Integer,String>> removes = new ArrayList<>();
+        for (int i = 1; i < splitted.length; i++) {
+            String fileName = splitted[i];
+            if (batch.contains(fileName))
+                continue;
+            boolean reserved = ErasureCoding.isFragment(fileName) || Multipart.isPart(fileName);
+            List<Pair<Integer,String>> replicas = reserved || acknowledges.containsKey(fileName) ? null : storedReplicas(fileName);
+            if (replicas == null) {
+                batch.fail(fileName);
+                continue;
+            }
+            if (replicas.isEmpty()) {
+                //nothing is left on any Dstore, there is nothing to wait for
+                forgetFile(fileName);
+                continue;
+            }
+
+            List<Integer> dstores = replicas.stream().map(replica -> replica.fst).collect(Collectors.toCollection(ArrayList::new));
+            acknowledges.put(fileName, new Pair<>(new AtomicInteger(0), new Pair<>(socket, new Pair<>(0L, dstores))));
+            batches.put(fileName, batch);
+            batch.add(fileName);
+            removes.addAll(replicas);
+        }
+
+        //the acks are expected before any REMOVE is sent
+        for (var remove : removes) {
+            sendRemoveToDstore(remove.fst, remove.snd);
+        }
+        startBatch(batch);
+    }
+
+    //A batch fails the files left only once no acknowledge at all has arrived for a whole timeout
+    private void startBatch(Batch batch){
+        if (batch.settle()) {
+            sendBatchComplete(batch);
+            return;
+        }
+
+        batch.setTimeout(timeouts.scheduleWithFixedDelay(()->{
+            if (!batch.isSettled() && batch.idleFor(timeout)) {
+                List<String> pending = batch.pending();
+                System.out.println(String.format("ERROR => the acknowledges of %s files of a batch have not been received prior to the timeout", pending.size()));
+                for (String fileName : pending) {
+                    acknowledges.remove(fileName);
+                    if (batch.store)
+                        fileChecksums.remove(fileName);
+                    completeBatchFile(batch, fileName, false);
+                    batches.remove(fileName, batch);
+                }
+            }
+        }, timeout, timeout, TimeUnit.MILLISECONDS));
+    }
+
+    private void completeBatchFile(Batch batch, String fileName, boolean succeeded){
+        if (batch.complete(fileName, succeeded))
+            sendBatchComplete(batch);
+    }
+
+    private void sendBatchComplete(Batch batch){
+        if (batch.store)
+            storingOperation.set(false);
+        else
+            removingOperation.set(false);
+        List<String> message = new ArrayList<>(List.of(ClientCommands.BATCH_COMPLETE.toString()));
+        message.addAll(batch.failed());
+        reply(batch.socket, batch.requestId, message);
+    }
+
+    /*************************************** END OF BATCH PROCEDURES *******************************************/
+
+
+    /****************************************** BEGINNING OF TIMEOUTS *******************************************/
+
+    //Every operation waiting for acknowledges schedules its timeout on the shared thread, and cancels it once
+    //its last acknowledge arrives. A new timeout for a name replaces the one still pending for it
+    private void scheduleTimeout(String name, Runnable action){
+        synchronized (pendingTimeouts) {
+            cancelTimeout(name);
+            pendingTimeouts.put(name, timeouts.schedule(()->{
+                pendingTimeouts.remove(name);
+                operationStarts.remove(name);
+                Tracing.Span span = operationSpans.remove(name);
+                if (span != null)
+                    Tracing.finish(span.tag("error", "timeout"));
+                metrics.counter("controller_timeouts_total").increment();
+                action.run();
+            }, timeout, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    //Called by the handler of the STORE or REMOVE, while the span of the request is the current one
+    private void startOperation(String fileName){
+        operationStarts.put(fileName, System.nanoTime());
+        Tracing.Span span = Tracing.startChild("ACKNOWLEDGES", Tracing.current());
+        if (span != null)
+            operationSpans.put(fileName, span.tag("file", fileName));
+    }
+
+    //The time from accepting the STORE or REMOVE of the file to its completion
+    private void recordOperation(String histogram, String fileName){
+        Long start = operationStarts.remove(fileName);
+        if (start != null)
+            metrics.histogram(histogram).recordSince(start);
+        Tracing.finish(operationSpans.remove(fileName));
+    }
+
+    private void cancelTimeout(String name){
+        cancel(pendingTimeouts.remove(name));
+    }
+
+    private void cancel(ScheduledFuture<?> scheduledTimeout){
+        if (scheduledTimeout != null)
+            scheduledTimeout.cancel(false);
+    }
+
+    /********************************************* END OF TIMEOUTS **********************************************/
 
 
     /*************************************** BEGINNING OF LOAD PROCEDURES *******************************************/
 
-    public void handleLoadRequest(PrintWriter writer, Socket socket, String sentence){
+    public void handleLoadRequest(Socket socket, String requestId, String[] splitted){
 
-        String[] splitted = sentence.split(" ");
 
-        if (splitted.length != 2){
+        Set<String> capabilities = capabilities(splitted);
+        if (splitted.length != (capabilities == null ? 2 : 3)){
             System.out.println("ERROR => the LOAD command should take one argument");
         }else{
 
             String fileName = splitted[1];
-            String message;
 
             if(dstorePorts.size() < replicationFactor){
 
-                message = ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString();
-                writer.println(message); writer.flush();
-                ControllerLogger.getInstance().messageSent(socket, message);
+                reply(socket, requestId, ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString());
                 return;
             }
 
-            if (!fileAllocation.containsKey(fileName)) {
-                message = ClientCommands.ERROR_FILE_DOES_NOT_EXIST.toString();
-                writer.println(message);
-                writer.flush();
-                ControllerLogger.getInstance().messageSent(socket, message);
+            ErasureCoding.Layout layout = ecFiles.get(fileName);
+            Multipart.Manifest manifest = multipartFiles.get(fileName);
+
+            if (layout != null) {
+                reply(socket, requestId, loadFromErasureCodedSentenceFormat(layout));
+
+            } else if (manifest != null) {
+                reply(socket, requestId, loadFromPartsSentenceFormat(manifest));
+
+            } else if (!fileAllocation.containsKey(fileName)) {
+                reply(socket, requestId, ClientCommands.ERROR_FILE_DOES_NOT_EXIST.toString());
 
             } else {
-                addSuspendedReloads(socket,fileAllocation.get(fileName).stream().skip(1).collect(Collectors.toList()));
+                addSuspendedReloads(socket,fileName,fileAllocation.get(fileName).stream().skip(1).collect(Collectors.toList()));
                 int port = fileAllocation.get(fileName).get(0);
                 long fileSize = fileSizes.get(fileName);
-                message = String.format("%s %s %s", ClientCommands.LOAD_FROM.toString(), port, fileSize);
-                writer.println(message);
-                writer.flush();
-                ControllerLogger.getInstance().messageSent(socket, message);
+                reply(socket, requestId, loadFromSentenceFormat(fileName, port, fileSize, capabilities));
             }
 
         }
     }
 
-    private void addSuspendedReloads(Socket socket, List<Integer> dstorePorts){
-        this.suspendedReloads.put(socket,dstorePorts);
+    //LOAD, RELOAD and LOAD_BATCH may end with +capability,... naming the optional LOAD_FROM fields the client understands,
+    //null if they do not. The clients of the spec send none and get LOAD_FROM port filesize
+    private static Set<String> capabilities(String[] splitted){
+        String last = splitted[splitted.length - 1];
+        if(splitted.length <= 2 || !last.startsWith(Protocol.CAPABILITIES_PREFIX))
+            return null;
+        return new HashSet<>(Arrays.asList(last.substring(Protocol.CAPABILITIES_PREFIX.length()).split(",")));
+    }
+
+    //LOAD_FROM port filesize [checksum] [@epoch], the checksum lets the client verify the bytes while it reads them and
+    //the placement epoch lets it lease the location (see LocationCache). Each is only sent if the client asked for it
+    private List<String> loadFromSentenceFormat(String fileName, int port, long fileSize, Set<String> capabilities){
+        List<String> message = new ArrayList<>(List.of(ClientCommands.LOAD_FROM.toString(), String.valueOf(port), String.valueOf(fileSize)));
+        if(capabilities == null)
+            return message;
+        Long checksum = fileChecksums.get(fileName);
+        if(checksum != null && capabilities.contains(Protocol.CHECKSUM_CAPABILITY))
+            message.add(String.valueOf(checksum));
+        if(capabilities.contains(Protocol.EPOCH_CAPABILITY))
+            message.add(Protocol.EPOCH_PREFIX + placementEpoch.get());
+        return message;
+    }
+
+    private void placementChanged(){
+        placementEpoch.incrementAndGet();
+    }
+
+    //LOAD_FROM_EC k m filesize port1 ... portk+m [checksum], the client fetches any k fragments in parallel.
+    //The port of a missing fragment is -1
+    private List<String> loadFromErasureCodedSentenceFormat(ErasureCoding.Layout layout){
+        List<String> message = withPorts(List.of(ClientCommands.LOAD_FROM_EC.toString(), String.valueOf(layout.dataShards),
+                String.valueOf(layout.parityShards), String.valueOf(layout.fileSize)), layout.ports);
+        if(layout.checksum != null)
+            message.add(String.valueOf(layout.checksum));
+        return message;
+    }
+
+    //LOAD_FROM_PARTS numberParts partsize filesize [checksum], the client loads filename#part<i> for each part
+    private List<String> loadFromPartsSentenceFormat(Multipart.Manifest manifest){
+        List<String> message = new ArrayList<>(List.of(ClientCommands.LOAD_FROM_PARTS.toString(), String.valueOf(manifest.numberParts()),
+                String.valueOf(manifest.partSize), String.valueOf(manifest.fileSize)));
+        if(manifest.checksum != null)
+            message.add(String.valueOf(manifest.checksum));
+        return message;
+    }
+
+    //The Dstores still to be tried are kept per file, a client pipelining loads may RELOAD any of them
+    private void addSuspendedReloads(Socket socket, String fileName, List<Integer> dstorePorts){
+        this.suspendedReloads.computeIfAbsent(socket, s -> Collections.synchronizedMap(new HashMap<>())).put(fileName,dstorePorts);
     }
 
     /*************************************** END OF LOAD PROCEDURES *******************************************/
 
     /************************************ BEGINNING OF RELOAD PROCEDURES *******************************************/
 
-    private void handleReloadRequest(PrintWriter writer, Socket socket, String sentence){
-        String[] splitted = sentence.split(" ");
-        if(splitted.length != 2){
+    private void handleReloadRequest(Socket socket, String requestId, String[] splitted){
+        Set<String> capabilities = capabilities(splitted);
+        if(splitted.length != (capabilities == null ? 2 : 3)){
             System.out.println("ERROR => the RELOAD command should have one argument");
         }else{
             String filename = splitted[1];
 
-            if(! suspendedReloads.containsKey(socket)){
+            Map<String,List<Integer>> reloads = suspendedReloads.get(socket);
+            List<Integer> dstores = reloads == null ? null : reloads.get(filename);
+
+            if(dstores == null){
                 System.out.println("ERROR => it is not possible to use the RELOAD command prior to LOAD");
             }else{
-                String message;
-                if(suspendedReloads.get(socket).size()==0){
-                    suspendedReloads.remove(socket);
-                    message = ClientCommands.ERROR_LOAD.toString();
-                    writer.println(message); writer.flush();
-                    ControllerLogger.getInstance().messageSent(socket, message);
+                Long fileSize = fileSizes.get(filename);
+                if(fileSize == null){
+                    //the file has been removed since the LOAD
+                    reloads.remove(filename);
+                    reply(socket, requestId, ClientCommands.ERROR_FILE_DOES_NOT_EXIST.toString());
+                }else if(dstores.size()==0){
+                    reloads.remove(filename);
+                    reply(socket, requestId, ClientCommands.ERROR_LOAD.toString());
                 }else{
-                    int port = suspendedReloads.get(socket).get(0);
-                    long fileSize = fileSizes.get(filename);
-                    suspendedReloads.get(socket).remove(0);
-                    message = String.format("%s %s %s", ClientCommands.LOAD_FROM.toString(), port, fileSize);
-                    writer.println(message); writer.flush();
-                    ControllerLogger.getInstance().messageSent(socket, message);
+                    int port = dstores.get(0);
+                    dstores.remove(0);
+                    reply(socket, requestId, loadFromSentenceFormat(filename, port, fileSize, capabilities));
                 }
             }
         }
@@ -527,11 +1337,10 @@ public class Controller {
 
     /*************************************** BEGINNING OF JOIN PROCEDURES *******************************************/
 
-    private void handleJoinRequest(Socket socket, String sentence){
-        String[] splitted = sentence.split(" ");
+    private void handleJoinRequest(Socket socket, String[] splitted){
 
-        if (splitted.length != 2){
-            System.out.println("ERROR => the JOIN command should take one argument");
+        if (splitted.length < 2){
+            System.out.println("ERROR => the JOIN command should take at least one argument");
         }else{
 
             try {
@@ -539,7 +1348,14 @@ public class Controller {
 
                 if(! dstorePorts.contains(port)) {
                     ControllerLogger.getInstance().dstoreJoined(socket, port);
+                    if(splitted.length > 2)
+                        restoreAdvertisedFiles(port, splitted);
+                    outboxes.put(socket, new Outbox("outbox-" + port, tokens -> writeMessage(socket, tokens),
+                            Map.of(DstoreCommands.REMOVE.toString(), DstoreCommands.REMOVE_BATCH.toString(),
+                                    DstoreCommands.REMOVE_BATCH.toString(), DstoreCommands.REMOVE_BATCH.toString())));
                     dstorePorts.add(port);
+                    if (ring != null)
+                        ring.add(port);
                     dstorePortsSocket.put(port,socket);
                     new Thread(()->waitForRequestsDstore(socket)).start();
 
@@ -559,37 +1375,77 @@ public class Controller {
         }
     }
 
+    //JOIN port numberFiles file1 size1 checksum1 ... is sent by a Dstore which has been restarted on top of its data.
+    //Its replicas are counted immediately so that the following rebalance only has to move the real deltas
+    private void restoreAdvertisedFiles(int port, String[] splitted){
+
+        try {
+            int numberFiles = Integer.parseInt(splitted[2]);
+            if (splitted.length != 3 + 3 * numberFiles) {
+                System.out.println("ERROR => the catalog advertised in the JOIN command is malformed");
+                return;
+            }
+
+            for (int i = 0; i < numberFiles; i++) {
+                String fileName = splitted[3 + 3 * i];
+                long fileSize = Long.parseLong(splitted[4 + 3 * i]);
+                long checksum = Long.parseLong(splitted[5 + 3 * i]);
+
+                if (ErasureCoding.isFragment(fileName)) {
+                    ErasureCoding.Layout layout = ecFiles.get(ErasureCoding.logicalName(fileName));
+                    int index = ErasureCoding.fragmentIndex(fileName);
+                    if (layout != null && index < layout.ports.size() && layout.ports.get(index) == -1)
+                        layout.ports.set(index, port);
+                    continue;
+                }
+
+                synchronized (fileAllocation) {
+                    if (acknowledges.containsKey(fileName)) {
+                        continue; //the file is being stored or removed right now
+                    }
+                    if (fileAllocation.containsKey(fileName)) {
+                        boolean sameContent = Objects.equals(fileSizes.get(fileName), fileSize)
+                                && Objects.equals(fileChecksums.getOrDefault(fileName, checksum), checksum);
+                        if (sameContent && !fileAllocation.get(fileName).contains(port))
+                            fileAllocation.get(fileName).add(port);
+                    } else {
+                        //the same file would be rediscovered by the LIST operations of the next rebalance anyway
+                        fileAllocation.put(fileName, new ArrayList<>(List.of(port)));
+                        fileSizes.put(fileName, fileSize);
+                        fileChecksums.put(fileName, checksum);
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("ERROR => the catalog advertised in the JOIN command is malformed");
+        }
+    }
+
     /*************************************** END OF JOIN PROCEDURES *******************************************/
 
 
     /*************************************** BEGINNING OF LIST PROCEDURES *******************************************/
 
-    private void handleListRequest(PrintWriter writer, Socket socket){
+    private void handleListRequest(Socket socket, String requestId){
 
 
         if (dstorePorts.size() < replicationFactor) {
 
-            String message = ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString();
-            writer.println(message);
-            writer.flush();
-            ControllerLogger.getInstance().messageSent(socket, message);
+            reply(socket, requestId, ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString());
             return;
         }
 
-        String fileList;
+        List<String> message = new ArrayList<>(List.of(ClientCommands.LIST.toString()));
         synchronized (fileAllocation) {
-            if (fileAllocation.size() != 0) {
-                Set<String> files = new HashSet<>(fileAllocation.keySet());
-                files.removeAll(acknowledges.keySet());
-                fileList = String.join(" ", files);
-            } else {
-                fileList = "";
-            }
+            Set<String> files = new HashSet<>(fileAllocation.keySet());
+            files.removeIf(Multipart::isPart);
+            files.addAll(ecFiles.keySet());
+            files.addAll(multipartFiles.keySet());
+            files.removeAll(acknowledges.keySet());
+            message.addAll(files);
         }
 
-        writer.println(String.format("%s %s",ClientCommands.LIST.toString(),fileList));
-        writer.flush();
-        ControllerLogger.getInstance().messageSent(socket, fileList);
+        reply(socket, requestId, message);
     }
 
     /****************************************** END OF LIST PROCEDURES *********************************************/
@@ -597,24 +1453,19 @@ public class Controller {
 
     /*************************************** BEGINNING OF REMOVE PROCEDURES *******************************************/
 
-    private void handleRemoveRequest(PrintWriter writer, Socket socket, String sentence){
+    private void handleRemoveRequest(Socket socket, String requestId, String[] splitted){
 
-        String[] splitted = sentence.split(" ");
         if(splitted.length != 2){
             removingOperation.set(false);
             System.out.println("Error => the REMOVE command should take one argument");
         }else{
 
             String fileName = splitted[1];
-            String message;
 
             if (dstorePorts.size() < replicationFactor) {
 
                 removingOperation.set(false);
-                message = ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString();
-                writer.println(message);
-                writer.flush();
-                ControllerLogger.getInstance().messageSent(socket, message);
+                reply(socket, requestId, ClientCommands.ERROR_NOT_ENOUGH_DSTORES.toString());
                 return;
             }
 
@@ -622,46 +1473,147 @@ public class Controller {
                 //if the file is present but it is not being removed
 
                 List<Integer> dstores = new ArrayList<>(fileAllocation.get(fileName));
+                if (requestId != null)
+                    requestIds.put(fileName, requestId);
                 acknowledges.put(fileName, new Pair<>(new AtomicInteger(0), new Pair<>(socket, new Pair<>(0L, dstores))));
+                startOperation(fileName);
                 sendRemoveToDstores(dstores, fileName);
 
-                ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-                scheduler.schedule(()->{
+                scheduleTimeout(fileName, ()->{
                     if (acknowledges.containsKey(fileName)) {
                         removingOperation.set(false);
                         System.out.println(String.format("ERROR => %s remove acknowledges have not been received prior to the timeout",dstores.size()));
                         acknowledges.remove(fileName);
+                        requestIds.remove(fileName);
+                    }
+                });
+
+            } else if (ecFiles.containsKey(fileName) && (! acknowledges.containsKey(fileName))) {
+                handleErasureCodedRemoveRequest(socket, requestId, fileName);
+
+            } else if ((multipartFiles.containsKey(fileName) || pendingUploads.containsKey(fileName)) && (! acknowledges.containsKey(fileName))) {
+                //removing an upload which has not been committed yet aborts it
+                handleMultipartRemoveRequest(socket, requestId, fileName);
+
+            } else {
+                removingOperation.set(false);
+                reply(socket, requestId, ClientCommands.ERROR_FILE_DOES_NOT_EXIST.toString());
+            }
+        }
+    }
+
+    private void handleErasureCodedRemoveRequest(Socket socket, String requestId, String fileName){
+
+        List<Pair<Integer,String>> fragments = storedReplicas(fileName);
+        List<Integer> dstores = fragments.stream().map(fragment -> fragment.fst).collect(Collectors.toCollection(ArrayList::new));
+
+        if(dstores.size() == 0){
+            //no fragment is left on any Dstore, there is nothing to wait for
+            removingOperation.set(false);
+            ecFiles.remove(fileName);
+            reply(socket, requestId, ClientCommands.REMOVE_COMPLETE.toString());
+            return;
+        }
+
+        if(requestId != null)
+            requestIds.put(fileName, requestId);
+        acknowledges.put(fileName, new Pair<>(new AtomicInteger(0), new Pair<>(socket, new Pair<>(0L, dstores))));
+        startOperation(fileName);
+        for(var fragment : fragments){
+            sendRemoveToDstore(fragment.fst, fragment.snd);
+        }
+
+        scheduleTimeout(fileName, ()->{
+            if (acknowledges.containsKey(fileName)) {
+                removingOperation.set(false);
+                System.out.println(String.format("ERROR => %s fragment remove acknowledges have not been received prior to the timeout",dstores.size()));
+                acknowledges.remove(fileName);
+                requestIds.remove(fileName);
+            }
+        });
+    }
+
+    private void handleMultipartRemoveRequest(Socket socket, String requestId, String fileName){
+
+        List<Pair<Integer,String>> replicas = storedReplicas(fileName);
+        List<Integer> dstores = replicas.stream().map(replica -> replica.fst).collect(Collectors.toCollection(ArrayList::new));
+
+        if(dstores.size() == 0){
+            removingOperation.set(false);
+            forgetParts(fileName);
+            reply(socket, requestId, ClientCommands.REMOVE_COMPLETE.toString());
+            return;
+        }
+
+        if(requestId != null)
+            requestIds.put(fileName, requestId);
+        acknowledges.put(fileName, new Pair<>(new AtomicInteger(0), new Pair<>(socket, new Pair<>(0L, dstores))));
+        startOperation(fileName);
+        for(var replica : replicas){
+            sendRemoveToDstore(replica.fst, replica.snd);
+        }
+
+        scheduleTimeout(fileName, ()->{
+            if (acknowledges.containsKey(fileName)) {
+                removingOperation.set(false);
+                System.out.println(String.format("ERROR => %s part remove acknowledges have not been received prior to the timeout",dstores.size()));
+                acknowledges.remove(fileName);
+                requestIds.remove(fileName);
+            }
+        });
+    }
+
+    //Every Dstore holding a piece of the file with the name it is stored under: its replicas, its fragments or
+    //the replicas of its parts. null if there is no such file
+    private List<Pair<Integer,String>> storedReplicas(String fileName){
+        List<Pair<Integer,String>> replicas = new ArrayList<>();
+        List<Integer> ports = fileAllocation.get(fileName);
+        ErasureCoding.Layout layout = ecFiles.get(fileName);
+        Multipart.Manifest manifest = multipartFiles.containsKey(fileName) ? multipartFiles.get(fileName) : pendingUploads.get(fileName);
+
+        if (ports != null) {
+            synchronized (ports) {
+                for (int port : ports) {
+                    replicas.add(new Pair<>(port, fileName));
+                }
+            }
+        } else if (layout != null) {
+            synchronized (layout.ports) {
+                for (int i = 0; i < layout.ports.size(); i++) {
+                    if (layout.ports.get(i) != -1)
+                        replicas.add(new Pair<>(layout.ports.get(i), ErasureCoding.fragmentName(fileName, i)));
+                }
+            }
+        } else if (manifest != null) {
+            for (int i = 0; i < manifest.numberParts(); i++) {
+                String part = Multipart.partName(fileName, i);
+                List<Integer> partPorts = fileAllocation.get(part);
+                if (partPorts != null) {
+                    synchronized (partPorts) {
+                        for (int port : partPorts) {
+                            replicas.add(new Pair<>(port, part));
+                        }
                     }
-                }, timeout,TimeUnit.MILLISECONDS);
-
-            } else {
-                removingOperation.set(false);
-                message = ClientCommands.ERROR_FILE_DOES_NOT_EXIST.toString();
-                writer.println(message);
-                writer.flush();
-                ControllerLogger.getInstance().messageSent(socket, message);
+                }
             }
+        } else {
+            return null;
         }
+        return replicas;
     }
 
     private void sendRemoveToDstores(List<Integer> dstorePorts, String fileName){
         for(int dstore : dstorePorts){
-            new Thread(()->sendRemoveToDstore(dstore,fileName)).start();
+            sendRemoveToDstore(dstore,fileName);
         }
     }
 
     private void  sendRemoveToDstore(int dstorePort, String fileName){
 
-        try {
-            Socket socket = dstorePortsSocket.get(dstorePort);
-            PrintWriter writer = new PrintWriter(socket.getOutputStream());
-            String message = String.format("%s %s",DstoreCommands.REMOVE.toString(),fileName);
-            writer.println(message); writer.flush();
-            ControllerLogger.getInstance().messageSent(socket,message);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        placementChanged();
+        Socket socket = dstorePortsSocket.get(dstorePort);
+        if(socket != null)
+            sendMessage(socket, DstoreCommands.REMOVE.toString(), fileName);
     }
 
     /****************************************** END OF REMOVE PROCEDURES *******************************************/
@@ -669,42 +1621,52 @@ public class Controller {
 
     /****************************************** BEGINNING OF REMOVE ACK REQUEST ************************************/
 
-    private void handleRemoveAck(String sentence){
-        String[] splitted = sentence.split(" ");
+    //REMOVE_ACK filename1 ..., a Dstore answering a REMOVE_BATCH acknowledges all its files in one message
+    private void handleRemoveAck(String[] splitted){
 
-        if(splitted.length != 2){
-            System.out.println("ERROR => the REMOVE_ACK command should take one argument");
+        if(splitted.length < 2){
+            System.out.println("ERROR => the REMOVE_ACK command should take at least one argument");
         }else{
-            String fileName = splitted[1];
-
-            if(acknowledges.containsKey(fileName)){
+            for(int i = 1; i < splitted.length; i++){
+                String fileName = Multipart.logicalName(ErasureCoding.logicalName(splitted[i]));
 
-                if(acknowledges.get(fileName).fst.incrementAndGet() >= acknowledges.get(fileName).snd.snd.snd.size()) {
-                    removingOperation.set(false);
-                    sendRemoveComplete(acknowledges.get(fileName).snd.fst);
-                    fileAllocation.remove(fileName);
-                    fileSizes.remove(fileName);
-                    acknowledges.remove(fileName);
+                if(acknowledges.containsKey(fileName)){
+                    acknowledgeRemove(fileName);
+                }else{
+                    System.out.println("ERROR => a remove acknowledge has arrived late");
                 }
-
-            }else{
-                System.out.println("ERROR => a remove acknowledge has arrived late");
             }
         }
     }
 
-    private void sendRemoveComplete(Socket socket){
-
-        try {
-            PrintWriter writer = new PrintWriter(socket.getOutputStream());
-            String message = ClientCommands.REMOVE_COMPLETE.toString();
-            writer.println(message);
-            writer.flush();
-            ControllerLogger.getInstance().messageSent(socket, message);
-        } catch(IOException e){
-            //Nothing to do here
+    //The index is updated first, a client may act on REMOVE_COMPLETE before this thread goes on
+    private void acknowledgeRemove(String fileName){
+        var acknowledge = acknowledges.get(fileName);
+        if(acknowledge != null && acknowledge.fst.incrementAndGet() >= acknowledge.snd.snd.snd.size()) {
+            removingOperation.set(false);
+            forgetFile(fileName);
+            acknowledges.remove(fileName);
+            cancelTimeout(fileName);
+            sendRemoveComplete(acknowledge.snd.fst, fileName);
         }
+    }
+
+    private void forgetFile(String fileName){
+        fileAllocation.remove(fileName);
+        fileSizes.remove(fileName);
+        fileChecksums.remove(fileName);
+        ecFiles.remove(fileName);
+        forgetParts(fileName);
+        forgetSuspendedReloads(fileName);
+    }
 
+    private void sendRemoveComplete(Socket socket, String fileName){
+        Batch batch = batches.remove(fileName);
+        if(batch != null)
+            completeBatchFile(batch, fileName, true);
+        else
+            reply(socket, requestIds.remove(fileName), ClientCommands.REMOVE_COMPLETE.toString());
+        recordOperation("controller_remove_complete_us", fileName);
     }
 
     /******************************************* END OF REMOVE ACK REQUEST ***************************************/
@@ -712,27 +1674,20 @@ public class Controller {
 
     /****************************************** BEGINNING OF ERROR DOES NOT EXIST*********************************/
 
-    private void handleErrorDoesNotExist(String sentence){
+    private void handleErrorDoesNotExist(String[] splitted){
 
-        String[] splitted = sentence.split(" ");
 
-        if(splitted.length != 2){
-            System.out.println("ERROR => the ERROR_FILE_DOES_NOT_EXIST command should take one argument");
+        if(splitted.length < 2){
+            System.out.println("ERROR => the ERROR_FILE_DOES_NOT_EXIST command should take at least one argument");
         }else{
-            String fileName = splitted[1];
-
-            if(acknowledges.containsKey(fileName)){
+            for(int i = 1; i < splitted.length; i++){
+                String fileName = Multipart.logicalName(ErasureCoding.logicalName(splitted[i]));
 
-                if(acknowledges.get(fileName).fst.incrementAndGet() >= acknowledges.get(fileName).snd.snd.snd.size()) {
-                    removingOperation.set(false);
-                    sendRemoveComplete(acknowledges.get(fileName).snd.fst);
-                    fileAllocation.remove(fileName);
-                    fileSizes.remove(fileName);
-                    acknowledges.remove(fileName);
+                if(acknowledges.containsKey(fileName)){
+                    acknowledgeRemove(fileName);
+                }else{
+                    System.out.println("ERROR => an error file does not exist ackowledge has arrived late");
                 }
-
-            }else{
-                System.out.println("ERROR => an error file does not exist ackowledge has arrived late");
             }
         }
     }
@@ -743,9 +1698,8 @@ public class Controller {
 
     /************************************** BEGINNING OF LIST PROCEDURE ******************************************/
 
-    private void handleList(Socket socket, String sentence){
+    private void handleList(Socket socket, String[] splitted){
 
-        String[] splitted = sentence.split(" ");
         int dstore = 0;
 
         synchronized (dstorePortsSocket){
@@ -776,6 +1730,7 @@ public class Controller {
                 //Restart rebalance operation
                 var filesInDstoreSnd = shallowCopy(filesIndStore.snd);
                 clearFilesIndStore();
+                cancel(listTimeout);
                 new Thread(() -> rebalanceOperationAfterListOperations(filesInDstoreSnd)).start();
             }
         }
@@ -808,7 +1763,7 @@ public class Controller {
 
     private boolean rebalanceOperation(){
 
-        if( canRebalance && fileAllocation.size() != 0 && alreadyRebalancing.compareAndSet(false,true)) {
+        if( canRebalance && (fileAllocation.size() != 0 || ecFiles.size() != 0) && alreadyRebalancing.compareAndSet(false,true)) {
 
             while(storingOperation.get() || removingOperation.get()){
                 //Loops here as long as there is no storing or removing operation being performed
@@ -818,11 +1773,14 @@ public class Controller {
             return true;
 
         }
-        return (fileAllocation.size() == 0) || false;
+        return (fileAllocation.size() == 0 && ecFiles.size() == 0) || false;
     }
 
     private void performListOperations(){
 
+        rebalanceStart = System.nanoTime();
+        rebalanceSpan = Tracing.startRoot("REBALANCE");
+
         synchronized (dstorePorts) {
             filesIndStore.fst.addAll(dstorePorts);
             filesIndStore.snd.clear();
@@ -831,8 +1789,7 @@ public class Controller {
             }
         }
 
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.schedule(()->{
+        listTimeout = timeouts.schedule(()->{
             synchronized (filesIndStore){
                 if(filesIndStore.fst.size() != 0){
                     //Restart rebalance operation
@@ -872,26 +1829,22 @@ public class Controller {
 
     private void listOperation(int dstorePort) {
 
-        try {
-            Socket socket = dstorePortsSocket.get(dstorePort);
-            PrintWriter writer = new PrintWriter(socket.getOutputStream());
-            String message = DstoreCommands.LIST.toString();
-            writer.println(message);
-            writer.flush();
-            ControllerLogger.getInstance().messageSent(socket, message);
-
-        }catch(IOException e){
-            //TODO error handling
-        }catch(Exception e){
-
-        }
+        Socket socket = dstorePortsSocket.get(dstorePort);
+        if(socket != null)
+            sendMessage(socket, DstoreCommands.LIST.toString());
     }
 
     private void rebalanceOperationAfterListOperations(List<Pair<Integer, List<String>>> filesInDstores){
 
-        List<Pair<String, List<Integer>>> fileAllocation = revert(filesInDstores);
+        //fragments of erasure coded files are not replicated, missing ones are rebuilt instead
+        var fragmentsInDstores = extractFragments(filesInDstores);
+        updateErasureCodedFiles(fragmentsInDstores);
+        rebuildMissingFragments(filesInDstores);
+
+        List<Pair<String, List<Integer>>> fileAllocation = RebalancePlanner.revert(filesInDstores);
 
         //Updates the file allocation hash map of the instance
+        placementChanged();
         this.fileAllocation.clear();
         for(Pair<String,List<Integer>> pair : fileAllocation){
             this.fileAllocation.put(pair.fst, shallowCopy(pair.snd));
@@ -906,17 +1859,14 @@ public class Controller {
                     iter.remove();
             }
         }
-
-        var filesInDstoresImmutable = filesInDstores.stream()
-                .map(pair -> new Pair<>(pair.fst,shallowCopy(pair.snd)))
-                .collect(Collectors.toList());
+        cleanUpFileChecksums();
 
         if(fileAllocation.size() != 0) {
 
-            var informationForDstores = replicateFiles(filesInDstoresImmutable,filesInDstores, fileAllocation);
-            informationForDstores = rebalance(fileAllocation, filesInDstoresImmutable,filesInDstores, informationForDstores);
+            var informationForDstores = rebalancePlanner.plan(fileAllocation, filesInDstores, fileSizes);
 
             if(informationForDstores.size() == 0){
+                finishRebalanceSpan(null);
                 alreadyRebalancing.set(false);
                 return;
             }
@@ -929,13 +1879,14 @@ public class Controller {
 
             var informationForDstoresCopy = informationForDstores;
 
-            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-            scheduler.schedule(()->{
+            rebalanceTimeout = timeouts.schedule(()->{
                 if(rebalancesCompleted.fst.fst.get() != 0){
                     System.out.println("ERROR => not all rebalance completed ackowledges have been received prior to the timeout");
                     rebalancesCompleted.fst.fst.set(0);
                     rebalancesCompleted.fst.snd.set(0);
                     updateFileAlocationAfterRebalance(informationForDstoresCopy);
+                    metrics.histogram("controller_rebalance_us").recordSince(rebalanceStart);
+                    finishRebalanceSpan("timeout");
                     alreadyRebalancing.set(false);
                 }
             },timeout,TimeUnit.MILLISECONDS);
@@ -944,282 +1895,21 @@ public class Controller {
         }else{
             this.fileAllocation.clear();
             this.fileSizes.clear();
+            cleanUpFileChecksums();
+            finishRebalanceSpan(null);
             alreadyRebalancing.set(false);
         }
 
     }
 
-
-    private List<Pair<String,List<Integer>>> revert(List<Pair<Integer,List<String>>> filesInDstores){
-
-        List<Pair<String,List<Integer>>> fileAllocation = new ArrayList<>();
-        HashMap<String,List<Integer>> fileAllocationMap = new HashMap<>();
-
-        for(Pair<Integer,List<String>> pair : filesInDstores) {
-
-            int port = pair.fst;
-            List<String> files = pair.snd;
-
-            if(files.size()==1 && files.get(0).equals(""))
-                continue;
-
-            for (String file : files) {
-                if (fileAllocationMap.containsKey(file)) {
-                    fileAllocationMap.get(file).add(port);
-                } else {
-                    fileAllocationMap.put(file, new ArrayList<>(){{add(port);}});
-                }
-            }
-
-        }
-
-        for(String file : fileAllocationMap.keySet()){
-            fileAllocation.add(new Pair<>(file,fileAllocationMap.get(file)));
-        }
-        return fileAllocation;
-    }
-
-    private HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> replicateFiles(List<Pair<Integer,List<String>>> filesInDstoresImmutable, List<Pair<Integer,List<String>>> filesInDstores, List<Pair<String,List<Integer>>> fileAllocation){
-
-        //the first element of the pair is the file and the second is the number of times it needs to be replicated
-        List<Pair<String,Integer>> filesNotRReplicatedNumber = fileAllocation.stream()
-                .filter(file-> file.snd.size() < replicationFactor)
-                .map(file -> new Pair<>(file.fst,replicationFactor - file.snd.size()))
-                .collect(Collectors.toList());
-
-        return replicateFilesAuxiliary(filesInDstoresImmutable,filesInDstores,filesNotRReplicatedNumber);
-    }
-
-    private HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> replicateFilesAuxiliary(List<Pair<Integer,List<String>>> filesInDstoreImmutable, List<Pair<Integer,List<String>>> filesInDstore, List<Pair<String,Integer>> filesNotRReplicatedNumber){
-
-        HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationPerDstores = new HashMap<>();
-
-        for(Pair<String,Integer> pair : filesNotRReplicatedNumber){
-            String file = pair.fst;
-            for(int i = 1; i <= pair.snd; i++){
-
-                var dStorePortsOrderByNumFiles = filesInDstore.stream()
-                        .map(p -> {
-                            if (p.snd.get(0).equals(""))
-                                return new Pair<>(p.fst, 0);
-                            else
-                                return new Pair<>(p.fst, p.snd.size());
-                        })
-                        .sorted(Comparator.comparingInt(p -> p.snd))
-                        .map(p -> p.fst)
-                        .collect(Collectors.toList());
-
-                for(int n = 0; n < dStorePortsOrderByNumFiles.size(); n++){
-
-                    int receivingPort = dStorePortsOrderByNumFiles.get(n);
-                    int indexReceivingPort = filesInDstore.stream().map(p->p.fst).collect(Collectors.toList()).indexOf(receivingPort);
-                    if(! filesInDstore.get(indexReceivingPort).snd.contains(file)){
-
-                        int portTransferingFile = filesInDstoreImmutable.stream() //filesInDstoreImmutable needs to be used here as it contains the real current files that each dstore stores
-                                .filter(par -> par.snd.contains(file))
-                                .map(par -> par.fst)
-                                .limit(1)
-                                .collect(Collectors.toList())
-                                .get(0);
-
-                        filesInDstore.get(indexReceivingPort).snd.remove("");
-                        filesInDstore.get(indexReceivingPort).snd.add(0,file);
-
-                        if(informationPerDstores.containsKey(portTransferingFile)){
-                            List<Pair<String,List<Integer>>> list = informationPerDstores.get(portTransferingFile).fst;
-                            int indexFile = list.stream()
-                                    .map(par -> par.fst )
-                                    .collect(Collectors.toList())
-                                    .indexOf(file);
-                            if(indexFile != -1){
-                                list.get(indexFile).snd.add(receivingPort);
-                            }else{
-                                list.add(new Pair<>(file,new ArrayList<>(){{add(receivingPort);}}));
-                            }
-
-                        }else{
-                            informationPerDstores.put(portTransferingFile,new Pair<>(new ArrayList<>(){{add(new Pair<>(file,new ArrayList<>(){{add(receivingPort);}}));}},new ArrayList<>()));
-                        }
-                        break;
-                    }
-
-                }
-            }
-        }
-        return informationPerDstores;
-    }
-
-    private HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> rebalance(List<Pair<String,List<Integer>>> fileAllocation,List<Pair<Integer,List<String>>> filesInDstoresImmutable ,List<Pair<Integer,List<String>>> filesInDstores, HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores){
-
-        int numberFiles = fileAllocation.size();
-        int numberDstores = filesInDstores.size();
-
-        if((numberFiles * replicationFactor) >= numberDstores) {
-            int filesPerDstore = (int) Math.floor(numberFiles * replicationFactor / (double) numberDstores);
-            int[] expectedNumberFilesPerDstore = IntStream.generate(() -> filesPerDstore).limit(numberDstores).toArray();
-
-            for (int i = 0; i < ((numberFiles * replicationFactor) % numberDstores); i++) {
-                expectedNumberFilesPerDstore[i]++;
-            }
-
-            List<Pair<Integer, Integer>> dStorePortsOrderByNumFilesPair = filesInDstores.stream()
-                    .map(pair -> {
-                        if (pair.snd.get(0).equals("")) //TODO if a dstore has no files will it output an empty string?
-                            return new Pair<>(pair.fst, 0);
-                        else
-                            return new Pair<>(pair.fst, pair.snd.size());
-                    })
-                    .sorted(Comparator.comparingInt(pair -> pair.snd))
-                    .collect(Collectors.toList());
-
-            Collections.reverse(dStorePortsOrderByNumFilesPair);
-
-            List<Pair<Integer, Pair<Integer, Integer>>> dstoreNumberFilesExpected = new ArrayList<>();
-            for (int i = 0; i < dStorePortsOrderByNumFilesPair.size(); i++) {
-                int port = dStorePortsOrderByNumFilesPair.get(i).fst;
-                int currentNumberFiles = dStorePortsOrderByNumFilesPair.get(i).snd;
-                int expectedNumberFiles = expectedNumberFilesPerDstore[i];
-                dstoreNumberFilesExpected.add(new Pair<>(port, new Pair<>(currentNumberFiles, expectedNumberFiles)));
-            }
-
-            return rebalanceAuxiliary(filesInDstoresImmutable, filesInDstores, dstoreNumberFilesExpected, informationForDstores);
-
-        }else{
-
-            List<Integer> expectedNumberFilesPerDstore = Stream.concat(
-                    IntStream.generate(() -> 1).boxed().limit(numberFiles*replicationFactor),
-                    IntStream.generate(()->0).boxed().limit(numberDstores-(numberFiles*replicationFactor))
-            ).collect(Collectors.toList());
-
-
-            List<Pair<Integer, Integer>> dStorePortsOrderByNumFilesPair = filesInDstores.stream()
-                    .map(pair -> {
-                        if (pair.snd.get(0).equals("")) //TODO if a dstore has no files will it output an empty string?
-                            return new Pair<>(pair.fst, 0);
-                        else
-                            return new Pair<>(pair.fst, pair.snd.size());
-                    })
-                    .sorted(Comparator.comparingInt(pair -> pair.snd))
-                    .collect(Collectors.toList());
-
-            Collections.reverse(dStorePortsOrderByNumFilesPair);
-
-            List<Pair<Integer, Pair<Integer, Integer>>> dstoreNumberFilesExpected = new ArrayList<>();
-            for (int i = 0; i < dStorePortsOrderByNumFilesPair.size(); i++) {
-                int port = dStorePortsOrderByNumFilesPair.get(i).fst;
-                int currentNumberFiles = dStorePortsOrderByNumFilesPair.get(i).snd;
-                int expectedNumberFiles = expectedNumberFilesPerDstore.get(i);
-                dstoreNumberFilesExpected.add(new Pair<>(port, new Pair<>(currentNumberFiles, expectedNumberFiles)));
-            }
-
-            return rebalanceAuxiliary(filesInDstoresImmutable, filesInDstores, dstoreNumberFilesExpected, informationForDstores);
-        }
-    }
-
-    // in the pair the first element is the port
-    //the second element is another pair where the first element is the number of current elements and the second element is the expected number of elements
-    private HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> rebalanceAuxiliary(List<Pair<Integer,List<String>>> filesInDstoresImmutable,List<Pair<Integer,List<String>>> filesInDstores, List<Pair<Integer,Pair<Integer,Integer>>> dstoreNumberFilesExpected, HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores){
-
-        dstoreNumberFilesExpected = dstoreNumberFilesExpected.stream()
-                .sorted(Comparator.comparingInt(pair -> pair.snd.fst - pair.snd.snd))
-                .collect(Collectors.toList());
-
-        Pair<Integer,Pair<Integer,Integer>> emptiestPort = dstoreNumberFilesExpected.get(0);
-        int diff = emptiestPort.snd.fst - emptiestPort.snd.snd;
-
-        if (diff == 0) //all ports have the right number of files stored
-            return informationForDstores;
-        else{
-            for(int i = dstoreNumberFilesExpected.size()-1; i >= 0; i--){
-
-                Pair<Integer,Pair<Integer,Integer>> portTransferingFilePair = dstoreNumberFilesExpected.get(i);
-                if(portTransferingFilePair.snd.fst - portTransferingFilePair.snd.snd <= 0){
-                    break; //all the other ports will have a diff which will be less than or equal to the diff above
-                }
-
-                int indexPortTrasfering = filesInDstores.stream()
-                        .map(pair -> pair.fst)
-                        .collect(Collectors.toList())
-                        .indexOf(portTransferingFilePair.fst);
-
-                int indexEmptiestPort = filesInDstores.stream()
-                        .map(pair-> pair.fst)
-                        .collect(Collectors.toList())
-                        .indexOf(emptiestPort.fst);
-
-                Iterator<String> iter = filesInDstores.get(indexPortTrasfering).snd.iterator();
-                for(int n = 0; n < filesInDstores.get(indexPortTrasfering).snd.size(); n++){
-
-                    String file = filesInDstores.get(indexPortTrasfering).snd.get(n);
-                    //This if statement checks whether the dstore aiming to transfer the file actually has it stored
-                    // and won't receive it later during the rebalance messages
-                    if(filesInDstoresImmutable.get(indexPortTrasfering).snd.contains(file)) {
-
-                        if (!filesInDstores.get(indexEmptiestPort).snd.contains(file)) {
-
-                            filesInDstores.get(indexPortTrasfering).snd.remove(file);
-                            portTransferingFilePair.snd = new Pair<>(portTransferingFilePair.snd.fst - 1, portTransferingFilePair.snd.snd);
-
-                            filesInDstores.get(indexEmptiestPort).snd.add(file);
-                            emptiestPort.snd = new Pair<>(emptiestPort.snd.fst + 1, emptiestPort.snd.snd);
-
-                            updateInformationForDstores(portTransferingFilePair.fst, emptiestPort.fst, file, informationForDstores);
-
-                            HashMap<Integer, Pair<List<Pair<String, List<Integer>>>, List<String>>> newInformationForDstores = rebalanceAuxiliary(filesInDstoresImmutable,filesInDstores, dstoreNumberFilesExpected, informationForDstores);
-
-                            if (newInformationForDstores != null)
-                                return newInformationForDstores;
-                            else {
-                                filesInDstores.get(indexPortTrasfering).snd.add(n, file);
-                                portTransferingFilePair.snd = new Pair<>(portTransferingFilePair.snd.fst + 1, portTransferingFilePair.snd.snd);
-                                filesInDstores.get(indexEmptiestPort).snd.remove(file);
-                                emptiestPort.snd = new Pair<>(emptiestPort.snd.fst - 1, emptiestPort.snd.snd);
-                                cancelUpdateInformationForDstores(portTransferingFilePair.fst, emptiestPort.fst, file, informationForDstores);
-                            }
-                        }
-                    }
-                }
-            }
-            return  null;
-        }
-    }
-
-    private void updateInformationForDstores(int portTrasfering, int portReceving, String file, HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores){
-
-        if(informationForDstores.containsKey(portTrasfering)){
-
-            informationForDstores.get(portTrasfering).snd.add(file);
-            int indexOfPair = informationForDstores.get(portTrasfering).fst.stream()
-                    .map(pair -> pair.fst)
-                    .collect(Collectors.toList())
-                    .indexOf(file);
-
-            if(indexOfPair != -1){
-                informationForDstores.get(portTrasfering).fst.get(indexOfPair).snd.add(portReceving);
-
-            }else{
-                informationForDstores.get(portTrasfering).fst.add(new Pair<>(file,new ArrayList<>(){{add(portReceving);}}));
-            }
-
-        }else{
-            informationForDstores.put(portTrasfering, new Pair<>(new ArrayList<>(){{add(new Pair<>(file,new ArrayList<>(){{add(portReceving);}}));}},new ArrayList<>(){{add(file);}}));
-        }
+    private void finishRebalanceSpan(String error){
+        Tracing.Span span = rebalanceSpan;
+        rebalanceSpan = null;
+        if (span != null && error != null)
+            span.tag("error", error);
+        Tracing.finish(span);
     }
 
-    private void cancelUpdateInformationForDstores(int portTrasfering, int portReceving, String file, HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores){
-
-        informationForDstores.get(portTrasfering).snd.remove(file);
-
-        int indexOfPair = informationForDstores.get(portTrasfering).fst.stream()
-                .map(pair -> pair.fst)
-                .collect(Collectors.toList())
-                .indexOf(file);
-
-        informationForDstores.get(portTrasfering).fst.get(indexOfPair).snd.remove((Integer) portReceving);
-        if(informationForDstores.get(portTrasfering).fst.get(indexOfPair).snd.size() == 0){
-            informationForDstores.get(portTrasfering).fst.remove(indexOfPair);
-        }
-    }
 
     private void sendRebalances(HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores){
 
@@ -1232,29 +1922,24 @@ public class Controller {
 
     private void sendRebalance(int dstorePort, Pair<List<Pair<String,List<Integer>>>,List<String>> sendToRemove){
 
-        try {
-            Socket socket = dstorePortsSocket.get(dstorePort);
-            PrintWriter writer = new PrintWriter(socket.getOutputStream());
-            String message = rebalanceSentenceFormat(sendToRemove);
-            writer.println(message);
-            writer.flush();
-            ControllerLogger.getInstance().messageSent(socket, message);
-
-        }catch (IOException e){
-            //TODO error handling
-        }
+        Socket socket = dstorePortsSocket.get(dstorePort);
+        if(socket != null)
+            sendMessage(socket, Tracing.withContext(rebalanceSpan, rebalanceSentenceFormat(sendToRemove)));
     }
 
-    private String rebalanceSentenceFormat(Pair<List<Pair<String,List<Integer>>>,List<String>> sendToRemove){
-        int numberFilesToSend = sendToRemove.fst.size();
-
-        String filesToSend = sendToRemove.fst.stream()
-                .map(pair -> String.format("%s %s %s",pair.fst,pair.snd.size(),pair.snd.stream().map(Objects::toString).collect(Collectors.joining(" "))))
-                .collect(Collectors.joining(" "));
-        int numberFilesToRemove = sendToRemove.snd.size();
-        String filesToRemove = String.join(" ", sendToRemove.snd);
-
-        return String.format("%s %s %s %s %s",DstoreCommands.REBALANCE.toString(),numberFilesToSend,filesToSend,numberFilesToRemove,filesToRemove);
+    //REBALANCE numberFilesToSend file1 numberPorts1 port1 ... numberFilesToRemove file1 ...
+    private List<String> rebalanceSentenceFormat(Pair<List<Pair<String,List<Integer>>>,List<String>> sendToRemove){
+        List<String> message = new ArrayList<>(List.of(DstoreCommands.REBALANCE.toString(), String.valueOf(sendToRemove.fst.size())));
+        for(var pair : sendToRemove.fst){
+            message.add(pair.fst);
+            message.add(String.valueOf(pair.snd.size()));
+            for(int port : pair.snd){
+                message.add(String.valueOf(port));
+            }
+        }
+        message.add(String.valueOf(sendToRemove.snd.size()));
+        message.addAll(sendToRemove.snd);
+        return message;
     }
 
     private void updateFileAlocationAfterRebalance(HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores){
@@ -1304,15 +1989,153 @@ public class Controller {
 
     /*************************************** END OF REBALANCE PROCEDURES *******************************************/
 
+    /*********************************** BEGINNING OF FRAGMENT REBUILD PROCEDURES **********************************/
+
+    //Removes the fragment names from the LIST answers and returns them as pairs of port and fragment name
+    private List<Pair<Integer,String>> extractFragments(List<Pair<Integer,List<String>>> filesInDstores){
+        List<Pair<Integer,String>> fragments = new ArrayList<>();
+        for(var pair : filesInDstores){
+            Iterator<String> iter = pair.snd.iterator();
+            while(iter.hasNext()){
+                String file = iter.next();
+                if(ErasureCoding.isFragment(file)){
+                    fragments.add(new Pair<>(pair.fst, file));
+                    iter.remove();
+                }
+            }
+            if(pair.snd.size() == 0)
+                pair.snd.add("");
+        }
+        return fragments;
+    }
+
+    private void updateErasureCodedFiles(List<Pair<Integer,String>> fragments){
+        synchronized (ecFiles) {
+            for(var layout : ecFiles.values()){
+                Collections.fill(layout.ports, -1);
+            }
+            for(var fragment : fragments){
+                ErasureCoding.Layout layout = ecFiles.get(ErasureCoding.logicalName(fragment.snd));
+                int index = ErasureCoding.fragmentIndex(fragment.snd);
+                if(layout != null && index < layout.ports.size() && layout.ports.get(index) == -1)
+                    layout.ports.set(index, fragment.fst);
+            }
+
+            Iterator<String> iter = ecFiles.keySet().iterator();
+            while(iter.hasNext()){
+                String file = iter.next();
+                if(ecFiles.get(file).availableFragments() < ecFiles.get(file).dataShards){
+                    System.out.println(String.format("ERROR => the erasure coded file %s has lost too many fragments", file));
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    //Each missing fragment is rebuilt by a Dstore which does not hold any other fragment of the same file
+    private void rebuildMissingFragments(List<Pair<Integer,List<String>>> filesInDstores){
+
+        Map<Integer,Integer> numberFilesPerDstore = new HashMap<>();
+        for(var pair : filesInDstores){
+            numberFilesPerDstore.put(pair.fst, pair.snd.get(0).equals("") ? 0 : pair.snd.size());
+        }
+
+        synchronized (ecFiles) {
+            for(var entry : ecFiles.entrySet()){
+                String fileName = entry.getKey();
+                ErasureCoding.Layout layout = entry.getValue();
+                List<Integer> ports = shallowCopy(layout.ports);
+
+                for(int index = 0; index < ports.size(); index++){
+                    String fragmentName = ErasureCoding.fragmentName(fileName, index);
+                    if(ports.get(index) != -1 || pendingRebuilds.contains(fragmentName))
+                        continue;
+
+                    Optional<Integer> target = numberFilesPerDstore.keySet().stream()
+                            .filter(port -> !ports.contains(port))
+                            .min(Comparator.comparingInt(numberFilesPerDstore::get));
+                    if(target.isEmpty()){
+                        System.out.println(String.format("ERROR => there is no Dstore where to rebuild the fragment %s", fragmentName));
+                        continue;
+                    }
+
+                    int targetPort = target.get();
+                    ports.set(index, targetPort); //the same Dstore is not chosen twice for the same file
+                    numberFilesPerDstore.put(targetPort, numberFilesPerDstore.get(targetPort) + 1);
+                    sendRebuild(targetPort, fragmentName, layout);
+                }
+            }
+        }
+    }
+
+    private void sendRebuild(int dstorePort, String fragmentName, ErasureCoding.Layout layout){
+
+        pendingRebuilds.add(fragmentName);
+        scheduleTimeout(fragmentName, ()-> pendingRebuilds.remove(fragmentName));
+
+        List<String> message = rebuildSentenceFormat(fragmentName, layout);
+        new Thread(()->{
+            Socket socket = dstorePortsSocket.get(dstorePort);
+            if(socket != null)
+                sendMessage(socket, message);
+            else
+                forgetRebuild(fragmentName);
+        }).start();
+    }
+
+    private void forgetRebuild(String fragmentName){
+        pendingRebuilds.remove(fragmentName);
+        cancelTimeout(fragmentName);
+    }
+
+    //REBUILD fragment k m filesize numberSources index1 port1 ... indexn portn
+    private List<String> rebuildSentenceFormat(String fragmentName, ErasureCoding.Layout layout){
+        List<String> sources = new ArrayList<>();
+        synchronized (layout.ports) {
+            for(int i = 0; i < layout.ports.size(); i++){
+                if(layout.ports.get(i) != -1){
+                    sources.add(String.valueOf(i));
+                    sources.add(String.valueOf(layout.ports.get(i)));
+                }
+            }
+        }
+        List<String> message = new ArrayList<>(List.of(DstoreCommands.REBUILD.toString(), fragmentName, String.valueOf(layout.dataShards),
+                String.valueOf(layout.parityShards), String.valueOf(layout.fileSize), String.valueOf(sources.size() / 2)));
+        message.addAll(sources);
+        return message;
+    }
+
+    private void handleRebuildComplete(Socket socket, String[] splitted){
+
+        if(splitted.length != 2 || !ErasureCoding.isFragment(splitted[1])){
+            System.out.println("ERROR => the REBUILD_COMPLETE command should take one fragment as argument");
+        }else{
+            String fragmentName = splitted[1];
+            forgetRebuild(fragmentName);
+
+            ErasureCoding.Layout layout = ecFiles.get(ErasureCoding.logicalName(fragmentName));
+            int index = ErasureCoding.fragmentIndex(fragmentName);
+            if(layout != null && index < layout.ports.size())
+                layout.ports.set(index, getDstorePort(socket));
+            else
+                System.out.println("ERROR => a rebuilt fragment does not belong to any erasure coded file");
+        }
+    }
+
+    /************************************** END OF FRAGMENT REBUILD PROCEDURES *************************************/
+
     /************************************BEGINNING OF HANDLE REBALANCE COMPLETE ***********************************/
 
     private void handleRebalanceComplete(){
         if(rebalancesCompleted.fst.fst.get() != 0){
             if(rebalancesCompleted.fst.fst.get() == rebalancesCompleted.fst.snd.incrementAndGet()){
                 updateFileAlocationAfterRebalance(rebalancesCompleted.snd);
+                metrics.histogram("controller_rebalance_us").recordSince(rebalanceStart);
+                finishRebalanceSpan(null);
                 rebalancesCompleted.fst.fst.set(0);
                 rebalancesCompleted.fst.snd.set(0);
                 rebalancesCompleted.snd = null;
+                cancel(rebalanceTimeout);
                 alreadyRebalancing.set(false);
             }
         }else{
@@ -1322,66 +2145,54 @@ public class Controller {
 
     /***************************************END OF HANDLE REBALANCE COMPLETE **************************************/
 
+    /****************************************BEGINNING OF HANDLE CORRUPTED ****************************************/
+
+    //A Dstore's scrubber has found and dropped a corrupted replica: the replica is no longer served
+    //and a rebalance is started so that replicateFiles restores the replication factor
+    private void handleCorrupted(Socket socket, String[] splitted){
+
+        if(splitted.length != 2){
+            System.out.println("ERROR => the CORRUPTED command should take one argument");
+        }else{
+            String fileName = splitted[1];
+            int port = getDstorePort(socket);
+
+            if(ErasureCoding.isFragment(fileName)){
+                ErasureCoding.Layout layout = ecFiles.get(ErasureCoding.logicalName(fileName));
+                int index = ErasureCoding.fragmentIndex(fileName);
+                if(layout != null && index < layout.ports.size() && layout.ports.get(index) == port)
+                    layout.ports.set(index, -1);
+            }
+
+            synchronized (fileAllocation){
+                if(fileAllocation.containsKey(fileName)){
+                    placementChanged();
+                    fileAllocation.get(fileName).remove((Integer) port);
+                    if(fileAllocation.get(fileName).size() == 0){
+                        System.out.println(String.format("ERROR => the last replica of the file %s was corrupted", fileName));
+                        fileAllocation.remove(fileName);
+                        fileSizes.remove(fileName);
+                        fileChecksums.remove(fileName);
+                        return;
+                    }
+                }
+            }
+
+            if(dstorePorts.size() >= replicationFactor){
+                new Thread(()->{
+                    while(!rebalanceOperation()){
+                    }
+                }).start();
+            }
+        }
+    }
+
+    /*******************************************END OF HANDLE CORRUPTED ********************************************/
+
     /*************************************** BEGINNING OF COMMAND RECOGNISER PROCEDURES *******************************************/
 
-    private ControllerCommands commandRecogniser(byte[] array, int length){
-
-        String wholeSentence = new String(array,0,length);
-        int firstSpaceIndex = wholeSentence.indexOf(" ");
-        String command = wholeSentence.substring(0,firstSpaceIndex);
-
-        if (command.equals(ControllerCommands.STORE.toString()))
-            return ControllerCommands.STORE;
-        else if (command.equals(ControllerCommands.STORE_ACK.toString()))
-            return ControllerCommands.STORE_ACK;
-        else if (command.equals(ControllerCommands.LOAD.toString()))
-            return ControllerCommands.LOAD;
-        else if (command.equals(ControllerCommands.RELOAD.toString()))
-            return ControllerCommands.RELOAD;
-        else if (command.equals(ControllerCommands.REMOVE.toString()))
-            return ControllerCommands.REMOVE;
-        else if (command.equals(ControllerCommands.REMOVE_ACK.toString()))
-            return ControllerCommands.REMOVE_ACK;
-        else if (command.equals(ControllerCommands.ERROR_FILE_DOES_NOT_EXIST.toString()))
-            return ControllerCommands.ERROR_FILE_DOES_NOT_EXIST;
-        else if (command.equals(ControllerCommands.LIST.toString()))
-            return ControllerCommands.LIST;
-        else if (command.equals(ControllerCommands.JOIN.toString()))
-            return ControllerCommands.JOIN;
-        else if (command.equals(ControllerCommands.REBALANCE_COMPLETE.toString()))
-            return ControllerCommands.REBALANCE_COMPLETE;
-        else
-            return ControllerCommands.NoCommand;
-
-    }
-
-    private ControllerCommands commandRecogniser(String sentence){
-
-        String[] splitted = sentence.split(" ");
-        String command = splitted[0];
-
-        if (command.equals(ControllerCommands.STORE.toString()))
-            return ControllerCommands.STORE;
-        else if (command.equals(ControllerCommands.STORE_ACK.toString()))
-            return ControllerCommands.STORE_ACK;
-        else if (command.equals(ControllerCommands.LOAD.toString()))
-            return ControllerCommands.LOAD;
-        else if (command.equals(ControllerCommands.RELOAD.toString()))
-            return ControllerCommands.RELOAD;
-        else if (command.equals(ControllerCommands.REMOVE.toString()))
-            return ControllerCommands.REMOVE;
-        else if (command.equals(ControllerCommands.REMOVE_ACK.toString()))
-            return ControllerCommands.REMOVE_ACK;
-        else if (command.equals(ControllerCommands.ERROR_FILE_DOES_NOT_EXIST.toString()))
-            return ControllerCommands.ERROR_FILE_DOES_NOT_EXIST;
-        else if (command.equals(ControllerCommands.LIST.toString()))
-            return ControllerCommands.LIST;
-        else if (command.equals(ControllerCommands.JOIN.toString()))
-            return ControllerCommands.JOIN;
-        else if (command.equals(ControllerCommands.REBALANCE_COMPLETE.toString()))
-            return ControllerCommands.REBALANCE_COMPLETE;
-        else
-            return ControllerCommands.NoCommand;
+    private ControllerCommands commandRecogniser(String[] splitted){
+        return ControllerCommands.fromToken(splitted[0]);
     }
 
     /*************************************** END OF COMMAND RECOGNISER PROCEDURES *******************************************/
@@ -1480,10 +2291,18 @@ public class Controller {
         return fileSizes;
     }
 
+    public Map<String, Long> getFileChecksums() {
+        return fileChecksums;
+    }
+
     public Map<String, Pair<AtomicInteger, Pair<Socket, Pair<Long, List<Integer>>>>> getAcknowledges() {
         return acknowledges;
     }
 
+    public Map<String, ScheduledFuture<?>> getPendingTimeouts() {
+        return pendingTimeouts;
+    }
+
     public void setCanRebalance(boolean canRebalance) {
         this.canRebalance = canRebalance;
     }
@@ -1500,7 +2319,7 @@ public class Controller {
         return rebalancesCompleted;
     }
 
-    public Map<Socket, List<Integer>> getSuspendedReloads() {
+    public Map<Socket, Map<String, List<Integer>>> getSuspendedReloads() {
         return suspendedReloads;
     }
 
@@ -1516,6 +2335,50 @@ public class Controller {
         return canRebalance;
     }
 
+    public void setErasureCoding(int ecDataShards, int ecParityShards) {
+        this.ecDataShards = ecDataShards;
+        this.ecParityShards = ecParityShards;
+    }
+
+    //The ring planner only moves few files if new files are placed by the same ring, so choosing it places them so
+    public void setRebalancePlanner(String strategy, double tolerance) {
+        if (strategy.equals("ring")) {
+            ConsistentHashRing ring = this.ring;
+            setConsistentHashing(ring == null ? ConsistentHashRing.DEFAULT_VIRTUAL_NODES : ring.getVirtualNodes());
+        } else {
+            this.rebalancePlanner = RebalancePlanner.create(strategy, replicationFactor, tolerance);
+        }
+    }
+
+    public void setUploadExpiry(long uploadExpiry) {
+        this.uploadExpiry = uploadExpiry;
+    }
+
+    //New files are placed on the Dstores a consistent hashing ring gives them, rebalances move the files whose Dstores
+    //in the ring have changed and nothing else
+    public void setConsistentHashing(int virtualNodes) {
+        synchronized (dstorePorts) {
+            this.ring = new ConsistentHashRing(virtualNodes, dstorePorts);
+        }
+        this.rebalancePlanner = new RingRebalancePlanner(replicationFactor, virtualNodes);
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public RebalancePlanner getRebalancePlanner() {
+        return rebalancePlanner;
+    }
+
+    public Map<String, ErasureCoding.Layout> getEcFiles() {
+        return ecFiles;
+    }
+
 
 
     /********************************************START FOR TESTING*****************************************/
@@ -1528,6 +2391,35 @@ public class Controller {
     /***************************************************END OF GETTERS AND SETTERS**********************************************/
     public static void main(String[] args) {
         Controller controller = new Controller(Integer.parseInt(args[0]),Integer.parseInt(args[1]),Integer.parseInt(args[2]),Integer.parseInt(args[3]));
+        //-Dcontroller.ecDataShards=k -Dcontroller.ecParityShards=m enables the STORE_EC storage class
+        controller.setErasureCoding(Integer.getInteger("controller.ecDataShards", 0), Integer.getInteger("controller.ecParityShards", 0));
+        //-Dcontroller.planner=greedy plans rebalances without backtracking, -Dcontroller.planner=size-aware balances the
+        //bytes of the Dstores within -Dcontroller.plannerTolerance of the mean, see RebalanceSimulator to compare them
+        String planner = System.getProperty("controller.planner", "backtracking");
+        controller.setRebalancePlanner(planner,
+                Double.parseDouble(System.getProperty("controller.plannerTolerance", String.valueOf(SizeAwareRebalancePlanner.DEFAULT_TOLERANCE))));
+        //-Dcontroller.placement=hash places files with consistent hashing over -Dcontroller.virtualNodes points per
+        //Dstore, a join or a failure then only moves the files of the Dstore joining or failing. -Dcontroller.planner=ring
+        //implies it
+        if (System.getProperty("controller.placement", "emptiest").equals("hash") || planner.equals("ring"))
+            controller.setConsistentHashing(Integer.getInteger("controller.virtualNodes", ConsistentHashRing.DEFAULT_VIRTUAL_NODES));
+        //-Dcontroller.uploadExpiry=N removes the parts of a multipart upload left idle for N ms
+        controller.setUploadExpiry(Long.getLong("controller.uploadExpiry", Multipart.DEFAULT_UPLOAD_EXPIRY));
+        //-Dlogger.async=true logs from a background thread, -Dlogger.messageSampling=N logs one protocol message in N
+        //and -Dlogger.maxMessageLength=N truncates the longer ones
+        ControllerLogger.getInstance().setAsynchronous(Boolean.getBoolean("logger.async"));
+        ControllerLogger.getInstance().setSampling(Loggert.Level.MESSAGE, Integer.getInteger("logger.messageSampling", 1));
+        ControllerLogger.getInstance().setMaxMessageLength(Integer.getInteger("logger.maxMessageLength", 0));
+        //-Dlogger.eventLog=true also records every message in a binary .events file, see EventLogReplay
+        if (Boolean.getBoolean("logger.eventLog"))
+            ControllerLogger.getInstance().enableEventLog(Integer.parseInt(args[0]), EventLog.CONTROLLER_REQUESTS);
+        //-Dmetrics.port=N serves the metrics in plain text on localhost:N, they are in JMX anyway
+        controller.getMetrics().registerMBean("DistributedStore:type=Controller,port=" + args[0]);
+        if (Integer.getInteger("metrics.port") != null)
+            controller.getMetrics().startEndpoint(Integer.getInteger("metrics.port"));
+        //-Dtracing.enabled=true records the spans of traced requests and of rebalances
+        if (Boolean.getBoolean("tracing.enabled"))
+            Tracing.enable("controller", Integer.parseInt(args[0]));
         controller.start();
     }
 
@@ -1,3 +1,6 @@
+import java.util.HashMap;
+import java.util.Map;
+
 public enum ControllerCommands {
     STORE,
     STORE_ACK,
@@ -9,6 +12,28 @@ public enum ControllerCommands {
     JOIN,
     ERROR_FILE_DOES_NOT_EXIST,
     REBALANCE_COMPLETE,
+    CORRUPTED,
+    STORE_EC,
+    REBUILD_COMPLETE,
+    STORE_MULTIPART,
+    STORE_COMMIT,
+    STORE_BATCH,
+    LOAD_BATCH,
+    REMOVE_BATCH,
     NoCommand;
 
+    //Every command token is looked up once in this table instead of being compared with each constant in turn
+    private static final Map<String,ControllerCommands> BY_TOKEN = new HashMap<>();
+
+    static {
+        for (ControllerCommands command : values()) {
+            if (command != NoCommand)
+                BY_TOKEN.put(command.toString(), command);
+        }
+    }
+
+    public static ControllerCommands fromToken(String token) {
+        return BY_TOKEN.getOrDefault(token, NoCommand);
+    }
+
 }
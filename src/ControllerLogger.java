@@ -31,6 +31,7 @@ public class ControllerLogger extends Loggert {
 	
 	public void dstoreJoined(Socket socket, int dstorePort) {
 		log("[New Dstore " + dstorePort + " " + socket.getLocalPort() + "<-" + socket.getPort() + "]");
+		markPeerNode(socket);
 	}
 
 	public static void resetInstance(){
@@ -0,0 +1,113 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ControllerTimeoutsTest {
+
+    private static final List<Integer> DSTORE_PORTS = List.of(22001, 22002);
+    private static final int TIMEOUT = 500;
+
+    private Controller controller;
+    private int controllerPort;
+    private final List<Socket> dstores = new ArrayList<>();
+
+    @BeforeAll
+    void startController() throws IOException, InterruptedException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            controllerPort = serverSocket.getLocalPort();
+        }
+        controller = new Controller(controllerPort, 2, TIMEOUT, 300000000);
+        controller.setCanRebalance(false);
+        controller.start();
+        Thread.sleep(1000);
+
+        //the Dstores are played by the test, which sends their STORE_ACK itself
+        for (int port : DSTORE_PORTS) {
+            Socket dstore = new Socket("localhost", controllerPort);
+            send(dstore, "JOIN " + port);
+            dstores.add(dstore);
+        }
+        Thread.sleep(1000);
+        Assertions.assertEquals(DSTORE_PORTS.size(), controller.getDstorePorts().size());
+    }
+
+    @AfterAll
+    void closeDstores() throws IOException {
+        for (Socket dstore : dstores) {
+            dstore.close();
+        }
+    }
+
+    /*********************************BEGINNING OF TESTS FOR TIMEOUTS****************************/
+
+    @Test
+    void testAcknowledgedStoresCancelTheirTimeouts() throws IOException {
+        long numberThreads = Thread.activeCount();
+        try (Socket client = new Socket("localhost", controllerPort)) {
+            BufferedReader reader = reader(client);
+            for (int i = 0; i < 50; i++) {
+                String fileName = "acknowledged" + i + ".txt";
+                Assertions.assertTrue(request(client, reader, "STORE " + fileName + " 5").startsWith("STORE_TO"));
+                awaitTimeout(fileName);
+                for (Socket dstore : dstores) {
+                    send(dstore, "STORE_ACK " + fileName + " 42");
+                }
+                Assertions.assertEquals("STORE_COMPLETE", reader.readLine());
+                Assertions.assertFalse(controller.getPendingTimeouts().containsKey(fileName));
+            }
+        }
+        //every timeout has run on the shared thread, the stores have not left one idle thread each behind
+        Assertions.assertTrue(Thread.activeCount() < numberThreads + 10, Thread.activeCount() + " threads");
+    }
+
+    @Test
+    void testUnacknowledgedStoreTimesOut() throws IOException, InterruptedException {
+        try (Socket client = new Socket("localhost", controllerPort)) {
+            BufferedReader reader = reader(client);
+            Assertions.assertTrue(request(client, reader, "STORE unacknowledged.txt 5").startsWith("STORE_TO"));
+            awaitTimeout("unacknowledged.txt");
+            send(dstores.get(0), "STORE_ACK unacknowledged.txt 42");
+            Assertions.assertEquals("ERROR_FILE_ALREADY_EXISTS", request(client, reader, "STORE unacknowledged.txt 5"));
+
+            Thread.sleep(2 * TIMEOUT);
+            Assertions.assertFalse(controller.getAcknowledges().containsKey("unacknowledged.txt"));
+            Assertions.assertFalse(controller.getPendingTimeouts().containsKey("unacknowledged.txt"));
+            //the name is free again once the store has timed out
+            Assertions.assertTrue(request(client, reader, "STORE unacknowledged.txt 5").startsWith("STORE_TO"));
+        }
+    }
+
+    /************************************END OF TESTS FOR TIMEOUTS********************************/
+
+
+    //STORE_TO is sent just before the timeout is scheduled, real Dstores only acknowledge once the bytes have arrived
+    private void awaitTimeout(String fileName) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!controller.getPendingTimeouts().containsKey(fileName)) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, fileName + " has no timeout");
+            Thread.onSpinWait();
+        }
+    }
+
+    private String request(Socket socket, BufferedReader reader, String line) throws IOException {
+        send(socket, line);
+        return reader.readLine();
+    }
+
+    private BufferedReader reader(Socket socket) throws IOException {
+        socket.setSoTimeout(5000);
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private void send(Socket socket, String line) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -7,6 +7,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class Dstore {
@@ -15,21 +16,70 @@ public class Dstore {
     private final int timeout;  //timeout is in milliseconds
     private final int controllerPort;
     private String fileFolder;
+    private final boolean keepData;
+    private DstoreCatalog catalog;
+    private DstoreStorage storage;
+    private final boolean dedup;
+    private Compression.Mode compression;
     private final Map<String,Long> fileSizes;
+    private final AtomicInteger activeLoads;
+    private long scrubBytesPerSecond;
     private Socket controllerSocket;
-    private PrintWriter controllerWriter;
-    private BufferedReader controllerReader;
+    private MessageChannel controllerChannel;
+    private Outbox controllerOutbox;
+    private boolean binaryProtocol;
+    private final Metrics metrics;
+    private final ExecutorService rebalanceSenders;  //the threads every REBALANCE_STORE of the Dstore is sent from
 
 
     public Dstore(int port, int controllerPort, int timeout, String fileFolder) {
+        this(port, controllerPort, timeout, fileFolder, false);
+    }
+
+    //keepData = true restarts the Dstore on top of its previous replicas instead of wiping the folder
+    public Dstore(int port, int controllerPort, int timeout, String fileFolder, boolean keepData) {
+        this(port, controllerPort, timeout, fileFolder, keepData, false);
+    }
+
+    //dedup = true stores every distinct content once, whatever the number of file names pointing to it
+    public Dstore(int port, int controllerPort, int timeout, String fileFolder, boolean keepData, boolean dedup) {
         this.port = port;
         this.timeout = timeout;
         this.controllerPort = controllerPort;
         this.fileFolder = fileFolder;
+        this.keepData = keepData;
+        this.dedup = dedup;
+        this.catalog = new DstoreCatalog(new File(fileFolder));
+        this.storage = new DstoreStorage(new File(fileFolder), catalog, dedup);
+        this.compression = Compression.Mode.OFF;
         this.fileSizes = Collections.synchronizedMap(new HashMap<>());
-        deleteDirContent(new File(fileFolder));
+        this.activeLoads = new AtomicInteger(0);
+        this.rebalanceSenders = Executors.newFixedThreadPool(10, runnable -> {
+            Thread thread = new Thread(runnable, "dstore-rebalance-" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if(keepData)
+            loadCatalog();
+        else
+            storage.clear();
 
         instantiateDstoreLogger();
+        this.metrics = new Metrics();
+        metrics.gauge("dstore_files", fileSizes::size);
+        metrics.gauge("dstore_active_loads", activeLoads::get);
+    }
+
+    private void loadCatalog(){
+        try {
+            storage.recover();
+            for(var entry : catalog.snapshot().entrySet()){
+                fileSizes.put(entry.getKey(), entry.getValue().size);
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR => the Dstore catalog could not be loaded, starting with an empty folder");
+            storage.clear();
+        }
     }
 
     private void instantiateDstoreLogger(){
@@ -63,26 +113,39 @@ public class Dstore {
     private void handleRequestFromClients(Socket socket){
 
 
-        try (InputStream in = socket.getInputStream(); OutputStream out = socket.getOutputStream();
-             BufferedReader inReader = new BufferedReader(new InputStreamReader(in)); socket) {
+        try (socket) {
 
-            String sentence = inReader.readLine();
-            DstoreLogger.getInstance().messageReceived(socket, sentence);
+            MessageChannel channel = new MessageChannel(socket);
+            String[] received = channel.read();
+            if(received == null)
+                return;
+            Tracing.Context context = Tracing.context(received);
+            String[] splitted = Tracing.withoutContext(received);
+            DstoreLogger.getInstance().messageReceived(socket, String.join(" ", splitted));
 
-            switch(commandRecogniser(sentence)){
+            long start = System.nanoTime();
+            DstoreCommands command = commandRecogniser(splitted);
+            Tracing.Span span = Tracing.start(command.toString(), context);
+            if (span != null && splitted.length > 1)
+                span.tag("file", splitted[1]);
+            Tracing.setCurrent(span);
+            switch(command){
                 case STORE:
-                    handleStoreRequest(socket,in,out,sentence);
+                    handleStoreRequest(channel,splitted);
                     break;
                 case REBALANCE_STORE:
-                    handleRebalanceStoreRequest(socket,in,out,sentence);
+                    handleRebalanceStoreRequest(channel,splitted);
                     break;
                 case LOAD_DATA:
-                    handleLoadDataRequest(socket,in,out,sentence);
+                    handleLoadDataRequest(channel,splitted);
                     break;
                 case NoCommand:
                     System.out.println("ERROR => No command recognised from client");
                     break;
             }
+            Tracing.setCurrent(null);
+            Tracing.finish(span);
+            metrics.handled("dstore", command, start);
 
         } catch (IOException e) {
             //TODO error handling
@@ -99,25 +162,51 @@ public class Dstore {
 
         while(true){
             try {
-                String sentence = controllerReader.readLine();
-                DstoreLogger.getInstance().messageReceived(controllerSocket, sentence);
+                String[] received = controllerChannel.read();
+                if(received == null) {
+                    System.out.println("ERROR => the Controller has closed the connection");
+                    return;
+                }
+                Tracing.Context context = Tracing.context(received);
+                String[] splitted = Tracing.withoutContext(received);
+                DstoreLogger.getInstance().messageReceived(controllerSocket, String.join(" ", splitted));
+
+                //removes only touch the local disk, they are handled in order on this thread
+                long start = System.nanoTime();
+                DstoreCommands command = commandRecogniser(splitted);
+                if(command == DstoreCommands.REMOVE){
+                    handleRemoveRequest(splitted);
+                    metrics.handled("dstore", command, start);
+                    continue;
+                }
+                if(command == DstoreCommands.REMOVE_BATCH){
+                    handleRemoveBatchRequest(splitted);
+                    metrics.handled("dstore", command, start);
+                    continue;
+                }
+
                 new Thread(() -> {
 
-                    switch (commandRecogniser(sentence)) {
+                    Tracing.Span span = Tracing.start(command.toString(), context);
+                    Tracing.setCurrent(span);
+                    switch (command) {
 
-                        case REMOVE:
-                            handleRemoveRequest(sentence);
-                            break;
                         case LIST:
                             handleListRequest();
                             break;
                         case REBALANCE:
-                            handleRebalanceRequest(sentence);
+                            handleRebalanceRequest(splitted);
+                            break;
+                        case REBUILD:
+                            handleRebuildRequest(splitted);
                             break;
                         case NoCommand:
                             System.out.println("ERROR => No command recognised from controller");
                             break;
                     }
+                    Tracing.setCurrent(null);
+                    Tracing.finish(span);
+                    metrics.handled("dstore", command, start);
                 }).start();
 
             } catch (IOException e) {
@@ -131,90 +220,84 @@ public class Dstore {
 
     /********************************** BEGINNING OF STORE PROCEDURES *******************************************/
 
-    private void handleStoreRequest(Socket socket,InputStream in,OutputStream out,String sentence){
-
-        String[] splitted = sentence.split(" ");
+    //STORE filename filesize [checksum [digest]]: when the digest of an already stored content is given the Dstore
+    //answers DEDUP_ACK instead of ACK and the client does not send the bytes at all
+    private void handleStoreRequest(MessageChannel channel,String[] splitted){
 
-        if(splitted.length != 3){
-            System.out.println("ERROR => The STORE command is supposed to have two arguments");
+        if(splitted.length < 3 || splitted.length > 5){
+            System.out.println("ERROR => The STORE command is supposed to have from two to four arguments");
+        }else if(DstoreStorage.isReservedName(splitted[1])){
+            System.out.println(String.format("ERROR => the file name %s is reserved for the Dstore's own metadata", splitted[1]));
         }else {
 
             String fileName = splitted[1];
-            boolean done = false;
 
-            try (socket; in; out; PrintWriter writer = new PrintWriter(out);
-                 FileOutputStream fileOutputStream = createFileOutputStream(fileName))
+            try
             {
                 long fileSize = Long.parseLong(splitted[2]);
-
-                String message = ClientCommands.ACK.toString();
-                writer.println(message); writer.flush();
-                DstoreLogger.getInstance().messageSent(socket, message);
-
-                fileOutputStream.write(in.readNBytes((int) fileSize));
+                Long expectedChecksum = splitted.length >= 4 ? Long.parseLong(splitted[3]) : null;
+                String digest = splitted.length == 5 ? splitted[4] : null;
+
+                long checksum;
+                if(storage.link(fileName, fileSize, digest, expectedChecksum)){
+                    sendMessage(channel, DstoreCommands.DEDUP_ACK.toString());
+                    checksum = catalog.get(fileName).checksum;
+                }else{
+                    sendMessage(channel, ClientCommands.ACK.toString());
+                    checksum = storage.write(fileName, channel.getInputStream(), fileSize, expectedChecksum);
+                    metrics.counter("dstore_stored_bytes_total").add(fileSize);
+                }
                 fileSizes.put(fileName,fileSize);
 
-                message = String.format("%s %s", ControllerCommands.STORE_ACK.toString(), fileName);
-                synchronized (controllerWriter) {
-                    controllerWriter.println(message);
-                    controllerWriter.flush();
-                }
-                DstoreLogger.getInstance().messageSent(controllerSocket, message);
-                done = true;
+                sendMessage(controllerChannel, Tracing.withContext(Tracing.current(), ControllerCommands.STORE_ACK.toString(), fileName, String.valueOf(checksum)));
 
+            } catch (ChecksumMismatchException e) {
+                System.out.println(String.format("ERROR => the checksum of the file %s does not match the one sent by the client", fileName));
             } catch (IOException e) {
-                if(!done){
-                    //TODO error handling socket exceptions which are not related to close()
-                }
-
+                //TODO error handling socket exceptions which are not related to close()
             } catch (NumberFormatException e){
-                System.out.println("ERROR => the third argument of the STORE command should be an integer value");
+                System.out.println("ERROR => the third and fourth arguments of the STORE command should be integer values");
             }
         }
     }
 
-    private FileOutputStream createFileOutputStream(String fileName) throws FileNotFoundException {
-        File file = new File(fileFolder + File.separator + fileName);
-        return new FileOutputStream(file);
-    }
-
     /*************************************** END OF STORE PROCEDURES *******************************************/
 
 
     /*************************************** BEGINNING OF REBALANCE_STORE PROCEDURES ***************************/
 
-    private void handleRebalanceStoreRequest(Socket socket,InputStream in,OutputStream out,String sentence){
-
-        String[] splitted = sentence.split(" ");
+    private void handleRebalanceStoreRequest(MessageChannel channel,String[] splitted){
 
-        if(splitted.length != 3){
-            System.out.println("ERROR => The REBALANCE_STORE command is supposed to have two arguments");
+        if(splitted.length < 3 || splitted.length > 5){
+            System.out.println("ERROR => The REBALANCE_STORE command is supposed to have from two to four arguments");
+        }else if(DstoreStorage.isReservedName(splitted[1])){
+            System.out.println(String.format("ERROR => the file name %s is reserved for the Dstore's own metadata", splitted[1]));
         }else {
 
             String fileName = splitted[1];
-            boolean done = false;
 
-            try (socket; in; out; PrintWriter writer = new PrintWriter(out);
-                 FileOutputStream fileOutputStream = createFileOutputStream(fileName))
+            try
             {
                 long fileSize = Long.parseLong(splitted[2]);
-
-                String message = DstoreCommands.ACK.toString();
-                writer.println(message); writer.flush();
-                DstoreLogger.getInstance().messageSent(socket, message);
-
-                fileOutputStream.write(in.readNBytes((int) fileSize));
+                Long expectedChecksum = splitted.length >= 4 ? Long.parseLong(splitted[3]) : null;
+                String digest = splitted.length == 5 ? splitted[4] : null;
+
+                if(storage.link(fileName, fileSize, digest, expectedChecksum)){
+                    sendMessage(channel, DstoreCommands.DEDUP_ACK.toString());
+                }else{
+                    sendMessage(channel, DstoreCommands.ACK.toString());
+                    storage.write(fileName, channel.getInputStream(), fileSize, expectedChecksum);
+                    metrics.counter("dstore_rebalanced_bytes_total").add(fileSize);
+                }
                 fileSizes.put(fileName,fileSize);
 
-                done = true;
-
+            } catch (ChecksumMismatchException e) {
+                //the replica is not kept, the next rebalance will find the file under-replicated
+                System.out.println(String.format("ERROR => the checksum of the rebalanced file %s does not match the sender's one", fileName));
             } catch (IOException e) {
-                if(!done){
-                    //TODO error handling socket exceptions which are not related to close()
-                }
-
+                //TODO error handling socket exceptions which are not related to close()
             } catch (NumberFormatException e){
-                System.out.println("ERROR => the third argument of the REBALANCE_STORE command should be an integer value");
+                System.out.println("ERROR => the third and fourth arguments of the REBALANCE_STORE command should be integer values");
             }
         }
     }
@@ -224,37 +307,58 @@ public class Dstore {
 
     /********************************** BEGINNING OF LOAD_DATA PROCEDURES *******************************************/
 
-    public void handleLoadDataRequest(Socket socket,InputStream in, OutputStream out, String sentence){
+    //LOAD_DATA filename [codec]: a reader advertising a codec gets the line DATA codec length followed by the bytes
+    //as stored, compressed with that codec or not compressed at all. Other readers get the plain content
+    public void handleLoadDataRequest(MessageChannel channel, String[] splitted){
 
-        String[] splitted = sentence.split(" ");
-
-        if(splitted.length != 2){
-            System.out.println("ERROR => the LOAD_DATA command should take one argument");
+        if(splitted.length != 2 && splitted.length != 3){
+            System.out.println("ERROR => the LOAD_DATA command should take one or two arguments");
         }else {
 
             String fileName = splitted[1];
-            File file = new File(fileFolder + File.separator + fileName);
+            Compression.Codec acceptedCodec = splitted.length == 3 ? Compression.parseCodec(splitted[2]) : null;
             boolean done = false;
+            long start = System.nanoTime();
+            activeLoads.incrementAndGet();
 
-            try (socket; in; out; PrintWriter writer = new PrintWriter(out);
-                 FileInputStream fileInputStream = new FileInputStream(file))
+            try
             {
+                OutputStream out = channel.getOutputStream();
+                var entry = catalog.get(fileName);
+                Compression.Codec codec = storage.codecOf(fileName);
+                InputStream fileInputStream;
+                if(acceptedCodec != null && entry == null){
+                    throw new FileNotFoundException(fileName);
+                }else if(acceptedCodec == null){
+                    fileInputStream = storage.open(fileName);
+                }else if(codec == acceptedCodec || codec == Compression.Codec.NONE){
+                    fileInputStream = storage.openStored(fileName);
+                    sendMessage(channel, ClientCommands.DATA.toString(), codec.toString(), String.valueOf(entry.storedSize));
+                }else{
+                    fileInputStream = storage.open(fileName);
+                    sendMessage(channel, ClientCommands.DATA.toString(), Compression.Codec.NONE.toString(), String.valueOf(entry.size));
+                }
 
-                if (file.exists()) {
-
+                long sent = 0;
+                try (fileInputStream) {
                     byte[] bytes = new byte[1024];
                     int len;
                     while ((len = fileInputStream.read(bytes)) != -1) {
                         out.write(bytes, 0, len);
+                        if (sent == 0)
+                            metrics.histogram("dstore_load_first_byte_us").recordSince(start);
+                        sent += len;
                     }
-
                 }
+                metrics.counter("dstore_loaded_bytes_total").add(sent);
                 done = true;
 
             } catch (IOException e) {
                 if(!done){
                     //TODO error handling for socket exception not related to close()
                 }
+            } finally {
+                activeLoads.decrementAndGet();
             }
         }
     }
@@ -264,34 +368,35 @@ public class Dstore {
 
     /********************************** BEGINNING OF REMOVE PROCEDURES ******************************************/
 
-    public void handleRemoveRequest(String sentence){
-
-        String[] splitted = sentence.split(" ");
+    public void handleRemoveRequest(String[] splitted){
 
         if(splitted.length != 2){
             System.out.println("ERROR => the REMOVE command should take one argument");
         }else {
-            String fileName = splitted[1];
+            removeAndAcknowledge(splitted[1]);
+        }
+    }
 
-            File file = new File(fileFolder + File.separator + fileName);
-            String message;
+    //REMOVE_BATCH filename1 ... removes every file, the outbox to the Controller coalesces their acks
+    public void handleRemoveBatchRequest(String[] splitted){
 
-            if (file.exists()) {
-                file.delete();
-                message = String.format("%s %s", ControllerCommands.REMOVE_ACK.toString(), fileName);
-                synchronized (controllerWriter) {
-                    controllerWriter.println(message);
-                    controllerWriter.flush();
-                }
-                DstoreLogger.getInstance().messageSent(controllerSocket, message);
-            } else {
-                message = String.format("%s %s", ControllerCommands.ERROR_FILE_DOES_NOT_EXIST, fileName);
-                synchronized (controllerWriter) {
-                    controllerWriter.println(message);
-                    controllerWriter.flush();
-                }
-                DstoreLogger.getInstance().messageSent(controllerSocket, message);
-            }
+        if(splitted.length < 2){
+            System.out.println("ERROR => the REMOVE_BATCH command should take at least one argument");
+            return;
+        }
+
+        for(int i = 1; i < splitted.length; i++){
+            removeAndAcknowledge(splitted[i]);
+        }
+    }
+
+    private void removeAndAcknowledge(String fileName){
+        if (storage.exists(fileName)) {
+            storage.remove(fileName);
+            fileSizes.remove(fileName);
+            sendMessage(controllerChannel, ControllerCommands.REMOVE_ACK.toString(), fileName);
+        } else {
+            sendMessage(controllerChannel, ControllerCommands.ERROR_FILE_DOES_NOT_EXIST.toString(), fileName);
         }
     }
 
@@ -300,9 +405,9 @@ public class Dstore {
 
     /********************************** BEGINNING OF REBALANCE PROCEDURES *******************************************/
 
-    private void handleRebalanceRequest(String sentence){
+    private void handleRebalanceRequest(String[] sentence){
 
-        List<String> splitted = Arrays.stream(sentence.split(" ")).collect(Collectors.toList());
+        List<String> splitted = Arrays.stream(sentence).filter(token -> !token.isEmpty()).collect(Collectors.toList());
 
         if (splitted.size() < 2) {
             System.out.println("Error: the REBALANCE command should take more than one argument");
@@ -313,12 +418,7 @@ public class Dstore {
                 if (sendStoreRequests(filesToSendRemove.fst)) { //TODO should the files be removed anyway or just when all send store requests are successful?
                     removeFiles(filesToSendRemove.snd);
 
-                    String message = ControllerCommands.REBALANCE_COMPLETE.toString();
-                    synchronized (controllerWriter) {
-                        controllerWriter.println(message);
-                        controllerWriter.flush();
-                    }
-                    DstoreLogger.getInstance().messageSent(controllerSocket, message);
+                    sendMessage(controllerChannel, ControllerCommands.REBALANCE_COMPLETE.toString());
                 }
 
             } catch (Exception e) {
@@ -369,10 +469,10 @@ public class Dstore {
     }
 
     private void removeFile(String fileName){
-        File file = new File(fileFolder + File.separator + fileName);
-        if(file.exists()){
+        if(storage.exists(fileName)){
             try{
-                file.delete();
+                storage.remove(fileName);
+                fileSizes.remove(fileName);
             } catch (Exception e) {
                 //TODO error handling file cannot be deleted
             }
@@ -383,19 +483,83 @@ public class Dstore {
 
     /************************************** END OF REBALANCE PROCEDURES ********************************************/
 
+    /************************************** BEGINNING OF REBUILD PROCEDURES ********************************************/
+
+    //REBUILD fragment k m filesize numberSources index1 port1 ... indexn portn: fetches k of the surviving fragments,
+    //decodes them and stores the missing fragment locally
+    private void handleRebuildRequest(String[] splitted){
+
+        try {
+            String fragmentName = splitted[1];
+            int dataShards = Integer.parseInt(splitted[2]);
+            int parityShards = Integer.parseInt(splitted[3]);
+            long fileSize = Long.parseLong(splitted[4]);
+            int numberSources = Integer.parseInt(splitted[5]);
+
+            if (splitted.length != 6 + 2 * numberSources || !ErasureCoding.isFragment(fragmentName)) {
+                System.out.println("ERROR => the REBUILD message was malformed");
+                return;
+            }
+
+            int[] ports = new int[dataShards + parityShards];
+            Arrays.fill(ports, -1);
+            for (int i = 0; i < numberSources; i++) {
+                ports[Integer.parseInt(splitted[6 + 2 * i])] = Integer.parseInt(splitted[7 + 2 * i]);
+            }
+
+            int index = ErasureCoding.fragmentIndex(fragmentName);
+            int shardSize = ReedSolomon.shardSize(fileSize, dataShards);
+            var fetched = ErasureCoding.fetchFragments(ErasureCoding.logicalName(fragmentName), dataShards, shardSize, ports, InetAddress.getLocalHost(), timeout);
+            new ReedSolomon(dataShards, parityShards).reconstruct(fetched.fst, fetched.snd, shardSize);
+
+            storage.write(fragmentName, fetched.fst[index]);
+            fileSizes.put(fragmentName, (long) shardSize);
+
+            sendMessage(controllerChannel, ControllerCommands.REBUILD_COMPLETE.toString(), fragmentName);
+
+        } catch (IOException e) {
+            System.out.println("ERROR => the fragment could not be rebuilt: " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.out.println("ERROR => the REBUILD message was malformed");
+        }
+    }
+
+    /**************************************** END OF REBUILD PROCEDURES ********************************************/
+
     /************************************** BEGINNING OF SEND STORE REQUEST ********************************************/
 
+    //Transfers towards the same Dstore of files with the same content are run one after the other, so that
+    //the first one ships the bytes and the following ones are answered DEDUP_ACK by the receiving Dstore
     private boolean sendStoreRequests(List<Pair<String,List<Integer>>> filesToSend){
 
-        List<Callable<Boolean>> tasks = new ArrayList<>();
+        //port -> content digest -> files
+        Map<Integer,Map<String,List<String>>> groups = new HashMap<>();
         for (var pair : filesToSend) {
+            String digest = storage.digestOf(pair.fst);
             for(int port : pair.snd){
-                tasks.add(() -> sendStoreRequest(pair.fst,port));
+                //files with an unknown digest are never grouped together
+                String key = digest == null ? "/" + pair.fst : digest;
+                groups.computeIfAbsent(port, p -> new LinkedHashMap<>()).computeIfAbsent(key, k -> new ArrayList<>()).add(pair.fst);
+            }
+        }
+
+        //the tasks run on other threads, they are handed the span of the REBALANCE explicitly
+        Tracing.Span rebalance = Tracing.current();
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (var portGroups : groups.entrySet()) {
+            int port = portGroups.getKey();
+            for (var group : portGroups.getValue().values()) {
+                tasks.add(() -> {
+                    boolean result = true;
+                    for(String fileName : group){
+                        result &= sendStoreRequest(fileName, port, rebalance);
+                    }
+                    return result;
+                });
             }
         }
         try {
-            ExecutorService executorService = Executors.newFixedThreadPool(10);
-            int numberFailures = (int) executorService.invokeAll(tasks).stream()
+            int numberFailures = (int) rebalanceSenders.invokeAll(tasks).stream()
                     .map(r -> {
                         try {
                             return r.get();
@@ -414,25 +578,37 @@ public class Dstore {
         }
     }
 
-    private boolean sendStoreRequest(String fileName, int dstorePort){
+    private boolean sendStoreRequest(String fileName, int dstorePort, Tracing.Span rebalance){
         boolean done = false;
         boolean result = false;
+        Tracing.Span span = Tracing.startChild(DstoreCommands.REBALANCE_STORE.toString(), rebalance);
+        if (span != null)
+            span.tag("file", fileName).tag("to", dstorePort);
 
         try(Socket socket = new Socket(InetAddress.getLocalHost(),dstorePort);
-            OutputStream out = socket.getOutputStream();
-            PrintWriter writer = new PrintWriter(out);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            FileInputStream fileInputStream = createFileInputStream(fileName)
+            InputStream fileInputStream = storage.open(fileName)
             )
         {
-            String message = String.format("%s %s %s",DstoreCommands.REBALANCE_STORE.toString(),fileName,fileSizes.get(fileName));
-            writer.println(message); writer.flush();
-            DstoreLogger.getInstance().messageSent(socket, message);
-
-            String answer = reader.readLine();
-            DstoreLogger.getInstance().messageReceived(socket, answer);
-
-            if(commandRecogniser(answer)==DstoreCommands.ACK){
+            MessageChannel channel = new MessageChannel(socket);
+            OutputStream out = channel.getOutputStream();
+            if(binaryProtocol)
+                channel.startBinary();
+
+            var entry = catalog.get(fileName);
+            if(entry == null)
+                sendMessage(channel, Tracing.withContext(span, DstoreCommands.REBALANCE_STORE.toString(), fileName, String.valueOf(fileSizes.get(fileName))));
+            else if(entry.digest == null)
+                sendMessage(channel, Tracing.withContext(span, DstoreCommands.REBALANCE_STORE.toString(), fileName, String.valueOf(entry.size), String.valueOf(entry.checksum)));
+            else
+                sendMessage(channel, Tracing.withContext(span, DstoreCommands.REBALANCE_STORE.toString(), fileName, String.valueOf(entry.size), String.valueOf(entry.checksum), entry.digest));
+
+            String[] answer = channel.read();
+            if(answer == null)
+                return result; //the receiving Dstore closed the connection without answering
+            DstoreLogger.getInstance().messageReceived(socket, String.join(" ", answer));
+
+            DstoreCommands command = commandRecogniser(answer);
+            if(command==DstoreCommands.ACK){
                 byte[] bytes = new byte[1024];
                 int bytesLen;
                 while ((bytesLen = fileInputStream.read(bytes)) != -1) {
@@ -441,8 +617,13 @@ public class Dstore {
                 done = true;
                 result=true;
                 return result;
+            }else if(command==DstoreCommands.DEDUP_ACK){
+                //the receiving Dstore already holds the content
+                done = true;
+                result=true;
+                return result;
             }else{
-                System.out.println("ERROR => After REBALANCE_STORE command issued, ACK command is expected back");
+                System.out.println("ERROR => After REBALANCE_STORE command issued, ACK or DEDUP_ACK command is expected back");
                 done = true;
                 return result;
             }
@@ -454,10 +635,6 @@ public class Dstore {
         }
     }
 
-    private FileInputStream createFileInputStream(String fileName) throws FileNotFoundException{
-        return new FileInputStream(fileFolder + File.separator + fileName);
-    }
-
     /***************************************** END OF SEND STORE REQUEST ***********************************************/
 
 
@@ -467,16 +644,17 @@ public class Dstore {
 
         try{
             Socket socket = new Socket(InetAddress.getLocalHost(),controllerPort);
-            PrintWriter writer = new PrintWriter(socket.getOutputStream());
-            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            String message = String.format("%s %s",ControllerCommands.JOIN,port);
-            writer.println(message); writer.flush();
-            DstoreLogger.getInstance().messageSent(socket, message);
-
+            MessageChannel channel = new MessageChannel(socket);
+            if(binaryProtocol)
+                channel.startBinary();
 
             controllerSocket = socket;
-            controllerWriter = writer;
-            controllerReader = reader;
+            controllerChannel = channel;
+            //acks of consecutive removes are sent to the Controller as one message
+            controllerOutbox = new Outbox("controller-outbox", tokens -> writeMessage(channel, tokens),
+                    Map.of(ControllerCommands.REMOVE_ACK.toString(), ControllerCommands.REMOVE_ACK.toString(),
+                            ControllerCommands.ERROR_FILE_DOES_NOT_EXIST.toString(), ControllerCommands.ERROR_FILE_DOES_NOT_EXIST.toString()));
+            sendMessage(channel, joinSentenceFormat());
 
 
             return true;
@@ -486,32 +664,54 @@ public class Dstore {
         }
     }
 
+    //A Dstore restarted on top of its data advertises its catalog so that the Controller can count its replicas straight away
+    private List<String> joinSentenceFormat(){
+        List<String> message = new ArrayList<>(List.of(ControllerCommands.JOIN.toString(), String.valueOf(port)));
+        if(!keepData)
+            return message;
+
+        var entries = catalog.snapshot();
+        if(entries.size() == 0)
+            return message;
+
+        message.add(String.valueOf(entries.size()));
+        for(var entry : entries.entrySet()){
+            message.add(entry.getKey());
+            message.add(String.valueOf(entry.getValue().size));
+            message.add(String.valueOf(entry.getValue().checksum));
+        }
+        return message;
+    }
+
     /******************************************** END OF JOIN REQUEST *********************************************+++**/
 
+    //Messages are written through the MessageChannel of the connection, which knows whether it speaks text or binary frames
+    //Messages to the Controller are queued in its outbox, so that they keep their order once coalesced
+    private void sendMessage(MessageChannel channel, String... tokens){
+        if(channel == controllerChannel && controllerOutbox != null)
+            controllerOutbox.send(tokens);
+        else
+            writeMessage(channel, tokens);
+    }
+
+    private void writeMessage(MessageChannel channel, String... tokens){
+        String message = channel.send(tokens);
+        DstoreLogger.getInstance().messageSent(channel.getSocket(), message);
+    }
+
+    private void sendMessage(MessageChannel channel, List<String> tokens){
+        sendMessage(channel, tokens.toArray(new String[0]));
+    }
+
     /****************************************** BEGINNING OF LIST REQUEST **************************************+++**/
 
     private void handleListRequest(){
 
-        File file = new File(fileFolder);
-        String[] fileList = file.list();
-        String message = ControllerCommands.LIST.toString();
+        String[] fileList = storage.list();
         if (fileList != null) {
-            if (fileList.length == 0) {
-                message = message + " ";
-                synchronized (controllerWriter) {
-                    controllerWriter.println(message);
-                    controllerWriter.flush();
-                }
-                DstoreLogger.getInstance().messageSent(controllerSocket, message);
-
-            } else {
-                message = message + " " + String.join(" ", fileList);
-                synchronized (controllerWriter) {
-                    controllerWriter.println(message);
-                    controllerWriter.flush();
-                }
-                DstoreLogger.getInstance().messageSent(controllerSocket, message);
-            }
+            List<String> message = new ArrayList<>(List.of(ControllerCommands.LIST.toString()));
+            message.addAll(Arrays.asList(fileList));
+            sendMessage(controllerChannel, message);
         } else {
             //TODO error handling fileFolder does not exist
         }
@@ -522,54 +722,35 @@ public class Dstore {
     /******************************************** END OF LIST REQUEST *********************************************+++**/
 
 
+    /***************************************** BEGINNING OF SCRUBBING ***********************************************/
 
-    /***************************************** BEGINNING OF COMMAND RECOGNISER ***********************************************/
+    private void startScrubber(){
+        if(scrubBytesPerSecond > 0){
+            Thread scrubber = new Thread(new DstoreScrubber(storage, scrubBytesPerSecond, activeLoads, this::reportCorruptedFile));
+            scrubber.setDaemon(true);
+            scrubber.start();
+        }
+    }
 
-    private DstoreCommands commandRecogniser(byte[] array, int length){
-
-        String wholeSentence = new String(array,0,length);
-        int firstSpaceIndex = wholeSentence.indexOf(" ");
-        String command = wholeSentence.substring(0,firstSpaceIndex);
-
-        if  (command.equals(DstoreCommands.STORE.toString()))
-            return DstoreCommands.STORE;
-        else if (command.equals(DstoreCommands.LOAD_DATA.toString()))
-            return DstoreCommands.LOAD_DATA;
-        else if (command.equals(DstoreCommands.REMOVE.toString()))
-            return DstoreCommands.REMOVE;
-        else if (command.equals(DstoreCommands.LIST.toString()))
-            return DstoreCommands.LIST;
-        else if (command.equals(DstoreCommands.REBALANCE.toString()))
-            return DstoreCommands.REBALANCE;
-        else if (command.equals(DstoreCommands.ACK.toString()))
-            return DstoreCommands.ACK;
-        else
-            return DstoreCommands.NoCommand;
+    //The corrupted replica is dropped so that the LIST operations of the next rebalance do not count it
+    //and the Controller re-replicates the file from the healthy copies. A deduplicated blob is shared by several
+    //file names, all of them lost their replica
+    private void reportCorruptedFile(String fileName){
+        for(String name : storage.namesSharingContent(fileName)){
+            removeFile(name);
 
+            sendMessage(controllerChannel, ControllerCommands.CORRUPTED.toString(), name);
+        }
     }
 
-    private DstoreCommands commandRecogniser(String sentence){
+    /******************************************** END OF SCRUBBING ***************************************************/
 
-        String[] splitted = sentence.split(" ");
-        String command =splitted[0];
 
-        if  (command.equals(DstoreCommands.STORE.toString()))
-            return DstoreCommands.STORE;
-        else if (command.equals(DstoreCommands.LOAD_DATA.toString()))
-            return DstoreCommands.LOAD_DATA;
-        else if (command.equals(DstoreCommands.REMOVE.toString()))
-            return DstoreCommands.REMOVE;
-        else if (command.equals(DstoreCommands.LIST.toString()))
-            return DstoreCommands.LIST;
-        else if (command.equals(DstoreCommands.REBALANCE.toString()))
-            return DstoreCommands.REBALANCE;
-        else if (command.equals(DstoreCommands.ACK.toString()))
-            return DstoreCommands.ACK;
-        else if (command.equals(DstoreCommands.REBALANCE_STORE.toString()))
-            return DstoreCommands.REBALANCE_STORE;
-        else
-            return DstoreCommands.NoCommand;
 
+    /***************************************** BEGINNING OF COMMAND RECOGNISER ***********************************************/
+
+    private DstoreCommands commandRecogniser(String[] splitted){
+        return DstoreCommands.fromToken(splitted[0]);
     }
 
     /*********************************************GETTERS AND SETTERS****************************************************/
@@ -579,6 +760,9 @@ public class Dstore {
     }
     public void setFileFolder(String fileFolder) {
         this.fileFolder = fileFolder;
+        this.catalog = new DstoreCatalog(new File(fileFolder));
+        this.storage = new DstoreStorage(new File(fileFolder), catalog, dedup);
+        this.storage.setCompression(compression);
     }
 
     public String getFileFolder() {
@@ -589,21 +773,33 @@ public class Dstore {
         return fileSizes;
     }
 
-    private void deleteDir(File dir) {
-        File[] files = dir.listFiles();
-        if(files != null) {
-            for (File file : files) {
-                deleteDir(file);
-            }
-        }
-        dir.delete();
+    public DstoreCatalog getCatalog() {
+        return catalog;
     }
 
-    private void deleteDirContent(File dir){
-        File[] files = dir.listFiles();
-        for(var file : files){
-            deleteDir(file);
-        }
+    public boolean isKeepData() {
+        return keepData;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public DstoreStorage getStorage() {
+        return storage;
+    }
+
+    public void setCompression(Compression.Mode compression) {
+        this.compression = compression;
+        this.storage.setCompression(compression);
+    }
+
+    public void setBinaryProtocol(boolean binaryProtocol) {
+        this.binaryProtocol = binaryProtocol;
+    }
+
+    public void setScrubBytesPerSecond(long scrubBytesPerSecond) {
+        this.scrubBytesPerSecond = scrubBytesPerSecond;
     }
 
     /*********************************************GETTERS AND SETTERS****************************************************/
@@ -616,6 +812,7 @@ public class Dstore {
         };
         new Thread(this::waitForRequestsFromClients).start();
         new Thread(this::waitForRequestsFromController).start();
+        startScrubber();
 
     }
 
@@ -625,7 +822,32 @@ public class Dstore {
 
 
     public static void main(String[] args) {
-        Dstore dstore = new Dstore(Integer.valueOf(args[0]),Integer.valueOf(args[1]),Integer.valueOf(args[2]),args[3]);
+        //-Ddstore.keepData=true restarts the Dstore without wiping the replicas stored in its folder
+        boolean keepData = Boolean.getBoolean("dstore.keepData");
+        //-Ddstore.dedup=true keeps a single copy of identical contents stored under different names
+        boolean dedup = Boolean.getBoolean("dstore.dedup");
+        Dstore dstore = new Dstore(Integer.valueOf(args[0]),Integer.valueOf(args[1]),Integer.valueOf(args[2]),args[3],keepData,dedup);
+        //-Ddstore.scrubBytesPerSecond=N verifies the stored checksums in background reading at most N bytes per second
+        dstore.setScrubBytesPerSecond(Long.getLong("dstore.scrubBytesPerSecond", 0L));
+        //-Ddstore.binaryProtocol=true talks to the Controller and to the other Dstores with binary frames
+        dstore.setBinaryProtocol(Boolean.getBoolean("dstore.binaryProtocol"));
+        //-Ddstore.compression=fast|dense compresses the files whose first block compresses well
+        dstore.setCompression(Compression.parseMode(System.getProperty("dstore.compression", "off")));
+        //-Dlogger.async=true logs from a background thread, -Dlogger.messageSampling=N logs one protocol message in N
+        //and -Dlogger.maxMessageLength=N truncates the longer ones
+        DstoreLogger.getInstance().setAsynchronous(Boolean.getBoolean("logger.async"));
+        DstoreLogger.getInstance().setSampling(Loggert.Level.MESSAGE, Integer.getInteger("logger.messageSampling", 1));
+        DstoreLogger.getInstance().setMaxMessageLength(Integer.getInteger("logger.maxMessageLength", 0));
+        //-Dlogger.eventLog=true also records every message in a binary .events file, see EventLogReplay
+        if (Boolean.getBoolean("logger.eventLog"))
+            DstoreLogger.getInstance().enableEventLog(Integer.parseInt(args[0]), EventLog.DSTORE_REQUESTS);
+        //-Dmetrics.port=N serves the metrics in plain text on localhost:N, they are in JMX anyway
+        dstore.getMetrics().registerMBean("DistributedStore:type=Dstore,port=" + args[0]);
+        if (Integer.getInteger("metrics.port") != null)
+            dstore.getMetrics().startEndpoint(Integer.getInteger("metrics.port"));
+        //-Dtracing.enabled=true records the spans of traced requests
+        if (Boolean.getBoolean("tracing.enabled"))
+            Tracing.enable("dstore", Integer.parseInt(args[0]));
         dstore.start();
     }
 
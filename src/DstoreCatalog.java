@@ -0,0 +1,239 @@
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+
+public class DstoreCatalog {
+
+    //The catalog lives inside the Dstore folder so that data and metadata are always moved/wiped together
+    public static final String CATALOG_FILE_NAME = ".catalog";
+    private static final String NO_DIGEST = "-";
+
+    private final File folder;
+    private final File catalogFile;
+    private final Map<String,CatalogEntry> entries;
+    private final Map<String,Integer> references;  //content digest -> number of file names pointing to it
+    private PrintWriter journalWriter;
+
+    public DstoreCatalog(File folder) {
+        this.folder = folder;
+        this.catalogFile = new File(folder, CATALOG_FILE_NAME);
+        this.entries = new HashMap<>();
+        this.references = new HashMap<>();
+    }
+
+    /*********************************** BEGINNING OF CATALOG ENTRIES ******************************************/
+
+    public static class CatalogEntry {
+        public long size;
+        public long checksum;
+        public String digest;   //SHA-256 of the content, only known when the Dstore deduplicates
+        public Compression.Codec codec;
+        public long storedSize; //bytes on disk, size is always the logical one
+
+        public CatalogEntry(long size, long checksum, String digest){
+            this(size, checksum, digest, Compression.Codec.NONE, size);
+        }
+
+        public CatalogEntry(long size, long checksum, String digest, Compression.Codec codec, long storedSize){
+            this.size = size;
+            this.checksum = checksum;
+            this.digest = digest;
+            this.codec = codec;
+            this.storedSize = storedSize;
+        }
+    }
+
+    public synchronized void put(String fileName, long size, long checksum){
+        put(fileName, size, checksum, null);
+    }
+
+    public synchronized void put(String fileName, long size, long checksum, String digest){
+        put(fileName, new CatalogEntry(size, checksum, digest));
+    }
+
+    public synchronized void put(String fileName, CatalogEntry entry){
+        putEntry(fileName, entry);
+        appendToJournal(journalLine(fileName, entry));
+    }
+
+    public synchronized void remove(String fileName){
+        if(removeEntry(fileName) != null)
+            appendToJournal(String.format("DEL %s", encode(fileName)));
+    }
+
+    private void putEntry(String fileName, CatalogEntry entry){
+        removeEntry(fileName);
+        entries.put(fileName, entry);
+        if(entry.digest != null)
+            references.merge(entry.digest, 1, Integer::sum);
+    }
+
+    private CatalogEntry removeEntry(String fileName){
+        CatalogEntry entry = entries.remove(fileName);
+        if(entry != null && entry.digest != null)
+            references.computeIfPresent(entry.digest, (digest, count) -> count == 1 ? null : count - 1);
+        return entry;
+    }
+
+    public synchronized CatalogEntry get(String fileName){
+        return entries.get(fileName);
+    }
+
+    public synchronized boolean contains(String fileName){
+        return entries.containsKey(fileName);
+    }
+
+    public synchronized Map<String,CatalogEntry> snapshot(){
+        return new HashMap<>(entries);
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    public synchronized int referenceCount(String digest){
+        return references.getOrDefault(digest, 0);
+    }
+
+    public synchronized List<String> namesWithDigest(String digest){
+        return entries.entrySet().stream()
+                .filter(entry -> digest.equals(entry.getValue().digest))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    public synchronized CatalogEntry findByDigest(String digest){
+        if(referenceCount(digest) == 0)
+            return null;
+        return entries.values().stream().filter(entry -> digest.equals(entry.digest)).findAny().orElse(null);
+    }
+
+    /************************************** END OF CATALOG ENTRIES ******************************************/
+
+
+    /************************************* BEGINNING OF PERSISTENCE *****************************************/
+
+    //Replays the journal; checking the entries against the stored data is up to DstoreStorage.recover()
+    public synchronized void load() throws IOException {
+        entries.clear();
+        references.clear();
+        closeJournal();
+
+        if(catalogFile.exists()){
+            //A line only counts once its line separator is on disk, a last line without it was torn by a crash
+            StringBuilder line = new StringBuilder();
+            try(BufferedReader reader = new BufferedReader(new FileReader(catalogFile, StandardCharsets.UTF_8))){
+                int character;
+                while((character = reader.read()) != -1){
+                    if(character == '\n'){
+                        replayJournalLine(line.toString().strip());
+                        line.setLength(0);
+                    } else {
+                        line.append((char) character);
+                    }
+                }
+            }
+            //Journal lines appended after the torn one would otherwise be glued to it
+            if(line.length() > 0){
+                compact();
+            }
+        }
+    }
+
+    //Only the exact lines journalLine() and remove() write are replayed, anything else is ignored
+    private void replayJournalLine(String line){
+        String[] splitted = line.split(" ");
+        try {
+            if (splitted.length == 7 && splitted[0].equals("PUT") && Compression.parseCodec(splitted[5]) != null) {
+                String digest = !splitted[4].equals(NO_DIGEST) ? splitted[4] : null;
+                putEntry(decode(splitted[1]), new CatalogEntry(Long.parseLong(splitted[2]), Long.parseLong(splitted[3]), digest,
+                        Compression.parseCodec(splitted[5]), Long.parseLong(splitted[6])));
+            } else if (splitted.length == 2 && splitted[0].equals("DEL")) {
+                removeEntry(decode(splitted[1]));
+            }
+        } catch (NumberFormatException e){
+            //A malformed number is ignored like any other unknown line
+        }
+    }
+
+    //Rewrites the journal with one PUT line per live entry and atomically replaces the old one
+    public synchronized void compact() throws IOException {
+        closeJournal();
+        folder.mkdirs();
+        File tmp = new File(folder, CATALOG_FILE_NAME + ".tmp");
+        try(PrintWriter writer = new PrintWriter(new FileWriter(tmp, StandardCharsets.UTF_8))){
+            for(var entry : entries.entrySet()){
+                writer.println(journalLine(entry.getKey(), entry.getValue()));
+            }
+        }
+        Files.move(tmp.toPath(), catalogFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String journalLine(String fileName, CatalogEntry entry){
+        return String.format("PUT %s %s %s %s %s %s", encode(fileName), entry.size, entry.checksum,
+                entry.digest == null ? NO_DIGEST : entry.digest, entry.codec, entry.storedSize);
+    }
+
+    private void appendToJournal(String line){
+        try {
+            if(journalWriter == null){
+                folder.mkdirs();
+                journalWriter = new PrintWriter(new FileWriter(catalogFile, StandardCharsets.UTF_8, true));
+            }
+            journalWriter.println(line);
+            journalWriter.flush();
+        } catch (IOException e){
+            System.out.println("ERROR => the Dstore catalog could not be written: " + e.getMessage());
+        }
+    }
+
+    private void closeJournal(){
+        if(journalWriter != null){
+            journalWriter.close();
+            journalWriter = null;
+        }
+    }
+
+    public static boolean isReservedName(String fileName){
+        return fileName.equals(CATALOG_FILE_NAME) || fileName.equals(CATALOG_FILE_NAME + ".tmp");
+    }
+
+    private static String encode(String fileName){
+        return URLEncoder.encode(fileName, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String fileName){
+        return URLDecoder.decode(fileName, StandardCharsets.UTF_8);
+    }
+
+    /*************************************** END OF PERSISTENCE ********************************************/
+
+
+    /************************************** BEGINNING OF CHECKSUMS ******************************************/
+
+    public static long checksum(byte[] bytes){
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    public static long checksum(File file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try(FileInputStream fileInputStream = new FileInputStream(file)){
+            byte[] bytes = new byte[8192];
+            int len;
+            while((len = fileInputStream.read(bytes)) != -1){
+                crc.update(bytes, 0, len);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**************************************** END OF CHECKSUMS ********************************************/
+}
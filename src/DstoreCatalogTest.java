@@ -0,0 +1,182 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DstoreCatalogTest {
+
+    private File folder;
+
+    @BeforeEach
+    void createFolder() throws IOException {
+        folder = Files.createTempDirectory("catalog").toFile();
+    }
+
+    @AfterEach
+    void deleteFolder() {
+        deleteDir(folder);
+    }
+
+    /*********************************BEGINNING OF TESTS FOR JOURNAL REPLAY****************************/
+
+    @Test
+    void testReplayRestoresEntries() throws IOException {
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        catalog.put("hello.txt", 5, 42);
+        catalog.put("file with spaces.txt", 10, 7);
+        catalog.put("hello.txt", 6, 43);
+        catalog.put("removed.txt", 1, 1);
+        catalog.remove("removed.txt");
+
+        DstoreCatalog replayed = new DstoreCatalog(folder);
+        replayed.load();
+        Assertions.assertEquals(2, replayed.size());
+        Assertions.assertEquals(6, replayed.get("hello.txt").size);
+        Assertions.assertEquals(43, replayed.get("hello.txt").checksum);
+        Assertions.assertEquals(10, replayed.get("file with spaces.txt").size);
+        Assertions.assertFalse(replayed.contains("removed.txt"));
+    }
+
+    @Test
+    void testReplayIgnoresTornLastLine() throws IOException {
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        catalog.put("a.txt", 5, 42);
+        catalog.put("b.txt", 7, 43);
+        appendToJournal("PUT c.txt 12");
+
+        DstoreCatalog replayed = new DstoreCatalog(folder);
+        replayed.load();
+        Assertions.assertEquals(2, replayed.size());
+        Assertions.assertTrue(replayed.contains("a.txt"));
+        Assertions.assertTrue(replayed.contains("b.txt"));
+        Assertions.assertFalse(replayed.contains("c.txt"));
+    }
+
+    @Test
+    void testReplayIgnoresTornNumber() throws IOException {
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        catalog.put("a.txt", 5, 42);
+        appendToJournal("PUT b.txt 100 12x");
+
+        DstoreCatalog replayed = new DstoreCatalog(folder);
+        replayed.load();
+        Assertions.assertEquals(1, replayed.size());
+        Assertions.assertFalse(replayed.contains("b.txt"));
+    }
+
+    //a 7-field line cut after its checksum must not pass for an older, shorter line
+    @Test
+    void testReplayIgnoresTruncatedLine() throws IOException {
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        catalog.put("a.txt", 5, 42);
+        appendToJournal("PUT b.txt 5 4");
+
+        DstoreCatalog replayed = new DstoreCatalog(folder);
+        replayed.load();
+        Assertions.assertEquals(1, replayed.size());
+        Assertions.assertFalse(replayed.contains("b.txt"));
+
+        //even a torn line that happens to be complete is ignored without its line separator
+        File journal = new File(folder, DstoreCatalog.CATALOG_FILE_NAME);
+        String complete = Files.readAllLines(journal.toPath()).get(0).replace("a.txt", "c.txt");
+        appendToJournal(complete);
+        replayed.load();
+        Assertions.assertFalse(replayed.contains("c.txt"));
+    }
+
+    @Test
+    void testWritesAfterLoadingTornLineSurvive() throws IOException {
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        catalog.put("a.txt", 5, 42);
+        appendToJournal("PUT b.txt 5 4");
+
+        DstoreCatalog replayed = new DstoreCatalog(folder);
+        replayed.load();
+        replayed.put("c.txt", 6, 43);
+
+        DstoreCatalog reloaded = new DstoreCatalog(folder);
+        reloaded.load();
+        Assertions.assertEquals(2, reloaded.size());
+        Assertions.assertEquals(43, reloaded.get("c.txt").checksum);
+    }
+
+    @Test
+    void testWritesAfterRecoveringFromTornLineSurvive() throws IOException {
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        DstoreStorage storage = new DstoreStorage(folder, catalog, false);
+        storage.write("a.txt", "content of a".getBytes(StandardCharsets.UTF_8));
+        appendToJournal("PUT b.txt 1");
+
+        //the Dstore restarts on top of its folder, the compacted journal no longer ends in the torn line
+        DstoreCatalog restarted = new DstoreCatalog(folder);
+        DstoreStorage restartedStorage = new DstoreStorage(folder, restarted, false);
+        restartedStorage.recover();
+        restartedStorage.write("c.txt", "content of c".getBytes(StandardCharsets.UTF_8));
+
+        DstoreCatalog replayed = new DstoreCatalog(folder);
+        replayed.load();
+        Assertions.assertEquals(2, replayed.size());
+        Assertions.assertTrue(replayed.contains("a.txt"));
+        Assertions.assertTrue(replayed.contains("c.txt"));
+    }
+
+    /************************************END OF TESTS FOR JOURNAL REPLAY********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR COMPACTION****************************/
+
+    @Test
+    void testCompactKeepsOneLinePerEntry() throws IOException {
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        for (int i = 0; i < 10; i++) {
+            catalog.put("hello.txt", i, i);
+        }
+        catalog.put("other.txt", 3, 3);
+        catalog.remove("other.txt");
+        catalog.compact();
+
+        File journal = new File(folder, DstoreCatalog.CATALOG_FILE_NAME);
+        Assertions.assertEquals(1, Files.readAllLines(journal.toPath()).size());
+        DstoreCatalog replayed = new DstoreCatalog(folder);
+        replayed.load();
+        Assertions.assertEquals(9, replayed.get("hello.txt").size);
+    }
+
+    @Test
+    void testRecoverDropsEntriesWithoutData() throws IOException {
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        DstoreStorage storage = new DstoreStorage(folder, catalog, false);
+        storage.write("kept.txt", "kept".getBytes(StandardCharsets.UTF_8));
+        storage.write("lost.txt", "lost".getBytes(StandardCharsets.UTF_8));
+        new File(folder, "lost.txt").delete();
+        Files.write(new File(folder, "unknown.txt").toPath(), "interrupted".getBytes(StandardCharsets.UTF_8));
+
+        DstoreCatalog restarted = new DstoreCatalog(folder);
+        new DstoreStorage(folder, restarted, false).recover();
+        Assertions.assertTrue(restarted.contains("kept.txt"));
+        Assertions.assertFalse(restarted.contains("lost.txt"));
+        Assertions.assertFalse(new File(folder, "unknown.txt").exists());
+    }
+
+    /************************************END OF TESTS FOR COMPACTION********************************/
+
+
+    private void appendToJournal(String line) throws IOException {
+        //no line separator, as if the Dstore had crashed halfway through the line
+        Files.write(new File(folder, DstoreCatalog.CATALOG_FILE_NAME).toPath(), line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+}
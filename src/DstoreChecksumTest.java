@@ -0,0 +1,116 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DstoreChecksumTest {
+
+    private File folder;
+
+    @BeforeEach
+    void createFolder() throws IOException {
+        folder = Files.createTempDirectory("checksum").toFile();
+    }
+
+    @AfterEach
+    void deleteFolder() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    /*********************************BEGINNING OF TESTS FOR CRC32C****************************/
+
+    @Test
+    void testKnownCheckValue() {
+        //the check value of CRC-32C, the CRC of the nine ASCII digits
+        Assertions.assertEquals(0xE3069283L, DstoreCatalog.checksum("123456789".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertEquals(0L, DstoreCatalog.checksum(new byte[0]));
+    }
+
+    @ParameterizedTest
+    @MethodSource("argumentsForTestFileChecksumMatchesBytes")
+    void testFileChecksumMatchesBytes(int size) throws IOException {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        File file = new File(folder, "file" + size);
+        Files.write(file.toPath(), bytes);
+        Assertions.assertEquals(DstoreCatalog.checksum(bytes), DstoreCatalog.checksum(file));
+    }
+
+    Stream<Arguments> argumentsForTestFileChecksumMatchesBytes(){
+        return Stream.of(
+                Arguments.of(0),
+                Arguments.of(1),
+                Arguments.of(8192),
+                Arguments.of(8193),
+                Arguments.of(100000)
+        );
+    }
+
+    @Test
+    void testChecksumDetectsSingleBitFlip() {
+        byte[] bytes = "content of the file".getBytes(StandardCharsets.UTF_8);
+        long checksum = DstoreCatalog.checksum(bytes);
+        bytes[3] ^= 1;
+        Assertions.assertNotEquals(checksum, DstoreCatalog.checksum(bytes));
+    }
+
+    /************************************END OF TESTS FOR CRC32C********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR VERIFIED STORES****************************/
+
+    @Test
+    void testStoreWithMatchingChecksumIsCatalogued() throws IOException {
+        byte[] bytes = "content of the file".getBytes(StandardCharsets.UTF_8);
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        DstoreStorage storage = new DstoreStorage(folder, catalog, false);
+
+        long checksum = storage.write("hello.txt", new ByteArrayInputStream(bytes), bytes.length, DstoreCatalog.checksum(bytes));
+        Assertions.assertEquals(DstoreCatalog.checksum(bytes), checksum);
+        Assertions.assertEquals(checksum, catalog.get("hello.txt").checksum);
+
+        DstoreCatalog replayed = new DstoreCatalog(folder);
+        replayed.load();
+        Assertions.assertEquals(checksum, replayed.get("hello.txt").checksum);
+    }
+
+    @Test
+    void testStoreWithWrongChecksumIsDiscarded() {
+        byte[] bytes = "content of the file".getBytes(StandardCharsets.UTF_8);
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        DstoreStorage storage = new DstoreStorage(folder, catalog, false);
+
+        Assertions.assertThrows(ChecksumMismatchException.class,
+                () -> storage.write("hello.txt", new ByteArrayInputStream(bytes), bytes.length, DstoreCatalog.checksum(bytes) + 1));
+        Assertions.assertFalse(catalog.contains("hello.txt"));
+        Assertions.assertFalse(new File(folder, "hello.txt").exists());
+    }
+
+    @Test
+    void testTruncatedStoreIsDiscarded() {
+        byte[] bytes = "content of the file".getBytes(StandardCharsets.UTF_8);
+        DstoreCatalog catalog = new DstoreCatalog(folder);
+        DstoreStorage storage = new DstoreStorage(folder, catalog, false);
+
+        Assertions.assertThrows(EOFException.class,
+                () -> storage.write("hello.txt", new ByteArrayInputStream(bytes), bytes.length + 10, null));
+        Assertions.assertFalse(catalog.contains("hello.txt"));
+        Assertions.assertFalse(new File(folder, "hello.txt").exists());
+    }
+
+    /************************************END OF TESTS FOR VERIFIED STORES********************************/
+}
@@ -1,3 +1,6 @@
+import java.util.HashMap;
+import java.util.Map;
+
 public enum DstoreCommands {
     STORE,
     LOAD_DATA,
@@ -6,5 +9,22 @@ public enum DstoreCommands {
     REBALANCE,
     ACK,
     REBALANCE_STORE,
-    NoCommand
+    REBUILD,
+    DEDUP_ACK,
+    REMOVE_BATCH,
+    NoCommand;
+
+    //Every command token is looked up once in this table instead of being compared with each constant in turn
+    private static final Map<String,DstoreCommands> BY_TOKEN = new HashMap<>();
+
+    static {
+        for (DstoreCommands command : values()) {
+            if (command != NoCommand)
+                BY_TOKEN.put(command.toString(), command);
+        }
+    }
+
+    public static DstoreCommands fromToken(String token) {
+        return BY_TOKEN.getOrDefault(token, NoCommand);
+    }
 }
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+public class DstoreScrubber implements Runnable {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long YIELD_MILLIS = 50;
+    private static final long PASS_PERIOD_MILLIS = 60 * 1000;
+
+    private final DstoreStorage storage;
+    private final DstoreCatalog catalog;
+    private final long bytesPerSecond;
+    private final AtomicInteger activeLoads;
+    private final Consumer<String> corruptionHandler;
+
+    //activeLoads is the number of LOAD_DATA requests being served, the scrubber stays idle while it is not zero
+    public DstoreScrubber(DstoreStorage storage, long bytesPerSecond, AtomicInteger activeLoads, Consumer<String> corruptionHandler) {
+        this.storage = storage;
+        this.catalog = storage.getCatalog();
+        this.bytesPerSecond = bytesPerSecond;
+        this.activeLoads = activeLoads;
+        this.corruptionHandler = corruptionHandler;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                scrubPass();
+                Thread.sleep(PASS_PERIOD_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            //the Dstore is shutting down
+        }
+    }
+
+    /*********************************** BEGINNING OF SCRUB PROCEDURES *******************************************/
+
+    void scrubPass() throws InterruptedException {
+        Set<String> scrubbedDigests = new HashSet<>();  //a deduplicated blob is read once per pass
+        for (var entry : catalog.snapshot().entrySet()) {
+            String fileName = entry.getKey();
+            DstoreCatalog.CatalogEntry catalogEntry = entry.getValue();
+            if (catalogEntry.digest != null && !scrubbedDigests.add(catalogEntry.digest))
+                continue;
+
+            try {
+                long checksum = throttledChecksum(storage.open(fileName));
+                //the file may have been removed or stored again while it was being read
+                if (catalog.get(fileName) == catalogEntry && checksum != catalogEntry.checksum) {
+                    System.out.println(String.format("ERROR => the scrubber found the file %s corrupted", fileName));
+                    corruptionHandler.accept(fileName);
+                }
+            } catch (IOException e) {
+                if (catalog.get(fileName) == catalogEntry) {
+                    System.out.println(String.format("ERROR => the scrubber could not read the file %s", fileName));
+                    corruptionHandler.accept(fileName);
+                }
+            }
+        }
+    }
+
+    private long throttledChecksum(InputStream in) throws IOException, InterruptedException {
+        CRC32C crc = new CRC32C();
+        byte[] bytes = new byte[CHUNK_SIZE];
+
+        try (InputStream fileInputStream = in) {
+            long start = System.nanoTime();
+            long bytesRead = 0;
+            int len;
+
+            while (true) {
+                long yielded = yieldToLoads();
+                start += yielded; //the time spent yielding does not give the scrubber extra budget
+
+                if ((len = fileInputStream.read(bytes)) == -1)
+                    break;
+                crc.update(bytes, 0, len);
+                bytesRead += len;
+
+                long aheadNanos = expectedNanos(bytesRead, bytesPerSecond) - (System.nanoTime() - start);
+                if (aheadNanos > 0)
+                    Thread.sleep(aheadNanos / 1_000_000, (int) (aheadNanos % 1_000_000));
+            }
+        }
+        return crc.getValue();
+    }
+
+    //Time the bytes read so far are worth at the given rate; bytesRead * 10^9 alone would overflow past ~9.2 GB
+    static long expectedNanos(long bytesRead, long bytesPerSecond) {
+        return bytesRead / bytesPerSecond * 1_000_000_000L + bytesRead % bytesPerSecond * 1_000_000_000L / bytesPerSecond;
+    }
+
+    private long yieldToLoads() throws InterruptedException {
+        long start = System.nanoTime();
+        while (activeLoads.get() > 0) {
+            Thread.sleep(YIELD_MILLIS);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /************************************** END OF SCRUB PROCEDURES *******************************************/
+}
@@ -0,0 +1,134 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DstoreScrubberTest {
+
+    private File folder;
+    private DstoreStorage storage;
+    private AtomicInteger activeLoads;
+    private List<String> corrupted;
+
+    @BeforeEach
+    void createStorage() throws IOException {
+        folder = Files.createTempDirectory("scrubber").toFile();
+        storage = new DstoreStorage(folder, new DstoreCatalog(folder), false);
+        activeLoads = new AtomicInteger();
+        corrupted = new CopyOnWriteArrayList<>();
+    }
+
+    @AfterEach
+    void deleteFolder() {
+        deleteDir(folder);
+    }
+
+    /*********************************BEGINNING OF TESTS FOR SCRUB PASSES****************************/
+
+    @Test
+    void testCorruptedFilesAreReported() throws IOException, InterruptedException {
+        storage.write("kept.txt", "content of kept".getBytes(StandardCharsets.UTF_8));
+        storage.write("rotten.txt", "content of rotten".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(folder, "rotten.txt").toPath(), "content of r0tten".getBytes(StandardCharsets.UTF_8));
+
+        scrubber(1_000_000).scrubPass();
+        Assertions.assertEquals(List.of("rotten.txt"), corrupted);
+    }
+
+    @Test
+    void testMissingFilesAreReported() throws IOException, InterruptedException {
+        storage.write("lost.txt", "content of lost".getBytes(StandardCharsets.UTF_8));
+        new File(folder, "lost.txt").delete();
+
+        scrubber(1_000_000).scrubPass();
+        Assertions.assertEquals(List.of("lost.txt"), corrupted);
+    }
+
+    /************************************END OF TESTS FOR SCRUB PASSES********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR THROTTLING****************************/
+
+    @ParameterizedTest
+    @MethodSource("argumentsForTestExpectedNanos")
+    void testExpectedNanos(long bytesRead, long bytesPerSecond, long expectedNanos) {
+        Assertions.assertEquals(expectedNanos, DstoreScrubber.expectedNanos(bytesRead, bytesPerSecond));
+    }
+
+    Stream<Arguments> argumentsForTestExpectedNanos(){
+        return Stream.of(
+                Arguments.of(0L, 1000L, 0L),
+                Arguments.of(500L, 1000L, 500_000_000L),
+                Arguments.of(1500L, 1000L, 1_500_000_000L),
+                Arguments.of(1L, 3L, 333_333_333L),
+                //past ~9.2 GB bytesRead * 10^9 no longer fits in a long
+                Arguments.of(10_000_000_000L, 100_000_000L, 100_000_000_000L),
+                Arguments.of(1L << 40, 1L << 20, (1L << 20) * 1_000_000_000L)
+        );
+    }
+
+    @Test
+    void testPassIsThrottled() throws IOException, InterruptedException {
+        storage.write("a.txt", new byte[200 * 1024]);
+
+        //200 KiB at 1 MiB/s take at least about 200 ms
+        long start = System.nanoTime();
+        scrubber(1024 * 1024).scrubPass();
+        Assertions.assertTrue(System.nanoTime() - start >= 180_000_000L);
+        Assertions.assertEquals(Collections.emptyList(), corrupted);
+    }
+
+    @Test
+    void testPassYieldsToLoads() throws IOException, InterruptedException {
+        storage.write("rotten.txt", "content of rotten".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(folder, "rotten.txt").toPath(), "content of r0tten".getBytes(StandardCharsets.UTF_8));
+
+        activeLoads.set(1);
+        DstoreScrubber scrubber = scrubber(1_000_000);
+        Thread pass = new Thread(() -> {
+            try {
+                scrubber.scrubPass();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        pass.start();
+        Thread.sleep(200);
+        Assertions.assertTrue(pass.isAlive());
+        Assertions.assertEquals(Collections.emptyList(), corrupted);
+
+        activeLoads.set(0);
+        pass.join(5000);
+        Assertions.assertFalse(pass.isAlive());
+        Assertions.assertEquals(List.of("rotten.txt"), corrupted);
+    }
+
+    /************************************END OF TESTS FOR THROTTLING********************************/
+
+
+    private DstoreScrubber scrubber(long bytesPerSecond) {
+        return new DstoreScrubber(storage, bytesPerSecond, activeLoads, corrupted::add);
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,288 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+public class DstoreStorage {
+
+    //In deduplicating mode the bytes live once in .blobs/<sha256> and the catalog maps every file name to its digest
+    public static final String BLOBS_FOLDER_NAME = ".blobs";
+    private static final String TMP_PREFIX = ".tmp-";
+
+    private final File folder;
+    private final File blobsFolder;
+    private final DstoreCatalog catalog;
+    private final boolean dedup;
+    private Compression.Mode compression;
+
+    public DstoreStorage(File folder, DstoreCatalog catalog, boolean dedup) {
+        this.folder = folder;
+        this.blobsFolder = new File(folder, BLOBS_FOLDER_NAME);
+        this.catalog = catalog;
+        this.dedup = dedup;
+        this.compression = Compression.Mode.OFF;
+    }
+
+    /*********************************** BEGINNING OF WRITE PROCEDURES *******************************************/
+
+    //Copies exactly size bytes to the storage computing their CRC32C (and SHA-256 when deduplicating) on the fly,
+    //so the digests cost no extra pass over the data. Nothing is catalogued unless the whole file has been received.
+    //Checksums and digests are always the ones of the logical content, whatever the codec chosen from the first block
+    public long write(String fileName, InputStream in, long size, Long expectedChecksum) throws IOException {
+        if (isReservedName(fileName))
+            throw new IOException(String.format("%s is reserved for the Dstore's own metadata", fileName));
+        File target = dedup ? newTmpFile() : new File(folder, fileName);
+        MessageDigest sha256 = dedup ? newSha256() : null;
+        CRC32C crc = new CRC32C();
+        boolean done = false;
+
+        try {
+            byte[] bytes = new byte[Compression.SAMPLE_SIZE];
+            int sampled = in.readNBytes(bytes, 0, (int) Math.min(bytes.length, size));
+            if (sampled < Math.min(bytes.length, size))
+                throw new EOFException(String.format("Expected %s more bytes", size - sampled));
+            Compression.Codec codec = Compression.choose(bytes, sampled, compression);
+
+            try (OutputStream fileOutputStream = Compression.compress(new FileOutputStream(target), codec, compression)) {
+                long remaining = size;
+                int len = sampled;
+                while (true) {
+                    crc.update(bytes, 0, len);
+                    if (sha256 != null)
+                        sha256.update(bytes, 0, len);
+                    fileOutputStream.write(bytes, 0, len);
+                    remaining -= len;
+                    if (remaining <= 0)
+                        break;
+                    len = in.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+                    if (len == -1)
+                        throw new EOFException(String.format("Expected %s more bytes", remaining));
+                }
+            }
+
+            long checksum = crc.getValue();
+            if (expectedChecksum != null && expectedChecksum != checksum)
+                throw new ChecksumMismatchException(fileName);
+
+            DstoreCatalog.CatalogEntry entry = new DstoreCatalog.CatalogEntry(size, checksum,
+                    dedup ? HexFormat.of().formatHex(sha256.digest()) : null, codec, target.length());
+            if (dedup)
+                commitBlob(fileName, target, entry);
+            else
+                catalog.put(fileName, entry);
+            done = true;
+            return checksum;
+
+        } finally {
+            if (!done && (dedup || !catalog.contains(fileName)))
+                target.delete();
+        }
+    }
+
+    public long write(String fileName, byte[] bytes) throws IOException {
+        return write(fileName, new ByteArrayInputStream(bytes), bytes.length, null);
+    }
+
+    private void commitBlob(String fileName, File tmp, DstoreCatalog.CatalogEntry entry) throws IOException {
+        synchronized (catalog) {
+            DstoreCatalog.CatalogEntry known = catalog.findByDigest(entry.digest);
+            if (known == null) {
+                Files.move(tmp.toPath(), new File(blobsFolder, entry.digest).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                tmp.delete();  //the same content is already stored under another name, possibly with another codec
+                entry = new DstoreCatalog.CatalogEntry(entry.size, entry.checksum, entry.digest, known.codec, known.storedSize);
+            }
+            String previousDigest = digestOf(fileName);
+            catalog.put(fileName, entry);
+            releaseBlob(previousDigest);
+        }
+    }
+
+    //Hash handshake of STORE and REBALANCE_STORE: if the content is already stored the file name is simply pointed at it
+    public boolean link(String fileName, long size, String digest, Long expectedChecksum){
+        if (!dedup || digest == null || isReservedName(fileName))
+            return false;
+
+        synchronized (catalog) {
+            DstoreCatalog.CatalogEntry known = catalog.findByDigest(digest);
+            if (known == null || known.size != size || (expectedChecksum != null && expectedChecksum != known.checksum))
+                return false;
+            String previousDigest = digestOf(fileName);
+            catalog.put(fileName, new DstoreCatalog.CatalogEntry(size, known.checksum, digest, known.codec, known.storedSize));
+            releaseBlob(previousDigest);
+            return true;
+        }
+    }
+
+    private File newTmpFile() {
+        blobsFolder.mkdirs();
+        return new File(blobsFolder, TMP_PREFIX + UUID.randomUUID());
+    }
+
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); //every Java platform has to support SHA-256
+        }
+    }
+
+    public static String digest(byte[] bytes) {
+        return HexFormat.of().formatHex(newSha256().digest(bytes));
+    }
+
+    /************************************** END OF WRITE PROCEDURES *******************************************/
+
+
+    /*********************************** BEGINNING OF READ PROCEDURES *******************************************/
+
+    public File locate(String fileName) {
+        if (!dedup)
+            return new File(folder, fileName);
+        String digest = digestOf(fileName);
+        return new File(blobsFolder, digest == null ? fileName : digest);
+    }
+
+    //The logical content of the file, decompressed if needed
+    public InputStream open(String fileName) throws IOException {
+        return Compression.decompress(openStored(fileName), codecOf(fileName));
+    }
+
+    //The bytes as they are on disk, for the readers which can decompress them on their own
+    public InputStream openStored(String fileName) throws IOException {
+        return new FileInputStream(locate(fileName));
+    }
+
+    public Compression.Codec codecOf(String fileName) {
+        DstoreCatalog.CatalogEntry entry = catalog.get(fileName);
+        return entry == null ? Compression.Codec.NONE : entry.codec;
+    }
+
+    public boolean exists(String fileName) {
+        return dedup ? catalog.contains(fileName) : locate(fileName).exists();
+    }
+
+    public String digestOf(String fileName) {
+        DstoreCatalog.CatalogEntry entry = catalog.get(fileName);
+        return entry == null ? null : entry.digest;
+    }
+
+    //All the file names whose bytes are the same stored object as fileName, fileName included
+    public List<String> namesSharingContent(String fileName) {
+        String digest = digestOf(fileName);
+        return dedup && digest != null ? catalog.namesWithDigest(digest) : List.of(fileName);
+    }
+
+    public String[] list() {
+        if (dedup)
+            return catalog.snapshot().keySet().toArray(new String[0]);
+        return folder.list((dir, name) -> !isReservedName(name));
+    }
+
+    /************************************** END OF READ PROCEDURES *******************************************/
+
+
+    /*********************************** BEGINNING OF REMOVE PROCEDURES *******************************************/
+
+    public boolean remove(String fileName) {
+        if (!dedup) {
+            boolean deleted = locate(fileName).delete();
+            catalog.remove(fileName);
+            return deleted;
+        }
+
+        synchronized (catalog) {
+            String digest = digestOf(fileName);
+            if (!catalog.contains(fileName))
+                return false;
+            catalog.remove(fileName);
+            releaseBlob(digest);
+            return true;
+        }
+    }
+
+    private void releaseBlob(String digest) {
+        if (digest != null && catalog.referenceCount(digest) == 0)
+            new File(blobsFolder, digest).delete();
+    }
+
+    public void clear() {
+        deleteDirContent(folder);
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+
+    private void deleteDirContent(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (var file : files) {
+                deleteDir(file);
+            }
+        }
+    }
+
+    /************************************** END OF REMOVE PROCEDURES *******************************************/
+
+
+    /*********************************** BEGINNING OF RECOVERY PROCEDURES *******************************************/
+
+    //Replays the catalog, drops the entries whose data is missing or torn and deletes the data nobody refers to.
+    //Files are only catalogued after their bytes have been fully written, so unknown data is an interrupted ingest
+    public void recover() throws IOException {
+        catalog.load();
+
+        Set<String> liveData = new HashSet<>();
+        for (var entry : catalog.snapshot().entrySet()) {
+            File file = locate(entry.getKey());
+            if (!file.isFile() || file.length() != entry.getValue().storedSize) {
+                file.delete();
+                catalog.remove(entry.getKey());
+            } else {
+                liveData.add(file.getName());
+            }
+        }
+
+        File[] files = (dedup ? blobsFolder : folder).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && !isReservedName(file.getName()) && !liveData.contains(file.getName()))
+                    file.delete();
+            }
+        }
+
+        catalog.compact();
+    }
+
+    public static boolean isReservedName(String fileName) {
+        return DstoreCatalog.isReservedName(fileName) || fileName.equals(BLOBS_FOLDER_NAME);
+    }
+
+    /************************************** END OF RECOVERY PROCEDURES *******************************************/
+
+    public DstoreCatalog getCatalog() {
+        return catalog;
+    }
+
+    public boolean isDedup() {
+        return dedup;
+    }
+
+    public Compression.Mode getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression.Mode compression) {
+        this.compression = compression;
+    }
+}
@@ -0,0 +1,159 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DstoreStorageTest {
+
+    private File folder;
+    private DstoreCatalog catalog;
+    private DstoreStorage storage;
+
+    @BeforeEach
+    void createStorage() throws IOException {
+        folder = Files.createTempDirectory("storage").toFile();
+        catalog = new DstoreCatalog(folder);
+        storage = new DstoreStorage(folder, catalog, true);
+    }
+
+    @AfterEach
+    void deleteFolder() {
+        deleteDir(folder);
+    }
+
+    /*********************************BEGINNING OF TESTS FOR DEDUPLICATION****************************/
+
+    @Test
+    void testSameContentIsStoredOnce() throws IOException {
+        byte[] bytes = "the same content".getBytes(StandardCharsets.UTF_8);
+        storage.write("a.txt", bytes);
+        storage.write("b.txt", bytes);
+
+        Assertions.assertEquals(1, numberBlobs());
+        String digest = DstoreStorage.digest(bytes);
+        Assertions.assertEquals(digest, storage.digestOf("a.txt"));
+        Assertions.assertEquals(2, catalog.referenceCount(digest));
+        Assertions.assertEquals(List.of("a.txt", "b.txt"), sorted(storage.namesSharingContent("a.txt")));
+        Assertions.assertArrayEquals(bytes, read("b.txt"));
+    }
+
+    @Test
+    void testBlobIsDeletedWithItsLastName() throws IOException {
+        byte[] bytes = "the same content".getBytes(StandardCharsets.UTF_8);
+        storage.write("a.txt", bytes);
+        storage.write("b.txt", bytes);
+
+        Assertions.assertTrue(storage.remove("a.txt"));
+        Assertions.assertEquals(1, numberBlobs());
+        Assertions.assertArrayEquals(bytes, read("b.txt"));
+        Assertions.assertTrue(storage.remove("b.txt"));
+        Assertions.assertEquals(0, numberBlobs());
+        Assertions.assertFalse(storage.remove("b.txt"));
+    }
+
+    @Test
+    void testLinkPointsANameAtKnownContent() throws IOException {
+        byte[] bytes = "the same content".getBytes(StandardCharsets.UTF_8);
+        storage.write("a.txt", bytes);
+        String digest = DstoreStorage.digest(bytes);
+
+        Assertions.assertTrue(storage.link("b.txt", bytes.length, digest, DstoreCatalog.checksum(bytes)));
+        Assertions.assertArrayEquals(bytes, read("b.txt"));
+        Assertions.assertEquals(1, numberBlobs());
+        //unknown content, a different size or a different checksum are stored in full instead
+        Assertions.assertFalse(storage.link("c.txt", bytes.length, DstoreStorage.digest(new byte[1]), null));
+        Assertions.assertFalse(storage.link("c.txt", bytes.length + 1, digest, null));
+        Assertions.assertFalse(storage.link("c.txt", bytes.length, digest, DstoreCatalog.checksum(bytes) + 1));
+        Assertions.assertFalse(storage.exists("c.txt"));
+    }
+
+    @Test
+    void testOverwritingANameReleasesItsOldContent() throws IOException {
+        storage.write("a.txt", "first".getBytes(StandardCharsets.UTF_8));
+        storage.write("a.txt", "second".getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(1, numberBlobs());
+        Assertions.assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), read("a.txt"));
+    }
+
+    @Test
+    void testMismatchingChecksumLeavesNoBlob() {
+        byte[] bytes = "the content".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertThrows(ChecksumMismatchException.class,
+                () -> storage.write("a.txt", new ByteArrayInputStream(bytes), bytes.length, DstoreCatalog.checksum(bytes) + 1));
+        Assertions.assertFalse(storage.exists("a.txt"));
+        File[] blobs = new File(folder, DstoreStorage.BLOBS_FOLDER_NAME).listFiles();
+        Assertions.assertTrue(blobs == null || blobs.length == 0);
+    }
+
+    @Test
+    void testRecoverKeepsSharedContent() throws IOException {
+        byte[] bytes = "the same content".getBytes(StandardCharsets.UTF_8);
+        storage.write("a.txt", bytes);
+        storage.write("b.txt", bytes);
+        storage.write("c.txt", "other content".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(new File(folder, DstoreStorage.BLOBS_FOLDER_NAME), "orphan").toPath(), bytes);
+
+        DstoreCatalog restarted = new DstoreCatalog(folder);
+        DstoreStorage restartedStorage = new DstoreStorage(folder, restarted, true);
+        restartedStorage.recover();
+        Assertions.assertEquals(List.of("a.txt", "b.txt", "c.txt"), sorted(Arrays.asList(restartedStorage.list())));
+        Assertions.assertEquals(2, numberBlobs());
+        Assertions.assertEquals(2, restarted.referenceCount(DstoreStorage.digest(bytes)));
+    }
+
+    /************************************END OF TESTS FOR DEDUPLICATION********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR RESERVED NAMES****************************/
+
+    @Test
+    void testReservedNamesAreNeverWritten() throws IOException {
+        storage.write("a.txt", "content of a".getBytes(StandardCharsets.UTF_8));
+        DstoreStorage plainStorage = new DstoreStorage(folder, catalog, false);
+        byte[] bytes = "not a journal".getBytes(StandardCharsets.UTF_8);
+        for (String name : List.of(DstoreCatalog.CATALOG_FILE_NAME, DstoreCatalog.CATALOG_FILE_NAME + ".tmp", DstoreStorage.BLOBS_FOLDER_NAME)) {
+            Assertions.assertThrows(IOException.class, () -> plainStorage.write(name, bytes));
+            Assertions.assertFalse(storage.link(name, 12, storage.digestOf("a.txt"), null));
+            Assertions.assertFalse(catalog.contains(name));
+        }
+
+        DstoreCatalog replayed = new DstoreCatalog(folder);
+        replayed.load();
+        Assertions.assertEquals(1, replayed.size());
+        Assertions.assertTrue(replayed.contains("a.txt"));
+    }
+
+    /************************************END OF TESTS FOR RESERVED NAMES********************************/
+
+
+    private byte[] read(String fileName) throws IOException {
+        try (InputStream in = storage.open(fileName)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private int numberBlobs() {
+        File[] blobs = new File(folder, DstoreStorage.BLOBS_FOLDER_NAME).listFiles();
+        return blobs == null ? 0 : blobs.length;
+    }
+
+    private List<String> sorted(List<String> names) {
+        return names.stream().sorted().toList();
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+}
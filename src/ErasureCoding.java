@@ -0,0 +1,198 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ErasureCoding {
+
+    //Fragment i of an erasure coded file is stored on a Dstore as an ordinary file named <file>#ec<i>
+    public static final String FRAGMENT_MARKER = "#ec";
+
+    /*********************************** BEGINNING OF FRAGMENT NAMES *******************************************/
+
+    public static String fragmentName(String fileName, int index){
+        return fileName + FRAGMENT_MARKER + index;
+    }
+
+    public static boolean isFragment(String name){
+        int markerIndex = name.lastIndexOf(FRAGMENT_MARKER);
+        if(markerIndex <= 0 || markerIndex + FRAGMENT_MARKER.length() == name.length())
+            return false;
+        for(int i = markerIndex + FRAGMENT_MARKER.length(); i < name.length(); i++){
+            if(!Character.isDigit(name.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    public static String logicalName(String name){
+        return isFragment(name) ? name.substring(0, name.lastIndexOf(FRAGMENT_MARKER)) : name;
+    }
+
+    public static int fragmentIndex(String name){
+        return Integer.parseInt(name.substring(name.lastIndexOf(FRAGMENT_MARKER) + FRAGMENT_MARKER.length()));
+    }
+
+    /************************************** END OF FRAGMENT NAMES *******************************************/
+
+
+    /************************************* BEGINNING OF LAYOUTS *********************************************/
+
+    //Where the fragments of an erasure coded file live, ports.get(i) is -1 when fragment i is missing
+    public static class Layout {
+        public final int dataShards;
+        public final int parityShards;
+        public final long fileSize;
+        public final Long checksum;
+        public final List<Integer> ports;
+
+        public Layout(int dataShards, int parityShards, long fileSize, Long checksum, List<Integer> ports){
+            this.dataShards = dataShards;
+            this.parityShards = parityShards;
+            this.fileSize = fileSize;
+            this.checksum = checksum;
+            this.ports = Collections.synchronizedList(new ArrayList<>(ports));
+        }
+
+        public int shardSize(){
+            return ReedSolomon.shardSize(fileSize, dataShards);
+        }
+
+        public int availableFragments(){
+            synchronized (ports) {
+                return (int) ports.stream().filter(p -> p != -1).count();
+            }
+        }
+    }
+
+    /*************************************** END OF LAYOUTS *********************************************/
+
+
+    /********************************* BEGINNING OF FRAGMENT TRANSFERS *************************************/
+
+    //Encodes the data and sends fragment i to ports[i], returns the number of fragments which have been sent
+    public static int storeFragments(String fileName, byte[] data, int dataShards, int parityShards, int[] ports, int timeout){
+        byte[][] shards = new ReedSolomon(dataShards, parityShards).encode(data);
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for(int i = 0; i < ports.length; i++){
+            int index = i;
+            tasks.add(() -> storeToDstore(fragmentName(fileName, index), shards[index], ports[index], timeout));
+        }
+        return (int) invokeAll(tasks).stream().filter(r -> r).count();
+    }
+
+    //Plain STORE of the given bytes on one Dstore, used both for fragments and for whole replicas
+    public static boolean storeToDstore(String fileName, byte[] bytes, int port, int timeout){
+        try(Socket socket = new Socket(InetAddress.getLocalHost(), port);
+            OutputStream out = socket.getOutputStream();
+            PrintWriter writer = new PrintWriter(out);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream())))
+        {
+            socket.setSoTimeout(timeout);
+            writer.println(String.format("%s %s %s %s", DstoreCommands.STORE, fileName, bytes.length, DstoreCatalog.checksum(bytes)));
+            writer.flush();
+
+            String answer = reader.readLine();
+            if(answer != null && answer.trim().equals(ClientCommands.DEDUP_ACK.toString()))
+                return true;
+            if(answer == null || !answer.trim().equals(ClientCommands.ACK.toString()))
+                return false;
+            out.write(bytes);
+            out.flush();
+            return true;
+
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    //Fetches any dataShards fragments in parallel and decodes the file
+    public static byte[] loadFragments(String fileName, int dataShards, int parityShards, long fileSize, int[] ports, int timeout) throws IOException {
+        ReedSolomon reedSolomon = new ReedSolomon(dataShards, parityShards);
+        int shardSize = ReedSolomon.shardSize(fileSize, dataShards);
+        var fetched = fetchFragments(fileName, dataShards, shardSize, ports, InetAddress.getLocalHost(), timeout);
+        reedSolomon.reconstruct(fetched.fst, fetched.snd, shardSize);
+        return reedSolomon.join(fetched.fst, fileSize);
+    }
+
+    //Returns the fragments indexed by fragment number together with their presence flags, at least dataShards are present.
+    //ports[i] == -1 means fragment i must not be fetched
+    public static Pair<byte[][],boolean[]> fetchFragments(String fileName, int dataShards, int shardSize, int[] ports, InetAddress address, int timeout) throws IOException {
+        byte[][] shards = new byte[ports.length][];
+        boolean[] present = new boolean[ports.length];
+
+        ExecutorService executorService = Executors.newFixedThreadPool(ports.length);
+        try {
+            CompletionService<Pair<Integer,byte[]>> completionService = new ExecutorCompletionService<>(executorService);
+            int submitted = 0;
+            for(int i = 0; i < ports.length; i++){
+                if(ports[i] == -1)
+                    continue;
+                int index = i;
+                completionService.submit(() -> new Pair<>(index, fetchFragment(fragmentName(fileName, index), shardSize, ports[index], address, timeout)));
+                submitted++;
+            }
+
+            int received = 0;
+            for(int i = 0; i < submitted && received < dataShards; i++){
+                try {
+                    var result = completionService.take().get();
+                    shards[result.fst] = result.snd;
+                    present[result.fst] = true;
+                    received++;
+                } catch (ExecutionException e) {
+                    //another fragment will be used instead
+                }
+            }
+
+            if(received < dataShards)
+                throw new IOException(String.format("Only %s fragments of the file %s could be fetched, %s are needed", received, fileName, dataShards));
+
+            return new Pair<>(shards, present);
+
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static byte[] fetchFragment(String fragmentName, int shardSize, int port, InetAddress address, int timeout) throws IOException {
+        try(Socket socket = new Socket(address, port);
+            PrintWriter writer = new PrintWriter(socket.getOutputStream());
+            InputStream in = socket.getInputStream())
+        {
+            socket.setSoTimeout(timeout);
+            writer.println(String.format("%s %s", DstoreCommands.LOAD_DATA, fragmentName));
+            writer.flush();
+
+            byte[] shard = in.readNBytes(shardSize);
+            if(shard.length != shardSize)
+                throw new IOException(String.format("Expected to read %s bytes of %s, read %s instead", shardSize, fragmentName, shard.length));
+            return shard;
+        }
+    }
+
+    private static List<Boolean> invokeAll(List<Callable<Boolean>> tasks){
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, tasks.size()));
+        try {
+            List<Boolean> results = new ArrayList<>();
+            for(var future : executorService.invokeAll(tasks)){
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    results.add(false);
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            return Collections.emptyList();
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /************************************ END OF FRAGMENT TRANSFERS *************************************/
+}
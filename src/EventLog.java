@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EventLog {
+
+    //Append only file of fixed size records, one per protocol message sent or received, written through memory
+    //mapped regions so recording an event is a few absolute puts and no system call.
+    //header := magic:int version:int recordSize:int reserved:int
+    //record := time:long(epoch micros) node:int peer:int direction:byte opcode:byte reserved:short requestId:int
+    //          fileId:long size:long latency:long(micros)
+    //A record whose time is 0 has not been written, the file ends at the first one
+    public static final int MAGIC = 0x4453454C;     //"DSEL"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 48;
+    public static final byte RECEIVED = 0;
+    public static final byte SENT = 1;
+    public static final long UNKNOWN = -1;
+    private static final int REGION_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_PENDING = 4096;
+
+    //Requests whose latency is measured, up to the next message sent back on the same connection with the same
+    //correlation ID. The placement messages leave the request open, its final reply is still to come
+    public static final Set<String> CONTROLLER_REQUESTS = Set.of(Protocol.STORE_TOKEN, Protocol.LOAD_TOKEN, Protocol.RELOAD_TOKEN,
+            Protocol.REMOVE_TOKEN, Protocol.LIST_TOKEN, Protocol.STORE_EC_TOKEN, Protocol.STORE_MULTIPART_TOKEN, Protocol.STORE_COMMIT_TOKEN,
+            Protocol.STORE_BATCH_TOKEN, Protocol.LOAD_BATCH_TOKEN, Protocol.REMOVE_BATCH_TOKEN);
+    public static final Set<String> DSTORE_REQUESTS = Set.of(Protocol.STORE_TOKEN, Protocol.REBALANCE_STORE_TOKEN);
+    private static final Set<String> PLACEMENTS = Set.of(Protocol.STORE_TO_TOKEN, Protocol.STORE_TO_EC_TOKEN, Protocol.STORE_TO_BATCH_TOKEN);
+
+    private final FileChannel channel;
+    private final int node;
+    private final Set<String> requests;
+    private final List<MappedByteBuffer> regions;
+    private volatile MappedByteBuffer[] mapped;  //snapshot of regions read without locking
+    private final AtomicLong end;   //offset the next record is claimed at
+    private final Map<Long,Pair<Long,Long>> pending;   //connection and correlation ID -> start in nanos, file id
+    private final Set<Integer> peerNodes;   //ports of connections whose messages are never requests
+    private volatile boolean closed;
+
+    public EventLog(String path, int node, Set<String> requests) throws IOException {
+        this.channel = new RandomAccessFile(path, "rw").getChannel();
+        this.channel.truncate(0);
+        this.node = node;
+        this.requests = requests;
+        this.regions = new ArrayList<>();
+        this.mapped = new MappedByteBuffer[0];
+        this.end = new AtomicLong(HEADER_SIZE);
+        this.pending = new ConcurrentHashMap<>();
+        this.peerNodes = ConcurrentHashMap.newKeySet();
+        ByteBuffer header = region(0);
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE);
+    }
+
+    /*********************************** BEGINNING OF RECORDING *******************************************/
+
+    public void messageReceived(Socket socket, String message) {
+        record(socket, RECEIVED, message);
+    }
+
+    public void messageSent(Socket socket, String message) {
+        record(socket, SENT, message);
+    }
+
+    //The messages received on this connection come from another node, e.g. a Dstore talking to the Controller
+    public void markPeerNode(Socket socket) {
+        peerNodes.add(socket.getPort());
+    }
+
+    private void record(Socket socket, byte direction, String message) {
+        if (closed)
+            return;
+        long now = System.nanoTime();
+
+        int start = 0;
+        int requestId = 0;
+        if (message.startsWith(Tracing.CONTEXT_PREFIX)) {
+            start = message.indexOf(' ') + 1;
+            if (start == 0)
+                return;
+        }
+        if (message.startsWith(Protocol.REQUEST_ID_PREFIX, start)) {
+            int space = message.indexOf(' ', start);
+            if (space == -1)
+                return;
+            requestId = requestId(message.substring(start + 1, space));
+            start = space + 1;
+        }
+        String command = token(message, start);
+        String fileName = token(message, start + command.length() + 1);
+        long fileId = hasFileName(command) && !fileName.isEmpty() ? fileId(fileName) : 0;
+        long size = size(command, message, start + command.length() + fileName.length() + 2);
+        long latency = UNKNOWN;
+
+        long key = ((long) socket.getLocalPort() << 48) | ((long) socket.getPort() << 32) | (requestId & 0xFFFFFFFFL);
+        if (direction == RECEIVED) {
+            if (requests.contains(command) && !peerNodes.contains(socket.getPort()) && pending.size() < MAX_PENDING)
+                pending.put(key, new Pair<>(now, fileId));
+        } else {
+            Pair<Long,Long> request = PLACEMENTS.contains(command) ? pending.get(key) : pending.remove(key);
+            if (request != null) {
+                latency = (now - request.fst) / 1000;
+                if (fileId == 0)
+                    fileId = request.snd;
+            }
+        }
+
+        write(direction, socket.getPort(), BinaryFrameCodec.opcode(command), requestId, fileId, size, latency);
+    }
+
+    private void write(byte direction, int peer, int opcode, int requestId, long fileId, long size, long latency) {
+        long offset = end.getAndAdd(RECORD_SIZE);
+        ByteBuffer region;
+        try {
+            region = region(offset);
+        } catch (IOException e) {
+            return;
+        }
+        int at = (int) (offset % REGION_SIZE);
+        Instant now = Instant.now();
+        region.putInt(at + 8, node).putInt(at + 12, peer).put(at + 16, direction).put(at + 17, (byte) opcode)
+                .putInt(at + 20, requestId).putLong(at + 24, fileId).putLong(at + 32, size).putLong(at + 40, latency);
+        region.putLong(at, now.getEpochSecond() * 1_000_000 + now.getNano() / 1000);
+    }
+
+    //Records never straddle two regions, REGION_SIZE is a multiple of RECORD_SIZE once the header is accounted for
+    private ByteBuffer region(long offset) throws IOException {
+        int index = (int) (offset / REGION_SIZE);
+        MappedByteBuffer[] snapshot = mapped;
+        if (index < snapshot.length)
+            return snapshot[index];
+        synchronized (regions) {
+            while (regions.size() <= index) {
+                regions.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) regions.size() * REGION_SIZE, REGION_SIZE));
+            }
+            mapped = regions.toArray(new MappedByteBuffer[0]);
+            return regions.get(index);
+        }
+    }
+
+    //Cuts the file to the records written
+    public void close() {
+        closed = true;
+        synchronized (regions) {
+            try {
+                for (MappedByteBuffer region : regions) {
+                    region.force();
+                }
+                regions.clear();
+                mapped = new MappedByteBuffer[0];
+                channel.truncate(Math.min(end.get(), channel.size()));
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /************************************** END OF RECORDING *******************************************/
+
+
+    /*********************************** BEGINNING OF FIELDS *******************************************/
+
+    //FNV-1a of the UTF-8 bytes of the name, 0 is kept for events without a file
+    public static long fileId(String fileName) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : fileName.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static int requestId(String token) {
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            return token.hashCode();
+        }
+    }
+
+    private static String token(String message, int start) {
+        if (start >= message.length())
+            return "";
+        int space = message.indexOf(' ', start);
+        return message.substring(start, space == -1 ? message.length() : space);
+    }
+
+    private static boolean hasFileName(String command) {
+        switch (command) {
+            case Protocol.STORE_TOKEN: case Protocol.LOAD_TOKEN: case Protocol.LOAD_DATA_TOKEN: case Protocol.RELOAD_TOKEN:
+            case Protocol.REMOVE_TOKEN: case Protocol.STORE_EC_TOKEN: case Protocol.STORE_MULTIPART_TOKEN:
+            case Protocol.STORE_COMMIT_TOKEN: case Protocol.STORE_ACK_TOKEN: case Protocol.REMOVE_ACK_TOKEN:
+            case Protocol.REBALANCE_STORE_TOKEN: case Protocol.REBUILD_TOKEN: case Protocol.REBUILD_COMPLETE_TOKEN:
+            case Protocol.CORRUPTED_TOKEN: case Protocol.ERROR_FILE_DOES_NOT_EXIST_TOKEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    //The file size carried by the message, its second argument for the commands having one (LOAD_FROM port size ...)
+    private static long size(String command, String message, int start) {
+        switch (command) {
+            case Protocol.STORE_TOKEN: case Protocol.STORE_EC_TOKEN: case Protocol.STORE_MULTIPART_TOKEN:
+            case Protocol.REBALANCE_STORE_TOKEN: case Protocol.LOAD_FROM_TOKEN:
+                break;
+            default:
+                return UNKNOWN;
+        }
+        try {
+            return Long.parseLong(token(message, start));
+        } catch (NumberFormatException e) {
+            return UNKNOWN;
+        }
+    }
+
+    /************************************** END OF FIELDS *******************************************/
+}
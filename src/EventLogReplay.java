@@ -0,0 +1,237 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class EventLogReplay {
+
+    //Offline analysis of the .events files written with -Dlogger.eventLog=true, it never touches the live system.
+    //  java EventLogReplay [--file name] [--slowest n] file.events...
+    //Prints the number of messages per command and node, and a latency histogram per reply, e.g. STORE_COMPLETE.
+    //--file rebuilds the timeline of one file across every log given, Controller and Dstores merged by time.
+    //--slowest lists the files whose events span the longest time, with their timelines
+    private static final int BUCKETS = 40;     //bucket i holds latencies below 2^i microseconds
+
+    private final Map<String,long[]> counts = new TreeMap<>();    //command -> received, sent
+    private final Map<Integer,Long> recordsPerNode = new TreeMap<>();
+    private final Map<String,List<Long>> latencies = new TreeMap<>();  //reply command -> latencies in micros
+    private final Map<Long,Operation> operations = new HashMap<>();   //file id -> its events
+    private final Long fileFilter;
+    private final boolean keepOperations;
+    private long first = Long.MAX_VALUE;
+    private long last = Long.MIN_VALUE;
+
+    private static class Event {
+        long time;
+        int node;
+        int peer;
+        byte direction;
+        int opcode;
+        int requestId;
+        long fileId;
+        long size;
+        long latency;
+    }
+
+    private static class Operation {
+        final List<Event> events = new ArrayList<>();
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+
+        long span() {
+            return last - first;
+        }
+    }
+
+    public EventLogReplay(Long fileFilter, boolean keepOperations) {
+        this.fileFilter = fileFilter;
+        this.keepOperations = keepOperations;
+    }
+
+    /*********************************** BEGINNING OF READING *******************************************/
+
+    public void read(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+            if (in.readInt() != EventLog.MAGIC)
+                throw new IOException(String.format("%s is not an event log", path));
+            int version = in.readInt();
+            int recordSize = in.readInt();
+            in.readInt();
+            if (version != EventLog.VERSION || recordSize < EventLog.RECORD_SIZE)
+                throw new IOException(String.format("%s has version %s and records of %s bytes, which are not supported", path, version, recordSize));
+
+            while (true) {
+                Event event = new Event();
+                try {
+                    event.time = in.readLong();
+                    if (event.time == 0)
+                        break;
+                    event.node = in.readInt();
+                    event.peer = in.readInt();
+                    event.direction = in.readByte();
+                    event.opcode = in.readByte() & 0xFF;
+                    in.readShort();
+                    event.requestId = in.readInt();
+                    event.fileId = in.readLong();
+                    event.size = in.readLong();
+                    event.latency = in.readLong();
+                    in.skipBytes(recordSize - EventLog.RECORD_SIZE);
+                } catch (EOFException e) {
+                    break;
+                }
+                add(event);
+            }
+        }
+    }
+
+    private void add(Event event) {
+        String command = command(event.opcode);
+        counts.computeIfAbsent(command, c -> new long[2])[event.direction == EventLog.SENT ? 1 : 0]++;
+        recordsPerNode.merge(event.node, 1L, Long::sum);
+        first = Math.min(first, event.time);
+        last = Math.max(last, event.time);
+        if (event.latency >= 0)
+            latencies.computeIfAbsent(command, c -> new ArrayList<>()).add(event.latency);
+
+        if (event.fileId != 0 && (keepOperations || (fileFilter != null && fileFilter == event.fileId))) {
+            Operation operation = operations.computeIfAbsent(event.fileId, id -> new Operation());
+            operation.events.add(event);
+            operation.first = Math.min(operation.first, event.time);
+            operation.last = Math.max(operation.last, event.time);
+        }
+    }
+
+    private static String command(int opcode) {
+        String command = BinaryFrameCodec.command(opcode);
+        return command != null ? command : "UNKNOWN";
+    }
+
+    /************************************** END OF READING *******************************************/
+
+
+    /*********************************** BEGINNING OF REPORTS *******************************************/
+
+    public void printSummary() {
+        if (first == Long.MAX_VALUE) {
+            System.out.println("No events");
+            return;
+        }
+        System.out.println(String.format("Events from %s to %s (%s ms)", Instant.ofEpochSecond(first / 1_000_000, (first % 1_000_000) * 1000),
+                Instant.ofEpochSecond(last / 1_000_000, (last % 1_000_000) * 1000), (last - first) / 1000));
+        recordsPerNode.forEach((node, records) -> System.out.println(String.format("  node %s: %s events", node, records)));
+
+        System.out.println();
+        System.out.println(String.format("%-28s %12s %12s", "command", "received", "sent"));
+        counts.forEach((command, count) -> System.out.println(String.format("%-28s %12s %12s", command, count[0], count[1])));
+
+        for (var entry : latencies.entrySet()) {
+            printHistogram(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void printHistogram(String command, List<Long> values) {
+        long[] sorted = values.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        System.out.println();
+        System.out.println(String.format("%s latency (us): count %s  p50 %s  p90 %s  p99 %s  max %s", command, sorted.length,
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), sorted[sorted.length - 1]));
+
+        long[] buckets = new long[BUCKETS];
+        for (long value : sorted) {
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value))]++;
+        }
+        long highest = Arrays.stream(buckets).max().orElse(1);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (buckets[i] != 0)
+                System.out.println(String.format("  < %10s %8s %s", 1L << i, buckets[i], "#".repeat((int) Math.max(1, buckets[i] * 50 / highest))));
+        }
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) ((long) sorted.length * percentile / 100))];
+    }
+
+    public void printTimeline(long fileId) {
+        Operation operation = operations.get(fileId);
+        if (operation == null) {
+            System.out.println("No events for this file");
+            return;
+        }
+        printTimeline(operation);
+    }
+
+    public void printSlowest(int number) {
+        operations.values().stream()
+                .sorted(Comparator.comparingLong(Operation::span).reversed())
+                .limit(number)
+                .forEach(operation -> {
+                    System.out.println();
+                    System.out.println(String.format("file %016x: %s events over %s ms", operation.events.get(0).fileId,
+                            operation.events.size(), operation.span() / 1000));
+                    printTimeline(operation);
+                });
+    }
+
+    private static void printTimeline(Operation operation) {
+        operation.events.sort(Comparator.comparingLong(event -> event.time));
+        for (Event event : operation.events) {
+            System.out.println(String.format("  +%9.3f ms  node %5s %s %5s  %-24s%s%s%s", (event.time - operation.first) / 1000.0,
+                    event.node, event.direction == EventLog.SENT ? "->" : "<-", event.peer, command(event.opcode),
+                    event.requestId != 0 ? " #" + event.requestId : "",
+                    event.size >= 0 ? " size " + event.size : "",
+                    event.latency >= 0 ? " after " + event.latency + " us" : ""));
+        }
+    }
+
+    /************************************** END OF REPORTS *******************************************/
+
+
+    public static void main(String[] args) {
+        String fileName = null;
+        int slowest = 0;
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--file"))
+                    fileName = args[++i];
+                else if (args[i].equals("--slowest"))
+                    slowest = Integer.parseInt(args[++i]);
+                else
+                    paths.add(args[i]);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            paths.clear();
+        }
+        if (paths.isEmpty()) {
+            System.out.println("Usage: java EventLogReplay [--file name] [--slowest n] file.events...");
+            return;
+        }
+
+        EventLogReplay replay = new EventLogReplay(fileName == null ? null : EventLog.fileId(fileName), slowest > 0);
+        for (String path : paths) {
+            try {
+                replay.read(path);
+            } catch (IOException e) {
+                System.out.println(String.format("ERROR => %s could not be read: %s", path, e.getMessage()));
+            }
+        }
+
+        replay.printSummary();
+        if (fileName != null) {
+            System.out.println();
+            System.out.println(String.format("Timeline of %s", fileName));
+            replay.printTimeline(EventLog.fileId(fileName));
+        }
+        if (slowest > 0)
+            replay.printSlowest(slowest);
+    }
+}
@@ -0,0 +1,179 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class EventLogTest {
+
+    private File folder;
+    private ServerSocket serverSocket;
+    private Socket client;
+    private Socket connection;
+
+    @BeforeEach
+    void createConnection() throws IOException {
+        folder = Files.createTempDirectory("events").toFile();
+        serverSocket = new ServerSocket(0);
+        client = new Socket("localhost", serverSocket.getLocalPort());
+        connection = serverSocket.accept();
+    }
+
+    @AfterEach
+    void closeConnection() throws IOException {
+        connection.close();
+        client.close();
+        serverSocket.close();
+        deleteDir(folder);
+    }
+
+    /*********************************BEGINNING OF TESTS FOR RECORDING****************************/
+
+    @Test
+    void testRecordsAreWrittenAndTheFileIsCut() throws IOException {
+        File path = new File(folder, "controller.events");
+        EventLog events = new EventLog(path.getPath(), 12345, EventLog.CONTROLLER_REQUESTS);
+        events.messageReceived(connection, "#7 STORE a.txt 12 42");
+        events.messageSent(connection, "#7 STORE_TO 12346 12347");
+        events.messageSent(connection, "#7 STORE_COMPLETE");
+        events.close();
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path.toPath()));
+        Assertions.assertEquals(EventLog.HEADER_SIZE + 3 * EventLog.RECORD_SIZE, bytes.limit());
+        Assertions.assertEquals(EventLog.MAGIC, bytes.getInt(0));
+        Assertions.assertEquals(EventLog.RECORD_SIZE, bytes.getInt(8));
+
+        int store = EventLog.HEADER_SIZE;
+        Assertions.assertEquals(12345, bytes.getInt(store + 8));
+        Assertions.assertEquals(client.getLocalPort(), bytes.getInt(store + 12));
+        Assertions.assertEquals(EventLog.RECEIVED, bytes.get(store + 16));
+        Assertions.assertEquals(7, bytes.getInt(store + 20));
+        Assertions.assertEquals(EventLog.fileId("a.txt"), bytes.getLong(store + 24));
+        Assertions.assertEquals(12, bytes.getLong(store + 32));
+        Assertions.assertEquals(EventLog.UNKNOWN, bytes.getLong(store + 40));
+
+        //the reply carries no file name, it gets the one of the request it answers
+        int complete = EventLog.HEADER_SIZE + 2 * EventLog.RECORD_SIZE;
+        Assertions.assertEquals(EventLog.SENT, bytes.get(complete + 16));
+        Assertions.assertEquals(EventLog.fileId("a.txt"), bytes.getLong(complete + 24));
+        Assertions.assertTrue(bytes.getLong(complete + 40) >= 0);
+    }
+
+    @Test
+    void testMessagesOfPeerNodesAreNotTimed() throws IOException {
+        File path = new File(folder, "controller.events");
+        EventLog events = new EventLog(path.getPath(), 12345, EventLog.CONTROLLER_REQUESTS);
+        events.markPeerNode(connection);
+        events.messageReceived(connection, "LIST");
+        events.messageSent(connection, "LIST a.txt");
+        events.close();
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path.toPath()));
+        Assertions.assertEquals(EventLog.UNKNOWN, bytes.getLong(EventLog.HEADER_SIZE + EventLog.RECORD_SIZE + 40));
+    }
+
+    @Test
+    void testRecordingAfterClosingIsIgnored() throws IOException {
+        File path = new File(folder, "dstore.events");
+        EventLog events = new EventLog(path.getPath(), 12346, EventLog.DSTORE_REQUESTS);
+        events.messageReceived(connection, "STORE a.txt 12");
+        events.close();
+        events.messageSent(connection, "ACK");
+
+        Assertions.assertEquals(EventLog.HEADER_SIZE + EventLog.RECORD_SIZE, path.length());
+    }
+
+    /************************************END OF TESTS FOR RECORDING********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR REPLAY****************************/
+
+    @Test
+    void testReplaySummarisesCommandsAndLatencies() throws IOException {
+        File path = new File(folder, "controller.events");
+        EventLog events = new EventLog(path.getPath(), 12345, EventLog.CONTROLLER_REQUESTS);
+        for (int i = 1; i <= 10; i++) {
+            events.messageReceived(connection, "#" + i + " LOAD file" + i + ".txt");
+            events.messageSent(connection, "#" + i + " LOAD_FROM 12346 " + i);
+        }
+        events.messageReceived(connection, "LIST");
+        events.messageSent(connection, "LIST file1.txt");
+        events.close();
+
+        EventLogReplay replay = new EventLogReplay(null, false);
+        replay.read(path.getPath());
+        String summary = captureTerminal(replay::printSummary);
+        Assertions.assertTrue(summary.contains("node 12345: 22 events"), summary);
+        Assertions.assertTrue(summary.matches("(?s).*\\nLOAD +10 +0\\n.*"), summary);
+        Assertions.assertTrue(summary.matches("(?s).*\\nLOAD_FROM +0 +10\\n.*"), summary);
+        Assertions.assertTrue(summary.contains("LOAD_FROM latency (us): count 10"), summary);
+        Assertions.assertTrue(summary.contains("LIST latency (us): count 1"), summary);
+    }
+
+    //the timeline of a file merges the logs of every node it has gone through
+    @Test
+    void testReplayRebuildsTheTimelineOfAFile() throws IOException {
+        File controllerPath = new File(folder, "controller.events");
+        EventLog controllerEvents = new EventLog(controllerPath.getPath(), 12345, EventLog.CONTROLLER_REQUESTS);
+        File dstorePath = new File(folder, "dstore.events");
+        EventLog dstoreEvents = new EventLog(dstorePath.getPath(), 12346, EventLog.DSTORE_REQUESTS);
+        controllerEvents.messageReceived(connection, "#3 STORE a.txt 12");
+        controllerEvents.messageSent(connection, "#3 STORE_TO 12346");
+        dstoreEvents.messageReceived(connection, "STORE a.txt 12");
+        dstoreEvents.messageSent(connection, "ACK");
+        controllerEvents.messageReceived(connection, "STORE_ACK a.txt");
+        controllerEvents.messageSent(connection, "#3 STORE_COMPLETE");
+        controllerEvents.messageReceived(connection, "#4 STORE b.txt 5");
+        controllerEvents.close();
+        dstoreEvents.close();
+
+        long fileId = EventLog.fileId("a.txt");
+        EventLogReplay replay = new EventLogReplay(fileId, false);
+        replay.read(controllerPath.getPath());
+        replay.read(dstorePath.getPath());
+        List<String> timeline = List.of(captureTerminal(() -> replay.printTimeline(fileId)).split(System.lineSeparator()));
+        Assertions.assertEquals(6, timeline.size(), timeline.toString());
+        Assertions.assertTrue(timeline.get(0).contains("node 12345") && timeline.get(0).contains("STORE") && timeline.get(0).contains("#3 size 12"));
+        Assertions.assertTrue(timeline.stream().anyMatch(line -> line.contains("node 12346") && line.contains("STORE ")));
+        Assertions.assertTrue(timeline.stream().anyMatch(line -> line.contains("STORE_COMPLETE") && line.contains(" after ")));
+        Assertions.assertEquals("No events for this file" + System.lineSeparator(), captureTerminal(() -> replay.printTimeline(EventLog.fileId("b.txt"))));
+    }
+
+    @Test
+    void testReplayRejectsOtherFiles() throws IOException {
+        File path = new File(folder, "controller.log");
+        Files.write(path.toPath(), "[12345<-51728] LIST".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertThrows(IOException.class, () -> new EventLogReplay(null, false).read(path.getPath()));
+    }
+
+    /************************************END OF TESTS FOR REPLAY********************************/
+
+
+    private String captureTerminal(Runnable action) {
+        PrintStream terminal = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            action.run();
+        } finally {
+            System.setOut(terminal);
+        }
+        return captured.toString(StandardCharsets.UTF_8);
+    }
+
+    private void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+}
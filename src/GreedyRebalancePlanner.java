@@ -0,0 +1,109 @@
+import java.util.*;
+
+// Reaches the same number of files per Dstore as the backtracking planner without recursing nor backtracking. Each
+// missing replica goes to the emptiest Dstore without the file, then the Dstores short of files take them from the
+// ones with the most files to spare, one Dstore at a time. A Dstore only gives away files it already stores, so a
+// plan can be carried out in a single round of REBALANCE messages. When no spare file is left which a Dstore misses
+// the plan stops there, a little less balanced, instead of searching for another one
+public class GreedyRebalancePlanner extends RebalancePlanner {
+
+    public GreedyRebalancePlanner(int replicationFactor) {
+        super(replicationFactor);
+    }
+
+    @Override
+    public HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan(List<Pair<String,List<Integer>>> fileAllocation, List<Pair<Integer,List<String>>> filesInDstores, Map<String,Long> fileSizes) {
+
+        int numberDstores = filesInDstores.size();
+        List<List<String>> stored = new ArrayList<>(numberDstores);  //what each Dstore stores now, only that can be sent
+        List<Set<String>> files = new ArrayList<>(numberDstores);    //what each Dstore will store after the plan
+        for (int d = 0; d < numberDstores; d++) {
+            Pair<Integer,List<String>> pair = filesInDstores.get(d);
+            List<String> dstoreFiles = numberFiles(pair.snd) == 0 ? new ArrayList<>() : new ArrayList<>(pair.snd);
+            stored.add(dstoreFiles);
+            files.add(new LinkedHashSet<>(dstoreFiles));
+        }
+
+        Plan plan = new Plan();
+
+        //missing replicas
+        for (Pair<String,List<Integer>> allocation : fileAllocation) {
+            String file = allocation.fst;
+            int sendingPort = allocation.snd.get(0);
+            for (int i = allocation.snd.size(); i < replicationFactor; i++) {
+                int receiving = -1;
+                for (int d = 0; d < numberDstores; d++) {
+                    if (!files.get(d).contains(file) && (receiving == -1 || files.get(d).size() < files.get(receiving).size()))
+                        receiving = d;
+                }
+                if (receiving == -1)
+                    break;  //every Dstore has it already
+                files.get(receiving).add(file);
+                plan.send(sendingPort, file, filesInDstores.get(receiving).fst);
+            }
+        }
+
+        //the expected number of files per Dstore, the ones with more files are given the remainder
+        int total = 0;
+        for (Set<String> dstoreFiles : files) {
+            total += dstoreFiles.size();
+        }
+        Integer[] byNumberFiles = new Integer[numberDstores];
+        for (int d = 0; d < numberDstores; d++) {
+            byNumberFiles[d] = d;
+        }
+        Arrays.sort(byNumberFiles, Comparator.comparingInt((Integer d) -> files.get(d).size()).reversed());
+        int[] spare = new int[numberDstores];  //files to give away, negative for the files missing
+        for (int i = 0; i < numberDstores; i++) {
+            int d = byNumberFiles[i];
+            int expected = total / numberDstores + (i < total % numberDstores ? 1 : 0);
+            spare[d] = files.get(d).size() - expected;
+        }
+
+        //moves, the Dstores missing most files are filled first from the ones with most files to spare
+        List<Integer> receivers = new ArrayList<>();
+        List<Integer> senders = new ArrayList<>();
+        for (int d = 0; d < numberDstores; d++) {
+            if (spare[d] < 0)
+                receivers.add(d);
+            else if (spare[d] > 0)
+                senders.add(d);
+        }
+        receivers.sort(Comparator.comparingInt(d -> spare[d]));
+        for (int receiving : receivers) {
+            senders.sort(Comparator.comparingInt((Integer d) -> spare[d]).reversed());
+            for (int sending : senders) {
+                if (spare[receiving] == 0)
+                    break;
+                Iterator<String> iter = stored.get(sending).iterator();
+                while (spare[sending] > 0 && spare[receiving] < 0 && iter.hasNext()) {
+                    String file = iter.next();
+                    if (!files.get(sending).contains(file) || files.get(receiving).contains(file))
+                        continue;  //given away to another Dstore already, or stored by this one
+                    files.get(sending).remove(file);
+                    files.get(receiving).add(file);
+                    spare[sending]--;
+                    spare[receiving]++;
+                    int sendingPort = filesInDstores.get(sending).fst;
+                    plan.send(sendingPort, file, filesInDstores.get(receiving).fst);
+                    plan.remove(sendingPort, file);
+                }
+            }
+        }
+
+        //filesInDstores is left as the Dstores will be
+        for (int d = 0; d < numberDstores; d++) {
+            List<String> dstoreFiles = filesInDstores.get(d).snd;
+            dstoreFiles.clear();
+            dstoreFiles.addAll(files.get(d));
+            if (dstoreFiles.isEmpty())
+                dstoreFiles.add("");
+        }
+        return plan.informationForDstores;
+    }
+
+    @Override
+    public String getName() {
+        return "greedy";
+    }
+}
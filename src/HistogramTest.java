@@ -0,0 +1,110 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class HistogramTest {
+
+    /*********************************BEGINNING OF TESTS FOR PERCENTILES****************************/
+
+    //values 1..n recorded once each, the exact percentile p is ceil(n * p / 100)
+    @ParameterizedTest
+    @MethodSource("argumentsForTestPercentileIsWithinTheBucketPrecision")
+    void testPercentileIsWithinTheBucketPrecision(int n, double percentile) {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= n; value++) {
+            histogram.record(value);
+        }
+        long exact = (long) Math.ceil(n * percentile / 100);
+        long reported = histogram.percentile(percentile);
+        Assertions.assertTrue(reported >= exact, reported + " below " + exact);
+        Assertions.assertTrue(reported <= exact + exact / 32, reported + " too far above " + exact);
+    }
+
+    Stream<Arguments> argumentsForTestPercentileIsWithinTheBucketPrecision(){
+        return Stream.of(
+                Arguments.of(10, 50),
+                Arguments.of(31, 90),
+                Arguments.of(1000, 50),
+                Arguments.of(1000, 90),
+                Arguments.of(1000, 99),
+                Arguments.of(100000, 99.9),
+                Arguments.of(100000, 1)
+        );
+    }
+
+    @Test
+    void testSmallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int value = 0; value < 32; value++) {
+            histogram.record(value);
+        }
+        Assertions.assertEquals(15, histogram.percentile(50));
+        Assertions.assertEquals(0, histogram.percentile(0));
+        Assertions.assertEquals(31, histogram.percentile(100));
+    }
+
+    @Test
+    void testPercentileNeverExceedsTheMaximum() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000);
+        histogram.record(1001);
+        Assertions.assertEquals(1001, histogram.percentile(100));
+        Assertions.assertEquals(1001, histogram.max());
+    }
+
+    @Test
+    void testEmptyHistogram() {
+        Histogram histogram = new Histogram();
+        Assertions.assertEquals(0, histogram.percentile(50));
+        Assertions.assertEquals(0, histogram.count());
+        Assertions.assertEquals(0, histogram.max());
+    }
+
+    @Test
+    void testValuesAreClamped() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Assertions.assertEquals(2, histogram.count());
+        Assertions.assertEquals(Histogram.MAX_VALUE, histogram.sum());
+        Assertions.assertEquals(Histogram.MAX_VALUE, histogram.max());
+        Assertions.assertEquals(0, histogram.percentile(50));
+        Assertions.assertEquals(Histogram.MAX_VALUE, histogram.percentile(100));
+    }
+
+    /************************************END OF TESTS FOR PERCENTILES********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR METRICS****************************/
+
+    @Test
+    void testRender() {
+        Metrics metrics = new Metrics();
+        metrics.counter("controller_store_total").add(3);
+        metrics.gauge("controller_files", () -> 7);
+        metrics.histogram("controller_store_us").record(10);
+        String text = metrics.render();
+        Assertions.assertTrue(text.contains("# TYPE controller_store_total counter\ncontroller_store_total 3\n"));
+        Assertions.assertTrue(text.contains("controller_files 7\n"));
+        Assertions.assertTrue(text.contains("controller_store_us{quantile=\"0.5\"} 10\n"));
+        Assertions.assertTrue(text.contains("controller_store_us{quantile=\"0.999\"} 10\n"));
+        Assertions.assertTrue(text.contains("controller_store_us_count 1\n"));
+    }
+
+    @Test
+    void testEveryInstanceHasItsOwnRegistry() {
+        Metrics first = new Metrics();
+        Metrics second = new Metrics();
+        first.counter("controller_store_total").increment();
+        Assertions.assertEquals(1, first.counter("controller_store_total").sum());
+        Assertions.assertEquals(0, second.counter("controller_store_total").sum());
+        Assertions.assertNotSame(first.histogram("controller_store_us"), second.histogram("controller_store_us"));
+    }
+
+    /************************************END OF TESTS FOR METRICS********************************/
+}
@@ -0,0 +1,482 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadGenerator {
+
+    //Starts a local cluster, a Controller and N Dstores, and drives it with a closed loop of concurrent clients for a
+    //fixed time, then prints the throughput and latency percentiles of every operation.
+    //  java LoadGenerator [--dstores 3] [--replication 2] [--concurrency 16] [--duration 30] [--keys 10000]
+    //                     [--mix store:20,load:70,list:2,remove:8] [--key-skew 0.99] [--min-size 1024]
+    //                     [--max-size 1048576] [--size-skew 1.0] [--preload 1000] [--fail 10,20] [--join 15]
+    //                     [--timeout 2000] [--rebalance-period 10000] [--binary] [--controller-process] [--dir name]
+    //Keys are picked with Zipfian popularity (--key-skew), sizes are powers of two between --min-size and --max-size
+    //whose popularity is Zipfian too, small ones first (--size-skew). --fail kills a random Dstore and --join starts a
+    //new one at the given seconds. Dstores always run in their own JVM, their loggers and metrics are per process. The
+    //Controller runs in this one unless --controller-process is given. The output of the cluster goes to the --dir
+    //folder, but for the log file of an in-process Controller, which is written in the working directory
+    private static final String[] OPERATIONS = {"STORE", "LOAD", "LIST", "REMOVE"};
+    private static final int STORE = 0, LOAD = 1, LIST = 2, REMOVE = 3;
+    private static final int ABSENT = 0, PRESENT = 1, BUSY = 2;
+    private static final int KEY_ATTEMPTS = 8;
+    private static final int REPORT_INTERVAL = 5;
+
+    //configuration
+    private int numberDstores = 3;
+    private int replicationFactor = 2;
+    private int concurrency = 16;
+    private int duration = 30;
+    private int numberKeys = 10000;
+    private int[] mix = {20, 70, 2, 8};
+    private double keySkew = 0.99;
+    private int minSize = 1024;
+    private int maxSize = 1024 * 1024;
+    private double sizeSkew = 1.0;
+    private int preload = -1;
+    private List<Integer> failures = new ArrayList<>();
+    private List<Integer> joins = new ArrayList<>();
+    private int timeout = 2000;
+    private int rebalancePeriod = 10000;
+    private boolean binaryProtocol;
+    private boolean controllerProcess;
+    private File directory = new File("loadgen_" + System.currentTimeMillis());
+
+    //run
+    private final PrintStream out = System.out;
+    private final Map<Integer,Process> dstores = new ConcurrentSkipListMap<>();
+    private Process controller;
+    private int controllerPort;
+    private AsyncClient client;
+    private AtomicIntegerArray keys;
+    private Zipf keyPopularity;
+    private Zipf sizePopularity;
+    private byte[][] contents;
+    private final Histogram[] latencies = new Histogram[OPERATIONS.length];
+    private final LongAdder[] errors = new LongAdder[OPERATIONS.length];
+    private final LongAdder skipped = new LongAdder();
+
+    //Zipf(s) over the ranks 0..n-1, rank 0 being the most likely, drawn by binary search of the precomputed CDF
+    private static class Zipf {
+        private final double[] cdf;
+
+        Zipf(int n, double s) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, s);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        int next(Random random) {
+            int rank = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(cdf.length - 1, rank >= 0 ? rank : -rank - 1);
+        }
+    }
+
+    /*********************************** BEGINNING OF CLUSTER *******************************************/
+
+    private void startCluster() throws IOException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException(String.format("%s cannot be created", directory));
+        controllerPort = freePort();
+        if (controllerProcess) {
+            controller = start("controller.out", "Controller", String.valueOf(controllerPort), String.valueOf(replicationFactor),
+                    String.valueOf(timeout), String.valueOf(rebalancePeriod));
+        } else {
+            //the Controller logs every message on the terminal, which would bury the report
+            PrintStream controllerOutput = new PrintStream(new FileOutputStream(new File(directory, "controller.out")), true);
+            System.setOut(controllerOutput);
+            System.setErr(controllerOutput);
+            Controller inProcess = new Controller(controllerPort, replicationFactor, timeout, rebalancePeriod);
+            Thread thread = new Thread(inProcess::start, "controller");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Thread.sleep(500);
+        for (int i = 0; i < numberDstores; i++) {
+            startDstore();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stopCluster));
+    }
+
+    private void startDstore() throws IOException {
+        int port = freePort();
+        File folder = new File(directory, "dstore_" + port);
+        folder.mkdirs();
+        List<String> properties = binaryProtocol ? List.of("-Ddstore.binaryProtocol=true") : List.of();
+        dstores.put(port, start("dstore_" + port + ".out", properties, "Dstore", String.valueOf(port),
+                String.valueOf(controllerPort), String.valueOf(timeout), folder.getAbsolutePath()));
+        out.println(String.format("Dstore %s started", port));
+    }
+
+    //A crash rather than a shutdown, the Dstore gets no chance to say goodbye
+    private void failDstore() {
+        if (dstores.size() <= replicationFactor) {
+            out.println(String.format("No Dstore failed, only %s are left", dstores.size()));
+            return;
+        }
+        List<Integer> ports = new ArrayList<>(dstores.keySet());
+        int port = ports.get(ThreadLocalRandom.current().nextInt(ports.size()));
+        dstores.remove(port).destroyForcibly();
+        out.println(String.format("Dstore %s killed", port));
+    }
+
+    private Process start(String output, String mainClass, String... args) throws IOException {
+        return start(output, List.of(), mainClass, args);
+    }
+
+    private Process start(String output, List<String> properties, String mainClass, String... args) throws IOException {
+        //the children run in the --dir folder, a relative class path would not resolve there
+        List<String> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        List<String> command = new ArrayList<>(List.of(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", String.join(File.pathSeparator, classPath)));
+        command.addAll(properties);
+        command.add(mainClass);
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command)
+                .directory(directory)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(directory, output))
+                .start();
+    }
+
+    private void stopCluster() {
+        dstores.values().forEach(Process::destroyForcibly);
+        if (controller != null)
+            controller.destroyForcibly();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    //Until LIST stops answering that there are not enough Dstores
+    private void awaitCluster() throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (true) {
+            try {
+                if (client == null) {
+                    client = new AsyncClient(controllerPort, timeout, AsyncClient.DEFAULT_CONNECTIONS, concurrency, binaryProtocol);
+                    client.connect();
+                }
+                client.list().get();
+                return;
+            } catch (IOException | ExecutionException e) {
+                if (System.currentTimeMillis() > deadline)
+                    throw new IOException("The cluster has not come up", e);
+                if (e instanceof IOException)
+                    client = null;
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    /************************************** END OF CLUSTER *******************************************/
+
+
+    /*********************************** BEGINNING OF WORKLOAD *******************************************/
+
+    private void prepareWorkload() {
+        keys = new AtomicIntegerArray(numberKeys);
+        keyPopularity = new Zipf(numberKeys, keySkew);
+        int levels = 1;
+        while (((long) minSize << levels) <= maxSize) {
+            levels++;
+        }
+        sizePopularity = new Zipf(levels, sizeSkew);
+        contents = new byte[levels][];
+        Random random = new Random(42);
+        for (int i = 0; i < levels; i++) {
+            contents[i] = new byte[minSize << i];
+            random.nextBytes(contents[i]);
+        }
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencies[i] = new Histogram();
+            errors[i] = new LongAdder();
+        }
+    }
+
+    //The most popular keys are stored before the clock starts, so that LOAD and REMOVE have something to work on
+    private void preload() throws InterruptedException {
+        int number = Math.min(numberKeys, preload >= 0 ? preload : numberKeys / 10);
+        List<CompletableFuture<Void>> stores = new ArrayList<>();
+        for (int key = 0; key < number; key++) {
+            int stored = key;
+            keys.set(key, BUSY);
+            stores.add(client.store(fileName(key), contents[sizePopularity.next(ThreadLocalRandom.current())])
+                    .whenComplete((done, e) -> keys.set(stored, e == null ? PRESENT : ABSENT)));
+            if (stores.size() == concurrency) {
+                awaitAll(stores);
+            }
+        }
+        awaitAll(stores);
+        out.println(String.format("%s files preloaded", number));
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> futures) throws InterruptedException {
+        for (var future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                //left absent
+            }
+        }
+        futures.clear();
+    }
+
+    private void drive(long deadline) {
+        Random random = ThreadLocalRandom.current();
+        int total = Arrays.stream(mix).sum();
+        while (System.nanoTime() < deadline) {
+            int draw = random.nextInt(total);
+            int operation = 0;
+            while (draw >= mix[operation]) {
+                draw -= mix[operation++];
+            }
+            switch (operation) {
+                case STORE:
+                    store(random);
+                    break;
+                case LOAD:
+                    load(random);
+                    break;
+                case LIST:
+                    list();
+                    break;
+                case REMOVE:
+                    remove(random);
+                    break;
+            }
+        }
+    }
+
+    private void store(Random random) {
+        int key = claim(random, ABSENT, BUSY);
+        if (key == -1)
+            return;
+        byte[] data = contents[sizePopularity.next(random)];
+        boolean stored = run(STORE, () -> client.store(fileName(key), data).get());
+        keys.set(key, stored ? PRESENT : ABSENT);
+    }
+
+    //Loads do not claim their key, a concurrent remove makes them fail as it would for a real client
+    private void load(Random random) {
+        int key = find(random, PRESENT);
+        if (key != -1)
+            run(LOAD, () -> client.load(fileName(key)).get());
+    }
+
+    private void list() {
+        run(LIST, () -> client.list().get());
+    }
+
+    private void remove(Random random) {
+        int key = claim(random, PRESENT, BUSY);
+        if (key == -1)
+            return;
+        boolean removed = run(REMOVE, () -> client.remove(fileName(key)).get());
+        keys.set(key, removed ? ABSENT : PRESENT);
+    }
+
+    private int claim(Random random, int from, int to) {
+        for (int i = 0; i < KEY_ATTEMPTS; i++) {
+            int key = keyPopularity.next(random);
+            if (keys.compareAndSet(key, from, to))
+                return key;
+        }
+        skipped.increment();
+        return -1;
+    }
+
+    private int find(Random random, int state) {
+        for (int i = 0; i < KEY_ATTEMPTS; i++) {
+            int key = keyPopularity.next(random);
+            if (keys.get(key) == state)
+                return key;
+        }
+        skipped.increment();
+        return -1;
+    }
+
+    private interface Request {
+        void run() throws Exception;
+    }
+
+    private boolean run(int operation, Request request) {
+        long start = System.nanoTime();
+        try {
+            request.run();
+            latencies[operation].recordSince(start);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            errors[operation].increment();
+        }
+        return false;
+    }
+
+    private static String fileName(int key) {
+        return "key" + key;
+    }
+
+    /************************************** END OF WORKLOAD *******************************************/
+
+
+    /*********************************** BEGINNING OF RUN *******************************************/
+
+    public void run() throws IOException, InterruptedException {
+        prepareWorkload();
+        startCluster();
+        awaitCluster();
+        preload();
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(duration);
+        List<Thread> drivers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Thread driver = new Thread(() -> drive(deadline), "load-" + i);
+            driver.start();
+            drivers.add(driver);
+        }
+
+        Map<Integer,List<Runnable>> events = new HashMap<>();
+        failures.forEach(second -> events.computeIfAbsent(second, s -> new ArrayList<>()).add(this::failDstore));
+        joins.forEach(second -> events.computeIfAbsent(second, s -> new ArrayList<>()).add(() -> {
+            try {
+                startDstore();
+            } catch (IOException e) {
+                out.println("ERROR => the Dstore could not be started: " + e.getMessage());
+            }
+        }));
+        long previous = 0;
+        for (int second = 1; second <= duration; second++) {
+            Thread.sleep(Math.max(0, TimeUnit.NANOSECONDS.toMillis(start + TimeUnit.SECONDS.toNanos(second) - System.nanoTime())));
+            events.getOrDefault(second, List.of()).forEach(Runnable::run);
+            if (second % REPORT_INTERVAL == 0) {
+                long completed = completed();
+                out.println(String.format("[%4ss] %8.1f ops/s, %s Dstores", second, (completed - previous) / (double) REPORT_INTERVAL, dstores.size()));
+                previous = completed;
+            }
+        }
+        for (Thread driver : drivers) {
+            driver.join();
+        }
+        report(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / 1000.0);
+        client.close();
+    }
+
+    private long completed() {
+        long completed = 0;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            completed += latencies[i].count() + errors[i].sum();
+        }
+        return completed;
+    }
+
+    private void report(double seconds) {
+        out.println();
+        out.println(String.format("%s Dstores, replication %s, %s clients, %s keys, %.1f s", numberDstores, replicationFactor, concurrency, numberKeys, seconds));
+        out.println(String.format("%-8s %10s %8s %10s %10s %10s %10s %10s", "", "ok", "errors", "ops/s", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            Histogram histogram = latencies[i];
+            out.println(String.format("%-8s %10s %8s %10.1f %10s %10s %10s %10s", OPERATIONS[i], histogram.count(), errors[i].sum(),
+                    histogram.count() / seconds, histogram.percentile(50), histogram.percentile(99), histogram.percentile(99.9), histogram.max()));
+        }
+        out.println(String.format("%-8s %10.1f ops/s, %s operations skipped for want of a key in the right state", "total",
+                completed() / seconds, skipped.sum()));
+    }
+
+    /************************************** END OF RUN *******************************************/
+
+
+    public static void main(String[] args) {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--dstores": generator.numberDstores = Integer.parseInt(args[++i]); break;
+                    case "--replication": generator.replicationFactor = Integer.parseInt(args[++i]); break;
+                    case "--concurrency": generator.concurrency = Integer.parseInt(args[++i]); break;
+                    case "--duration": generator.duration = Integer.parseInt(args[++i]); break;
+                    case "--keys": generator.numberKeys = Integer.parseInt(args[++i]); break;
+                    case "--mix": generator.mix = parseMix(args[++i]); break;
+                    case "--key-skew": generator.keySkew = Double.parseDouble(args[++i]); break;
+                    case "--min-size": generator.minSize = Integer.parseInt(args[++i]); break;
+                    case "--max-size": generator.maxSize = Integer.parseInt(args[++i]); break;
+                    case "--size-skew": generator.sizeSkew = Double.parseDouble(args[++i]); break;
+                    case "--preload": generator.preload = Integer.parseInt(args[++i]); break;
+                    case "--fail": generator.failures = parseSeconds(args[++i]); break;
+                    case "--join": generator.joins = parseSeconds(args[++i]); break;
+                    case "--timeout": generator.timeout = Integer.parseInt(args[++i]); break;
+                    case "--rebalance-period": generator.rebalancePeriod = Integer.parseInt(args[++i]); break;
+                    case "--binary": generator.binaryProtocol = true; break;
+                    case "--controller-process": generator.controllerProcess = true; break;
+                    case "--dir": generator.directory = new File(args[++i]); break;
+                    default: throw new IllegalArgumentException(args[i]);
+                }
+            }
+            if (generator.minSize <= 0 || generator.maxSize < generator.minSize || generator.numberDstores < generator.replicationFactor)
+                throw new IllegalArgumentException();
+        } catch (RuntimeException e) {
+            System.out.println("Usage: java LoadGenerator [--dstores n] [--replication r] [--concurrency c] [--duration s] [--keys k]\n"
+                    + "    [--mix store:w,load:w,list:w,remove:w] [--key-skew s] [--min-size b] [--max-size b] [--size-skew s]\n"
+                    + "    [--preload n] [--fail s1,s2...] [--join s1,s2...] [--timeout ms] [--rebalance-period ms] [--binary]\n"
+                    + "    [--controller-process] [--dir name]");
+            return;
+        }
+
+        try {
+            generator.run();
+        } catch (IOException | InterruptedException e) {
+            generator.out.println("ERROR => the load could not be generated: " + e.getMessage());
+        }
+        System.exit(0);
+    }
+
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[OPERATIONS.length];
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.split(":");
+            int operation = Arrays.asList(OPERATIONS).indexOf(weight[0].toUpperCase());
+            if (operation == -1 || weight.length != 2)
+                throw new IllegalArgumentException(entry);
+            weights[operation] = Integer.parseInt(weight[1]);
+        }
+        if (Arrays.stream(weights).sum() <= 0)
+            throw new IllegalArgumentException(mix);
+        return weights;
+    }
+
+    private static List<Integer> parseSeconds(String seconds) {
+        List<Integer> list = new ArrayList<>();
+        for (String second : seconds.split(",")) {
+            list.add(Integer.parseInt(second));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LocationCache {
+
+    //LOAD_FROM locations are leased for a while, so a client can load a file it has recently loaded straight from the
+    //Dstore. The Controller attaches its placement epoch to LOAD_FROM when the client asks for it with +epoch, and moves
+    //it forward whenever files are removed or moved; a location learnt in an older epoch than the latest one seen is
+    //stale. A failed LOAD_DATA also drops it
+    public static final long DEFAULT_LEASE = 30_000;
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Map<String,Location> locations;
+    private volatile long lease;
+    private volatile long latestEpoch;
+
+    public LocationCache() {
+        this(DEFAULT_LEASE, DEFAULT_CAPACITY);
+    }
+
+    public LocationCache(long lease, int capacity) {
+        this.lease = lease;
+        //least recently used locations are dropped first
+        this.locations = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Location> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    public static class Location {
+        public final int port;
+        public final long fileSize;
+        public final Long checksum;
+        public final long epoch;
+        private final long expiry;
+
+        private Location(int port, long fileSize, Long checksum, long epoch, long expiry) {
+            this.port = port;
+            this.fileSize = fileSize;
+            this.checksum = checksum;
+            this.epoch = epoch;
+            this.expiry = expiry;
+        }
+    }
+
+    /*********************************** BEGINNING OF LEASES *******************************************/
+
+    //null if the location is unknown, its lease has expired or the placement has changed since it was learnt
+    public Location get(String fileName) {
+        Location location = locations.get(fileName);
+        if (location == null)
+            return null;
+        if (location.expiry <= System.currentTimeMillis() || location.epoch < latestEpoch) {
+            locations.remove(fileName, location);
+            return null;
+        }
+        return location;
+    }
+
+    public void put(String fileName, int port, long fileSize, Long checksum, long epoch) {
+        observe(epoch);
+        if (lease > 0 && epoch >= latestEpoch)
+            locations.put(fileName, new Location(port, fileSize, checksum, epoch, System.currentTimeMillis() + lease));
+    }
+
+    public synchronized void observe(long epoch) {
+        if (epoch > latestEpoch)
+            latestEpoch = epoch;
+    }
+
+    public void invalidate(String fileName) {
+        locations.remove(fileName);
+    }
+
+    public void clear() {
+        locations.clear();
+    }
+
+    /************************************** END OF LEASES *******************************************/
+
+
+    /*********************************** BEGINNING OF EPOCH TOKENS *******************************************/
+
+    //The epoch carried by the last token of a LOAD_FROM message, null if the Controller has not sent one
+    public static Long epoch(String[] tokens) {
+        if (!hasEpoch(tokens))
+            return null;
+        try {
+            return Long.parseLong(tokens[tokens.length - 1].substring(Protocol.EPOCH_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    //The message without its epoch token, as Controllers without location leases send it
+    public static String[] withoutEpoch(String[] tokens) {
+        return hasEpoch(tokens) ? Arrays.copyOf(tokens, tokens.length - 1) : tokens;
+    }
+
+    private static boolean hasEpoch(String[] tokens) {
+        return tokens.length > 1 && tokens[tokens.length - 1].startsWith(Protocol.EPOCH_PREFIX);
+    }
+
+    /************************************** END OF EPOCH TOKENS *******************************************/
+
+    public long getLease() {
+        return lease;
+    }
+
+    //0 disables the cache
+    public void setLease(long lease) {
+        this.lease = lease;
+        if (lease <= 0)
+            clear();
+    }
+}
@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class LocationCacheTest {
+
+    /*********************************BEGINNING OF TESTS FOR LEASES****************************/
+
+    @Test
+    void testLocationIsLeased() {
+        LocationCache cache = new LocationCache();
+        cache.put("hello.txt", 12346, 100, 7L, 1);
+        LocationCache.Location location = cache.get("hello.txt");
+        Assertions.assertEquals(12346, location.port);
+        Assertions.assertEquals(100, location.fileSize);
+        Assertions.assertEquals(7L, location.checksum);
+        Assertions.assertEquals(1, location.epoch);
+        Assertions.assertNull(cache.get("other.txt"));
+    }
+
+    @Test
+    void testNewerEpochInvalidatesOlderLocations() {
+        LocationCache cache = new LocationCache();
+        cache.put("a.txt", 12346, 100, null, 1);
+        cache.put("b.txt", 12347, 100, null, 1);
+        //a LOAD_FROM for another file shows the placement has changed
+        cache.put("c.txt", 12348, 100, null, 2);
+        Assertions.assertNull(cache.get("a.txt"));
+        Assertions.assertNull(cache.get("b.txt"));
+        Assertions.assertNotNull(cache.get("c.txt"));
+
+        cache.observe(3);
+        Assertions.assertNull(cache.get("c.txt"));
+    }
+
+    @Test
+    void testLocationFromAnOlderEpochIsNotCached() {
+        LocationCache cache = new LocationCache();
+        cache.observe(5);
+        cache.put("a.txt", 12346, 100, null, 4);
+        Assertions.assertNull(cache.get("a.txt"));
+        //an older epoch never moves the latest one back
+        cache.put("b.txt", 12346, 100, null, 5);
+        cache.observe(1);
+        Assertions.assertNotNull(cache.get("b.txt"));
+    }
+
+    @Test
+    void testLeaseExpires() throws InterruptedException {
+        LocationCache cache = new LocationCache(50, LocationCache.DEFAULT_CAPACITY);
+        cache.put("a.txt", 12346, 100, null, 1);
+        Assertions.assertNotNull(cache.get("a.txt"));
+        Thread.sleep(100);
+        Assertions.assertNull(cache.get("a.txt"));
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsDropped() {
+        LocationCache cache = new LocationCache(LocationCache.DEFAULT_LEASE, 2);
+        cache.put("a.txt", 12346, 100, null, 1);
+        cache.put("b.txt", 12346, 100, null, 1);
+        cache.get("a.txt");
+        cache.put("c.txt", 12346, 100, null, 1);
+        Assertions.assertNotNull(cache.get("a.txt"));
+        Assertions.assertNull(cache.get("b.txt"));
+        Assertions.assertNotNull(cache.get("c.txt"));
+    }
+
+    @Test
+    void testInvalidateAndDisable() {
+        LocationCache cache = new LocationCache();
+        cache.put("a.txt", 12346, 100, null, 1);
+        cache.put("b.txt", 12346, 100, null, 1);
+        cache.invalidate("a.txt");
+        Assertions.assertNull(cache.get("a.txt"));
+        Assertions.assertNotNull(cache.get("b.txt"));
+
+        cache.setLease(0);
+        Assertions.assertNull(cache.get("b.txt"));
+        cache.put("b.txt", 12346, 100, null, 1);
+        Assertions.assertNull(cache.get("b.txt"));
+    }
+
+    /************************************END OF TESTS FOR LEASES********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR EPOCH TOKENS****************************/
+
+    @Test
+    void testEpochTokens() {
+        String[] tokens = {Protocol.LOAD_FROM_TOKEN, "12346", "100", Protocol.EPOCH_PREFIX + "42"};
+        Assertions.assertEquals(42L, LocationCache.epoch(tokens));
+        Assertions.assertArrayEquals(new String[]{Protocol.LOAD_FROM_TOKEN, "12346", "100"}, LocationCache.withoutEpoch(tokens));
+
+        //Controllers without location leases send no epoch
+        String[] plain = {Protocol.LOAD_FROM_TOKEN, "12346", "100"};
+        Assertions.assertNull(LocationCache.epoch(plain));
+        Assertions.assertSame(plain, LocationCache.withoutEpoch(plain));
+        Assertions.assertNull(LocationCache.epoch(new String[]{Protocol.LOAD_FROM_TOKEN, "12346", Protocol.EPOCH_PREFIX + "x"}));
+        Assertions.assertNull(LocationCache.epoch(new String[]{Protocol.EPOCH_PREFIX + "1"}));
+    }
+
+    /************************************END OF TESTS FOR EPOCH TOKENS********************************/
+}
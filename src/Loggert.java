@@ -1,6 +1,9 @@
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.Socket;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class Loggert {
 
@@ -10,13 +13,61 @@ public abstract class Loggert {
 		ON_FILE_ONLY, // log to file only
 		ON_FILE_AND_TERMINAL // log to both System.out and file
 	}
+
+	public enum Level {
+		EVENT, // anything logged through log(String)
+		MESSAGE // every protocol message sent or received
+	}
 	
+	private static final long CLOSE_WAIT = 1000;
+
 	protected final LoggingType loggingType;
 	protected PrintStream ps;
+	private volatile AsyncLogWriter asyncWriter; // null logs on the calling thread
+	private final int[] sampling = {1, 1}; // level -> one line logged every sampling[level]
+	private final AtomicLong[] sampled = {new AtomicLong(), new AtomicLong()};
+	private volatile int maxMessageLength; // 0 never truncates
+	private volatile EventLog eventLog; // null records no binary events
 	
 	protected Loggert(LoggingType loggingType) {
 		this.loggingType = loggingType;
 	}
+
+	// With asynchronous logging the lines are written in batches by a background thread, a full buffer drops lines
+	// instead of blocking the caller
+	public synchronized void setAsynchronous(boolean asynchronous) {
+		if (asynchronous && asyncWriter == null && loggingType != LoggingType.NO_LOG) {
+			AsyncLogWriter writer = new AsyncLogWriter(getLogFileSuffix() + "-logger", this::writeLines);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> writer.close(CLOSE_WAIT)));
+			asyncWriter = writer;
+		} else if (!asynchronous && asyncWriter != null) {
+			asyncWriter.close(CLOSE_WAIT);
+			asyncWriter = null;
+		}
+	}
+
+	public void setSampling(Level level, int everyNth) {
+		sampling[level.ordinal()] = Math.max(1, everyNth);
+	}
+
+	// Every message sent or received is also recorded in a binary event log next to the text log, whatever the
+	// sampling. requests are the commands whose latency is measured on this node
+	public synchronized void enableEventLog(int node, Set<String> requests) {
+		if (eventLog != null)
+			return;
+		try {
+			EventLog events = new EventLog(getLogFileSuffix() + "_" + System.currentTimeMillis() + ".events", node, requests);
+			Runtime.getRuntime().addShutdownHook(new Thread(events::close));
+			eventLog = events;
+		} catch (IOException e) {
+			System.out.println("ERROR => the event log could not be created: " + e.getMessage());
+		}
+	}
+
+	// Longer messages are cut, with the number of characters left out appended
+	public void setMaxMessageLength(int maxMessageLength) {
+		this.maxMessageLength = Math.max(0, maxMessageLength);
+	}
 	
 	protected abstract String getLogFileSuffix();
 	
@@ -35,18 +86,68 @@ public abstract class Loggert {
 	}
 	
 	protected void log(String message) {
-		if (logToFile())
-			try { getPrintStream().println(message); } catch(Exception e) { e.printStackTrace(); }
-		if (logToTerminal())
-			System.out.println(message);
+		if (isSampled(Level.EVENT))
+			write(truncate(message));
 	}
 	
 	public void messageSent(Socket socket, String message) {
-		log("[" + socket.getLocalPort() + "->" + socket.getPort() + "] " + message);
+		EventLog events = eventLog;
+		if (events != null)
+			events.messageSent(socket, message);
+		if (isSampled(Level.MESSAGE))
+			write("[" + socket.getLocalPort() + "->" + socket.getPort() + "] " + truncate(message));
 	}
 	
 	public void messageReceived(Socket socket, String message) {
-		log("[" + socket.getLocalPort() + "<-" + socket.getPort() + "] " + message);
+		EventLog events = eventLog;
+		if (events != null)
+			events.messageReceived(socket, message);
+		if (isSampled(Level.MESSAGE))
+			write("[" + socket.getLocalPort() + "<-" + socket.getPort() + "] " + truncate(message));
+	}
+
+	// The messages received on this connection come from another node, they are not requests to time
+	protected void markPeerNode(Socket socket) {
+		EventLog events = eventLog;
+		if (events != null)
+			events.markPeerNode(socket);
+	}
+
+	private boolean isSampled(Level level) {
+		int everyNth = sampling[level.ordinal()];
+		return loggingType != LoggingType.NO_LOG && (everyNth == 1 || sampled[level.ordinal()].getAndIncrement() % everyNth == 0);
+	}
+
+	private String truncate(String message) {
+		int max = maxMessageLength;
+		if (max == 0 || message.length() <= max)
+			return message;
+		return message.substring(0, max) + "... (" + (message.length() - max) + " more characters)";
+	}
+
+	private void write(String line) {
+		AsyncLogWriter writer = asyncWriter;
+		if (writer != null) {
+			writer.offer(line);
+			return;
+		}
+		if (logToFile())
+			try { getPrintStream().println(line); } catch(Exception e) { e.printStackTrace(); }
+		if (logToTerminal())
+			System.out.println(line);
+	}
+
+	// Called by the background writer only, each destination is written and flushed once per batch
+	private void writeLines(List<String> lines) {
+		StringBuilder batch = new StringBuilder();
+		for (String line : lines)
+			batch.append(line).append(System.lineSeparator());
+		if (logToFile())
+			try { getPrintStream().print(batch); getPrintStream().flush(); } catch(Exception e) { e.printStackTrace(); }
+		if (logToTerminal()) {
+			System.out.print(batch);
+			System.out.flush();
+		}
 	}
 	
 }
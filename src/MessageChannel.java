@@ -0,0 +1,100 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class MessageChannel {
+
+    //A connection starts in the text protocol. The side opening it may send the single line BINARY, after which
+    //both directions carry BinaryFrameCodec frames. Raw file bytes are exchanged the same way in both modes
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final PrintWriter writer;
+    private final CommandTokenizer tokenizer = new CommandTokenizer();
+    private volatile boolean binary;
+    private boolean error;
+
+    public MessageChannel(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = socket.getOutputStream();
+        this.writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /*********************************** BEGINNING OF READ PROCEDURES *******************************************/
+
+    //Returns the tokens of the next message, tokens[0] being the command, or null when the other end has closed
+    public String[] read() throws IOException {
+        while (true) {
+            if (binary)
+                return BinaryFrameCodec.readFrame(in);
+
+            String[] splitted = tokenizer.readTokens(in);
+            if (splitted == null)
+                return null;
+            if (splitted.length == 1 && splitted[0].equals(Protocol.BINARY_TOKEN)) {
+                binary = true;
+                continue;
+            }
+            return splitted;
+        }
+    }
+
+    /************************************** END OF READ PROCEDURES *******************************************/
+
+
+    /*********************************** BEGINNING OF WRITE PROCEDURES *******************************************/
+
+    //Returns the message as a text sentence, for logging
+    public synchronized String send(String... tokens) {
+        String sentence = String.join(" ", tokens);
+        if (binary) {
+            try {
+                BinaryFrameCodec.writeFrame(out, tokens);
+            } catch (IOException e) {
+                error = true;
+            }
+        } else {
+            writer.println(sentence);
+            writer.flush();
+        }
+        return sentence;
+    }
+
+    public String send(List<String> tokens) {
+        return send(tokens.toArray(new String[0]));
+    }
+
+    //Switches this connection to binary frames, only the side which has opened the connection can do it
+    public synchronized void startBinary() {
+        if (!binary) {
+            writer.println(Protocol.BINARY_TOKEN);
+            writer.flush();
+            binary = true;
+        }
+    }
+
+    /************************************** END OF WRITE PROCEDURES *******************************************/
+
+    public boolean checkError() {
+        return error || writer.checkError();
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+    //The raw bytes following a message, read through the same buffer the messages are read from
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    public OutputStream getOutputStream() {
+        return out;
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+public class Metrics {
+
+    //Counters, gauges and latency histograms of a Controller or a Dstore, read through JMX or scraped in plain text
+    //from a local port. Every instance has its own registry, so several of them in one JVM do not overwrite each
+    //other's metrics. Names follow the Prometheus conventions: counters end in _total, histograms are in microseconds
+    //and end in _us. A metric is created the first time it is asked for
+    private static final double[] QUANTILES = {50, 90, 99, 99.9};
+    private static final int SCRAPE_TIMEOUT = 1000;
+
+    private final Map<String,LongAdder> counters;
+    private final Map<String,LongSupplier> gauges;
+    private final Map<String,Histogram> histograms;
+
+    public Metrics() {
+        this.counters = new ConcurrentSkipListMap<>();
+        this.gauges = new ConcurrentSkipListMap<>();
+        this.histograms = new ConcurrentSkipListMap<>();
+        gauge("jvm_threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    /*********************************** BEGINNING OF REGISTRY *******************************************/
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    //A gauge registered again under the same name replaces the previous one
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    //Counts a handled command and records how long its handler took, under <prefix>_<command>
+    public void handled(String prefix, Object command, long startNanos) {
+        String name = prefix + "_" + command.toString().toLowerCase();
+        counter(name + "_total").increment();
+        histogram(name + "_us").recordSince(startNanos);
+    }
+
+    /************************************** END OF REGISTRY *******************************************/
+
+
+    /*********************************** BEGINNING OF EXPOSITION *******************************************/
+
+    //Prometheus text format
+    public String render() {
+        StringBuilder text = new StringBuilder();
+        counters.forEach((name, counter) -> {
+            text.append("# TYPE ").append(name).append(" counter\n");
+            text.append(name).append(' ').append(counter.sum()).append('\n');
+        });
+        gauges.forEach((name, gauge) -> {
+            text.append("# TYPE ").append(name).append(" gauge\n");
+            text.append(name).append(' ').append(gauge.getAsLong()).append('\n');
+        });
+        histograms.forEach((name, histogram) -> {
+            text.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                text.append(name).append("{quantile=\"").append(BigDecimal.valueOf(quantile).movePointLeft(2).stripTrailingZeros().toPlainString()).append("\"} ").append(histogram.percentile(quantile)).append('\n');
+            }
+            text.append(name).append("_max ").append(histogram.max()).append('\n');
+            text.append(name).append("_sum ").append(histogram.sum()).append('\n');
+            text.append(name).append("_count ").append(histogram.count()).append('\n');
+        });
+        return text.toString();
+    }
+
+    //Serves render() to every connection on the loopback interface, whatever it asks for. Scrapes are rare and
+    //cheap, they are answered one at a time on the listening thread
+    public void startEndpoint(int port) {
+        Thread endpoint = new Thread(() -> {
+            try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+                while (true) {
+                    try (Socket socket = serverSocket.accept()) {
+                        socket.setSoTimeout(SCRAPE_TIMEOUT);
+                        skipRequest(socket.getInputStream());
+                        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                        OutputStream out = socket.getOutputStream();
+                        out.write(("HTTP/1.0 200 OK\r\nContent-Type: text/plain; version=0.0.4\r\nContent-Length: " + body.length + "\r\n\r\n")
+                                .getBytes(StandardCharsets.US_ASCII));
+                        out.write(body);
+                        out.flush();
+                    } catch (IOException e) {
+                        //the scraper went away, the next one is served anyway
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println(String.format("ERROR => the metrics endpoint could not listen on port %s", port));
+            }
+        }, "metrics-endpoint");
+        endpoint.setDaemon(true);
+        endpoint.start();
+    }
+
+    //Reads up to the blank line ending the HTTP request headers, a plain connection sending nothing is fine too
+    private static void skipRequest(InputStream in) throws IOException {
+        int newLines = 0;
+        int b;
+        try {
+            while (newLines < 2 && (b = in.read()) != -1) {
+                if (b == '\n')
+                    newLines++;
+                else if (b != '\r')
+                    newLines = 0;
+            }
+        } catch (SocketTimeoutException e) {
+            //nothing was asked, the metrics are sent anyway
+        }
+    }
+
+    public void registerMBean(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName(name));
+        } catch (JMException e) {
+            System.out.println(String.format("ERROR => the metrics could not be registered in JMX as %s", name));
+        }
+    }
+
+    //Every counter and gauge is an attribute, every histogram gives <name>_count, _max and _p50 to _p99.9
+    private class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongAdder counter = counters.get(attribute);
+            if (counter != null)
+                return counter.sum();
+            LongSupplier gauge = gauges.get(attribute);
+            if (gauge != null)
+                return gauge.getAsLong();
+            int separator = attribute.lastIndexOf('_');
+            Histogram histogram = separator == -1 ? null : histograms.get(attribute.substring(0, separator));
+            if (histogram != null) {
+                String statistic = attribute.substring(separator + 1);
+                if (statistic.equals("count"))
+                    return histogram.count();
+                if (statistic.equals("max"))
+                    return histogram.max();
+                for (double quantile : QUANTILES) {
+                    if (statistic.equals("p" + quantileName(quantile)))
+                        return histogram.percentile(quantile);
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("The metrics are read only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    //left out, as the JMX contract asks
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<String> names = new ArrayList<>(counters.keySet());
+            names.addAll(gauges.keySet());
+            for (String histogram : histograms.keySet()) {
+                names.add(histogram + "_count");
+                names.add(histogram + "_max");
+                for (double quantile : QUANTILES) {
+                    names.add(histogram + "_p" + quantileName(quantile));
+                }
+            }
+            MBeanAttributeInfo[] attributes = names.stream()
+                    .map(name -> new MBeanAttributeInfo(name, "long", name, true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(Metrics.class.getName(), "Counters, gauges and latency histograms", attributes, null, null, null);
+        }
+    }
+
+    private static String quantileName(double quantile) {
+        return quantile == Math.rint(quantile) ? String.valueOf((long) quantile) : String.valueOf(quantile);
+    }
+
+    /************************************** END OF EXPOSITION *******************************************/
+}
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+public class Multipart {
+
+    //Part i of a multipart upload is stored, replicated and rebalanced as an ordinary file named <file>#part<i>.
+    //The logical file only appears once STORE_COMMIT has found every part stored
+    public static final String PART_MARKER = "#part";
+    //An upload is refused beyond this number of parts, the Controller keeps an index entry for every part
+    public static final int MAX_PARTS = 10000;
+    //Milliseconds an upload may stay idle before the Controller removes its parts and frees its name
+    public static final long DEFAULT_UPLOAD_EXPIRY = 3600000;
+
+    /*********************************** BEGINNING OF PART NAMES *******************************************/
+
+    public static String partName(String fileName, int index){
+        return fileName + PART_MARKER + index;
+    }
+
+    public static boolean isPart(String name){
+        int markerIndex = name.lastIndexOf(PART_MARKER);
+        if(markerIndex <= 0 || markerIndex + PART_MARKER.length() == name.length())
+            return false;
+        for(int i = markerIndex + PART_MARKER.length(); i < name.length(); i++){
+            if(!Character.isDigit(name.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    public static String logicalName(String name){
+        return isPart(name) ? name.substring(0, name.lastIndexOf(PART_MARKER)) : name;
+    }
+
+    public static int partIndex(String name){
+        return Integer.parseInt(name.substring(name.lastIndexOf(PART_MARKER) + PART_MARKER.length()));
+    }
+
+    //The number of parts of partSize bytes a file of fileSize bytes is split into, at least one
+    public static long numberParts(long fileSize, long partSize){
+        return Math.max(1, fileSize / partSize + (fileSize % partSize == 0 ? 0 : 1));
+    }
+
+    /************************************** END OF PART NAMES *******************************************/
+
+
+    /************************************* BEGINNING OF MANIFESTS *********************************************/
+
+    //Size of the whole file, size of every part but the last one and checksum of the whole file, if the client gave it
+    public static class Manifest {
+        public final long fileSize;
+        public final long partSize;
+        public final Long checksum;
+
+        public Manifest(long fileSize, long partSize, Long checksum){
+            if(partSize <= 0 || fileSize < 0 || Multipart.numberParts(fileSize, partSize) > MAX_PARTS)
+                throw new IllegalArgumentException("An upload of " + fileSize + " bytes in parts of " + partSize + " bytes is not allowed");
+            this.fileSize = fileSize;
+            this.partSize = partSize;
+            this.checksum = checksum;
+        }
+
+        public int numberParts(){
+            return (int) Multipart.numberParts(fileSize, partSize);
+        }
+
+        public long partLength(int index){
+            return Math.min(partSize, fileSize - index * partSize);
+        }
+
+        public boolean sameUpload(long fileSize, long partSize, Long checksum){
+            return this.fileSize == fileSize && this.partSize == partSize && (checksum == null || checksum.equals(this.checksum));
+        }
+
+        //The indices of the parts for which stored is false
+        public List<Integer> missingParts(String fileName, Predicate<String> stored){
+            List<Integer> missing = new ArrayList<>();
+            for(int i = 0; i < numberParts(); i++){
+                if(!stored.test(partName(fileName, i)))
+                    missing.add(i);
+            }
+            return missing;
+        }
+    }
+
+    /*************************************** END OF MANIFESTS *********************************************/
+}
@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class MultipartTest {
+
+    /*********************************BEGINNING OF TESTS FOR PART NAMES****************************/
+
+    @Test
+    void testPartNames() {
+        String part = Multipart.partName("hello.txt", 12);
+        Assertions.assertTrue(Multipart.isPart(part));
+        Assertions.assertEquals("hello.txt", Multipart.logicalName(part));
+        Assertions.assertEquals(12, Multipart.partIndex(part));
+        //a file name may contain the marker itself
+        String nested = Multipart.partName("a#part1", 0);
+        Assertions.assertEquals("a#part1", Multipart.logicalName(nested));
+        Assertions.assertEquals(0, Multipart.partIndex(nested));
+    }
+
+    @ParameterizedTest
+    @MethodSource("argumentsForTestNotPartNames")
+    void testNotPartNames(String name) {
+        Assertions.assertFalse(Multipart.isPart(name));
+        Assertions.assertEquals(name, Multipart.logicalName(name));
+    }
+
+    Stream<Arguments> argumentsForTestNotPartNames(){
+        return Stream.of(
+                Arguments.of("hello.txt"),
+                Arguments.of("hello.txt#part"),
+                Arguments.of("hello.txt#partx"),
+                Arguments.of("hello.txt#part1a"),
+                Arguments.of("#part3")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("argumentsForTestNumberParts")
+    void testNumberParts(long fileSize, long partSize, long numberParts) {
+        Assertions.assertEquals(numberParts, Multipart.numberParts(fileSize, partSize));
+    }
+
+    Stream<Arguments> argumentsForTestNumberParts(){
+        return Stream.of(
+                Arguments.of(0, 10, 1),
+                Arguments.of(1, 10, 1),
+                Arguments.of(10, 10, 1),
+                Arguments.of(11, 10, 2),
+                Arguments.of(100, 10, 10),
+                Arguments.of(Long.MAX_VALUE, 1, Long.MAX_VALUE)
+        );
+    }
+
+    /************************************END OF TESTS FOR PART NAMES********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR MANIFESTS****************************/
+
+    @Test
+    void testManifestParts() {
+        Multipart.Manifest manifest = new Multipart.Manifest(25, 10, 7L);
+        Assertions.assertEquals(3, manifest.numberParts());
+        Assertions.assertEquals(10, manifest.partLength(0));
+        Assertions.assertEquals(10, manifest.partLength(1));
+        Assertions.assertEquals(5, manifest.partLength(2));
+        Assertions.assertEquals(0, new Multipart.Manifest(0, 10, null).partLength(0));
+    }
+
+    @Test
+    void testManifestBounds() {
+        Assertions.assertEquals(Multipart.MAX_PARTS, new Multipart.Manifest(Multipart.MAX_PARTS, 1, null).numberParts());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Multipart.Manifest(Multipart.MAX_PARTS + 1, 1, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Multipart.Manifest(Long.MAX_VALUE, 1, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Multipart.Manifest(10, 0, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Multipart.Manifest(-1, 10, null));
+    }
+
+    @Test
+    void testSameUpload() {
+        Multipart.Manifest manifest = new Multipart.Manifest(25, 10, 7L);
+        Assertions.assertTrue(manifest.sameUpload(25, 10, 7L));
+        //a client resuming an upload need not repeat the checksum
+        Assertions.assertTrue(manifest.sameUpload(25, 10, null));
+        Assertions.assertFalse(manifest.sameUpload(25, 10, 8L));
+        Assertions.assertFalse(manifest.sameUpload(26, 10, 7L));
+        Assertions.assertFalse(manifest.sameUpload(25, 5, 7L));
+        Assertions.assertFalse(new Multipart.Manifest(25, 10, null).sameUpload(25, 10, 7L));
+    }
+
+    @Test
+    void testMissingParts() {
+        Multipart.Manifest manifest = new Multipart.Manifest(45, 10, null);
+        Set<String> stored = Set.of(Multipart.partName("hello.txt", 0), Multipart.partName("hello.txt", 3), Multipart.partName("other.txt", 1));
+        Assertions.assertEquals(List.of(1, 2, 4), manifest.missingParts("hello.txt", stored::contains));
+        Assertions.assertEquals(List.of(), manifest.missingParts("hello.txt", name -> true));
+    }
+
+    /************************************END OF TESTS FOR MANIFESTS********************************/
+}
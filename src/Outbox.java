@@ -0,0 +1,121 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class Outbox {
+
+    //Every message for one peer goes through a queue drained by a single writer thread, so they keep their order.
+    //Consecutive messages whose commands coalesce to the same batched command, e.g. REMOVE and REMOVE_BATCH, are
+    //sent as one message with all their arguments. A batch is flushed when it holds maxBatch arguments, when another
+    //kind of message is next, or lingerMillis after its first message if the queue has run dry
+    public static final int DEFAULT_MAX_BATCH = 1000;
+    public static final long DEFAULT_LINGER = 2;
+
+    private static final String[] CLOSED = new String[0];
+
+    private final Consumer<String[]> writer;
+    private final Map<String,String> coalescing;    //command -> batched command
+    private final BlockingQueue<String[]> queue;
+    private final int maxBatch;
+    private final long lingerMillis;
+
+    public Outbox(String name, Consumer<String[]> writer, Map<String,String> coalescing) {
+        this(name, writer, coalescing, DEFAULT_MAX_BATCH, DEFAULT_LINGER);
+    }
+
+    public Outbox(String name, Consumer<String[]> writer, Map<String,String> coalescing, int maxBatch, long lingerMillis) {
+        this.writer = writer;
+        this.coalescing = coalescing;
+        this.queue = new LinkedBlockingQueue<>();
+        this.maxBatch = maxBatch;
+        this.lingerMillis = lingerMillis;
+        Thread thread = new Thread(this::writeMessages, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*********************************** BEGINNING OF QUEUEING *******************************************/
+
+    public void send(String... tokens) {
+        queue.add(tokens);
+    }
+
+    public void send(List<String> tokens) {
+        send(tokens.toArray(new String[0]));
+    }
+
+    //Messages waiting for the writer thread
+    public int size() {
+        return queue.size();
+    }
+
+    //The messages already queued are still written
+    public void close() {
+        queue.add(CLOSED);
+    }
+
+    /************************************** END OF QUEUEING *******************************************/
+
+
+    /*********************************** BEGINNING OF WRITING *******************************************/
+
+    private void writeMessages() {
+        try {
+            String[] next = queue.take();
+            while (next != CLOSED) {
+                String batched = coalescing.get(next[0]);
+                if (batched == null) {
+                    writer.accept(next);
+                    next = queue.take();
+                } else {
+                    next = writeBatch(batched, next);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Returns the first message which has not been merged into the batch
+    private String[] writeBatch(String batched, String[] first) throws InterruptedException {
+        List<String[]> messages = new ArrayList<>();
+        messages.add(first);
+        int numberArguments = first.length - 1;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        String[] next = null;
+
+        while (numberArguments < maxBatch) {
+            next = queue.poll();
+            if (next == null) {
+                long wait = deadline - System.nanoTime();
+                next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                if (next == null)
+                    break;
+            }
+            if (next == CLOSED || !batched.equals(coalescing.get(next[0])))
+                break;
+            messages.add(next);
+            numberArguments += next.length - 1;
+            next = null;
+        }
+
+        if (messages.size() == 1) {
+            writer.accept(first);
+        } else {
+            List<String> message = new ArrayList<>(List.of(batched));
+            for (String[] tokens : messages) {
+                for (int i = 1; i < tokens.length; i++) {
+                    message.add(tokens[i]);
+                }
+            }
+            writer.accept(message.toArray(new String[0]));
+        }
+        return next != null ? next : queue.take();
+    }
+
+    /************************************** END OF WRITING *******************************************/
+}
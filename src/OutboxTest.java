@@ -0,0 +1,90 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class OutboxTest {
+
+    private static final Map<String,String> COALESCING = Map.of("REMOVE", "REMOVE_BATCH", "REMOVE_BATCH", "REMOVE_BATCH");
+
+    private BlockingQueue<List<String>> written;
+
+    @BeforeEach
+    void createWritten() {
+        written = new LinkedBlockingQueue<>();
+    }
+
+    /*********************************BEGINNING OF TESTS FOR COALESCING****************************/
+
+    @Test
+    void testConsecutiveRemovesAreCoalesced() throws InterruptedException {
+        Outbox outbox = outbox(Outbox.DEFAULT_MAX_BATCH, 1000);
+        outbox.send("REMOVE", "a.txt");
+        outbox.send("REMOVE", "b.txt");
+        outbox.send("REMOVE_BATCH", "c.txt", "d.txt");
+        outbox.close();
+
+        Assertions.assertEquals(List.of("REMOVE_BATCH", "a.txt", "b.txt", "c.txt", "d.txt"), next());
+        Assertions.assertNull(written.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testOtherMessagesKeepTheirOrder() throws InterruptedException {
+        Outbox outbox = outbox(Outbox.DEFAULT_MAX_BATCH, 1000);
+        outbox.send("REMOVE", "a.txt");
+        outbox.send("REMOVE", "b.txt");
+        outbox.send("LIST");
+        outbox.send("LIST");
+        outbox.send("REMOVE", "c.txt");
+        outbox.close();
+
+        Assertions.assertEquals(List.of("REMOVE_BATCH", "a.txt", "b.txt"), next());
+        Assertions.assertEquals(List.of("LIST"), next());
+        Assertions.assertEquals(List.of("LIST"), next());
+        //a batch of one message is sent unchanged
+        Assertions.assertEquals(List.of("REMOVE", "c.txt"), next());
+    }
+
+    @Test
+    void testBatchesAreFlushedWhenFull() throws InterruptedException {
+        Outbox outbox = outbox(2, 1000);
+        outbox.send("REMOVE", "a.txt");
+        outbox.send("REMOVE", "b.txt");
+        outbox.send("REMOVE", "c.txt");
+        outbox.close();
+
+        Assertions.assertEquals(List.of("REMOVE_BATCH", "a.txt", "b.txt"), next());
+        Assertions.assertEquals(List.of("REMOVE", "c.txt"), next());
+    }
+
+    @Test
+    void testBatchesAreFlushedAfterLingering() throws InterruptedException {
+        Outbox outbox = outbox(Outbox.DEFAULT_MAX_BATCH, 50);
+        outbox.send("REMOVE", "a.txt");
+        outbox.send("REMOVE", "b.txt");
+
+        //the queue has run dry, the batch goes without waiting for more removes or for the outbox to close
+        Assertions.assertEquals(List.of("REMOVE_BATCH", "a.txt", "b.txt"), next());
+        outbox.send("REMOVE", "c.txt");
+        Assertions.assertEquals(List.of("REMOVE", "c.txt"), next());
+        outbox.close();
+    }
+
+    /************************************END OF TESTS FOR COALESCING********************************/
+
+
+    private Outbox outbox(int maxBatch, long lingerMillis) {
+        return new Outbox("outbox-test", tokens -> written.add(List.of(tokens)), COALESCING, maxBatch, lingerMillis);
+    }
+
+    private List<String> next() throws InterruptedException {
+        List<String> message = written.poll(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(message);
+        return message;
+    }
+}
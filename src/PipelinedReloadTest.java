@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class PipelinedReloadTest {
+
+    private static final List<Integer> DSTORE_PORTS = List.of(21001, 21002, 21003);
+
+    private Controller controller;
+    private int controllerPort;
+    private final List<Socket> dstores = new ArrayList<>();
+
+    @BeforeAll
+    void startController() throws IOException, InterruptedException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            controllerPort = serverSocket.getLocalPort();
+        }
+        controller = new Controller(controllerPort, 2, 300000000, 300000000);
+        controller.setCanRebalance(false);
+        controller.start();
+        Thread.sleep(1000);
+
+        //the Dstores only have to join, the Controller never contacts them to answer LOAD and RELOAD
+        for (int port : DSTORE_PORTS) {
+            Socket dstore = new Socket("localhost", controllerPort);
+            send(dstore, "JOIN " + port);
+            dstores.add(dstore);
+        }
+        Thread.sleep(1000);
+        Assertions.assertEquals(DSTORE_PORTS.size(), controller.getDstorePorts().size());
+    }
+
+    @AfterAll
+    void closeDstores() throws IOException {
+        for (Socket dstore : dstores) {
+            dstore.close();
+        }
+    }
+
+    /*********************************BEGINNING OF TESTS FOR PIPELINED RELOADS****************************/
+
+    //the Dstores still to be tried are kept per file, interleaved loads of different files do not consume each other's
+    @Test
+    void testReloadsOfPipelinedLoadsAreKeptPerFile() throws IOException {
+        allocate("a.txt", 5, 21001, 21002, 21003);
+        allocate("b.txt", 7, 21003, 21001);
+
+        try (Socket client = new Socket("localhost", controllerPort)) {
+            BufferedReader reader = reader(client);
+            send(client, "#1 LOAD a.txt");
+            send(client, "#2 LOAD b.txt");
+            Set<String> replies = new HashSet<>(List.of(reader.readLine(), reader.readLine()));
+            Assertions.assertEquals(Set.of("#1 LOAD_FROM 21001 5", "#2 LOAD_FROM 21003 7"), replies);
+
+            Assertions.assertEquals("#3 LOAD_FROM 21002 5", request(client, reader, "#3 RELOAD a.txt"));
+            Assertions.assertEquals("#4 LOAD_FROM 21001 7", request(client, reader, "#4 RELOAD b.txt"));
+            Assertions.assertEquals("#5 LOAD_FROM 21003 5", request(client, reader, "#5 RELOAD a.txt"));
+            Assertions.assertEquals("#6 ERROR_LOAD", request(client, reader, "#6 RELOAD b.txt"));
+            Assertions.assertEquals("#7 ERROR_LOAD", request(client, reader, "#7 RELOAD a.txt"));
+        }
+    }
+
+    @Test
+    void testReloadsAreKeptPerConnection() throws IOException {
+        allocate("c.txt", 5, 21002, 21003);
+
+        try (Socket first = new Socket("localhost", controllerPort); Socket second = new Socket("localhost", controllerPort)) {
+            BufferedReader firstReader = reader(first);
+            BufferedReader secondReader = reader(second);
+            Assertions.assertEquals("LOAD_FROM 21002 5", request(first, firstReader, "LOAD c.txt"));
+            Assertions.assertEquals("LOAD_FROM 21002 5", request(second, secondReader, "LOAD c.txt"));
+            Assertions.assertEquals("LOAD_FROM 21003 5", request(first, firstReader, "RELOAD c.txt"));
+            Assertions.assertEquals("LOAD_FROM 21003 5", request(second, secondReader, "RELOAD c.txt"));
+        }
+    }
+
+    @Test
+    void testReloadOfRemovedFile() throws IOException {
+        allocate("d.txt", 5, 21001, 21002);
+
+        try (Socket client = new Socket("localhost", controllerPort)) {
+            BufferedReader reader = reader(client);
+            Assertions.assertEquals("#1 LOAD_FROM 21001 5", request(client, reader, "#1 LOAD d.txt"));
+            controller.getFileAllocation().remove("d.txt");
+            controller.getFileSizes().remove("d.txt");
+            Assertions.assertEquals("#2 ERROR_FILE_DOES_NOT_EXIST", request(client, reader, "#2 RELOAD d.txt"));
+        }
+    }
+
+    /************************************END OF TESTS FOR PIPELINED RELOADS********************************/
+
+
+    private void allocate(String fileName, long fileSize, Integer... ports) {
+        controller.getFileAllocation().put(fileName, new ArrayList<>(List.of(ports)));
+        controller.getFileSizes().put(fileName, fileSize);
+    }
+
+    private String request(Socket socket, BufferedReader reader, String line) throws IOException {
+        send(socket, line);
+        return reader.readLine();
+    }
+
+    private BufferedReader reader(Socket socket) throws IOException {
+        socket.setSoTimeout(5000);
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private void send(Socket socket, String line) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
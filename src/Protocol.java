@@ -8,6 +8,12 @@ public class Protocol {
 	public final static String LOAD_DATA_TOKEN = "LOAD_DATA";
 	public final static String RELOAD_TOKEN = "RELOAD";
 	public final static String REMOVE_TOKEN = "REMOVE"; // also from Controller
+	public final static String STORE_EC_TOKEN = "STORE_EC";
+	public final static String STORE_MULTIPART_TOKEN = "STORE_MULTIPART";
+	public final static String STORE_COMMIT_TOKEN = "STORE_COMMIT";
+	public final static String STORE_BATCH_TOKEN = "STORE_BATCH";
+	public final static String LOAD_BATCH_TOKEN = "LOAD_BATCH";
+	public final static String REMOVE_BATCH_TOKEN = "REMOVE_BATCH"; // also from Controller
 	
 	// messages from Controller
 	public final static String STORE_TO_TOKEN = "STORE_TO";
@@ -19,6 +25,14 @@ public class Protocol {
 	public final static String ERROR_FILE_ALREADY_EXISTS_TOKEN = "ERROR_FILE_ALREADY_EXISTS";
 	public final static String ERROR_NOT_ENOUGH_DSTORES_TOKEN = "ERROR_NOT_ENOUGH_DSTORES";
 	public final static String ERROR_LOAD_TOKEN = "ERROR_LOAD";
+	public final static String STORE_TO_EC_TOKEN = "STORE_TO_EC";
+	public final static String LOAD_FROM_EC_TOKEN = "LOAD_FROM_EC";
+	public final static String REBUILD_TOKEN = "REBUILD";
+	public final static String MULTIPART_PARTS_TOKEN = "MULTIPART_PARTS";
+	public final static String LOAD_FROM_PARTS_TOKEN = "LOAD_FROM_PARTS";
+	public final static String STORE_TO_BATCH_TOKEN = "STORE_TO_BATCH";
+	public final static String LOAD_FROM_BATCH_TOKEN = "LOAD_FROM_BATCH";
+	public final static String BATCH_COMPLETE_TOKEN = "BATCH_COMPLETE";
 	
 	// messages from Dstores
 	public final static String ACK_TOKEN = "ACK";
@@ -27,4 +41,26 @@ public class Protocol {
 	public final static String JOIN_TOKEN = "JOIN";
 	public final static String REBALANCE_STORE_TOKEN = "REBALANCE_STORE";
 	public final static String REBALANCE_COMPLETE_TOKEN = "REBALANCE_COMPLETE";
+	public final static String CORRUPTED_TOKEN = "CORRUPTED";
+	public final static String REBUILD_COMPLETE_TOKEN = "REBUILD_COMPLETE";
+	public final static String DEDUP_ACK_TOKEN = "DEDUP_ACK";
+	public final static String DATA_TOKEN = "DATA";
+
+	// first line of a connection switching it to binary frames
+	public final static String BINARY_TOKEN = "BINARY";
+
+	// optional first token of a client command, e.g. "#42 LOAD file"; every reply to it starts with the same token
+	public final static String REQUEST_ID_PREFIX = "#";
+
+	// optional last token of LOAD, RELOAD and LOAD_BATCH naming the optional LOAD_FROM fields the client understands,
+	// e.g. "LOAD file +checksum,epoch"; the clients which do not send it get the plain "LOAD_FROM port filesize"
+	public final static String CAPABILITIES_PREFIX = "+";
+	public final static String CHECKSUM_CAPABILITY = "checksum";
+	public final static String EPOCH_CAPABILITY = "epoch";
+
+	// last token of LOAD_FROM and LOAD_FROM_BATCH for the clients asking for it, e.g. "LOAD_FROM 12346 1024 @1700000000000"; the placement epoch of the location
+	public final static String EPOCH_PREFIX = "@";
+
+	// checksum field of the batch messages when the checksum is not known
+	public final static String NO_CHECKSUM = "-";
 }
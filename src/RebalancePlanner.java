@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Works out the REBALANCE messages which bring the Dstores back to every file being stored replicationFactor times
+// and evenly spread. It has no sockets nor state of the Controller, the same snapshots can be planned offline, see
+// RebalanceSimulator
+public abstract class RebalancePlanner {
+
+    protected final int replicationFactor;
+
+    protected RebalancePlanner(int replicationFactor) {
+        this.replicationFactor = replicationFactor;
+    }
+
+    public static RebalancePlanner create(String strategy, int replicationFactor) {
+        return create(strategy, replicationFactor, SizeAwareRebalancePlanner.DEFAULT_TOLERANCE);
+    }
+
+    // tolerance is only used by the planners balancing bytes, see SizeAwareRebalancePlanner
+    public static RebalancePlanner create(String strategy, int replicationFactor, double tolerance) {
+        switch (strategy) {
+            case "backtracking": return new BacktrackingRebalancePlanner(replicationFactor);
+            case "greedy": return new GreedyRebalancePlanner(replicationFactor);
+            case "size-aware": return new SizeAwareRebalancePlanner(replicationFactor, tolerance);
+            case "ring": return new RingRebalancePlanner(replicationFactor, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+            default: throw new IllegalArgumentException("Unknown rebalance planner " + strategy);
+        }
+    }
+
+    // filesInDstores are the LIST answers, port -> its files, a Dstore with no files answers with a single empty name.
+    // fileAllocation is the same snapshot reverted, see revert. filesInDstores is left as the Dstores will be once the
+    // plan is carried out. The plan maps the port of a Dstore to the files it sends, each with the ports receiving it,
+    // and to the files it removes afterwards. fileSizes are the sizes the Controller knows of, file -> bytes
+    public abstract HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan(List<Pair<String,List<Integer>>> fileAllocation, List<Pair<Integer,List<String>>> filesInDstores, Map<String,Long> fileSizes);
+
+    public abstract String getName();
+
+    public static List<Pair<String,List<Integer>>> revert(List<Pair<Integer,List<String>>> filesInDstores){
+
+        List<Pair<String,List<Integer>>> fileAllocation = new ArrayList<>();
+        HashMap<String,List<Integer>> fileAllocationMap = new HashMap<>();
+
+        for(Pair<Integer,List<String>> pair : filesInDstores) {
+
+            int port = pair.fst;
+            List<String> files = pair.snd;
+
+            if(files.size()==1 && files.get(0).equals(""))
+                continue;
+
+            for (String file : files) {
+                if (fileAllocationMap.containsKey(file)) {
+                    fileAllocationMap.get(file).add(port);
+                } else {
+                    fileAllocationMap.put(file, new ArrayList<>(){{add(port);}});
+                }
+            }
+
+        }
+
+        for(String file : fileAllocationMap.keySet()){
+            fileAllocation.add(new Pair<>(file,fileAllocationMap.get(file)));
+        }
+        return fileAllocation;
+    }
+
+    protected static int numberFiles(List<String> files) {
+        return files.size() == 1 && files.get(0).equals("") ? 0 : files.size();
+    }
+
+    // The REBALANCE messages being written, with the entry of every file sent kept at hand
+    protected static class Plan {
+        protected final HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> informationForDstores = new HashMap<>();
+        private final Map<Integer,Map<String,List<Integer>>> receivingPorts = new HashMap<>();
+
+        private Pair<List<Pair<String,List<Integer>>>,List<String>> of(int port) {
+            return informationForDstores.computeIfAbsent(port, p -> new Pair<>(new ArrayList<>(), new ArrayList<>()));
+        }
+
+        protected void send(int sendingPort, String file, int receivingPort) {
+            Map<String,List<Integer>> sent = receivingPorts.computeIfAbsent(sendingPort, p -> new HashMap<>());
+            List<Integer> ports = sent.get(file);
+            if (ports == null) {
+                ports = new ArrayList<>();
+                sent.put(file, ports);
+                of(sendingPort).fst.add(new Pair<>(file, ports));
+            }
+            ports.add(receivingPort);
+        }
+
+        protected void remove(int sendingPort, String file) {
+            of(sendingPort).snd.add(file);
+        }
+    }
+}
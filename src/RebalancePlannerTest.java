@@ -0,0 +1,235 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class RebalancePlannerTest {
+
+    /*********************************BEGINNING OF TESTS FOR BALANCING FILES****************************/
+
+    //after the plan every file is stored replicationFactor times and the Dstores store the same number of files, give or take one
+    @ParameterizedTest
+    @MethodSource("argumentsForTestPlanBalancesFiles")
+    void testPlanBalancesFiles(String strategy, int replicationFactor, List<Pair<Integer,List<String>>> filesInDstores) {
+        Map<Integer,Set<String>> after = plan(RebalancePlanner.create(strategy, replicationFactor), filesInDstores, Map.of());
+
+        for (Map.Entry<String,Integer> replicas : replicas(after).entrySet()) {
+            Assertions.assertEquals(Math.min(replicationFactor, after.size()), replicas.getValue(), replicas.getKey());
+        }
+        IntSummaryStatistics numberFiles = after.values().stream().mapToInt(Set::size).summaryStatistics();
+        Assertions.assertTrue(numberFiles.getMax() - numberFiles.getMin() <= 1, after.toString());
+    }
+
+    Stream<Arguments> argumentsForTestPlanBalancesFiles(){
+        List<Arguments> arguments = new ArrayList<>();
+        for (String strategy : List.of("greedy", "backtracking")) {
+            //a Dstore joins
+            arguments.add(Arguments.of(strategy, 2, List.of(
+                    dstore(1, "a", "b", "c", "d"), dstore(2, "a", "b", "e", "f"), dstore(3, "c", "d", "e", "f"), dstore(4))));
+            //a Dstore has failed, its files are one replica short
+            arguments.add(Arguments.of(strategy, 3, List.of(
+                    dstore(1, "a", "b", "c"), dstore(2, "a", "b", "d"), dstore(3, "c", "d"))));
+            //every file on the first Dstores
+            arguments.add(Arguments.of(strategy, 2, List.of(
+                    dstore(1, "a", "b", "c", "d", "e"), dstore(2, "a", "b", "c", "d", "e"), dstore(3), dstore(4), dstore(5))));
+            //fewer replicas than Dstores
+            arguments.add(Arguments.of(strategy, 2, List.of(
+                    dstore(1, "a"), dstore(2), dstore(3), dstore(4))));
+        }
+        return arguments.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("argumentsForTestBalancedClusterPlansNothing")
+    void testBalancedClusterPlansNothing(String strategy) {
+        List<Pair<Integer,List<String>>> filesInDstores = List.of(dstore(1, "a", "b"), dstore(2, "b", "c"), dstore(3, "c", "a"));
+        HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan =
+                RebalancePlanner.create(strategy, 2).plan(RebalancePlanner.revert(filesInDstores), filesInDstores, Map.of());
+        Assertions.assertTrue(plan.values().stream().allMatch(p -> p.fst.isEmpty() && p.snd.isEmpty()), plan.toString());
+    }
+
+    Stream<Arguments> argumentsForTestBalancedClusterPlansNothing(){
+        return Stream.of(
+                Arguments.of("greedy"),
+                Arguments.of("backtracking")
+        );
+    }
+
+    @Test
+    void testUnknownStrategy() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RebalancePlanner.create("random", 3));
+        Assertions.assertEquals("greedy", RebalancePlanner.create("greedy", 3).getName());
+        Assertions.assertEquals("backtracking", RebalancePlanner.create("backtracking", 3).getName());
+    }
+
+    @Test
+    void testRevert() {
+        List<Pair<String,List<Integer>>> fileAllocation = RebalancePlanner.revert(List.of(dstore(1, "a", "b"), dstore(2, "b"), dstore(3)));
+        Map<String,List<Integer>> allocation = new HashMap<>();
+        for (Pair<String,List<Integer>> pair : fileAllocation) {
+            allocation.put(pair.fst, pair.snd);
+        }
+        Assertions.assertEquals(Map.of("a", List.of(1), "b", List.of(1, 2)), allocation);
+    }
+
+    /************************************END OF TESTS FOR BALANCING FILES********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR BALANCING BYTES****************************/
+
+    @Test
+    void testSizeAwareBalancesBytes() {
+        Map<String,Long> fileSizes = new HashMap<>();
+        for (String file : List.of("a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l")) {
+            fileSizes.put(file, 100L);
+        }
+        Map<Integer,Set<String>> after = plan(RebalancePlanner.create("size-aware", 1), List.of(
+                dstore(1, "a", "b", "c", "d", "e", "f"), dstore(2, "g", "h", "i", "j", "k", "l"), dstore(3)), fileSizes);
+
+        for (Set<String> files : after.values()) {
+            Assertions.assertEquals(400, bytes(files, fileSizes));
+        }
+        Assertions.assertTrue(replicas(after).values().stream().allMatch(r -> r == 1));
+    }
+
+    //the same bytes on every Dstore, however many files
+    @Test
+    void testSizeAwareLeavesBalancedBytesAlone() {
+        Map<String,Long> fileSizes = Map.of("a", 300L, "b", 100L, "c", 100L, "d", 100L);
+        List<Pair<Integer,List<String>>> filesInDstores = List.of(dstore(1, "a"), dstore(2, "b", "c", "d"));
+        HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan =
+                RebalancePlanner.create("size-aware", 1).plan(RebalancePlanner.revert(filesInDstores), filesInDstores, fileSizes);
+        Assertions.assertTrue(plan.isEmpty(), plan.toString());
+    }
+
+    @Test
+    void testSizeAwareReplicatesOnTheDstoreWithFewestBytes() {
+        Map<String,Long> fileSizes = Map.of("a", 100L, "b", 1000L, "c", 50L, "e", 20L);
+        //a tolerance wide enough for no file to be moved, only a misses a replica
+        Map<Integer,Set<String>> after = plan(RebalancePlanner.create("size-aware", 2, 10), List.of(
+                dstore(1, "a", "b"), dstore(2, "b"), dstore(3, "c"), dstore(4, "c", "e"), dstore(5, "e")), fileSizes);
+        Assertions.assertEquals(Set.of("a", "e"), after.get(5));
+        Assertions.assertEquals(Set.of("c"), after.get(3));
+    }
+
+    //the files without a known size are taken to be as big as the mean of the others
+    @Test
+    void testSizeAwareUnknownSizes() {
+        Map<Integer,Set<String>> after = plan(RebalancePlanner.create("size-aware", 1), List.of(
+                dstore(1, "a", "b", "c"), dstore(2), dstore(3)), Map.of("a", 100L));
+        for (Set<String> files : after.values()) {
+            Assertions.assertEquals(1, files.size(), after.toString());
+        }
+    }
+
+    /************************************END OF TESTS FOR BALANCING BYTES********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR THE RING****************************/
+
+    //every file ends up on the Dstores the ring gives it, and a cluster in place plans nothing
+    @Test
+    void testRingPlacesFilesOnTheRing() {
+        List<Pair<Integer,List<String>>> answers = List.of(
+                dstore(1, "a", "b", "c", "d", "e", "f", "g", "h"), dstore(2, "a", "b", "c", "d", "e", "f", "g", "h"), dstore(3), dstore(4));
+        Map<Integer,Set<String>> after = plan(RebalancePlanner.create("ring", 2), answers, Map.of());
+        ConsistentHashRing ring = new ConsistentHashRing(ConsistentHashRing.DEFAULT_VIRTUAL_NODES, after.keySet());
+        for (String file : List.of("a", "b", "c", "d", "e", "f", "g", "h")) {
+            for (int port : after.keySet()) {
+                Assertions.assertEquals(ring.replicas(file, 2).contains(port), after.get(port).contains(file), file + " on " + port);
+            }
+        }
+
+        List<Pair<Integer,List<String>>> inPlace = new ArrayList<>();
+        after.forEach((port, files) -> inPlace.add(dstore(port, files.toArray(new String[0]))));
+        HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan =
+                RebalancePlanner.create("ring", 2).plan(RebalancePlanner.revert(inPlace), inPlace, Map.of());
+        Assertions.assertTrue(plan.isEmpty(), plan.toString());
+    }
+
+    //only the files the ring gives the new Dstore are sent, and only to it
+    @Test
+    void testRingJoinOnlySendsToTheNewDstore() {
+        Map<Integer,Set<String>> placed = plan(RebalancePlanner.create("ring", 2), List.of(
+                dstore(1, "a", "b", "c", "d", "e", "f", "g", "h"), dstore(2, "a", "b", "c", "d", "e", "f", "g", "h"), dstore(3)), Map.of());
+        List<Pair<Integer,List<String>>> joined = new ArrayList<>();
+        placed.forEach((port, files) -> joined.add(dstore(port, files.toArray(new String[0]))));
+        joined.add(dstore(4));
+
+        HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan =
+                RebalancePlanner.create("ring", 2).plan(RebalancePlanner.revert(joined), joined, Map.of());
+        Assertions.assertFalse(plan.isEmpty());
+        for (Pair<List<Pair<String,List<Integer>>>,List<String>> information : plan.values()) {
+            for (Pair<String,List<Integer>> sent : information.fst) {
+                Assertions.assertEquals(List.of(4), sent.snd);
+            }
+        }
+    }
+
+    /************************************END OF TESTS FOR THE RING********************************/
+
+
+    //A Dstore answering LIST with the given files, a single empty name when it has none
+    static Pair<Integer,List<String>> dstore(int port, String... files) {
+        return new Pair<>(port, files.length == 0 ? new ArrayList<>(List.of("")) : new ArrayList<>(List.of(files)));
+    }
+
+    //Plans the given LIST answers and carries the plan out: every Dstore sends the files it stores, then removes the
+    //ones it was told to. The Dstores as carried out must be the ones the planner leaves in filesInDstores
+    static Map<Integer,Set<String>> plan(RebalancePlanner planner, List<Pair<Integer,List<String>>> answers, Map<String,Long> fileSizes) {
+        List<Pair<Integer,List<String>>> filesInDstores = new ArrayList<>();
+        Map<Integer,Set<String>> before = new HashMap<>();
+        for (Pair<Integer,List<String>> answer : answers) {
+            filesInDstores.add(new Pair<>(answer.fst, new ArrayList<>(answer.snd)));
+            before.put(answer.fst, files(answer.snd));
+        }
+
+        HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan =
+                planner.plan(RebalancePlanner.revert(filesInDstores), filesInDstores, fileSizes);
+
+        Map<Integer,Set<String>> after = new HashMap<>();
+        before.forEach((port, files) -> after.put(port, new HashSet<>(files)));
+        plan.forEach((port, information) -> {
+            for (Pair<String,List<Integer>> sent : information.fst) {
+                Assertions.assertTrue(before.get(port).contains(sent.fst), port + " sends " + sent.fst + " it does not store");
+                for (int receivingPort : sent.snd) {
+                    Assertions.assertTrue(after.get(receivingPort).add(sent.fst), receivingPort + " receives " + sent.fst + " twice");
+                }
+            }
+        });
+        plan.forEach((port, information) -> {
+            for (String removed : information.snd) {
+                Assertions.assertTrue(after.get(port).remove(removed), port + " removes " + removed + " it does not store");
+            }
+        });
+
+        for (Pair<Integer,List<String>> pair : filesInDstores) {
+            Assertions.assertEquals(after.get(pair.fst), files(pair.snd), "Dstore " + pair.fst);
+        }
+        return after;
+    }
+
+    //file -> number of Dstores storing it
+    static Map<String,Integer> replicas(Map<Integer,Set<String>> filesInDstores) {
+        Map<String,Integer> replicas = new HashMap<>();
+        for (Set<String> files : filesInDstores.values()) {
+            for (String file : files) {
+                replicas.merge(file, 1, Integer::sum);
+            }
+        }
+        return replicas;
+    }
+
+    static long bytes(Set<String> files, Map<String,Long> fileSizes) {
+        return files.stream().mapToLong(fileSizes::get).sum();
+    }
+
+    private static Set<String> files(List<String> files) {
+        return files.size() == 1 && files.get(0).equals("") ? new HashSet<>() : new HashSet<>(files);
+    }
+}
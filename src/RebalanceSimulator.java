@@ -0,0 +1,337 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class RebalanceSimulator {
+
+    //Plans the rebalance of a synthetic cluster with every planner given, without sockets nor Dstores, and prints how
+    //long each one took, how much memory it needed, what its plan would transfer and how balanced the Dstores are after.
+    //  java RebalanceSimulator [--files 10000] [--dstores 10] [--replication 3] [--scenario join]
+    //                          [--planners backtracking,greedy,size-aware,ring] [--tolerance 0.05]
+    //                          [--placement random] [--min-size 1024] [--max-size 1048576] [--size-skew 1.0]
+    //                          [--seed 42] [--time-limit 600]
+    //The scenarios are join, an empty Dstore joins a cluster whose files are spread at random, failure, a Dstore of
+    //such a cluster is lost with its replicas, and skew, the files of the cluster have been stored mostly on a few
+    //Dstores. Sizes are powers of two between --min-size and --max-size whose popularity is Zipfian, small ones first.
+    //--tolerance is the band around the mean bytes the size-aware planner keeps the Dstores in. With --placement hash
+    //the files of the cluster have been placed by a consistent hashing ring of its Dstores before the join or failure,
+    //as the ring planner keeps them, and skew is not simulated.
+    //Every planner is given the same snapshot, in a thread with a 1 GB stack as the backtracking planner recurses once
+    //per file moved. One which has not finished within --time-limit seconds is reported as such and left behind.
+    //Peak memory is the sum of the peaks of the heap pools since the planner started, above the heap left by a GC just
+    //before, it is an upper bound as the pools do not peak together
+    private static final String[] SCENARIOS = {"join", "failure", "skew"};
+    private static final String[] PLACEMENTS = {"random", "hash"};
+    private static final int FIRST_PORT = 12346;
+    private static final long STACK_SIZE = 1L << 30;
+
+    //configuration
+    private int numberFiles = 10000;
+    private int numberDstores = 10;
+    private int replicationFactor = 3;
+    private String scenario = "join";
+    private List<String> planners = List.of("backtracking", "greedy", "size-aware", "ring");
+    private double tolerance = SizeAwareRebalancePlanner.DEFAULT_TOLERANCE;
+    private String placement = "random";
+    private int minSize = 1024;
+    private int maxSize = 1024 * 1024;
+    private double sizeSkew = 1.0;
+    private long seed = 42;
+    private int timeLimit = 600;
+
+    //snapshot
+    private List<Pair<Integer,List<String>>> filesInDstores;
+    private final Map<String,Long> fileSizes = new HashMap<>();
+
+    /*********************************** BEGINNING OF SNAPSHOT *******************************************/
+
+    private void createSnapshot() {
+        Random random = new Random(seed);
+        int dstores = scenario.equals("failure") ? numberDstores + 1 : numberDstores;
+        List<List<String>> stored = new ArrayList<>();
+        for (int d = 0; d < dstores; d++) {
+            stored.add(new ArrayList<>());
+        }
+
+        //skewed clusters pick Dstores with Zipfian popularity, the others uniformly
+        double[] weights = new double[dstores];
+        for (int d = 0; d < dstores; d++) {
+            weights[d] = scenario.equals("skew") ? 1 / Math.pow(d + 1, 1.0) : 1;
+        }
+        List<Integer> ports = new ArrayList<>();
+        for (int d = 0; d < dstores; d++) {
+            ports.add(FIRST_PORT + d);
+        }
+        ConsistentHashRing ring = new ConsistentHashRing(ConsistentHashRing.DEFAULT_VIRTUAL_NODES, ports);
+        double[] sizes = sizeClasses();
+        int replicas = Math.min(replicationFactor, dstores);
+        for (int f = 0; f < numberFiles; f++) {
+            String file = "file" + f + ".txt";
+            fileSizes.put(file, (long) minSize << Math.min(sizeClass(sizes, random.nextDouble()), 62));
+            Set<Integer> chosen = new HashSet<>();
+            if (placement.equals("hash")) {
+                for (int port : ring.replicas(file, replicas)) {
+                    chosen.add(port - FIRST_PORT);
+                }
+            }
+            while (chosen.size() < replicas) {
+                chosen.add(pick(weights, random));
+            }
+            for (int d : chosen) {
+                stored.get(d).add(file);
+            }
+        }
+
+        filesInDstores = new ArrayList<>();
+        for (int d = 0; d < dstores; d++) {
+            filesInDstores.add(new Pair<>(FIRST_PORT + d, stored.get(d)));
+        }
+        if (scenario.equals("failure"))
+            filesInDstores.remove(random.nextInt(dstores));
+        else if (scenario.equals("join"))
+            filesInDstores.add(new Pair<>(FIRST_PORT + dstores, new ArrayList<>()));
+        for (Pair<Integer,List<String>> pair : filesInDstores) {
+            if (pair.snd.isEmpty())
+                pair.snd.add("");
+        }
+    }
+
+    //the cumulative popularity of the sizes minSize, 2 * minSize ... up to maxSize
+    private double[] sizeClasses() {
+        int classes = 1;
+        while (((long) minSize << classes) <= maxSize && classes < 62) {
+            classes++;
+        }
+        double[] cdf = new double[classes];
+        double sum = 0;
+        for (int i = 0; i < classes; i++) {
+            sum += 1 / Math.pow(i + 1, sizeSkew);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < classes; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sizeClass(double[] cdf, double uniform) {
+        int index = Arrays.binarySearch(cdf, uniform);
+        return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+    }
+
+    private static int pick(double[] weights, Random random) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double target = random.nextDouble() * total;
+        for (int d = 0; d < weights.length; d++) {
+            target -= weights[d];
+            if (target < 0)
+                return d;
+        }
+        return weights.length - 1;
+    }
+
+    private List<Pair<Integer,List<String>>> copy() {
+        List<Pair<Integer,List<String>>> copy = new ArrayList<>(filesInDstores.size());
+        for (Pair<Integer,List<String>> pair : filesInDstores) {
+            copy.add(new Pair<>(pair.fst, new ArrayList<>(pair.snd)));
+        }
+        return copy;
+    }
+
+    /************************************** END OF SNAPSHOT *******************************************/
+
+    /*********************************** BEGINNING OF SIMULATION *******************************************/
+
+    private static class Result {
+        private volatile HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan;
+        private volatile Throwable error;
+        private long planNanos;
+        private long peakBytes;
+    }
+
+    private void run() throws InterruptedException {
+        createSnapshot();
+        System.out.println(String.format("%s files, %s Dstores, replication %s, scenario %s, %s placement", numberFiles, filesInDstores.size(),
+                replicationFactor, scenario, placement));
+        System.out.println(String.format("%-14s %10s %10s %10s %12s %9s %8s %8s %8s %8s %8s %7s", "", "plan ms", "peak MB", "transfers",
+                "MB moved", "removals", "min", "max", "min MB", "max MB", "cv", "under"));
+        System.out.println(String.format("%-14s %10s %10s %10s %12s %9s %s", "before", "", "", "", "", "", quality(filesInDstores)));
+        for (String name : planners) {
+            RebalancePlanner planner = RebalancePlanner.create(name, replicationFactor, tolerance);
+            Result result = plan(planner);
+            if (result.error != null) {
+                System.out.println(String.format("%-14s ERROR => %s", name, result.error));
+            } else if (result.plan == null && result.planNanos < 0) {
+                System.out.println(String.format("%-14s has not finished within %s s", name, timeLimit));
+            } else if (result.plan == null) {
+                System.out.println(String.format("%-14s has found no plan after %.1f ms", name, result.planNanos / 1e6));
+            } else {
+                report(name, result);
+            }
+        }
+    }
+
+    private Result plan(RebalancePlanner planner) throws InterruptedException {
+        List<Pair<Integer,List<String>>> snapshot = copy();
+        List<Pair<String,List<Integer>>> fileAllocation = RebalancePlanner.revert(snapshot);
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                heap.add(pool);
+        }
+
+        Result result = new Result();
+        System.gc();
+        long baseline = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            baseline += pool.getUsage().getUsed();
+            pool.resetPeakUsage();
+        }
+        Thread thread = new Thread(null, () -> {
+            long start = System.nanoTime();
+            try {
+                result.plan = planner.plan(fileAllocation, snapshot, fileSizes);
+            } catch (Throwable e) {
+                result.error = e;
+            }
+            result.planNanos = System.nanoTime() - start;
+        }, planner.getName() + "-planner", STACK_SIZE);
+        thread.setDaemon(true);
+        thread.start();
+        thread.join(timeLimit * 1000L);
+        if (thread.isAlive()) {
+            result.planNanos = -1;
+            return result;
+        }
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        result.peakBytes = Math.max(0, peak - baseline);
+        return result;
+    }
+
+    //The plan is carried out on the snapshot as the Dstores would, every file is sent before any is removed
+    private void report(String name, Result result) {
+        Map<Integer,Set<String>> after = new HashMap<>();
+        for (Pair<Integer,List<String>> pair : filesInDstores) {
+            Set<String> files = new HashSet<>(pair.snd);
+            files.remove("");
+            after.put(pair.fst, files);
+        }
+        long transfers = 0, bytesMoved = 0, removals = 0, invalid = 0;
+        for (var sendToRemove : result.plan.entrySet()) {
+            Set<String> sending = after.get(sendToRemove.getKey());
+            for (Pair<String,List<Integer>> send : sendToRemove.getValue().fst) {
+                if (sending == null || !sending.contains(send.fst))
+                    invalid++;
+                for (int port : send.snd) {
+                    transfers++;
+                    bytesMoved += fileSizes.get(send.fst);
+                    after.get(port).add(send.fst);
+                }
+            }
+        }
+        for (var sendToRemove : result.plan.entrySet()) {
+            for (String file : sendToRemove.getValue().snd) {
+                removals++;
+                after.get(sendToRemove.getKey()).remove(file);
+            }
+        }
+
+        List<Pair<Integer,List<String>>> finalFilesInDstores = new ArrayList<>();
+        for (Pair<Integer,List<String>> pair : filesInDstores) {
+            finalFilesInDstores.add(new Pair<>(pair.fst, new ArrayList<>(after.get(pair.fst))));
+        }
+        System.out.println(String.format("%-14s %10.1f %10.1f %10s %12.1f %9s %s", name, result.planNanos / 1e6, result.peakBytes / 1e6,
+                transfers, bytesMoved / 1e6, removals, quality(finalFilesInDstores)));
+        if (invalid > 0)
+            System.out.println(String.format("ERROR => %s files are sent by Dstores which do not store them", invalid));
+    }
+
+    //the number of files and bytes of the fullest and emptiest Dstores, the coefficient of variation of the bytes and
+    //the number of files stored fewer than replicationFactor times
+    private String quality(List<Pair<Integer,List<String>>> filesInDstores) {
+        int minFiles = Integer.MAX_VALUE, maxFiles = 0;
+        long minBytes = Long.MAX_VALUE, maxBytes = 0;
+        double sum = 0, sumOfSquares = 0;
+        Map<String,Integer> replicas = new HashMap<>();
+        for (Pair<Integer,List<String>> pair : filesInDstores) {
+            long bytes = 0;
+            int files = 0;
+            for (String file : pair.snd) {
+                if (file.equals(""))
+                    continue;
+                files++;
+                bytes += fileSizes.get(file);
+                replicas.merge(file, 1, Integer::sum);
+            }
+            minFiles = Math.min(minFiles, files);
+            maxFiles = Math.max(maxFiles, files);
+            minBytes = Math.min(minBytes, bytes);
+            maxBytes = Math.max(maxBytes, bytes);
+            sum += bytes;
+            sumOfSquares += (double) bytes * bytes;
+        }
+        int n = filesInDstores.size();
+        double mean = sum / n;
+        double cv = mean == 0 ? 0 : Math.sqrt(Math.max(0, sumOfSquares / n - mean * mean)) / mean;
+        long underReplicated = fileSizes.size() - replicas.values().stream().filter(r -> r >= replicationFactor).count();
+        return String.format("%8s %8s %8.1f %8.1f %8.3f %7s", minFiles, maxFiles, minBytes / 1e6, maxBytes / 1e6, cv, underReplicated);
+    }
+
+    /************************************** END OF SIMULATION *******************************************/
+
+    public static void main(String[] args) {
+        RebalanceSimulator simulator = new RebalanceSimulator();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--files": simulator.numberFiles = Integer.parseInt(args[++i]); break;
+                    case "--dstores": simulator.numberDstores = Integer.parseInt(args[++i]); break;
+                    case "--replication": simulator.replicationFactor = Integer.parseInt(args[++i]); break;
+                    case "--scenario": simulator.scenario = args[++i]; break;
+                    case "--planners": simulator.planners = Arrays.asList(args[++i].split(",")); break;
+                    case "--tolerance": simulator.tolerance = Double.parseDouble(args[++i]); break;
+                    case "--placement": simulator.placement = args[++i]; break;
+                    case "--min-size": simulator.minSize = Integer.parseInt(args[++i]); break;
+                    case "--max-size": simulator.maxSize = Integer.parseInt(args[++i]); break;
+                    case "--size-skew": simulator.sizeSkew = Double.parseDouble(args[++i]); break;
+                    case "--seed": simulator.seed = Long.parseLong(args[++i]); break;
+                    case "--time-limit": simulator.timeLimit = Integer.parseInt(args[++i]); break;
+                    default: throw new IllegalArgumentException(args[i]);
+                }
+            }
+            for (String planner : simulator.planners) {
+                RebalancePlanner.create(planner, simulator.replicationFactor);
+            }
+            if (!Arrays.asList(SCENARIOS).contains(simulator.scenario) || !Arrays.asList(PLACEMENTS).contains(simulator.placement)
+                    || simulator.minSize <= 0 || simulator.maxSize < simulator.minSize
+                    || simulator.numberDstores < simulator.replicationFactor)
+                throw new IllegalArgumentException();
+        } catch (RuntimeException e) {
+            System.out.println("Usage: java RebalanceSimulator [--files n] [--dstores n] [--replication r] [--scenario join|failure|skew]\n"
+                    + "    [--planners backtracking,greedy,size-aware,ring] [--tolerance t] [--placement random|hash] [--min-size b]\n"
+                    + "    [--max-size b] [--size-skew s] [--seed n] [--time-limit s]");
+            return;
+        }
+
+        try {
+            simulator.run();
+        } catch (InterruptedException e) {
+            System.out.println("ERROR => the simulation has been interrupted");
+        }
+        System.exit(0);
+    }
+}
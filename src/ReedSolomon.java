@@ -0,0 +1,224 @@
+public class ReedSolomon {
+
+    //GF(2^8) arithmetic with the primitive polynomial x^8 + x^4 + x^3 + x^2 + 1
+    private static final int GENERATING_POLYNOMIAL = 0x11D;
+    private static final int[] EXP = new int[512];
+    private static final int[] LOG = new int[256];
+    private static final byte[][] MUL = new byte[256][256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if ((x & 0x100) != 0)
+                x ^= GENERATING_POLYNOMIAL;
+        }
+        for (int i = 255; i < 512; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++) {
+                MUL[a][b] = (byte) multiply(a, b);
+            }
+        }
+    }
+
+    private final int dataShards;
+    private final int parityShards;
+    //(dataShards + parityShards) x dataShards systematic matrix: the first dataShards rows are the identity
+    private final int[][] matrix;
+
+    public ReedSolomon(int dataShards, int parityShards) {
+        if (dataShards <= 0 || parityShards < 0 || dataShards + parityShards > 255)
+            throw new IllegalArgumentException("Invalid number of data or parity shards");
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+
+        int[][] vandermonde = vandermonde(dataShards + parityShards, dataShards);
+        int[][] top = new int[dataShards][];
+        System.arraycopy(vandermonde, 0, top, 0, dataShards);
+        this.matrix = multiply(vandermonde, invert(top));
+    }
+
+    /*********************************** BEGINNING OF SHARD PROCEDURES *******************************************/
+
+    public static int shardSize(long fileSize, int dataShards) {
+        return (int) Math.max(1, (fileSize + dataShards - 1) / dataShards);
+    }
+
+    //Splits the data in dataShards zero padded shards and computes the parity shards
+    public byte[][] encode(byte[] data) {
+        int shardSize = shardSize(data.length, dataShards);
+        byte[][] shards = new byte[dataShards + parityShards][shardSize];
+        for (int i = 0; i < dataShards; i++) {
+            int from = i * shardSize;
+            if (from < data.length)
+                System.arraycopy(data, from, shards[i], 0, Math.min(shardSize, data.length - from));
+        }
+        for (int p = dataShards; p < dataShards + parityShards; p++) {
+            computeShard(p, matrix[p], shards, shardSize);
+        }
+        return shards;
+    }
+
+    public byte[] join(byte[][] shards, long fileSize) {
+        byte[] data = new byte[(int) fileSize];
+        int shardSize = shards[0].length;
+        for (int i = 0; i < dataShards; i++) {
+            int from = i * shardSize;
+            if (from < data.length)
+                System.arraycopy(shards[i], 0, data, from, Math.min(shardSize, data.length - from));
+        }
+        return data;
+    }
+
+    //Rebuilds in place every shard whose present flag is false, at least dataShards shards must be present
+    public void reconstruct(byte[][] shards, boolean[] present, int shardSize) {
+        int[] rows = new int[dataShards];
+        int found = 0;
+        for (int i = 0; i < shards.length && found < dataShards; i++) {
+            if (present[i])
+                rows[found++] = i;
+        }
+        if (found < dataShards)
+            throw new IllegalArgumentException("Not enough shards to reconstruct the data");
+
+        int[][] subMatrix = new int[dataShards][];
+        byte[][] subShards = new byte[dataShards][];
+        for (int i = 0; i < dataShards; i++) {
+            subMatrix[i] = matrix[rows[i]];
+            subShards[i] = shards[rows[i]];
+        }
+        int[][] decodeMatrix = invert(subMatrix);
+
+        for (int d = 0; d < dataShards; d++) {
+            if (!present[d]) {
+                shards[d] = new byte[shardSize];
+                computeShard(d, decodeMatrix[d], subShards, shardSize, shards[d]);
+            }
+        }
+        for (int p = dataShards; p < dataShards + parityShards; p++) {
+            if (!present[p]) {
+                shards[p] = new byte[shardSize];
+                computeShard(p, matrix[p], shards, shardSize);
+            }
+        }
+    }
+
+    private void computeShard(int target, int[] coefficients, byte[][] shards, int shardSize) {
+        computeShard(target, coefficients, shards, shardSize, shards[target]);
+    }
+
+    private void computeShard(int target, int[] coefficients, byte[][] inputs, int shardSize, byte[] output) {
+        for (int c = 0; c < dataShards; c++) {
+            byte[] table = MUL[coefficients[c]];
+            byte[] input = inputs[c];
+            if (c == 0) {
+                for (int j = 0; j < shardSize; j++)
+                    output[j] = table[input[j] & 0xFF];
+            } else {
+                for (int j = 0; j < shardSize; j++)
+                    output[j] ^= table[input[j] & 0xFF];
+            }
+        }
+    }
+
+    /************************************** END OF SHARD PROCEDURES *******************************************/
+
+
+    /*********************************** BEGINNING OF MATRIX PROCEDURES ******************************************/
+
+    private static int multiply(int a, int b) {
+        if (a == 0 || b == 0)
+            return 0;
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    private static int inverse(int a) {
+        if (a == 0)
+            throw new ArithmeticException("Zero has no inverse in GF(256)");
+        return EXP[255 - LOG[a]];
+    }
+
+    private static int power(int a, int n) {
+        if (n == 0)
+            return 1;
+        if (a == 0)
+            return 0;
+        return EXP[(LOG[a] * n) % 255];
+    }
+
+    private static int[][] vandermonde(int rows, int columns) {
+        int[][] result = new int[rows][columns];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                result[r][c] = power(r, c);
+            }
+        }
+        return result;
+    }
+
+    private static int[][] multiply(int[][] left, int[][] right) {
+        int[][] result = new int[left.length][right[0].length];
+        for (int r = 0; r < left.length; r++) {
+            for (int c = 0; c < right[0].length; c++) {
+                int value = 0;
+                for (int i = 0; i < right.length; i++) {
+                    value ^= multiply(left[r][i], right[i][c]);
+                }
+                result[r][c] = value;
+            }
+        }
+        return result;
+    }
+
+    //Gauss-Jordan elimination over GF(256)
+    private static int[][] invert(int[][] square) {
+        int n = square.length;
+        int[][] work = new int[n][2 * n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(square[r], 0, work[r], 0, n);
+            work[r][n + r] = 1;
+        }
+
+        for (int c = 0; c < n; c++) {
+            int pivot = c;
+            while (pivot < n && work[pivot][c] == 0)
+                pivot++;
+            if (pivot == n)
+                throw new IllegalArgumentException("Singular matrix");
+            int[] tmp = work[pivot];
+            work[pivot] = work[c];
+            work[c] = tmp;
+
+            int scale = inverse(work[c][c]);
+            for (int i = 0; i < 2 * n; i++)
+                work[c][i] = multiply(work[c][i], scale);
+
+            for (int r = 0; r < n; r++) {
+                if (r != c && work[r][c] != 0) {
+                    int factor = work[r][c];
+                    for (int i = 0; i < 2 * n; i++)
+                        work[r][i] ^= multiply(factor, work[c][i]);
+                }
+            }
+        }
+
+        int[][] result = new int[n][n];
+        for (int r = 0; r < n; r++)
+            System.arraycopy(work[r], n, result[r], 0, n);
+        return result;
+    }
+
+    /************************************** END OF MATRIX PROCEDURES *******************************************/
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+}
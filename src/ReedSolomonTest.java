@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ReedSolomonTest {
+
+    /*********************************BEGINNING OF TESTS FOR ENCODING****************************/
+
+    @ParameterizedTest
+    @MethodSource("argumentsForTestEncodeIsSystematic")
+    void testEncodeIsSystematic(int dataShards, int parityShards, int fileSize) {
+        byte[] data = randomBytes(fileSize);
+        ReedSolomon reedSolomon = new ReedSolomon(dataShards, parityShards);
+        byte[][] shards = reedSolomon.encode(data);
+
+        Assertions.assertEquals(dataShards + parityShards, shards.length);
+        int shardSize = ReedSolomon.shardSize(fileSize, dataShards);
+        for (byte[] shard : shards) {
+            Assertions.assertEquals(shardSize, shard.length);
+        }
+        //the data shards are the file itself, zero padded
+        byte[] padded = Arrays.copyOf(data, dataShards * shardSize);
+        for (int i = 0; i < dataShards; i++) {
+            Assertions.assertArrayEquals(Arrays.copyOfRange(padded, i * shardSize, (i + 1) * shardSize), shards[i]);
+        }
+        Assertions.assertArrayEquals(data, reedSolomon.join(shards, fileSize));
+    }
+
+    Stream<Arguments> argumentsForTestEncodeIsSystematic(){
+        return Stream.of(
+                Arguments.of(1, 1, 10),
+                Arguments.of(2, 2, 0),
+                Arguments.of(3, 2, 1),
+                Arguments.of(4, 2, 1000),
+                Arguments.of(4, 2, 1001),
+                Arguments.of(10, 4, 65537)
+        );
+    }
+
+    @Test
+    void testInvalidShardCountsAreRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ReedSolomon(0, 2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ReedSolomon(2, -1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ReedSolomon(200, 56));
+    }
+
+    /************************************END OF TESTS FOR ENCODING********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR RECONSTRUCTION****************************/
+
+    //every combination of at most parityShards lost shards, data and parity alike
+    @ParameterizedTest
+    @MethodSource("argumentsForTestReconstructAnyLostShards")
+    void testReconstructAnyLostShards(int dataShards, int parityShards, int fileSize) {
+        byte[] data = randomBytes(fileSize);
+        ReedSolomon reedSolomon = new ReedSolomon(dataShards, parityShards);
+        byte[][] original = reedSolomon.encode(data);
+        int totalShards = dataShards + parityShards;
+        int shardSize = original[0].length;
+
+        for (int lost = 1; lost < 1 << totalShards; lost++) {
+            if (Integer.bitCount(lost) > parityShards)
+                continue;
+            byte[][] shards = new byte[totalShards][];
+            boolean[] present = new boolean[totalShards];
+            for (int i = 0; i < totalShards; i++) {
+                present[i] = (lost & (1 << i)) == 0;
+                shards[i] = present[i] ? original[i].clone() : null;
+            }
+
+            reedSolomon.reconstruct(shards, present, shardSize);
+            for (int i = 0; i < totalShards; i++) {
+                Assertions.assertArrayEquals(original[i], shards[i], "shard " + i + " with lost shards " + Integer.toBinaryString(lost));
+            }
+            Assertions.assertArrayEquals(data, reedSolomon.join(shards, fileSize));
+        }
+    }
+
+    Stream<Arguments> argumentsForTestReconstructAnyLostShards(){
+        return Stream.of(
+                Arguments.of(2, 1, 7),
+                Arguments.of(2, 2, 100),
+                Arguments.of(4, 2, 4096),
+                Arguments.of(3, 3, 999),
+                Arguments.of(6, 3, 12345)
+        );
+    }
+
+    @Test
+    void testReconstructFailsWithTooFewShards() {
+        ReedSolomon reedSolomon = new ReedSolomon(4, 2);
+        byte[][] shards = reedSolomon.encode(randomBytes(1000));
+        boolean[] present = {false, true, false, true, false, true};
+        Assertions.assertThrows(IllegalArgumentException.class, () -> reedSolomon.reconstruct(shards, present, shards[1].length));
+    }
+
+    /************************************END OF TESTS FOR RECONSTRUCTION********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR FRAGMENT NAMES****************************/
+
+    @Test
+    void testFragmentNames() {
+        String fragment = ErasureCoding.fragmentName("hello.txt", 3);
+        Assertions.assertTrue(ErasureCoding.isFragment(fragment));
+        Assertions.assertEquals("hello.txt", ErasureCoding.logicalName(fragment));
+        Assertions.assertEquals(3, ErasureCoding.fragmentIndex(fragment));
+        Assertions.assertFalse(ErasureCoding.isFragment("hello.txt"));
+        Assertions.assertEquals("hello.txt", ErasureCoding.logicalName("hello.txt"));
+    }
+
+    /************************************END OF TESTS FOR FRAGMENT NAMES********************************/
+
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
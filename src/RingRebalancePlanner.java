@@ -0,0 +1,58 @@
+import java.util.*;
+
+// The plan of the consistent hashing placement: every file belongs on the replicationFactor Dstores the ring of the
+// Dstores listed gives it, see ConsistentHashRing, so the plan is the difference between the ring and the LIST
+// answers. The Dstores missing a file receive it from one storing it, the ones not meant to store it remove it. After
+// a join or a failure only the files next to the points of that Dstore differ, about 1/N of them, and a cluster in
+// place plans nothing. Nothing is balanced beyond what the ring does, the more virtual nodes the more even
+public class RingRebalancePlanner extends RebalancePlanner {
+
+    private final int virtualNodes;
+
+    public RingRebalancePlanner(int replicationFactor, int virtualNodes) {
+        super(replicationFactor);
+        this.virtualNodes = virtualNodes;
+    }
+
+    @Override
+    public HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan(List<Pair<String,List<Integer>>> fileAllocation, List<Pair<Integer,List<String>>> filesInDstores, Map<String,Long> fileSizes) {
+
+        Map<Integer,Set<String>> files = new HashMap<>();  //port -> what the Dstore will store after the plan
+        for (Pair<Integer,List<String>> pair : filesInDstores) {
+            files.put(pair.fst, numberFiles(pair.snd) == 0 ? new LinkedHashSet<>() : new LinkedHashSet<>(pair.snd));
+        }
+        ConsistentHashRing ring = new ConsistentHashRing(virtualNodes, files.keySet());
+
+        Plan plan = new Plan();
+        for (Pair<String,List<Integer>> allocation : fileAllocation) {
+            String file = allocation.fst;
+            List<Integer> replicas = ring.replicas(file, replicationFactor);
+            int sendingPort = allocation.snd.get(0);
+            for (int port : replicas) {
+                if (files.get(port).add(file))
+                    plan.send(sendingPort, file, port);
+            }
+            //the Dstore sending the file only removes it once sent, the others may remove it straight away
+            for (int port : allocation.snd) {
+                if (!replicas.contains(port)) {
+                    files.get(port).remove(file);
+                    plan.remove(port, file);
+                }
+            }
+        }
+
+        //filesInDstores is left as the Dstores will be
+        for (Pair<Integer,List<String>> pair : filesInDstores) {
+            pair.snd.clear();
+            pair.snd.addAll(files.get(pair.fst));
+            if (pair.snd.isEmpty())
+                pair.snd.add("");
+        }
+        return plan.informationForDstores;
+    }
+
+    @Override
+    public String getName() {
+        return "ring";
+    }
+}
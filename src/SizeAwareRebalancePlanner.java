@@ -0,0 +1,229 @@
+import java.util.*;
+
+// Balances the bytes stored by the Dstores rather than their number of files, moving as few bytes as it can. Each
+// missing replica goes to the Dstore storing the fewest bytes without the file. Then, as long as a Dstore is outside
+// the band of tolerance around the mean, it gives or takes one file: the smallest which brings it back inside the
+// band on its own, else the biggest which does not overshoot, else the smallest bigger one if the two Dstores get
+// closer to the band. Every move gets the cluster closer to it and a file is moved at most once. When no such move is
+// left the plan stops there. A Dstore only gives away files it already stores, and the sizes of the files the
+// Controller does not know are taken to be the mean of the others
+public class SizeAwareRebalancePlanner extends RebalancePlanner {
+
+    public static final double DEFAULT_TOLERANCE = 0.05;
+
+    private final double tolerance;  //how far from the mean bytes a Dstore may stay, as a fraction of the mean
+
+    public SizeAwareRebalancePlanner(int replicationFactor, double tolerance) {
+        super(replicationFactor);
+        this.tolerance = tolerance;
+    }
+
+    @Override
+    public HashMap<Integer,Pair<List<Pair<String,List<Integer>>>,List<String>>> plan(List<Pair<String,List<Integer>>> fileAllocation, List<Pair<Integer,List<String>>> filesInDstores, Map<String,Long> fileSizes) {
+
+        int numberDstores = filesInDstores.size();
+        Map<String,Long> sizes = sizesOf(fileAllocation, fileSizes);
+        List<Set<String>> files = new ArrayList<>(numberDstores);  //what each Dstore will store after the plan
+        List<TreeMap<Long,Set<String>>> movable = new ArrayList<>(numberDstores);  //size -> files a Dstore stores now
+        long[] bytes = new long[numberDstores];
+        for (int d = 0; d < numberDstores; d++) {
+            List<String> dstoreFiles = filesInDstores.get(d).snd;
+            files.add(new LinkedHashSet<>());
+            movable.add(new TreeMap<>());
+            if (numberFiles(dstoreFiles) == 0)
+                continue;
+            for (String file : dstoreFiles) {
+                long size = sizes.get(file);
+                files.get(d).add(file);
+                movable.get(d).computeIfAbsent(size, s -> new LinkedHashSet<>()).add(file);
+                bytes[d] += size;
+            }
+        }
+
+        Plan plan = new Plan();
+
+        //missing replicas
+        for (Pair<String,List<Integer>> allocation : fileAllocation) {
+            String file = allocation.fst;
+            int sendingPort = allocation.snd.get(0);
+            for (int i = allocation.snd.size(); i < replicationFactor; i++) {
+                int receiving = -1;
+                for (int d = 0; d < numberDstores; d++) {
+                    if (!files.get(d).contains(file) && (receiving == -1 || bytes[d] < bytes[receiving]))
+                        receiving = d;
+                }
+                if (receiving == -1)
+                    break;  //every Dstore has it already
+                files.get(receiving).add(file);
+                bytes[receiving] += sizes.get(file);
+                plan.send(sendingPort, file, filesInDstores.get(receiving).fst);
+            }
+        }
+
+        long total = 0;
+        for (long dstoreBytes : bytes) {
+            total += dstoreBytes;
+        }
+        double mean = total / (double) numberDstores;
+        long lower = (long) Math.ceil(mean * (1 - tolerance));
+        long upper = (long) Math.floor(mean * (1 + tolerance));
+
+        //moves, the Dstore furthest outside the band first
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            Integer[] byDistance = new Integer[numberDstores];
+            for (int d = 0; d < numberDstores; d++) {
+                byDistance[d] = d;
+            }
+            Arrays.sort(byDistance, Comparator.comparingLong((Integer d) -> distance(bytes[d], lower, upper)).reversed());
+            for (int d : byDistance) {
+                if (distance(bytes[d], lower, upper) == 0)
+                    break;  //all the other Dstores are inside the band
+                if (bytes[d] > upper ? give(d, files, movable, bytes, lower, upper, filesInDstores, plan) : take(d, files, movable, bytes, lower, upper, filesInDstores, plan)) {
+                    moved = true;
+                    break;
+                }
+            }
+        }
+
+        //filesInDstores is left as the Dstores will be
+        for (int d = 0; d < numberDstores; d++) {
+            List<String> dstoreFiles = filesInDstores.get(d).snd;
+            dstoreFiles.clear();
+            dstoreFiles.addAll(files.get(d));
+            if (dstoreFiles.isEmpty())
+                dstoreFiles.add("");
+        }
+        return plan.informationForDstores;
+    }
+
+    @Override
+    public String getName() {
+        return "size-aware";
+    }
+
+    private static Map<String,Long> sizesOf(List<Pair<String,List<Integer>>> fileAllocation, Map<String,Long> fileSizes) {
+        Map<String,Long> sizes = new HashMap<>();
+        long known = 0, sum = 0;
+        for (Pair<String,List<Integer>> allocation : fileAllocation) {
+            Long size = fileSizes.get(allocation.fst);
+            if (size != null) {
+                sizes.put(allocation.fst, size);
+                known++;
+                sum += size;
+            }
+        }
+        long unknownSize = known == 0 ? 1 : Math.max(1, sum / known);
+        for (Pair<String,List<Integer>> allocation : fileAllocation) {
+            sizes.putIfAbsent(allocation.fst, unknownSize);
+        }
+        return sizes;
+    }
+
+    private static long distance(long bytes, long lower, long upper) {
+        return bytes > upper ? bytes - upper : bytes < lower ? lower - bytes : 0;
+    }
+
+    //the Dstore sending above the band gives a file to the Dstores with the fewest bytes first
+    private boolean give(int sending, List<Set<String>> files, List<TreeMap<Long,Set<String>>> movable, long[] bytes, long lower, long upper, List<Pair<Integer,List<String>>> filesInDstores, Plan plan) {
+        Integer[] receivers = byBytes(bytes, true);
+        for (int receiving : receivers) {
+            if (receiving == sending || bytes[receiving] >= upper)
+                continue;
+            long needed = bytes[sending] - upper;
+            long room = Math.min(upper - bytes[receiving], bytes[sending] - lower);
+            if (move(sending, receiving, needed, room, lower, upper, files, movable, bytes, filesInDstores, plan))
+                return true;
+        }
+        return false;
+    }
+
+    //the Dstore receiving below the band takes a file from the Dstores with the most bytes first
+    private boolean take(int receiving, List<Set<String>> files, List<TreeMap<Long,Set<String>>> movable, long[] bytes, long lower, long upper, List<Pair<Integer,List<String>>> filesInDstores, Plan plan) {
+        Integer[] senders = byBytes(bytes, false);
+        for (int sending : senders) {
+            if (sending == receiving || bytes[sending] <= lower)
+                continue;
+            long needed = lower - bytes[receiving];
+            long room = Math.min(bytes[sending] - lower, upper - bytes[receiving]);
+            if (move(sending, receiving, needed, room, lower, upper, files, movable, bytes, filesInDstores, plan))
+                return true;
+        }
+        return false;
+    }
+
+    private static Integer[] byBytes(long[] bytes, boolean ascending) {
+        Integer[] dstores = new Integer[bytes.length];
+        for (int d = 0; d < bytes.length; d++) {
+            dstores[d] = d;
+        }
+        Comparator<Integer> comparator = Comparator.comparingLong(d -> bytes[d]);
+        Arrays.sort(dstores, ascending ? comparator : comparator.reversed());
+        return dstores;
+    }
+
+    //moves the smallest file of at least needed bytes which fits in room, else the biggest one of at most needed bytes.
+    //When the files are too big for the band, the smallest of the bigger ones is moved if it gets the two Dstores
+    //closer to the band altogether
+    private static boolean move(int sending, int receiving, long needed, long room, long lower, long upper, List<Set<String>> files, List<TreeMap<Long,Set<String>>> movable, long[] bytes, List<Pair<Integer,List<String>>> filesInDstores, Plan plan) {
+        TreeMap<Long,Set<String>> candidates = movable.get(sending);
+        long fits = Math.max(0, Math.min(needed, room));
+        String file = null;
+        long size = 0;
+        if (needed <= room) {
+            for (var entry : candidates.subMap(needed, true, room, true).entrySet()) {
+                file = missing(entry.getValue(), files.get(receiving));
+                if (file != null) {
+                    size = entry.getKey();
+                    break;
+                }
+            }
+        }
+        if (file == null) {
+            for (var entry : candidates.headMap(fits, true).descendingMap().entrySet()) {
+                if (entry.getKey() <= 0)
+                    break;
+                file = missing(entry.getValue(), files.get(receiving));
+                if (file != null) {
+                    size = entry.getKey();
+                    break;
+                }
+            }
+        }
+        if (file == null) {
+            for (var entry : candidates.tailMap(fits, false).entrySet()) {
+                file = missing(entry.getValue(), files.get(receiving));
+                if (file != null) {
+                    size = entry.getKey();
+                    break;
+                }
+            }
+            long before = distance(bytes[sending], lower, upper) + distance(bytes[receiving], lower, upper);
+            if (file == null || distance(bytes[sending] - size, lower, upper) + distance(bytes[receiving] + size, lower, upper) >= before)
+                return false;
+        }
+
+        Set<String> sameSize = candidates.get(size);
+        sameSize.remove(file);
+        if (sameSize.isEmpty())
+            candidates.remove(size);
+        files.get(sending).remove(file);
+        files.get(receiving).add(file);
+        bytes[sending] -= size;
+        bytes[receiving] += size;
+        int sendingPort = filesInDstores.get(sending).fst;
+        plan.send(sendingPort, file, filesInDstores.get(receiving).fst);
+        plan.remove(sendingPort, file);
+        return true;
+    }
+
+    //the first of the files the receiving Dstore does not store yet
+    private static String missing(Set<String> candidates, Set<String> receivingFiles) {
+        for (String file : candidates) {
+            if (!receivingFiles.contains(file))
+                return file;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class Tracing {
+
+    //A traced message starts with the token ^traceid-spanid, before the correlation ID if there is one: the trace
+    //and the span of the sender which the receiver's span is a child of. Nodes which do not trace just drop it.
+    //Every node with tracing enabled writes its finished spans to <service>_<port>_<time>.spans, one Zipkin v2 JSON
+    //span per line (jq -s . turns the file into the array the Zipkin API takes), so the spans of the Client, the
+    //Controller and the Dstores can be put together into one trace.
+    //Untraced requests stay untraced, only the Client and the Controller's rebalances start traces
+    public static final String CONTEXT_PREFIX = "^";
+
+    private static volatile Tracing instance;   //null while tracing is disabled
+    private static final ThreadLocal<Span> current = new ThreadLocal<>();
+
+    private final String serviceName;
+    private final int port;
+    private final AsyncLogWriter writer;
+
+    public static class Context {
+        public final String traceId;
+        public final String spanId;
+
+        public Context(String traceId, String spanId) {
+            this.traceId = traceId;
+            this.spanId = spanId;
+        }
+
+        public String toToken() {
+            return CONTEXT_PREFIX + traceId + "-" + spanId;
+        }
+    }
+
+    public static class Span {
+        public final String traceId;
+        public final String id;
+        public final String parentId;
+        public final String name;
+        private final long startMicros;
+        private final long startNanos;
+        private final Map<String,String> tags;
+
+        private Span(String traceId, String parentId, String name) {
+            this.traceId = traceId;
+            this.id = randomHex(16);
+            this.parentId = parentId;
+            this.name = name;
+            Instant now = Instant.now();
+            this.startMicros = now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+            this.startNanos = System.nanoTime();
+            this.tags = new LinkedHashMap<>();
+        }
+
+        public synchronized Span tag(String key, Object value) {
+            tags.put(key, String.valueOf(value));
+            return this;
+        }
+
+        public Context context() {
+            return new Context(traceId, id);
+        }
+    }
+
+    private Tracing(String serviceName, int port) throws IOException {
+        this.serviceName = serviceName;
+        this.port = port;
+        OutputStream out = new FileOutputStream(serviceName + "_" + port + "_" + System.currentTimeMillis() + ".spans");
+        PrintStream spans = new PrintStream(out, false);
+        this.writer = new AsyncLogWriter(serviceName + "-spans", lines -> {
+            for (String line : lines) {
+                spans.println(line);
+            }
+            spans.flush();
+        });
+    }
+
+    /*********************************** BEGINNING OF SETUP *******************************************/
+
+    public static synchronized void enable(String serviceName, int port) {
+        if (instance != null)
+            return;
+        try {
+            Tracing tracing = new Tracing(serviceName, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> tracing.writer.close(1000)));
+            instance = tracing;
+        } catch (IOException e) {
+            System.out.println("ERROR => the spans file could not be created: " + e.getMessage());
+        }
+    }
+
+    //The spans already finished are still written
+    static synchronized void disable() {
+        if (instance == null)
+            return;
+        instance.writer.close(1000);
+        instance = null;
+    }
+
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    /************************************** END OF SETUP *******************************************/
+
+
+    /*********************************** BEGINNING OF SPANS *******************************************/
+
+    //null when tracing is disabled
+    public static Span startRoot(String name) {
+        return instance == null ? null : new Span(randomHex(32), null, name);
+    }
+
+    //null when tracing is disabled or the parent is not traced
+    public static Span start(String name, Context parent) {
+        return instance == null || parent == null ? null : new Span(parent.traceId, parent.spanId, name);
+    }
+
+    public static Span startChild(String name, Span parent) {
+        return parent == null ? null : start(name, parent.context());
+    }
+
+    public static void finish(Span span) {
+        Tracing tracing = instance;
+        if (span == null || tracing == null)
+            return;
+        long duration = Math.max(1, (System.nanoTime() - span.startNanos) / 1000);
+        tracing.writer.offer(tracing.toJson(span, duration));
+    }
+
+    //The span the current thread is working for, e.g. so that the STORE_ACK sent while handling a STORE carries it
+    public static Span current() {
+        return current.get();
+    }
+
+    public static void setCurrent(Span span) {
+        if (span == null)
+            current.remove();
+        else
+            current.set(span);
+    }
+
+    /************************************** END OF SPANS *******************************************/
+
+
+    /*********************************** BEGINNING OF CONTEXT TOKENS *******************************************/
+
+    //The message with the context of the span in front, the message itself when the span is null
+    public static String[] withContext(Span span, String... tokens) {
+        if (span == null)
+            return tokens;
+        String[] message = new String[tokens.length + 1];
+        message[0] = span.context().toToken();
+        System.arraycopy(tokens, 0, message, 1, tokens.length);
+        return message;
+    }
+
+    public static String[] withContext(Span span, List<String> tokens) {
+        return withContext(span, tokens.toArray(new String[0]));
+    }
+
+    //null if the message has no context or a malformed one
+    public static Context context(String[] tokens) {
+        if (tokens.length == 0 || !tokens[0].startsWith(CONTEXT_PREFIX))
+            return null;
+        int separator = tokens[0].indexOf('-');
+        if (separator == -1)
+            return null;
+        return new Context(tokens[0].substring(1, separator), tokens[0].substring(separator + 1));
+    }
+
+    public static String[] withoutContext(String[] tokens) {
+        if (tokens.length == 0 || !tokens[0].startsWith(CONTEXT_PREFIX))
+            return tokens;
+        String[] message = new String[tokens.length - 1];
+        System.arraycopy(tokens, 1, message, 0, message.length);
+        return message;
+    }
+
+    /************************************** END OF CONTEXT TOKENS *******************************************/
+
+
+    /*********************************** BEGINNING OF EXPORT *******************************************/
+
+    private String toJson(Span span, long duration) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"traceId\":\"").append(span.traceId).append("\",\"id\":\"").append(span.id).append('"');
+        if (span.parentId != null)
+            json.append(",\"parentId\":\"").append(span.parentId).append('"');
+        json.append(",\"name\":");
+        appendString(json, span.name);
+        json.append(",\"timestamp\":").append(span.startMicros).append(",\"duration\":").append(duration);
+        json.append(",\"localEndpoint\":{\"serviceName\":");
+        appendString(json, serviceName);
+        if (port > 0)
+            json.append(",\"port\":").append(port);
+        json.append('}');
+
+        List<Map.Entry<String,String>> tags;
+        synchronized (span) {
+            tags = new ArrayList<>(span.tags.entrySet());
+        }
+        if (!tags.isEmpty()) {
+            json.append(",\"tags\":{");
+            for (int i = 0; i < tags.size(); i++) {
+                if (i > 0)
+                    json.append(',');
+                appendString(json, tags.get(i).getKey());
+                json.append(':');
+                appendString(json, tags.get(i).getValue());
+            }
+            json.append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                json.append('\\').append(c);
+            else if (c < 0x20)
+                json.append(String.format("\\u%04x", (int) c));
+            else
+                json.append(c);
+        }
+        json.append('"');
+    }
+
+    private static String randomHex(int digits) {
+        StringBuilder hex = new StringBuilder(digits);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (hex.length() < digits) {
+            String chunk = Long.toHexString(random.nextLong());
+            hex.append("0".repeat(16 - chunk.length())).append(chunk);
+        }
+        return hex.substring(0, digits);
+    }
+
+    /************************************** END OF EXPORT *******************************************/
+}
@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TracingTest {
+
+    private static final String SERVICE_NAME = "tracing-test";
+
+    @AfterEach
+    void disableTracing() {
+        Tracing.disable();
+        Tracing.setCurrent(null);
+        for (File spans : spansFiles()) {
+            spans.delete();
+        }
+    }
+
+    /*********************************BEGINNING OF TESTS FOR CONTEXT PROPAGATION****************************/
+
+    @Test
+    void testUntracedMessagesAreLeftAlone() {
+        Assertions.assertNull(Tracing.startRoot("STORE"));
+        Assertions.assertNull(Tracing.start("STORE", new Tracing.Context("trace", "span")));
+        String[] message = {"#1", "STORE", "a.txt", "5"};
+        Assertions.assertSame(message, Tracing.withContext(null, message));
+        Assertions.assertNull(Tracing.context(message));
+        Assertions.assertSame(message, Tracing.withoutContext(message));
+    }
+
+    @Test
+    void testContextTravelsInFrontOfTheMessage() {
+        Tracing.enable(SERVICE_NAME, 0);
+        Tracing.Span root = Tracing.startRoot("STORE");
+        Assertions.assertEquals(32, root.traceId.length());
+        Assertions.assertNull(root.parentId);
+
+        String[] message = Tracing.withContext(root, "#1", "STORE", "a.txt", "5");
+        Assertions.assertEquals(Tracing.CONTEXT_PREFIX + root.traceId + "-" + root.id, message[0]);
+        Tracing.Context context = Tracing.context(message);
+        Assertions.assertEquals(root.traceId, context.traceId);
+        Assertions.assertEquals(root.id, context.spanId);
+        Assertions.assertArrayEquals(new String[]{"#1", "STORE", "a.txt", "5"}, Tracing.withoutContext(message));
+
+        //the receiver's span is a child of the sender's one, in the same trace
+        Tracing.Span child = Tracing.start("STORE", context);
+        Assertions.assertEquals(root.traceId, child.traceId);
+        Assertions.assertEquals(root.id, child.parentId);
+        Assertions.assertNotEquals(root.id, child.id);
+        Assertions.assertEquals(root.id, Tracing.startChild("REBALANCE_STORE", root).parentId);
+        Assertions.assertNull(Tracing.startChild("REBALANCE_STORE", null));
+    }
+
+    @Test
+    void testMalformedContextIsIgnored() {
+        Assertions.assertNull(Tracing.context(new String[]{Tracing.CONTEXT_PREFIX + "nodash", "STORE"}));
+        Assertions.assertNull(Tracing.context(new String[0]));
+    }
+
+    @Test
+    void testCurrentSpanIsPerThread() throws InterruptedException {
+        Tracing.enable(SERVICE_NAME, 0);
+        Tracing.Span span = Tracing.startRoot("REBALANCE");
+        Tracing.setCurrent(span);
+        Assertions.assertSame(span, Tracing.current());
+
+        Tracing.Span[] other = new Tracing.Span[1];
+        Thread thread = new Thread(() -> other[0] = Tracing.current());
+        thread.start();
+        thread.join();
+        Assertions.assertNull(other[0]);
+
+        Tracing.setCurrent(null);
+        Assertions.assertNull(Tracing.current());
+    }
+
+    /************************************END OF TESTS FOR CONTEXT PROPAGATION********************************/
+
+
+    /*********************************BEGINNING OF TESTS FOR EXPORT****************************/
+
+    @Test
+    void testFinishedSpansAreWrittenAsZipkinJson() throws IOException {
+        Tracing.enable(SERVICE_NAME, 12345);
+        Tracing.Span root = Tracing.startRoot("STORE");
+        Tracing.Span child = Tracing.startChild("STORE_TO", root).tag("file", "a \"quoted\"\nname");
+        Tracing.finish(child);
+        Tracing.finish(root);
+        Tracing.finish(null);
+        Tracing.disable();
+
+        List<File> files = spansFiles();
+        Assertions.assertEquals(1, files.size());
+        List<String> lines = Files.readAllLines(files.get(0).toPath(), StandardCharsets.UTF_8);
+        Assertions.assertEquals(2, lines.size());
+        String childJson = lines.get(0);
+        Assertions.assertTrue(childJson.startsWith("{\"traceId\":\"" + root.traceId + "\",\"id\":\"" + child.id + "\",\"parentId\":\"" + root.id + "\""), childJson);
+        Assertions.assertTrue(childJson.contains("\"name\":\"STORE_TO\""), childJson);
+        Assertions.assertTrue(childJson.contains("\"localEndpoint\":{\"serviceName\":\"" + SERVICE_NAME + "\",\"port\":12345}"), childJson);
+        Assertions.assertTrue(childJson.endsWith(",\"tags\":{\"file\":\"a \\\"quoted\\\"\\u000aname\"}}"), childJson);
+        Assertions.assertFalse(lines.get(1).contains("parentId"), lines.get(1));
+        Assertions.assertFalse(lines.get(1).contains("tags"), lines.get(1));
+    }
+
+    /************************************END OF TESTS FOR EXPORT********************************/
+
+
+    private List<File> spansFiles() {
+        List<File> spans = new ArrayList<>();
+        File[] files = new File(".").listFiles((dir, name) -> name.startsWith(SERVICE_NAME + "_") && name.endsWith(".spans"));
+        if (files != null)
+            spans.addAll(List.of(files));
+        return spans;
+    }
+}